@@ -0,0 +1,159 @@
+package org.collectd.karaf.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.collectd.model.Histogram;
+import org.collectd.model.ValueList;
+import org.collectd.model.ValueType;
+import org.collectd.model.Values;
+import org.collectd.osgi.services.CollectdBatchSender;
+
+/**
+ * Load generator driving the bound Collectd sender from multiple threads.
+ */
+@Command(scope = "collectd", name = "bench", description = "Send generated values to measure throughput of Collectd sender.")
+@Service
+public class Bench implements Action {
+
+    private static final String THREAD_NAME = "collectd-bench-";
+    private static final int PERCENTILE_P50 = 0;
+    private static final int PERCENTILE_P99 = 2;
+    private static final int PERCENTILE_P999 = 3;
+    private static final int PERCENTILE_MAX = 4;
+
+    @Option(name = "--threads", description = "Number of sender threads", required = false, multiValued = false)
+    private int threads = 4;
+
+    @Option(name = "--cardinality", description = "Number of distinct identifiers (type instances)", required = false, multiValued = false)
+    private int cardinality = 1000;
+
+    @Option(name = "--values", description = "Number of values per value list", required = false, multiValued = false)
+    private int valuesPerList = 1;
+
+    @Option(name = "--duration", description = "Duration in seconds", required = false, multiValued = false)
+    private int duration = 10;
+
+    @Option(name = "--plugin", description = "Plugin", required = false, multiValued = false)
+    private String plugin = "bench";
+
+    @Option(name = "--type", description = "Type", required = false, multiValued = false)
+    private String type = "derive";
+
+    @Option(name = "--valueType", description = "Value type", required = false, multiValued = false)
+    private ValueType valueType = ValueType.DERIVE;
+
+    @Reference
+    private CollectdBatchSender sender;
+
+    @Override
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    public Object execute() throws JMException, InterruptedException {
+        if (threads <= 0 || cardinality <= 0 || valuesPerList <= 0 || duration <= 0) {
+            throw new IllegalArgumentException("Threads, cardinality, values and duration must be positive");
+        }
+
+        final Histogram latency = new Histogram();
+        final AtomicLong valueLists = new AtomicLong(0L);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(duration);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        final List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            final Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        valueLists.addAndGet(generate(index, deadline, latency));
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, THREAD_NAME + t);
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+
+        final SenderCounters before = SenderCounters.read();
+        final long start = System.nanoTime();
+        for (final Thread worker : workers) {
+            worker.start();
+        }
+        done.await();
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        final SenderCounters after = SenderCounters.read();
+
+        final Values percentiles = latency.toValues();
+        final List<Number> items = new ArrayList<>();
+        for (final Values.ValueHolder holder : percentiles.getItems()) {
+            items.add(holder.getValue());
+        }
+
+        final long lists = valueLists.get();
+        System.out.println(String.format("Duration:     %.1f s, threads: %d, cardinality: %d, values per list: %d", seconds, threads, cardinality, valuesPerList));
+        System.out.println(String.format("Value lists:  %d (%.0f/s)", lists, lists / seconds));
+        System.out.println(String.format("Values:       %d (%.0f/s)", lists * valuesPerList, lists * valuesPerList / seconds));
+        System.out.println(String.format("Packets:      %.0f/s", after.getRate(before, null, SenderCounters.PACKETS_SENT)));
+        System.out.println(String.format("Bytes:        %.0f/s", after.getRate(before, null, SenderCounters.BYTES_SENT)));
+        System.out.println(String.format("Send errors:  %d", after.getTotal(SenderCounters.SEND_ERRORS) - before.getTotal(SenderCounters.SEND_ERRORS)));
+        System.out.println(String.format("Latency (us): p50=%.0f p99=%.0f p999=%.0f max=%.0f", items.get(PERCENTILE_P50).doubleValue(),
+                items.get(PERCENTILE_P99).doubleValue(), items.get(PERCENTILE_P999).doubleValue(), items.get(PERCENTILE_MAX).doubleValue()));
+        if (after.getSenders().isEmpty()) {
+            System.out.println("Packet and byte rates are not available, no sender statistics registered");
+        }
+        return null;
+    }
+
+    /**
+     * Send value lists of type instances assigned to the worker until deadline.
+     *
+     * @return number of sent value lists
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private long generate(final int index, final long deadline, final Histogram latency) {
+        final List<ValueList> identifiers = new ArrayList<>();
+        for (int i = index; i < cardinality; i += threads) {
+            final ValueList valueList = new ValueList();
+            valueList.setPlugin(plugin);
+            valueList.setType(type);
+            valueList.setTypeInstance(Integer.toString(i));
+            identifiers.add(valueList);
+        }
+        if (identifiers.isEmpty()) {
+            return 0L;
+        }
+
+        long sent = 0;
+        long counter = 0;
+        while (System.nanoTime() < deadline) {
+            for (final ValueList valueList : identifiers) {
+                valueList.clear();
+                valueList.setTime(System.currentTimeMillis());
+                counter++;
+                for (int v = 0; v < valuesPerList; v++) {
+                    // values are changing, so they are not suppressed
+                    if (valueType == ValueType.GAUGE) {
+                        valueList.add(valueType, (double) counter);
+                    } else {
+                        valueList.add(valueType, counter);
+                    }
+                }
+
+                final long start = System.nanoTime();
+                sender.send(valueList);
+                latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                sent++;
+            }
+        }
+        return sent;
+    }
+}
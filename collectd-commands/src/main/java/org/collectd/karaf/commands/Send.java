@@ -36,7 +36,7 @@ public class Send implements Action {
     @Option(name = "--valueType", description = "Value type", required = false, multiValued = false)
     private ValueType valueType = ValueType.GAUGE;
 
-    @Option(name = "--interval", description = "Interval", required = false, multiValued = false)
+    @Option(name = "--interval", description = "Interval in milliseconds", required = false, multiValued = false)
     private Long interval;
 
     @Reference
@@ -0,0 +1,101 @@
+package org.collectd.karaf.commands;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.collectd.services.SenderStats;
+
+/**
+ * Snapshot of counters of registered packet sender MBeans (see {@link SenderStats}).
+ */
+class SenderCounters {
+
+    static final int PACKETS_SENT = 2;
+    static final int BYTES_SENT = 3;
+    static final int SEND_ERRORS = 4;
+
+    private static final String[] COUNTERS = {"ValueListsSent", "ValuesSent", "PacketsSent", "BytesSent", "SendErrors", "Suppressed", "Dropped", "Spilled"};
+
+    private static final String[] GAUGES = {"FillRatio", "ValuesPerPacket", "EncodeLatencyP99", "FlushLatencyP99", "JournalCount"};
+
+    private final long time = System.nanoTime();
+    private final Map<String, long[]> counters = new TreeMap<>();
+    private final Map<String, double[]> gauges = new TreeMap<>();
+
+    /**
+     * Read counters of all sender MBeans.
+     *
+     * @return counter snapshot
+     * @throws JMException unable to read MBean attributes
+     */
+    static SenderCounters read() throws JMException {
+        final SenderCounters snapshot = new SenderCounters();
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final Set<ObjectName> names = server.queryNames(new ObjectName(SenderStats.OBJECT_NAME_PREFIX + "*"), null);
+        for (final ObjectName name : names) {
+            final long[] values = new long[COUNTERS.length];
+            for (int i = 0; i < COUNTERS.length; i++) {
+                values[i] = ((Number) server.getAttribute(name, COUNTERS[i])).longValue();
+            }
+            final double[] gaugeValues = new double[GAUGES.length];
+            for (int i = 0; i < GAUGES.length; i++) {
+                gaugeValues[i] = ((Number) server.getAttribute(name, GAUGES[i])).doubleValue();
+            }
+            final String sender = ObjectName.unquote(name.getKeyProperty("name"));
+            snapshot.counters.put(sender, values);
+            snapshot.gauges.put(sender, gaugeValues);
+        }
+        return snapshot;
+    }
+
+    static String[] getCounterNames() {
+        return COUNTERS.clone();
+    }
+
+    static String[] getGaugeNames() {
+        return GAUGES.clone();
+    }
+
+    Set<String> getSenders() {
+        return counters.keySet();
+    }
+
+    long get(final String sender, final int counter) {
+        final long[] values = counters.get(sender);
+        return values != null ? values[counter] : 0L;
+    }
+
+    double getGauge(final String sender, final int gauge) {
+        final double[] values = gauges.get(sender);
+        return values != null ? values[gauge] : 0.0;
+    }
+
+    long getTotal(final int counter) {
+        long total = 0;
+        for (final long[] values : counters.values()) {
+            total += values[counter];
+        }
+        return total;
+    }
+
+    /**
+     * Get rate of a counter since an earlier snapshot.
+     *
+     * @param earlier earlier snapshot
+     * @param sender sender name, null for total of all senders
+     * @param counter counter index
+     * @return change per second
+     */
+    double getRate(final SenderCounters earlier, final String sender, final int counter) {
+        final double seconds = (time - earlier.time) / 1e9;
+        if (seconds <= 0) {
+            return 0.0;
+        }
+        final long delta = sender != null ? get(sender, counter) - earlier.get(sender, counter) : getTotal(counter) - earlier.getTotal(counter);
+        return delta / seconds;
+    }
+}
@@ -0,0 +1,44 @@
+package org.collectd.karaf.commands;
+
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+
+/**
+ * Show live counters and rates of Collectd packet senders.
+ */
+@Command(scope = "collectd", name = "stats", description = "Show counters and rates of Collectd senders.")
+@Service
+public class Stats implements Action {
+
+    @Option(name = "--sample", description = "Sampling time of rates in milliseconds", required = false, multiValued = false)
+    private long sample = 1000L;
+
+    @Override
+    public Object execute() throws JMException, InterruptedException {
+        final SenderCounters first = SenderCounters.read();
+        TimeUnit.MILLISECONDS.sleep(sample);
+        final SenderCounters second = SenderCounters.read();
+
+        if (second.getSenders().isEmpty()) {
+            System.out.println("No Collectd sender statistics registered");
+            return null;
+        }
+
+        final String[] counters = SenderCounters.getCounterNames();
+        for (final String sender : second.getSenders()) {
+            System.out.println(sender);
+            for (int i = 0; i < counters.length; i++) {
+                System.out.println(String.format("  %-16s %16d %14.1f/s", counters[i], second.get(sender, i), second.getRate(first, sender, i)));
+            }
+            final String[] gauges = SenderCounters.getGaugeNames();
+            for (int i = 0; i < gauges.length; i++) {
+                System.out.println(String.format("  %-16s %16.3f", gauges[i], second.getGauge(sender, i)));
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,76 @@
+package org.collectd.config;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.collectd.model.ValueType;
+
+/**
+ * Collectd data set (types.db entry): type name and ordered list of data sources.
+ */
+@lombok.ToString
+@lombok.EqualsAndHashCode
+public final class DataSet {
+
+    @lombok.Getter
+    private final String type;
+
+    private final DataSource[] sources;
+    private final byte[] typeCodes;
+
+    /**
+     * Create new data set.
+     *
+     * @param type type name
+     * @param sources data sources
+     */
+    public DataSet(final String type, final List<DataSource> sources) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("Data set " + type + " has no data source");
+        }
+        this.type = type;
+        this.sources = sources.toArray(new DataSource[sources.size()]);
+        this.typeCodes = new byte[this.sources.length];
+        for (int i = 0; i < this.sources.length; i++) {
+            typeCodes[i] = this.sources[i].getType().getCode();
+        }
+    }
+
+    /**
+     * Get data sources.
+     *
+     * @return unmodifiable list of data sources
+     */
+    public List<DataSource> getSources() {
+        return Collections.unmodifiableList(Arrays.asList(sources));
+    }
+
+    /**
+     * Get number of data sources (values of a value list).
+     *
+     * @return number of data sources
+     */
+    public int size() {
+        return sources.length;
+    }
+
+    /**
+     * Get value type of a data source.
+     *
+     * @param index data source index
+     * @return value type
+     */
+    public ValueType getValueType(final int index) {
+        return sources[index].getType();
+    }
+
+    /**
+     * Get value type code of a data source.
+     *
+     * @param index data source index
+     * @return value type code
+     */
+    public byte getTypeCode(final int index) {
+        return typeCodes[index];
+    }
+}
@@ -0,0 +1,33 @@
+package org.collectd.config;
+
+import org.collectd.model.ValueType;
+
+/**
+ * Data source of a Collectd data set (types.db entry): name, value type and valid range.
+ */
+@lombok.Getter
+@lombok.ToString
+@lombok.EqualsAndHashCode
+@lombok.AllArgsConstructor
+public final class DataSource {
+
+    /**
+     * Name of data source.
+     */
+    private final String name;
+
+    /**
+     * Value type of data source.
+     */
+    private final ValueType type;
+
+    /**
+     * Minimum value, NaN if not limited.
+     */
+    private final double min;
+
+    /**
+     * Maximum value, NaN if not limited.
+     */
+    private final double max;
+}
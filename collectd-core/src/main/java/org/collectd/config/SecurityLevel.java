@@ -0,0 +1,31 @@
+package org.collectd.config;
+
+import java.util.Locale;
+
+/**
+ * Security level of sent packets (<code>SecurityLevel</code> option of Collectd network plugin).
+ */
+public enum SecurityLevel {
+    /**
+     * Packets are sent in plain text.
+     */
+    NONE,
+    /**
+     * Packets are signed (HMAC-SHA-256).
+     */
+    SIGN,
+    /**
+     * Packets are encrypted (AES-256/OFB) and checksummed (SHA-1).
+     */
+    ENCRYPT;
+
+    /**
+     * Get security level by name (case insensitive).
+     *
+     * @param name name of security level, i.e. <code>Encrypt</code>
+     * @return security level
+     */
+    public static SecurityLevel parse(final String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,144 @@
+package org.collectd.config;
+
+import java.util.Locale;
+
+/**
+ * Threshold rule of an identifier (similar to the threshold configuration of Collectd). Values below minimum or above maximum limits are reported as
+ * warning or failure. Plugin instance, type instance and data source match any value list if not set, limits are not checked if NaN.
+ */
+@lombok.Getter
+@lombok.Setter
+@lombok.ToString
+public class Threshold {
+
+    /**
+     * Plugin name.
+     */
+    private String plugin;
+
+    /**
+     * Plugin instance name, any instance if null.
+     */
+    private String pluginInstance;
+
+    /**
+     * Type name.
+     */
+    private String type;
+
+    /**
+     * Type instance name, any instance if null.
+     */
+    private String typeInstance;
+
+    /**
+     * Index of checked value, all values are checked if negative.
+     */
+    private int dataSource = -1;
+
+    /**
+     * Values below this limit are reported as warning.
+     */
+    private double warningMin = Double.NaN;
+
+    /**
+     * Values above this limit are reported as warning.
+     */
+    private double warningMax = Double.NaN;
+
+    /**
+     * Values below this limit are reported as failure.
+     */
+    private double failureMin = Double.NaN;
+
+    /**
+     * Values above this limit are reported as failure.
+     */
+    private double failureMax = Double.NaN;
+
+    /**
+     * Margin a value must be within the limits to leave the warning or failure state (avoids flapping around a limit).
+     */
+    private double hysteresis;
+
+    /**
+     * Number of consecutive values out of limits before the warning or failure state is entered (<code>Hits</code> of Collectd).
+     */
+    private int hits = 1;
+
+    /**
+     * Parse threshold rule from <code>key=value</code> pairs separated by white spaces or commas, i.e.
+     * <code>plugin=jmx type=threads typeInstance=busy warningMax=150 failureMax=190 hysteresis=5 hits=3</code>. Keys are the property names.
+     *
+     * @param rule rule definition
+     * @return threshold rule
+     * @throws IllegalArgumentException invalid rule definition
+     */
+    public static Threshold parse(final String rule) {
+        final Threshold threshold = new Threshold();
+        for (final String pair : rule.trim().split("[\\s,]+")) {
+            final int eq = pair.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Invalid threshold property (key=value expected): " + pair);
+            }
+            final String key = pair.substring(0, eq).toLowerCase(Locale.ROOT);
+            final String value = pair.substring(eq + 1);
+            switch (key) {
+                case "plugin":
+                    threshold.setPlugin(value);
+                    break;
+                case "plugininstance":
+                    threshold.setPluginInstance(value);
+                    break;
+                case "type":
+                    threshold.setType(value);
+                    break;
+                case "typeinstance":
+                    threshold.setTypeInstance(value);
+                    break;
+                case "datasource":
+                    threshold.setDataSource(Integer.parseInt(value));
+                    break;
+                case "warningmin":
+                    threshold.setWarningMin(Double.parseDouble(value));
+                    break;
+                case "warningmax":
+                    threshold.setWarningMax(Double.parseDouble(value));
+                    break;
+                case "failuremin":
+                    threshold.setFailureMin(Double.parseDouble(value));
+                    break;
+                case "failuremax":
+                    threshold.setFailureMax(Double.parseDouble(value));
+                    break;
+                case "hysteresis":
+                    threshold.setHysteresis(Double.parseDouble(value));
+                    break;
+                case "hits":
+                    threshold.setHits(Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown threshold property: " + pair.substring(0, eq));
+            }
+        }
+        threshold.check();
+        return threshold;
+    }
+
+    /**
+     * Check if rule is complete.
+     *
+     * @throws IllegalArgumentException plugin or type is missing, no limit is set or hysteresis or hits is invalid
+     */
+    public void check() {
+        if (plugin == null || type == null) {
+            throw new IllegalArgumentException("Plugin and type of threshold are required: " + this);
+        }
+        if (Double.isNaN(warningMin) && Double.isNaN(warningMax) && Double.isNaN(failureMin) && Double.isNaN(failureMax)) {
+            throw new IllegalArgumentException("No limit of threshold is set: " + this);
+        }
+        if (hysteresis < 0 || hits < 1) {
+            throw new IllegalArgumentException("Hysteresis must not be negative and hits must be positive: " + this);
+        }
+    }
+}
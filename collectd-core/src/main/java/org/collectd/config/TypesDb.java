@@ -0,0 +1,127 @@
+package org.collectd.config;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.collectd.model.ValueType;
+
+/**
+ * Immutable registry of Collectd data sets parsed from types.db files. Format of entries: <code>type ds-name:ds-type:min:max[, ...]</code>, lines
+ * starting with <code>#</code> are comments. More details: https://collectd.org/documentation/manpages/types.db.5.shtml
+ */
+public final class TypesDb {
+
+    private static final String UNLIMITED = "U";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Map<String, DataSet> dataSets;
+
+    private TypesDb(final Map<String, DataSet> dataSets) {
+        this.dataSets = Collections.unmodifiableMap(dataSets);
+    }
+
+    /**
+     * Load types.db files. Entries of later files override entries of earlier files.
+     *
+     * @param files types.db files
+     * @return types.db registry
+     * @throws IOException unable to read file
+     */
+    public static TypesDb load(final Collection<File> files) throws IOException {
+        final Map<String, DataSet> dataSets = new HashMap<>();
+        for (final File file : files) {
+            try (InputStream is = new FileInputStream(file)) {
+                parse(new InputStreamReader(is, UTF_8), file.getPath(), dataSets);
+            }
+        }
+        return new TypesDb(dataSets);
+    }
+
+    /**
+     * Parse types.db content.
+     *
+     * @param reader types.db content
+     * @return types.db registry
+     * @throws IOException unable to read content
+     */
+    public static TypesDb parse(final Reader reader) throws IOException {
+        final Map<String, DataSet> dataSets = new HashMap<>();
+        parse(reader, "types.db", dataSets);
+        return new TypesDb(dataSets);
+    }
+
+    /**
+     * Get data set of a type.
+     *
+     * @param type type name
+     * @return data set, null if type is not defined
+     */
+    public DataSet getDataSet(final String type) {
+        return type != null ? dataSets.get(type) : null;
+    }
+
+    /**
+     * Get all data sets.
+     *
+     * @return unmodifiable collection of data sets
+     */
+    public Collection<DataSet> getDataSets() {
+        return dataSets.values();
+    }
+
+    @Override
+    public String toString() {
+        return "TypesDb(" + dataSets.size() + " data sets)";
+    }
+
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private static void parse(final Reader reader, final String source, final Map<String, DataSet> dataSets) throws IOException {
+        final BufferedReader lines = new BufferedReader(reader);
+        int lineNumber = 0;
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+            lineNumber++;
+            final String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+
+            final String[] fields = trimmed.split("[\\s,]+");
+            final List<DataSource> sources = new ArrayList<>(fields.length - 1);
+            for (int i = 1; i < fields.length; i++) {
+                sources.add(parseDataSource(fields[i], source, lineNumber));
+            }
+            if (sources.isEmpty()) {
+                throw new IOException("No data source defined for type " + fields[0] + " (" + source + ":" + lineNumber + ")");
+            }
+            dataSets.put(fields[0], new DataSet(fields[0], sources));
+        }
+    }
+
+    private static DataSource parseDataSource(final String field, final String source, final int lineNumber) throws IOException {
+        final String[] parts = field.split(":");
+        if (parts.length != 4) {
+            throw new IOException("Invalid data source: " + field + " (" + source + ":" + lineNumber + ")");
+        }
+        try {
+            return new DataSource(parts[0], ValueType.valueOf(parts[1].toUpperCase(Locale.ENGLISH)), parseLimit(parts[2]), parseLimit(parts[3]));
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid data source: " + field + " (" + source + ":" + lineNumber + ")", ex);
+        }
+    }
+
+    private static double parseLimit(final String limit) {
+        return UNLIMITED.equals(limit) ? Double.NaN : Double.parseDouble(limit);
+    }
+}
@@ -0,0 +1,149 @@
+package org.collectd.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram data type. Recorded values are counted in log-linear buckets (relative error is less than 1/32) without locking, so any number of threads
+ * can record concurrently. The histogram is reset on each snapshot and it is sent to Collectd as a multi-value {@link #TYPE} value list.
+ */
+@lombok.ToString(callSuper = true, of = "interval")
+public class Histogram extends PluginData {
+
+    /**
+     * Collectd type of histogram value lists, must be added to types.db:
+     * <code>histogram p50:GAUGE:0:U, p90:GAUGE:0:U, p99:GAUGE:0:U, p999:GAUGE:0:U, max:GAUGE:0:U, count:GAUGE:0:U</code>.
+     */
+    public static final String TYPE = "histogram";
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong max = new AtomicLong(0L);
+
+    /**
+     * Interval in milliseconds used to set the "step" when creating new RRDs unless rrdtool plugin forces StepSize.
+     */
+    @lombok.Getter
+    @lombok.Setter
+    private Long interval;
+
+    /**
+     * Create new histogram instance. Type is set to {@link #TYPE}.
+     */
+    public Histogram() {
+        setType(TYPE);
+    }
+
+    /**
+     * Record a value (i.e. latency in microseconds). Negative values are recorded as 0.
+     *
+     * @param value recorded value
+     */
+    public void record(final long value) {
+        final long val = value > 0 ? value : 0;
+        buckets.incrementAndGet(getBucketIndex(val));
+
+        long current = max.get();
+        while (val > current && !max.compareAndSet(current, val)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Get percentile of values recorded since last snapshot without resetting histogram.
+     *
+     * @param percentile percentile (between 0 and 1)
+     * @return upper bound of bucket containing the percentile, 0 if no value is recorded
+     */
+    public long getPercentile(final double percentile) {
+        final long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+        }
+        return getPercentile(counts, count, percentile, max.get());
+    }
+
+    /**
+     * Get maximum value recorded since last snapshot without resetting histogram.
+     *
+     * @return maximum value
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get recorded percentiles (p50, p90, p99, p999), maximum value and number of recorded values as numeric values and reset histogram.
+     *
+     * @return histogram value list
+     */
+    public Values toValues() {
+        final long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.getAndSet(i, 0L);
+            count += counts[i];
+        }
+        final long maxValue = max.getAndSet(0L);
+
+        final Values values = new Values();
+        values.setHost(getHost());
+        values.setTime(getTime());
+        values.setPlugin(getPlugin());
+        values.setPluginInstance(getPluginInstance());
+        values.setType(getType());
+        values.setTypeInstance(getTypeInstance());
+        values.setInterval(interval);
+        values.setSign(isSign());
+        values.setEncrypt(isEncrypt());
+        values.setCritical(isCritical());
+
+        for (final double percentile : PERCENTILES) {
+            values.getItems().add(new Values.ValueHolder(ValueType.GAUGE, (double) getPercentile(counts, count, percentile, maxValue)));
+        }
+        values.getItems().add(new Values.ValueHolder(ValueType.GAUGE, (double) maxValue));
+        values.getItems().add(new Values.ValueHolder(ValueType.GAUGE, (double) count));
+
+        return values;
+    }
+
+    private static long getPercentile(final long[] counts, final long count, final double percentile, final long maxValue) {
+        if (count == 0) {
+            return 0L;
+        }
+
+        final long rank = Math.max(1L, (long) Math.ceil(percentile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(getBucketUpperBound(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    private static int getBucketIndex(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    private static long getBucketUpperBound(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_COUNT - 1;
+        final long lower = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
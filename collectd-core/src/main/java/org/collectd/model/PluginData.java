@@ -17,4 +17,9 @@ public abstract class PluginData {
 
     private boolean sign;
     private boolean encrypt;
+
+    /**
+     * Critical data is sent on the express lane (separate packets with bounded latency) like notifications.
+     */
+    private boolean critical;
 }
@@ -0,0 +1,204 @@
+package org.collectd.model;
+
+/**
+ * Ring buffer of high-frequency samples of one identifier, backed by primitive arrays. Each sample is a timestamp and the raw values of a value list (GAUGE
+ * values are stored as raw long bits of the double value), value types are fixed by the first recorded sample. The oldest sample is overwritten if the ring
+ * is full. Samples are sent in batches (one identifier, many timestamped values) and the ring is cleared by the sender. Recording and reading is
+ * synchronized on the ring, so samples can be recorded and sent by different threads.
+ */
+@lombok.ToString(callSuper = true, of = {"count", "interval", "overwritten"})
+public class SampleRing extends PluginData {
+
+    private static final ValueType[] VALUE_TYPES = ValueType.values();
+
+    private final int capacity;
+    private final long[] times;
+    private byte[] types;
+    private long[] values;
+    private int head;
+    private int count;
+    private long overwritten;
+
+    /**
+     * Sampling interval in milliseconds, not set if not positive.
+     */
+    @lombok.Getter
+    @lombok.Setter
+    private long interval;
+
+    /**
+     * Create new sample ring instance.
+     *
+     * @param capacity maximum number of buffered samples
+     */
+    public SampleRing(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        times = new long[capacity];
+    }
+
+    /**
+     * Record time (milliseconds) and values of a value list, identifier of the value list is ignored. Value types of the first sample are kept until the ring
+     * is cleared.
+     *
+     * @param sample sampled values
+     */
+    public synchronized void record(final ValueList sample) {
+        final int num = sample.size();
+        if (types == null) {
+            types = new byte[num];
+            for (int i = 0; i < num; i++) {
+                types[i] = sample.getTypeCode(i);
+            }
+            values = new long[capacity * num];
+        } else if (num != types.length) {
+            throw new IllegalArgumentException("Number of values is changed from " + types.length + " to " + num);
+        }
+
+        final int slot = (head + count) % capacity;
+        if (count == capacity) {
+            // oldest sample is overwritten
+            head = (head + 1) % capacity;
+            overwritten++;
+        } else {
+            count++;
+        }
+        times[slot] = sample.getTime();
+        for (int i = 0; i < num; i++) {
+            values[slot * num + i] = sample.getRawValue(i);
+        }
+    }
+
+    /**
+     * Remove all samples. Value types are reset, identifier and interval are kept.
+     */
+    public synchronized void clear() {
+        head = 0;
+        count = 0;
+        types = null;
+        values = null;
+    }
+
+    /**
+     * Get number of buffered samples.
+     *
+     * @return number of samples
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Get maximum number of buffered samples.
+     *
+     * @return capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get number of samples overwritten before they were sent.
+     *
+     * @return number of samples
+     */
+    public synchronized long getOverwritten() {
+        return overwritten;
+    }
+
+    /**
+     * Get number of values of each sample.
+     *
+     * @return number of values, 0 if no sample is recorded
+     */
+    public synchronized int getValueCount() {
+        return types != null ? types.length : 0;
+    }
+
+    /**
+     * Get type of value.
+     *
+     * @param index value index
+     * @return value type
+     */
+    public ValueType getType(final int index) {
+        return VALUE_TYPES[getTypeCode(index)];
+    }
+
+    /**
+     * Get type code of value.
+     *
+     * @param index value index
+     * @return code for binary protocol
+     */
+    public synchronized byte getTypeCode(final int index) {
+        if (types == null || index < 0 || index >= types.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", values: " + getValueCount());
+        }
+        return types[index];
+    }
+
+    /**
+     * Get time of sample (the oldest sample is the first one).
+     *
+     * @param sample sample index
+     * @return time in milliseconds
+     */
+    public synchronized long getTime(final int sample) {
+        return times[slot(sample)];
+    }
+
+    /**
+     * Get raw 64 bits of value of sample, long value of integer types and raw long bits of GAUGE values.
+     *
+     * @param sample sample index
+     * @param index value index
+     * @return raw value
+     */
+    public synchronized long getRawValue(final int sample, final int index) {
+        final int slot = slot(sample);
+        if (index < 0 || index >= types.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", values: " + types.length);
+        }
+        return values[slot * types.length + index];
+    }
+
+    /**
+     * Copy identifier, interval and values of a sample into a value list.
+     *
+     * @param sample sample index
+     * @param target value list to replace content of
+     */
+    public synchronized void copyTo(final int sample, final ValueList target) {
+        final int slot = slot(sample);
+        target.setHost(getHost());
+        target.setTime(times[slot]);
+        target.setPlugin(getPlugin());
+        target.setPluginInstance(getPluginInstance());
+        target.setType(getType());
+        target.setTypeInstance(getTypeInstance());
+        target.setSign(isSign());
+        target.setEncrypt(isEncrypt());
+        target.setCritical(isCritical());
+        target.setInterval(interval);
+
+        target.clear();
+        for (int i = 0; i < types.length; i++) {
+            final long raw = values[slot * types.length + i];
+            if (types[i] == ValueType.GAUGE.getCode()) {
+                target.addGauge(Double.longBitsToDouble(raw));
+            } else {
+                target.add(VALUE_TYPES[types[i]], raw);
+            }
+        }
+    }
+
+    private int slot(final int sample) {
+        if (sample < 0 || sample >= count) {
+            throw new IndexOutOfBoundsException("Sample: " + sample + ", size: " + count);
+        }
+        return (head + sample) % capacity;
+    }
+}
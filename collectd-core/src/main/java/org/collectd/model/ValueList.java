@@ -0,0 +1,228 @@
+package org.collectd.model;
+
+import java.util.Arrays;
+
+/**
+ * Numeric values data type backed by primitive arrays. Value type codes and values are stored in parallel arrays, GAUGE values are stored as raw long bits of
+ * the double value. Capacity is kept on {@link #clear()} so the same instance can be reused without allocating and boxing numbers.
+ */
+@lombok.ToString(callSuper = true, of = {"size", "interval"})
+public class ValueList extends PluginData {
+
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private static final ValueType[] VALUE_TYPES = ValueType.values();
+
+    private byte[] types;
+    private long[] values;
+    private int size;
+
+    /**
+     * Interval in milliseconds used to set the "step" when creating new RRDs unless rrdtool plugin forces StepSize, not set if not positive. Binary
+     * protocol transmits the interval in seconds (at least 1 second).
+     */
+    @lombok.Getter
+    @lombok.Setter
+    private long interval;
+
+    /**
+     * Create new value list instance with default capacity.
+     */
+    public ValueList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create new value list instance.
+     *
+     * @param capacity initial number of values
+     */
+    public ValueList(final int capacity) {
+        types = new byte[capacity];
+        values = new long[capacity];
+    }
+
+    /**
+     * Add COUNTER value.
+     *
+     * @param value counter value
+     */
+    public void addCounter(final long value) {
+        add(ValueType.COUNTER.getCode(), value);
+    }
+
+    /**
+     * Add GAUGE value.
+     *
+     * @param value gauge value
+     */
+    public void addGauge(final double value) {
+        add(ValueType.GAUGE.getCode(), Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Add DERIVE value.
+     *
+     * @param value derive value
+     */
+    public void addDerive(final long value) {
+        add(ValueType.DERIVE.getCode(), value);
+    }
+
+    /**
+     * Add ABSOLUTE value.
+     *
+     * @param value absolute value
+     */
+    public void addAbsolute(final long value) {
+        add(ValueType.ABSOLUTE.getCode(), value);
+    }
+
+    /**
+     * Add integer value of the given type. GAUGE values are converted to double.
+     *
+     * @param type value type
+     * @param value integer value
+     */
+    public void add(final ValueType type, final long value) {
+        if (type == ValueType.GAUGE) {
+            addGauge(value);
+        } else {
+            add(type.getCode(), value);
+        }
+    }
+
+    /**
+     * Add double value of the given type. Values of COUNTER, DERIVE and ABSOLUTE types are truncated to long.
+     *
+     * @param type value type
+     * @param value double value
+     */
+    public void add(final ValueType type, final double value) {
+        if (type == ValueType.GAUGE) {
+            addGauge(value);
+        } else {
+            add(type.getCode(), (long) value);
+        }
+    }
+
+    private void add(final byte type, final long value) {
+        if (size == types.length) {
+            final int capacity = Math.max(DEFAULT_CAPACITY, size * 2);
+            types = Arrays.copyOf(types, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        types[size] = type;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Remove all values. Identifier, interval and capacity are kept.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Get number of values.
+     *
+     * @return number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get type of value.
+     *
+     * @param index value index
+     * @return value type
+     */
+    public ValueType getType(final int index) {
+        return VALUE_TYPES[getTypeCode(index)];
+    }
+
+    /**
+     * Get type code of value.
+     *
+     * @param index value index
+     * @return code for binary protocol
+     */
+    public byte getTypeCode(final int index) {
+        checkIndex(index);
+        return types[index];
+    }
+
+    /**
+     * Get value as long (GAUGE values are truncated).
+     *
+     * @param index value index
+     * @return integer value
+     */
+    public long getLong(final int index) {
+        checkIndex(index);
+        return types[index] == ValueType.GAUGE.getCode() ? (long) Double.longBitsToDouble(values[index]) : values[index];
+    }
+
+    /**
+     * Get value as double.
+     *
+     * @param index value index
+     * @return double value
+     */
+    public double getDouble(final int index) {
+        checkIndex(index);
+        return types[index] == ValueType.GAUGE.getCode() ? Double.longBitsToDouble(values[index]) : values[index];
+    }
+
+    /**
+     * Get raw 64 bits of value, long value of integer types and raw long bits of GAUGE values.
+     *
+     * @param index value index
+     * @return raw value
+     */
+    public long getRawValue(final int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    /**
+     * Replace content of value list by identifier and numeric values of {@link Values}. Missing value types are inferred (GAUGE for double, COUNTER
+     * otherwise) and set on value holders.
+     *
+     * @param source numeric values
+     */
+    public void copyOf(final Values source) {
+        setHost(source.getHost());
+        setTime(source.getTime());
+        setPlugin(source.getPlugin());
+        setPluginInstance(source.getPluginInstance());
+        setType(source.getType());
+        setTypeInstance(source.getTypeInstance());
+        setSign(source.isSign());
+        setEncrypt(source.isEncrypt());
+        setCritical(source.isCritical());
+        interval = source.getInterval() != null ? source.getInterval() : 0L;
+
+        clear();
+        for (final Values.ValueHolder holder : source.getItems()) {
+            final Number value = holder.getValue();
+
+            if (holder.getType() == null) {
+                holder.setType(value instanceof Double ? ValueType.GAUGE : ValueType.COUNTER);
+            }
+            if (holder.getType() == ValueType.GAUGE) {
+                addGauge(value.doubleValue());
+            } else {
+                add(holder.getType().getCode(), value.longValue());
+            }
+        }
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+}
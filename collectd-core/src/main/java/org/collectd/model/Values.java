@@ -17,7 +17,7 @@ public class Values extends PluginData {
     private final Collection<ValueHolder> items = new ArrayList<>();
 
     /**
-     * Interval used to set the "step" when creating new RRDs unless rrdtool plugin forces StepSize.
+     * Interval in milliseconds used to set the "step" when creating new RRDs unless rrdtool plugin forces StepSize.
      */
     private Long interval;
 
@@ -0,0 +1,134 @@
+package org.collectd.protocol;
+
+import java.nio.charset.Charset;
+
+/**
+ * Collectd identifier (host, plugin, plugin instance, type and type instance parts) encoded once for the binary protocol. Encoded parts are copied to
+ * packet buffer as they are.
+ */
+@lombok.ToString(of = "name")
+public final class EncodedIdentifier {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int HEADER_LEN = 4;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final String name;
+    private final long hash;
+    private final byte[] bytes;
+
+    /**
+     * Encode identifier parts. Empty (or null) parts are encoded as empty strings, so they reset the parts of the previous data in the packet.
+     *
+     * @param host host name
+     * @param plugin plugin name
+     * @param pluginInstance plugin instance name
+     * @param type type name
+     * @param typeInstance type instance name
+     */
+    public EncodedIdentifier(final String host, final String plugin, final String pluginInstance, final String type, final String typeInstance) {
+        name = host + "/" + plugin + (isEmpty(pluginInstance) ? "" : "-" + pluginInstance) + "/" + type + (isEmpty(typeInstance) ? "" : "-" + typeInstance);
+        hash = hash(host, plugin, pluginInstance, type, typeInstance);
+
+        final byte[][] parts = {
+            encode(PacketPartType.HOST, host),
+            encode(PacketPartType.PLUGIN, plugin),
+            encode(PacketPartType.PLUGIN_INSTANCE, pluginInstance),
+            encode(PacketPartType.TYPE, type),
+            encode(PacketPartType.TYPE_INSTANCE, typeInstance)
+        };
+
+        int length = 0;
+        for (final byte[] part : parts) {
+            length += part.length;
+        }
+
+        bytes = new byte[length];
+        int pos = 0;
+        for (final byte[] part : parts) {
+            System.arraycopy(part, 0, bytes, pos, part.length);
+            pos += part.length;
+        }
+    }
+
+    /**
+     * Get identifier name in host/plugin-pluginInstance/type-typeInstance format.
+     *
+     * @return identifier name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get 64-bit hash of identifier, see {@link #hash(String, String, String, String, String)}.
+     *
+     * @return identifier hash
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Get length of encoded identifier parts.
+     *
+     * @return number of bytes
+     */
+    public int getLength() {
+        return bytes.length;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Calculate 64-bit (FNV-1a) hash of identifier parts without encoding them.
+     *
+     * @param host host name
+     * @param plugin plugin name
+     * @param pluginInstance plugin instance name
+     * @param type type name
+     * @param typeInstance type instance name
+     * @return identifier hash
+     */
+    public static long hash(final String host, final String plugin, final String pluginInstance, final String type, final String typeInstance) {
+        long result = FNV_OFFSET_BASIS;
+        result = hash(result, host);
+        result = hash(result, plugin);
+        result = hash(result, pluginInstance);
+        result = hash(result, type);
+        return hash(result, typeInstance);
+    }
+
+    private static long hash(final long basis, final String val) {
+        long result = basis;
+        if (val != null) {
+            for (int i = 0; i < val.length(); i++) {
+                result = (result ^ val.charAt(i)) * FNV_PRIME;
+            }
+        }
+        // part separator
+        return (result ^ 0xffff) * FNV_PRIME;
+    }
+
+    private static boolean isEmpty(final String val) {
+        return val == null || val.isEmpty();
+    }
+
+    private static byte[] encode(final PacketPartType partType, final String val) {
+        // receiver keeps parts of the previous data in the packet, so empty parts are written too
+        final byte[] str = isEmpty(val) ? new byte[0] : val.getBytes(UTF8);
+        final int len = HEADER_LEN + str.length + 1;
+        final byte[] part = new byte[len];
+        part[0] = (byte) (partType.getCode() >>> 8);
+        part[1] = (byte) partType.getCode();
+        part[2] = (byte) (len >>> 8);
+        part[3] = (byte) len;
+        System.arraycopy(str, 0, part, HEADER_LEN, str.length);
+        return part;
+    }
+}
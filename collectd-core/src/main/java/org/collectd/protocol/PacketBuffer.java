@@ -0,0 +1,63 @@
+package org.collectd.protocol;
+
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * Reusable packet buffer. Finished buffers are handed over to transport by reference and they are returned to the pool of the writer by
+ * {@link #release()} after transmission.
+ */
+public final class PacketBuffer {
+
+    private final byte[] data;
+    private final Queue<PacketBuffer> pool;
+
+    private int length;
+
+    PacketBuffer(final int capacity, final Queue<PacketBuffer> pool) {
+        this.data = new byte[capacity];
+        this.pool = pool;
+    }
+
+    /**
+     * Get backing array of the buffer. Packet data starts at offset 0.
+     *
+     * @return backing array
+     */
+    @SuppressWarnings("PMD.MethodReturnsInternalArray")
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Get length of packet data.
+     *
+     * @return number of bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    void setLength(final int length) {
+        this.length = length;
+    }
+
+    /**
+     * Get copy of packet data.
+     *
+     * @return packet data
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(data, length);
+    }
+
+    /**
+     * Return buffer to the pool of its writer. Buffer must not be used after releasing it.
+     */
+    public void release() {
+        length = 0;
+        if (pool != null) {
+            pool.offer(this);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.collectd.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Decryptor of encrypted parts (see {@link PacketEncryptor}). Keys of the users are derived once, decrypted content is written into a reused buffer.
+ * Decryptor is not thread-safe, it is owned by a {@link PacketReader}.
+ */
+final class PacketDecryptor {
+
+    private static final int MAX_PACKET_SIZE = 65535;
+
+    private final Map<String, SecretKeySpec> keys = new HashMap<>();
+    private final Cipher cipher;
+    private final MessageDigest checksum;
+
+    private final byte[] plain = new byte[MAX_PACKET_SIZE];
+    private final byte[] iv = new byte[PacketEncryptor.IV_LEN];
+    private final byte[] expected = new byte[PacketEncryptor.CHECKSUM_LEN];
+
+    PacketDecryptor(final Map<String, String> users) {
+        for (final Map.Entry<String, String> user : users.entrySet()) {
+            keys.put(user.getKey(), PacketEncryptor.createKey(user.getValue()));
+        }
+        try {
+            cipher = Cipher.getInstance(PacketEncryptor.CIPHER);
+            checksum = MessageDigest.getInstance(PacketEncryptor.CHECKSUM_DIGEST);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to initialize " + PacketEncryptor.CIPHER, ex);
+        }
+    }
+
+    /**
+     * Decrypt encrypted part and verify its checksum.
+     *
+     * @param packet received packet
+     * @param pos offset of encrypted part
+     * @param length length of encrypted part
+     * @return decrypted parts between position and limit of the returned buffer (valid until next call)
+     * @throws IOException invalid part, unknown user or checksum mismatch
+     */
+    ByteBuffer decrypt(final ByteBuffer packet, final int pos, final int length) throws IOException {
+        final int usernamePos = pos + PacketEncryptor.HEADER_LEN + PacketEncryptor.USERNAME_LENGTH_LEN;
+        if (length < usernamePos - pos) {
+            throw new IOException("Invalid length of encrypted part at offset " + pos + ": " + length);
+        }
+        final int usernameLength = (packet.get(usernamePos - 2) & 0xff) << 8 | packet.get(usernamePos - 1) & 0xff;
+        final int ivPos = usernamePos + usernameLength;
+        final int encryptedPos = ivPos + PacketEncryptor.IV_LEN;
+        final int encryptedLength = pos + length - encryptedPos;
+        if (encryptedLength < PacketEncryptor.CHECKSUM_LEN) {
+            throw new IOException("Invalid length of encrypted part at offset " + pos + ": " + length);
+        }
+
+        for (int i = 0; i < usernameLength; i++) {
+            plain[i] = packet.get(usernamePos + i);
+        }
+        final String username = new String(plain, 0, usernameLength, StandardCharsets.UTF_8);
+        final SecretKeySpec key = keys.get(username);
+        if (key == null) {
+            throw new IOException("Unknown user of encrypted part: " + username);
+        }
+
+        for (int i = 0; i < PacketEncryptor.IV_LEN; i++) {
+            iv[i] = packet.get(ivPos + i);
+        }
+        for (int i = 0; i < encryptedLength; i++) {
+            plain[i] = packet.get(encryptedPos + i);
+        }
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+            cipher.doFinal(plain, 0, encryptedLength, plain, 0);
+            checksum.update(plain, PacketEncryptor.CHECKSUM_LEN, encryptedLength - PacketEncryptor.CHECKSUM_LEN);
+            checksum.digest(expected, 0, PacketEncryptor.CHECKSUM_LEN);
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("Unable to decrypt encrypted part at offset " + pos, ex);
+        }
+        for (int i = 0; i < PacketEncryptor.CHECKSUM_LEN; i++) {
+            if (plain[i] != expected[i]) {
+                throw new IOException("Checksum mismatch of encrypted part of user " + username + " (invalid password?)");
+            }
+        }
+        return ByteBuffer.wrap(plain, PacketEncryptor.CHECKSUM_LEN, encryptedLength - PacketEncryptor.CHECKSUM_LEN);
+    }
+}
@@ -0,0 +1,145 @@
+package org.collectd.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Encryptor of Collectd packets (AES-256/OFB encrypted part). The whole packet is a single encrypted part: header, user name, IV and the encrypted SHA-1
+ * checksum and payload. Key is the SHA-256 hash of the password. Space of the unencrypted header and the checksum is reserved at the beginning of the
+ * buffers by the writer (see {@link UdpBufferWriter#setHeadroom(int)}), so packets are encrypted in place once, when they are flushed. Key material is
+ * derived once, {@link Cipher}, {@link MessageDigest} and random generator instances are cached per thread, encryptor is thread-safe.
+ */
+public class PacketEncryptor {
+
+    static final String CIPHER = "AES/OFB/NoPadding";
+    static final String KEY_ALGORITHM = "AES";
+    static final String KEY_DIGEST = "SHA-256";
+    static final String CHECKSUM_DIGEST = "SHA-1";
+
+    static final int HEADER_LEN = 4;
+    static final int USERNAME_LENGTH_LEN = 2;
+    static final int IV_LEN = 16;
+    static final int CHECKSUM_LEN = 20;
+
+    private static final int MAX_PART_LEN = 0xffff;
+
+    private final byte[] username;
+    private final SecretKeySpec key;
+    private final int headerLength;
+
+    private final ThreadLocal<State> state = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State();
+        }
+    };
+
+    /**
+     * Create new packet encryptor.
+     *
+     * @param username user name (sent in plain text)
+     * @param password password of the user (key is derived from it)
+     */
+    public PacketEncryptor(final String username, final String password) {
+        if (username == null || username.isEmpty() || password == null || password.isEmpty()) {
+            throw new IllegalArgumentException("User name and password are required to encrypt packets");
+        }
+        this.username = username.getBytes(StandardCharsets.UTF_8);
+        this.key = createKey(password);
+        headerLength = HEADER_LEN + USERNAME_LENGTH_LEN + this.username.length + IV_LEN + CHECKSUM_LEN;
+        if (headerLength > MAX_PART_LEN) {
+            throw new IllegalArgumentException("User name is too long");
+        }
+        // fail fast if algorithms are not available (i.e. AES-256 is restricted by JCE policy)
+        new State().init(new byte[IV_LEN]);
+    }
+
+    /**
+     * Get length of unencrypted header and checksum, space to reserve at the beginning of each packet.
+     *
+     * @return number of bytes
+     */
+    public int getPartLength() {
+        return headerLength;
+    }
+
+    /**
+     * Encrypt packet in place. Header is written into the reserved space at the beginning of the buffer, checksum and payload are encrypted.
+     *
+     * @param buffer packet buffer (data starts after the reserved space)
+     */
+    public void encrypt(final PacketBuffer buffer) {
+        final byte[] data = buffer.getData();
+        final int length = buffer.getLength();
+        data[0] = (byte) (PacketPartType.ENCRYPTED_CONTENT.getCode() >>> 8);
+        data[1] = (byte) PacketPartType.ENCRYPTED_CONTENT.getCode();
+        data[2] = (byte) (length >>> 8);
+        data[3] = (byte) length;
+        data[HEADER_LEN] = (byte) (username.length >>> 8);
+        data[HEADER_LEN + 1] = (byte) username.length;
+        System.arraycopy(username, 0, data, HEADER_LEN + USERNAME_LENGTH_LEN, username.length);
+
+        final int ivPos = HEADER_LEN + USERNAME_LENGTH_LEN + username.length;
+        final int checksumPos = ivPos + IV_LEN;
+        final State current = state.get();
+        current.random.nextBytes(current.iv);
+        System.arraycopy(current.iv, 0, data, ivPos, IV_LEN);
+
+        try {
+            current.checksum.update(data, headerLength, length - headerLength);
+            current.checksum.digest(data, checksumPos, CHECKSUM_LEN);
+            // OFB is a stream mode, checksum and payload are encrypted in place
+            current.init(current.iv).doFinal(data, checksumPos, length - checksumPos, data, checksumPos);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to encrypt packet", ex);
+        }
+    }
+
+    /**
+     * Derive AES-256 key from password (SHA-256 hash of the password as Collectd does).
+     *
+     * @param password password
+     * @return AES key
+     */
+    static SecretKeySpec createKey(final String password) {
+        try {
+            return new SecretKeySpec(MessageDigest.getInstance(KEY_DIGEST).digest(password.getBytes(StandardCharsets.UTF_8)), KEY_ALGORITHM);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to derive key", ex);
+        }
+    }
+
+    /**
+     * Cipher state of a thread.
+     */
+    private final class State {
+
+        private final Cipher cipher;
+        private final MessageDigest checksum;
+        private final SecureRandom random = new SecureRandom();
+        private final byte[] iv = new byte[IV_LEN];
+
+        private State() {
+            try {
+                cipher = Cipher.getInstance(CIPHER);
+                checksum = MessageDigest.getInstance(CHECKSUM_DIGEST);
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("Unable to initialize " + CIPHER, ex);
+            }
+        }
+
+        private Cipher init(final byte[] initVector) {
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(initVector));
+                return cipher;
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("Unable to initialize " + CIPHER, ex);
+            }
+        }
+    }
+}
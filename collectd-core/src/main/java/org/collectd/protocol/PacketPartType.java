@@ -59,7 +59,7 @@ public enum PacketPartType {
     /**
      * Encrypted content (AES-256/OFB/SHA-1).
      */
-    ENCRYPTED_CONTENT((short) 0x0201);
+    ENCRYPTED_CONTENT((short) 0x0210);
 
     private final short code;
 
@@ -0,0 +1,342 @@
+package org.collectd.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Map;
+import org.collectd.model.Notification;
+import org.collectd.model.PluginData;
+import org.collectd.model.Severity;
+import org.collectd.model.ValueList;
+import org.collectd.model.ValueType;
+
+/**
+ * UDP packet reader. Parts are decoded in place from the received buffer (heap or direct), values are passed to the handler in a reused
+ * {@link ValueList} (or {@link Notification}), so decoding does not allocate per value list. String parts are decoded only if they differ from the last
+ * value of the same part. Reader is not thread-safe, handler must not keep references to passed instances.
+ */
+public class PacketReader {
+
+    /**
+     * Handler of decoded data.
+     */
+    public interface Handler {
+
+        /**
+         * Handle decoded value list. Instance is reused for the next value list.
+         *
+         * @param values value list
+         * @throws IOException unable to handle value list
+         */
+        void values(ValueList values) throws IOException;
+
+        /**
+         * Handle decoded notification. Instance is reused for the next notification.
+         *
+         * @param notification notification
+         * @throws IOException unable to handle notification
+         */
+        void notification(Notification notification) throws IOException;
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int HEADER_LEN = 4;
+    private static final int NUMBER_PART_LEN = HEADER_LEN + 8;
+    private static final int VALUE_LEN = 1 + 8;
+    private static final int HIGH_RESOLUTION_SHIFT = 30;
+    private static final long HIGH_RESOLUTION_MASK = (1L << HIGH_RESOLUTION_SHIFT) - 1;
+    private static final long MILLIS_PER_SECOND = 1000L;
+
+    // part type codes as constants for switch, see PacketPartType
+    private static final int PART_HOST = 0x0000;
+    private static final int PART_TIME = 0x0001;
+    private static final int PART_PLUGIN = 0x0002;
+    private static final int PART_PLUGIN_INSTANCE = 0x0003;
+    private static final int PART_TYPE = 0x0004;
+    private static final int PART_TYPE_INSTANCE = 0x0005;
+    private static final int PART_VALUES = 0x0006;
+    private static final int PART_INTERVAL = 0x0007;
+    private static final int PART_TIME_HR = 0x0008;
+    private static final int PART_INTERVAL_HR = 0x0009;
+    private static final int PART_MESSAGE = 0x0100;
+    private static final int PART_SEVERITY = 0x0101;
+    private static final int PART_ENCRYPTED = 0x0210;
+
+    private static final ValueType[] VALUE_TYPES = ValueType.values();
+
+    private final Handler handler;
+
+    private final ValueList valueList = new ValueList();
+    private final Notification notification = new Notification();
+
+    private final StringPart host = new StringPart();
+    private final StringPart plugin = new StringPart();
+    private final StringPart pluginInstance = new StringPart();
+    private final StringPart type = new StringPart();
+    private final StringPart typeInstance = new StringPart();
+    private final StringPart message = new StringPart();
+
+    private long time;
+    private long interval;
+    private Severity severity;
+
+    private PacketDecryptor decryptor;
+    private long skippedParts;
+
+    /**
+     * Create new packet reader.
+     *
+     * @param handler handler of decoded data
+     */
+    public PacketReader(final Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Decode packet between position and limit of the buffer. Position of the buffer is not changed. Identifier parts are reset for each packet.
+     *
+     * @param packet received packet
+     * @return number of value lists and notifications passed to handler
+     * @throws IOException invalid packet (data decoded before the invalid part is passed to handler) or handler failed
+     */
+    public int read(final ByteBuffer packet) throws IOException {
+        reset();
+        return readParts(packet, packet.position(), packet.limit(), false);
+    }
+
+    /**
+     * Decrypt encrypted parts of the given users. Encrypted parts are skipped if decryption is not configured.
+     *
+     * @param users passwords by user names, null to disable decryption
+     */
+    public void setDecryption(final Map<String, String> users) {
+        decryptor = users != null ? new PacketDecryptor(users) : null;
+    }
+
+    @SuppressWarnings("PMD.CyclomaticComplexity")
+    private int readParts(final ByteBuffer packet, final int offset, final int limit, final boolean decrypted) throws IOException {
+        int count = 0;
+        int pos = offset;
+        while (pos < limit) {
+            if (pos + HEADER_LEN > limit) {
+                throw new IOException("Truncated part header at offset " + pos);
+            }
+            final int partType = readShort(packet, pos);
+            final int length = readShort(packet, pos + 2);
+            if (length < HEADER_LEN || pos + length > limit) {
+                throw new IOException("Invalid length of part " + partType + " at offset " + pos + ": " + length);
+            }
+
+            switch (partType) {
+                case PART_HOST:
+                    host.read(packet, pos, length);
+                    break;
+                case PART_TIME:
+                    time = readNumber(packet, pos, length) * MILLIS_PER_SECOND;
+                    break;
+                case PART_TIME_HR:
+                    time = toMillis(readNumber(packet, pos, length));
+                    break;
+                case PART_PLUGIN:
+                    plugin.read(packet, pos, length);
+                    break;
+                case PART_PLUGIN_INSTANCE:
+                    pluginInstance.read(packet, pos, length);
+                    break;
+                case PART_TYPE:
+                    type.read(packet, pos, length);
+                    break;
+                case PART_TYPE_INSTANCE:
+                    typeInstance.read(packet, pos, length);
+                    break;
+                case PART_VALUES:
+                    readValues(packet, pos, length);
+                    handler.values(valueList);
+                    count++;
+                    break;
+                case PART_INTERVAL:
+                    interval = readNumber(packet, pos, length) * MILLIS_PER_SECOND;
+                    break;
+                case PART_INTERVAL_HR:
+                    interval = toMillis(readNumber(packet, pos, length));
+                    break;
+                case PART_MESSAGE:
+                    message.read(packet, pos, length);
+                    readNotification();
+                    handler.notification(notification);
+                    count++;
+                    break;
+                case PART_SEVERITY:
+                    severity = toSeverity(readNumber(packet, pos, length));
+                    break;
+                case PART_ENCRYPTED:
+                    if (decryptor == null) {
+                        skippedParts++;
+                    } else if (decrypted) {
+                        throw new IOException("Nested encrypted part at offset " + pos);
+                    } else {
+                        final ByteBuffer content = decryptor.decrypt(packet, pos, length);
+                        count += readParts(content, content.position(), content.limit(), true);
+                    }
+                    break;
+                default:
+                    // signature and unknown parts are skipped
+                    skippedParts++;
+            }
+            pos += length;
+        }
+        return count;
+    }
+
+    /**
+     * Get number of skipped parts (signatures, encrypted parts without decryption and unsupported parts).
+     *
+     * @return number of parts
+     */
+    public long getSkippedParts() {
+        return skippedParts;
+    }
+
+    private void reset() {
+        host.clear();
+        plugin.clear();
+        pluginInstance.clear();
+        type.clear();
+        typeInstance.clear();
+        message.clear();
+        time = 0L;
+        interval = 0L;
+        severity = null;
+    }
+
+    private void readValues(final ByteBuffer packet, final int pos, final int length) throws IOException {
+        if (length < HEADER_LEN + 2) {
+            throw new IOException("Invalid length of values part at offset " + pos + ": " + length);
+        }
+        final int num = readShort(packet, pos + HEADER_LEN);
+        if (length != HEADER_LEN + 2 + num * VALUE_LEN) {
+            throw new IOException("Invalid length of values part at offset " + pos + ": " + length + " (" + num + " values)");
+        }
+
+        valueList.clear();
+        setKeyParts(valueList);
+        valueList.setInterval(interval);
+
+        final int typesPos = pos + HEADER_LEN + 2;
+        final int valuesPos = typesPos + num;
+        for (int i = 0; i < num; i++) {
+            final int code = packet.get(typesPos + i);
+            if (code < 0 || code >= VALUE_TYPES.length) {
+                throw new IOException("Invalid value type at offset " + (typesPos + i) + ": " + code);
+            }
+            final long raw = readLong(packet, valuesPos + i * 8);
+            final ValueType valueType = VALUE_TYPES[code];
+            if (valueType == ValueType.GAUGE) {
+                // little-endian
+                valueList.addGauge(Double.longBitsToDouble(Long.reverseBytes(raw)));
+            } else {
+                valueList.add(valueType, raw);
+            }
+        }
+    }
+
+    private void readNotification() {
+        setKeyParts(notification);
+        notification.setSeverity(severity);
+        notification.setMessage(message.value);
+    }
+
+    private void setKeyParts(final PluginData data) {
+        data.setHost(host.value);
+        data.setTime(time);
+        data.setPlugin(plugin.value);
+        data.setPluginInstance(pluginInstance.value);
+        data.setType(type.value);
+        data.setTypeInstance(typeInstance.value);
+    }
+
+    private static long toMillis(final long highResolution) {
+        return (highResolution >>> HIGH_RESOLUTION_SHIFT) * MILLIS_PER_SECOND + ((highResolution & HIGH_RESOLUTION_MASK) * MILLIS_PER_SECOND >>> HIGH_RESOLUTION_SHIFT);
+    }
+
+    private static Severity toSeverity(final long code) {
+        for (final Severity s : Severity.values()) {
+            if (s.getCode() == code) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    private static long readNumber(final ByteBuffer packet, final int pos, final int length) throws IOException {
+        if (length != NUMBER_PART_LEN) {
+            throw new IOException("Invalid length of numeric part at offset " + pos + ": " + length);
+        }
+        return readLong(packet, pos + HEADER_LEN);
+    }
+
+    private static int readShort(final ByteBuffer packet, final int pos) {
+        return (packet.get(pos) & 0xff) << 8 | packet.get(pos + 1) & 0xff;
+    }
+
+    /**
+     * Read big-endian long independently of the byte order of the buffer.
+     */
+    private static long readLong(final ByteBuffer packet, final int pos) {
+        long result = 0L;
+        for (int i = 0; i < 8; i++) {
+            result = result << 8 | packet.get(pos + i) & 0xff;
+        }
+        return result;
+    }
+
+    /**
+     * Decoded value of a string part in the current packet. Encoded bytes of the last decoded value are kept for comparison, so unchanged parts (i.e. host
+     * of all value lists) are not decoded again.
+     */
+    private static final class StringPart {
+
+        private static final int INITIAL_CAPACITY = 64;
+
+        private byte[] bytes = new byte[INITIAL_CAPACITY];
+        private int length = -1;
+        private String decoded;
+
+        private String value;
+
+        private void read(final ByteBuffer packet, final int pos, final int partLength) {
+            int len = partLength - HEADER_LEN;
+            final int start = pos + HEADER_LEN;
+            if (len > 0 && packet.get(start + len - 1) == 0) {
+                // terminating null byte
+                len--;
+            }
+
+            if (len != length || !matches(packet, start, len)) {
+                if (len > bytes.length) {
+                    bytes = new byte[Math.max(len, bytes.length * 2)];
+                }
+                for (int i = 0; i < len; i++) {
+                    bytes[i] = packet.get(start + i);
+                }
+                length = len;
+                decoded = len > 0 ? new String(bytes, 0, len, UTF8) : null;
+            }
+            value = decoded;
+        }
+
+        private boolean matches(final ByteBuffer packet, final int start, final int len) {
+            for (int i = 0; i < len; i++) {
+                if (bytes[i] != packet.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void clear() {
+            value = null;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.collectd.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Signer of Collectd packets (HMAC-SHA-256 signature part). Signature part is the first part of the packet: header, HMAC of the user name and the rest of the
+ * packet (keyed by the password) and the user name. Space of the signature part is reserved at the beginning of the buffers by the writer (see
+ * {@link UdpBufferWriter#setHeadroom(int)}), so packets are signed in place once, when they are flushed. {@link Mac} instances are cached per thread, signer
+ * is thread-safe.
+ */
+public class PacketSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int HEADER_LEN = 4;
+    private static final int HASH_LEN = 32;
+    private static final int MAX_PART_LEN = 0xffff;
+
+    private final byte[] username;
+    private final SecretKeySpec key;
+    private final int partLength;
+
+    private final ThreadLocal<Mac> mac = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            return createMac();
+        }
+    };
+
+    /**
+     * Create new packet signer.
+     *
+     * @param username user name (sent in plain text)
+     * @param password password of the user (HMAC key)
+     */
+    public PacketSigner(final String username, final String password) {
+        if (username == null || username.isEmpty() || password == null || password.isEmpty()) {
+            throw new IllegalArgumentException("User name and password are required to sign packets");
+        }
+        this.username = username.getBytes(StandardCharsets.UTF_8);
+        this.key = new SecretKeySpec(password.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        partLength = HEADER_LEN + HASH_LEN + this.username.length;
+        if (partLength > MAX_PART_LEN) {
+            throw new IllegalArgumentException("User name is too long");
+        }
+        // fail fast if algorithm is not available or key is invalid
+        createMac();
+    }
+
+    /**
+     * Get length of signature part, space to reserve at the beginning of each packet.
+     *
+     * @return number of bytes
+     */
+    public int getPartLength() {
+        return partLength;
+    }
+
+    /**
+     * Sign packet in place. Signature part is written into the reserved space at the beginning of the buffer.
+     *
+     * @param buffer packet buffer (data starts after the reserved space)
+     */
+    public void sign(final PacketBuffer buffer) {
+        final byte[] data = buffer.getData();
+        data[0] = (byte) (PacketPartType.SIGNATURE.getCode() >>> 8);
+        data[1] = (byte) PacketPartType.SIGNATURE.getCode();
+        data[2] = (byte) (partLength >>> 8);
+        data[3] = (byte) partLength;
+        System.arraycopy(username, 0, data, HEADER_LEN + HASH_LEN, username.length);
+
+        final Mac hmac = mac.get();
+        // user name is followed by the signed data, so they are hashed by a single update
+        hmac.update(data, HEADER_LEN + HASH_LEN, buffer.getLength() - HEADER_LEN - HASH_LEN);
+        try {
+            hmac.doFinal(data, HEADER_LEN);
+        } catch (ShortBufferException ex) {
+            throw new IllegalStateException("Signature part is not reserved in packet buffer", ex);
+        }
+    }
+
+    private Mac createMac() {
+        try {
+            final Mac hmac = Mac.getInstance(ALGORITHM);
+            hmac.init(key);
+            return hmac;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to initialize " + ALGORITHM, ex);
+        }
+    }
+}
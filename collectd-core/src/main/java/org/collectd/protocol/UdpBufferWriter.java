@@ -1,36 +1,84 @@
 package org.collectd.protocol;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import lombok.extern.slf4j.Slf4j;
 import org.collectd.config.CollectdConstants;
 import org.collectd.model.Notification;
 import org.collectd.model.PluginData;
+import org.collectd.model.SampleRing;
+import org.collectd.model.ValueList;
 import org.collectd.model.ValueType;
 import org.collectd.model.Values;
 
 /**
- * UDP packet writer.
+ * UDP packet writer. Data is written into a pooled {@link PacketBuffer}, full buffers are handed over to the caller by reference and writing continues in a
+ * recycled buffer immediately. Buffers are returned to the pool by {@link PacketBuffer#release()} after transmission. Key parts are written only if they
+ * differ from the previous value list or notification of the packet (the receiver keeps key parts until the end of the packet). Writer is not thread-safe.
  */
 @Slf4j
 public class UdpBufferWriter {
 
-    private final ByteArrayOutputStream bos;
-    private final DataOutputStream os;
-    
+    /**
+     * Default number of pooled buffers (one is written while the others are transmitted).
+     */
+    public static final int DEFAULT_POOL_SIZE = 4;
+
     private final int packetSize;
 
+    private final BlockingQueue<PacketBuffer> pool;
+    private PacketBuffer buffer;
+    private byte[] data;
+    private int position;
+    private int headroom;
+
+    // key parts known by the receiver at the current position (null: unknown, all parts are written)
+    private String lastHost;
+    private long lastTime;
+    private String lastPlugin;
+    private String lastPluginInstance;
+    private String lastType;
+    private String lastTypeInstance;
+    // interval (in seconds) applied to the following values parts of the packet
+    private long lastInterval;
+
+    private final ValueList valueList = new ValueList();
+
     private static final int UINT8_LEN = 1;
     private static final int UINT16_LEN = UINT8_LEN * 2;
     private static final int UINT32_LEN = UINT16_LEN * 2;
     private static final int UINT64_LEN = UINT32_LEN * 2;
     private static final int HEADER_LEN = UINT16_LEN * 2;
 
+    private static final int HIGH_RESOLUTION_SHIFT = 30;
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long UNKNOWN_TIME = Long.MIN_VALUE;
+
+    private static final Comparator<PluginData> KEY_ORDER = new Comparator<PluginData>() {
+        @Override
+        public int compare(final PluginData o1, final PluginData o2) {
+            int result = getKeyPart(o1.getHost()).compareTo(getKeyPart(o2.getHost()));
+            if (result == 0) {
+                result = getKeyPart(o1.getPlugin()).compareTo(getKeyPart(o2.getPlugin()));
+            }
+            if (result == 0) {
+                result = getKeyPart(o1.getPluginInstance()).compareTo(getKeyPart(o2.getPluginInstance()));
+            }
+            if (result == 0) {
+                result = getKeyPart(o1.getType()).compareTo(getKeyPart(o2.getType()));
+            }
+            if (result == 0) {
+                result = getKeyPart(o1.getTypeInstance()).compareTo(getKeyPart(o2.getTypeInstance()));
+            }
+            return result != 0 ? result : Long.compare(o1.getTime() / 1000, o2.getTime() / 1000);
+        }
+    };
+
     /**
      * Create new UDP packet writer instance. Default packet size is used.
      */
@@ -39,158 +87,362 @@ public class UdpBufferWriter {
     }
 
     /**
-     * Create new UDP packet writer instance.
+     * Create new UDP packet writer instance. Default pool size is used.
      *
      * @param packetSize packet size
      */
     public UdpBufferWriter(final int packetSize) {
+        this(packetSize, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Create new UDP packet writer instance.
+     *
+     * @param packetSize packet size
+     * @param poolSize maximum number of buffers kept for reuse
+     */
+    public UdpBufferWriter(final int packetSize, final int poolSize) {
         this.packetSize = packetSize;
-        bos = new ByteArrayOutputStream(packetSize);
-        os = new DataOutputStream(bos);
+        pool = new ArrayBlockingQueue<>(poolSize);
+        nextBuffer();
     }
 
     /**
-     * Get buffer content as byte array and reset it.
+     * Get buffer content as byte array and reset it (reserved headroom is not filled). Buffer content is copied, use {@link #swapBuffer()} to avoid copying.
+     *
+     * @return buffer content
      */
-    public synchronized byte[] getBuffer() {
-        final byte[] buffer;
-        synchronized (this) {
-            buffer = bos.toByteArray();
-            bos.reset();
+    public byte[] getBuffer() {
+        final PacketBuffer full = swapBuffer();
+        if (full == null) {
+            return new byte[0];
         }
 
-        return buffer;
+        final byte[] content = full.toByteArray();
+        full.release();
+        return content;
+    }
+
+    /**
+     * Hand over current buffer (by reference) and continue writing into a recycled one.
+     *
+     * @return finished buffer, null if nothing is written into current buffer
+     */
+    public PacketBuffer swapBuffer() {
+        if (position == headroom) {
+            return null;
+        }
+
+        final PacketBuffer full = buffer;
+        full.setLength(position);
+        nextBuffer();
+        return full;
+    }
+
+    /**
+     * Get number of bytes written into current buffer (including reserved headroom).
+     *
+     * @return number of bytes
+     */
+    public int size() {
+        return position;
+    }
+
+    /**
+     * Reserve space at the beginning of each buffer, i.e. for the signature part written when the packet is flushed. Reserved space is part of the packet
+     * size, it can be changed only if nothing is written into current buffer.
+     *
+     * @param length number of bytes to reserve
+     */
+    public void setHeadroom(final int length) {
+        if (position != headroom) {
+            throw new IllegalStateException("Headroom can be changed only if buffer is empty");
+        }
+        if (length < 0 || length >= packetSize) {
+            throw new IllegalArgumentException("Headroom must be less than packet size: " + packetSize);
+        }
+        headroom = length;
+        position = length;
+    }
+
+    /**
+     * Get number of bytes reserved at the beginning of each buffer.
+     *
+     * @return number of bytes
+     */
+    public int getHeadroom() {
+        return headroom;
+    }
+
+    private void nextBuffer() {
+        final PacketBuffer recycled = pool.poll();
+        // new buffer is allocated only if all buffers are in flight
+        buffer = recycled != null ? recycled : new PacketBuffer(packetSize, pool);
+        data = buffer.getData();
+        position = headroom;
+        resetKeyParts(true);
+        lastInterval = 0L;
+    }
+
+    /**
+     * Reset key parts known by the receiver, each packet starts with empty key parts.
+     *
+     * @param known <code>false</code> if parts were written without tracking (all parts are written again)
+     */
+    private void resetKeyParts(final boolean known) {
+        final String initial = known ? "" : null;
+        lastHost = initial;
+        lastTime = known ? 0L : UNKNOWN_TIME;
+        lastPlugin = initial;
+        lastPluginInstance = initial;
+        lastType = initial;
+        lastTypeInstance = initial;
     }
 
     /**
      * Check if free buffer space is enough for numeric values.
-     * 
+     *
      * @param values numeric values
      * @return buffer to send if flushed, null otherwise
      * @throws IOException unable to check buffer size or flush buffer
      */
-    @SuppressFBWarnings("PZLA_PREFER_ZERO_LENGTH_ARRAYS")
-    public byte[] checkSpace(final Values values) throws IOException {
-        final int length = getKeyPartsLength(values) + getValuesPartLength(values);
-        if (length > packetSize) {
-            throw new IllegalArgumentException("Values data size is greater than maximum packet size: " + packetSize);
-        }
-        
-        if (bos.size() + length > packetSize) {
-            return getBuffer();
-        } else {
-            return null;
-        }
+    public PacketBuffer checkSpace(final Values values) throws IOException {
+        final int num = values.getItems().size();
+        final long interval = values.getInterval() != null ? values.getInterval() : 0L;
+        return checkSpace(getKeyPartsLength(values) + getValuesPartsLength(num, interval, lastInterval),
+                getFullKeyPartsLength(values) + getValuesPartsLength(num, interval, 0L), "Values");
+    }
+
+    /**
+     * Check if free buffer space is enough for primitive numeric values.
+     *
+     * @param values numeric values
+     * @return buffer to send if flushed, null otherwise
+     * @throws IOException unable to check buffer size or flush buffer
+     */
+    public PacketBuffer checkSpace(final ValueList values) throws IOException {
+        return checkSpace(getKeyPartsLength(values) + getValuesPartsLength(values.size(), values.getInterval(), lastInterval),
+                getFullKeyPartsLength(values) + getValuesPartsLength(values.size(), values.getInterval(), 0L), "Values");
+    }
+
+    /**
+     * Check if free buffer space is enough for primitive numeric values of a pre-encoded identifier. Identifier of value list is ignored, only time is used.
+     *
+     * @param identifier pre-encoded identifier
+     * @param values numeric values
+     * @return buffer to send if flushed, null otherwise
+     * @throws IOException unable to check buffer size or flush buffer
+     */
+    public PacketBuffer checkSpace(final EncodedIdentifier identifier, final ValueList values) throws IOException {
+        final int length = identifier.getLength() + getNumberPartLength(values.getTime() / 1000);
+        return checkSpace(length + getValuesPartsLength(values.size(), values.getInterval(), lastInterval),
+                length + getValuesPartsLength(values.size(), values.getInterval(), 0L), "Values");
     }
 
     /**
      * Check if free buffer space is enough for notification.
-     * 
+     *
      * @param notification notification
      * @return buffer to send if flushed, null otherwise
      * @throws IOException unable to check buffer size or flush buffer
      */
-    @SuppressFBWarnings("PZLA_PREFER_ZERO_LENGTH_ARRAYS")
-    public byte[] checkSpace(final Notification notification) throws IOException {
-        final int length = getKeyPartsLength(notification) + getNotificationPartLength(notification);
-        if (length > packetSize) {
-            throw new IllegalArgumentException("Notification size is greater than maximum packet size: " + packetSize);
+    public PacketBuffer checkSpace(final Notification notification) throws IOException {
+        final int length = getNotificationPartLength(notification);
+        return checkSpace(getKeyPartsLength(notification) + length, getFullKeyPartsLength(notification) + length, "Notification");
+    }
+
+    /**
+     * Check free buffer space, data is written with all key parts if buffer is flushed.
+     *
+     * @param length length at the current position
+     * @param fullLength length in an empty buffer
+     */
+    private PacketBuffer checkSpace(final int length, final int fullLength, final String dataName) {
+        if (fullLength > packetSize - headroom) {
+            throw new IllegalArgumentException(dataName + " size is greater than maximum packet size: " + (packetSize - headroom));
         }
-        
-        if (bos.size() + length > packetSize) {
-            return getBuffer();
+
+        if (position + length > packetSize) {
+            return swapBuffer();
         } else {
             return null;
         }
     }
 
+    /**
+     * Get length of key parts at the current position (parts known by the receiver are not written).
+     */
     private int getKeyPartsLength(final PluginData data) {
+        return getKeyPartLength(lastHost, data.getHost())
+                + (data.getTime() / 1000 != lastTime ? getNumberPartLength(data.getTime() / 1000) : 0)
+                + getKeyPartLength(lastPlugin, data.getPlugin())
+                + getKeyPartLength(lastPluginInstance, data.getPluginInstance())
+                + getKeyPartLength(lastType, data.getType())
+                + getKeyPartLength(lastTypeInstance, data.getTypeInstance());
+    }
+
+    /**
+     * Get length of key parts in an empty buffer.
+     */
+    private int getFullKeyPartsLength(final PluginData data) {
+        return getFullIdentifierPartsLength(data) + (data.getTime() / 1000 != 0 ? getNumberPartLength(data.getTime() / 1000) : 0);
+    }
+
+    private int getFullIdentifierPartsLength(final PluginData data) {
         return getStringPartLength(data.getHost())
-                + getNumberPartLength(data.getTime() / 1000)
                 + getStringPartLength(data.getPlugin())
                 + getStringPartLength(data.getPluginInstance())
                 + getStringPartLength(data.getType())
                 + getStringPartLength(data.getTypeInstance());
     }
 
+    private int getKeyPartLength(final String last, final String val) {
+        final String current = val != null ? val : "";
+        // empty part is written to reset a part of the previous data
+        return current.equals(last) ? 0 : HEADER_LEN + getUtf8Length(current) + 1;
+    }
+
     /**
-     * Write common collectd key (identifier) parts to buffer.
+     * Write common collectd key (identifier) parts to buffer. Parts equal to the parts of the previous data in the buffer are omitted.
      *
      * @param data plugin data
      * @throws IOException unable to write value to output stream
      */
     public void writeKeyParts(final PluginData data) throws IOException {
-        writeStringPart(PacketPartType.HOST.getCode(), data.getHost());
-        writeNumberPart(PacketPartType.TIME.getCode(), data.getTime() / 1000);
-        writeStringPart(PacketPartType.PLUGIN.getCode(), data.getPlugin());
-        writeStringPart(PacketPartType.PLUGIN_INSTANCE.getCode(), data.getPluginInstance());
-        writeStringPart(PacketPartType.TYPE.getCode(), data.getType());
-        writeStringPart(PacketPartType.TYPE_INSTANCE.getCode(), data.getTypeInstance());
+        lastHost = writeKeyPart(PacketPartType.HOST.getCode(), lastHost, data.getHost());
+        final long seconds = data.getTime() / 1000;
+        if (seconds != lastTime) {
+            writeNumberPart(PacketPartType.TIME.getCode(), seconds);
+            lastTime = seconds;
+        }
+        lastPlugin = writeKeyPart(PacketPartType.PLUGIN.getCode(), lastPlugin, data.getPlugin());
+        lastPluginInstance = writeKeyPart(PacketPartType.PLUGIN_INSTANCE.getCode(), lastPluginInstance, data.getPluginInstance());
+        lastType = writeKeyPart(PacketPartType.TYPE.getCode(), lastType, data.getType());
+        lastTypeInstance = writeKeyPart(PacketPartType.TYPE_INSTANCE.getCode(), lastTypeInstance, data.getTypeInstance());
     }
 
-    private int getValuesPartLength(final Values values) {
-        final int num = values.getItems().size();
+    private String writeKeyPart(final short type, final String last, final String val) {
+        final String current = val != null ? val : "";
+        if (current.equals(last)) {
+            return last;
+        }
+        writeHeader(type, HEADER_LEN + getUtf8Length(current) + 1);
+        writeStringValue(current, true);
+        return current;
+    }
+
+    /**
+     * Get length of payload written into an empty packet (interval part is written if interval is set).
+     */
+    private int getPayloadLength(final PluginData data) {
+        if (data instanceof ValueList) {
+            final ValueList values = (ValueList) data;
+            return getValuesPartsLength(values.size(), values.getInterval(), 0L);
+        } else if (data instanceof Values) {
+            final Values values = (Values) data;
+            return getValuesPartsLength(values.getItems().size(), values.getInterval() != null ? values.getInterval() : 0L, 0L);
+        } else {
+            return getNotificationPartLength((Notification) data);
+        }
+    }
+
+    private int getValuesPartLength(final int num) {
         return num > 0 ? HEADER_LEN + UINT16_LEN + num * (UINT8_LEN + UINT64_LEN) : 0;
     }
 
     /**
-     * Write numeric values to buffer.
+     * Get length of values part and interval part (written if the interval differs from the interval known by the receiver).
+     */
+    private int getValuesPartsLength(final int num, final long interval, final long last) {
+        final long seconds = toSeconds(interval);
+        return num > 0 ? getValuesPartLength(num) + (seconds != last ? getNumberPartLength(seconds) : 0) : 0;
+    }
+
+    /**
+     * Write numeric values to buffer. Numeric values are converted to primitive value list, missing value types are inferred (GAUGE for double, COUNTER
+     * otherwise).
      *
      * @param values numeric values
      * @throws IOException unable to write value to output stream
      */
-    @SuppressFBWarnings("DB_DUPLICATE_SWITCH_CLAUSES")
     public void writeValuesPart(final Values values) throws IOException {
-        final int num = values.getItems().size();
+        if (values.getItems().isEmpty()) {
+            return;
+        }
+
+        valueList.copyOf(values);
+        writeValuesPart(valueList);
+    }
+
+    /**
+     * Write primitive numeric values to buffer.
+     *
+     * @param values numeric values
+     * @throws IOException unable to write value to output stream
+     */
+    public void writeValuesPart(final ValueList values) throws IOException {
+        final int num = values.size();
         if (num == 0) {
             return;
         }
 
         writeKeyParts(values);
-        final int len = getValuesPartLength(values);
-
-        final byte[] types = new byte[num];
-        int idx = 0;
-        for (final Iterator<Values.ValueHolder> it = values.getItems().iterator(); it.hasNext(); idx++) {
-            final Values.ValueHolder holder = it.next();
-            final Number value = holder.getValue();
-
-            if (holder.getType() == null) {
-                if (value instanceof Double) {
-                    types[idx] = ValueType.GAUGE.getCode();
-                    holder.setType(ValueType.GAUGE);
-                } else {
-                    types[idx] = ValueType.COUNTER.getCode();
-                    holder.setType(ValueType.COUNTER);
-                }
-            } else {
-                types[idx] = holder.getType().getCode();
-            }
+        writeValues(values);
+    }
+
+    /**
+     * Write primitive numeric values of a pre-encoded identifier to buffer. Identifier of value list is ignored, only time is used.
+     *
+     * @param identifier pre-encoded identifier
+     * @param values numeric values
+     * @throws IOException unable to write value to output stream
+     */
+    public void writeValuesPart(final EncodedIdentifier identifier, final ValueList values) throws IOException {
+        if (values.size() == 0) {
+            return;
+        }
+
+        writeBytes(identifier.getBytes());
+        resetKeyParts(false);
+        writeNumberPart(PacketPartType.TIME.getCode(), values.getTime() / 1000);
+        writeValues(values);
+    }
+
+    @SuppressFBWarnings("DB_DUPLICATE_SWITCH_CLAUSES")
+    private void writeValues(final ValueList values) throws IOException {
+        final int num = values.size();
+
+        // interval part precedes the values part it applies to
+        final long interval = toSeconds(values.getInterval());
+        if (interval != lastInterval) {
+            writeNumberPart(PacketPartType.INTERVAL.getCode(), interval);
+            lastInterval = interval;
         }
 
-        writeHeader(PacketPartType.VALUES.getCode(), len);
+        writeHeader(PacketPartType.VALUES.getCode(), getValuesPartLength(num));
         writeShortValue(num);
-        os.write(types);
+        for (int i = 0; i < num; i++) {
+            data[position++] = values.getTypeCode(i);
+        }
 
-        for (final Values.ValueHolder holder : values.getItems()) {
-            final Number value = holder.getValue();
-            final ValueType type = holder.getType();
+        for (int i = 0; i < num; i++) {
+            final ValueType type = values.getType(i);
 
             switch (type) {
                 case COUNTER:
                 case ABSOLUTE: {
                     // unsigned, big-endian
-                    writeLongOrDateValue(value.longValue());
+                    writeLongOrDateValue(values.getRawValue(i));
                     break;
                 }
                 case GAUGE: {
                     // little-endian
-                    writeDoubleValue(value.doubleValue());
+                    writeDoubleBits(values.getRawValue(i));
                     break;
                 }
                 case DERIVE: {
                     // signed, big-endian
-                    writeLongOrDateValue(value.longValue());
+                    writeLongOrDateValue(values.getRawValue(i));
                     break;
                 }
                 default: {
@@ -198,12 +450,109 @@ public class UdpBufferWriter {
                 }
             }
         }
+    }
 
-        if (values.getInterval() != null) {
-            writeNumberPart(PacketPartType.INTERVAL.getCode(), values.getInterval());
+    /**
+     * Write buffered samples of a sample ring (caller must hold the lock of the ring). Identifier and high resolution interval are written once per packet,
+     * followed by a high resolution time part and a values part of each sample, so a packet carries many samples of the identifier. Batch is started in a
+     * new buffer if it does not fit into the current one and it is continued in new buffers if it does not fit into a packet.
+     *
+     * @param samples sample ring
+     * @param full list to add full buffers to
+     * @throws IOException unable to write value to output stream
+     */
+    public void writeSamples(final SampleRing samples, final List<PacketBuffer> full) throws IOException {
+        final int count = samples.size();
+        final int num = samples.getValueCount();
+        if (count == 0 || num == 0) {
+            return;
+        }
+
+        final int intervalLength = samples.getInterval() > 0 ? getNumberPartLength(samples.getInterval()) : 0;
+        // interval of previous value list is reset if samples have no interval
+        final int groupLength = getIdentifierPartsLength(samples) + (intervalLength == 0 && lastInterval != 0 ? getNumberPartLength(0L) : intervalLength);
+        final int sampleLength = getNumberPartLength(0L) + getValuesPartLength(num);
+        final int fullLength = getFullIdentifierPartsLength(samples) + intervalLength + sampleLength;
+        final PacketBuffer flushed = checkSpace(groupLength + sampleLength, fullLength, "Samples");
+        if (flushed != null) {
+            full.add(flushed);
+        } else if (position + groupLength + count * sampleLength > packetSize && position > headroom) {
+            // batch does not fit into current buffer, identifier group starts a new packet
+            full.add(swapBuffer());
+        }
+
+        int sample = 0;
+        while (sample < count) {
+            if (sample > 0) {
+                full.add(swapBuffer());
+            }
+            writeIdentifierParts(samples);
+            if (samples.getInterval() > 0) {
+                writeNumberPart(PacketPartType.INTERVAL_high_resolution.getCode(), toHighResolution(samples.getInterval()));
+                // high resolution interval is not a number of seconds, interval part is written for the next value list
+                lastInterval = UNKNOWN_TIME;
+            } else if (lastInterval != 0) {
+                writeNumberPart(PacketPartType.INTERVAL.getCode(), 0L);
+                lastInterval = 0L;
+            }
+            for (; sample < count && position + sampleLength <= packetSize; sample++) {
+                writeNumberPart(PacketPartType.TIME_high_resolution.getCode(), toHighResolution(samples.getTime(sample)));
+                writeSample(samples, sample, num);
+            }
         }
     }
 
+    private int getIdentifierPartsLength(final PluginData data) {
+        return getKeyPartLength(lastHost, data.getHost())
+                + getKeyPartLength(lastPlugin, data.getPlugin())
+                + getKeyPartLength(lastPluginInstance, data.getPluginInstance())
+                + getKeyPartLength(lastType, data.getType())
+                + getKeyPartLength(lastTypeInstance, data.getTypeInstance());
+    }
+
+    private void writeIdentifierParts(final PluginData data) {
+        lastHost = writeKeyPart(PacketPartType.HOST.getCode(), lastHost, data.getHost());
+        lastPlugin = writeKeyPart(PacketPartType.PLUGIN.getCode(), lastPlugin, data.getPlugin());
+        lastPluginInstance = writeKeyPart(PacketPartType.PLUGIN_INSTANCE.getCode(), lastPluginInstance, data.getPluginInstance());
+        lastType = writeKeyPart(PacketPartType.TYPE.getCode(), lastType, data.getType());
+        lastTypeInstance = writeKeyPart(PacketPartType.TYPE_INSTANCE.getCode(), lastTypeInstance, data.getTypeInstance());
+        // time is written by high resolution time parts of samples
+        lastTime = UNKNOWN_TIME;
+    }
+
+    private void writeSample(final SampleRing samples, final int sample, final int num) {
+        writeHeader(PacketPartType.VALUES.getCode(), getValuesPartLength(num));
+        writeShortValue(num);
+        for (int i = 0; i < num; i++) {
+            data[position++] = samples.getTypeCode(i);
+        }
+        for (int i = 0; i < num; i++) {
+            if (samples.getTypeCode(i) == ValueType.GAUGE.getCode()) {
+                // little-endian
+                writeDoubleBits(samples.getRawValue(sample, i));
+            } else {
+                // big-endian
+                writeLongOrDateValue(samples.getRawValue(sample, i));
+            }
+        }
+    }
+
+    /**
+     * Convert interval in milliseconds to seconds (unit of the interval part), positive intervals are at least 1 second, zero if not set.
+     */
+    private static long toSeconds(final long millis) {
+        return millis > 0 ? Math.max(1L, millis / MILLIS_PER_SECOND) : 0L;
+    }
+
+    /**
+     * Convert milliseconds to high resolution time (2^-30 seconds). Fraction is rounded up, so it is truncated back to the same milliseconds.
+     */
+
+    private static long toHighResolution(final long millis) {
+        final long fraction = ((millis % MILLIS_PER_SECOND << HIGH_RESOLUTION_SHIFT) + MILLIS_PER_SECOND - 1) / MILLIS_PER_SECOND;
+        return (millis / MILLIS_PER_SECOND) << HIGH_RESOLUTION_SHIFT | fraction;
+    }
+
     private int getNotificationPartLength(final Notification notification) {
         return (notification.getSeverity() != null ? getNumberPartLength(notification.getSeverity().getCode()) : 0) + getStringPartLength(notification.getMessage());
     }
@@ -224,44 +573,272 @@ public class UdpBufferWriter {
         writeStringPart(PacketPartType.MESSAGE.getCode(), notification.getMessage());
     }
 
-    private void writeHeader(final short type, final int len) throws IOException {
+    /**
+     * Write a batch packed into the fewest packets. Batch is sorted by identifier, so consecutive data shares key parts. Runs of the same host, plugin,
+     * plugin instance and type are kept together (split if larger than a packet) and placed into packets by first-fit decreasing, the current buffer is the
+     * first packet. Packets are written in order, the last one is kept open for subsequent data.
+     *
+     * @param batch value lists ({@link Values} or {@link ValueList}) and notifications
+     * @param full list to add full buffers to
+     * @return packets and bytes of the batch written in arrival order (estimated) and packed
+     * @throws IOException unable to write value to output stream
+     */
+    public Packing writePacked(final List<? extends PluginData> batch, final List<PacketBuffer> full) throws IOException {
+        final int count = batch.size();
+        final int capacity = packetSize - headroom;
+        final boolean open = position > headroom;
+
+        // packets of the batch in arrival order (next fit)
+        int packetsBefore = 0;
+        long bytesBefore = 0L;
+        int free = packetSize - position;
+        PluginData previous = null;
+        for (final PluginData data : batch) {
+            int length = previous != null ? getLength(previous, data) : getWorstLength(data);
+            if (previous == null && !open || length > free) {
+                length = getLength(null, data);
+                free = capacity;
+                packetsBefore++;
+            } else if (previous == null) {
+                packetsBefore++;
+            }
+            free -= length;
+            bytesBefore += length;
+            previous = data;
+        }
+
+        final PluginData[] sorted = batch.toArray(new PluginData[count]);
+        Arrays.sort(sorted, KEY_ORDER);
+
+        // runs of an identifier group, the first data of a run is not sharing key parts with the previous run
+        final int[] runStart = new int[count + 1];
+        final int[] runLength = new int[count];
+        int runs = 0;
+        for (int i = 0; i < count; i++) {
+            final int length = runs > 0 && isSameGroup(sorted[runStart[runs - 1]], sorted[i]) ? getLength(sorted[i - 1], sorted[i]) : -1;
+            if (length < 0 || runLength[runs - 1] + length > capacity) {
+                runStart[runs] = i;
+                runLength[runs] = getWorstLength(sorted[i]);
+                runs++;
+            } else {
+                runLength[runs - 1] += length;
+            }
+        }
+        runStart[runs] = count;
+
+        // first fit decreasing, runs are ordered by length (descending) and position (ascending)
+        final long[] order = new long[runs];
+        for (int run = 0; run < runs; run++) {
+            order[run] = (long) (capacity - runLength[run]) << Integer.SIZE | run;
+        }
+        Arrays.sort(order);
+        final int[] binOf = new int[runs];
+        final int[] remaining = new int[runs + 1];
+        int bins = 0;
+        if (open) {
+            remaining[bins++] = packetSize - position;
+        }
+        for (final long key : order) {
+            final int run = (int) key;
+            int bin = 0;
+            while (bin < bins && remaining[bin] < runLength[run]) {
+                bin++;
+            }
+            if (bin == bins) {
+                remaining[bins++] = capacity;
+            }
+            remaining[bin] -= runLength[run];
+            binOf[run] = bin;
+        }
+
+        long bytesAfter = 0L;
+        int packetsAfter = 0;
+        int lastItems = 0;
+        for (int bin = 0; bin < bins; bin++) {
+            if (bin > 0) {
+                final PacketBuffer flushed = swapBuffer();
+                if (flushed != null) {
+                    full.add(flushed);
+                }
+            }
+            lastItems = 0;
+            for (int run = 0; run < runs; run++) {
+                if (binOf[run] != bin) {
+                    continue;
+                }
+                for (int i = runStart[run]; i < runStart[run + 1]; i++) {
+                    final PacketBuffer flushed = checkSpace(sorted[i]);
+                    if (flushed != null) {
+                        full.add(flushed);
+                        if (lastItems > 0) {
+                            packetsAfter++;
+                        }
+                        lastItems = 0;
+                    }
+                    final int start = position;
+                    write(sorted[i]);
+                    bytesAfter += position - start;
+                    lastItems++;
+                }
+            }
+            if (lastItems > 0) {
+                packetsAfter++;
+            }
+        }
+        return new Packing(count, packetsBefore, bytesBefore, packetsAfter, bytesAfter, lastItems, packetSize);
+    }
+
+    private PacketBuffer checkSpace(final PluginData data) throws IOException {
+        if (data instanceof ValueList) {
+            return checkSpace((ValueList) data);
+        } else if (data instanceof Values) {
+            return checkSpace((Values) data);
+        } else {
+            return checkSpace((Notification) data);
+        }
+    }
+
+    private void write(final PluginData data) throws IOException {
+        if (data instanceof ValueList) {
+            writeValuesPart((ValueList) data);
+        } else if (data instanceof Values) {
+            writeValuesPart((Values) data);
+        } else {
+            writeNotificationPart((Notification) data);
+        }
+    }
+
+    /**
+     * Get length of data written after the previous data of the packet (in an empty packet if previous data is null).
+     */
+    private int getLength(final PluginData previous, final PluginData data) {
+        if (previous == null) {
+            return getFullKeyPartsLength(data) + getPayloadLength(data);
+        }
+        return getKeyPartLength(getKeyPart(previous.getHost()), data.getHost())
+                + (previous.getTime() / 1000 != data.getTime() / 1000 ? getNumberPartLength(data.getTime() / 1000) : 0)
+                + getKeyPartLength(getKeyPart(previous.getPlugin()), data.getPlugin())
+                + getKeyPartLength(getKeyPart(previous.getPluginInstance()), data.getPluginInstance())
+                + getKeyPartLength(getKeyPart(previous.getType()), data.getType())
+                + getKeyPartLength(getKeyPart(previous.getTypeInstance()), data.getTypeInstance())
+                + getPayloadLength(data);
+    }
+
+    /**
+     * Get length of data written after unknown data (all key parts are written).
+     */
+    private int getWorstLength(final PluginData data) {
+        return getKeyPartLength(null, data.getHost())
+                + getNumberPartLength(data.getTime() / 1000)
+                + getKeyPartLength(null, data.getPlugin())
+                + getKeyPartLength(null, data.getPluginInstance())
+                + getKeyPartLength(null, data.getType())
+                + getKeyPartLength(null, data.getTypeInstance())
+                + getPayloadLength(data);
+    }
+
+    private static String getKeyPart(final String part) {
+        return part != null ? part : "";
+    }
+
+    private static boolean isSameGroup(final PluginData first, final PluginData data) {
+        return getKeyPart(first.getHost()).equals(getKeyPart(data.getHost()))
+                && getKeyPart(first.getPlugin()).equals(getKeyPart(data.getPlugin()))
+                && getKeyPart(first.getPluginInstance()).equals(getKeyPart(data.getPluginInstance()))
+                && getKeyPart(first.getType()).equals(getKeyPart(data.getType()));
+    }
+
+    private void writeHeader(final short type, final int len) {
         writeShortValue(type);
         writeShortValue(len);
     }
 
-    private void writeShortValue(final int val) throws IOException {
-        os.writeShort(val);
+    private void writeShortValue(final int val) {
+        data[position++] = (byte) (val >>> 8);
+        data[position++] = (byte) val;
     }
 
     /**
      * Write long or date (epoch) value.
      *
      * @param val long or epoch value
-     * @throws IOException unable to write value to output stream
      */
-    private void writeLongOrDateValue(final long val) throws IOException {
-        os.writeLong(val);
+    private void writeLongOrDateValue(final long val) {
+        for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+            data[position++] = (byte) (val >>> shift);
+        }
     }
 
-    private void writeDoubleValue(final double val) throws IOException {
-        final ByteBuffer bb = ByteBuffer.wrap(new byte[8]);
-        bb.order(ByteOrder.LITTLE_ENDIAN);
-        bb.putDouble(val);
-        os.write(bb.array());
+    /**
+     * Write raw long bits of double value in little-endian byte order.
+     *
+     * @param bits raw long bits of double value
+     */
+    private void writeDoubleBits(final long bits) {
+        writeLongOrDateValue(Long.reverseBytes(bits));
     }
 
-    private void writeStringValue(final String val, final boolean addNullByte) throws IOException {
-        os.write(val.getBytes("UTF-8"));
+    private void writeBytes(final byte[] bytes) {
+        System.arraycopy(bytes, 0, data, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Write string value in UTF-8 encoding without allocating byte array.
+     *
+     * @param val string value
+     * @param addNullByte append terminating null byte
+     */
+    private void writeStringValue(final String val, final boolean addNullByte) {
+        final int len = val.length();
+        for (int i = 0; i < len; i++) {
+            final char c = val.charAt(i);
+            if (c < 0x80) {
+                data[position++] = (byte) c;
+            } else if (c < 0x800) {
+                data[position++] = (byte) (0xc0 | c >> 6);
+                data[position++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(val.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, val.charAt(++i));
+                data[position++] = (byte) (0xf0 | cp >> 18);
+                data[position++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                data[position++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                data[position++] = (byte) (0x80 | cp & 0x3f);
+            } else {
+                data[position++] = (byte) (0xe0 | c >> 12);
+                data[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+                data[position++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
         if (addNullByte) {
-            os.write('\0');
+            data[position++] = '\0';
         }
     }
 
+    private static int getUtf8Length(final String val) {
+        final int len = val.length();
+        int result = 0;
+        for (int i = 0; i < len; i++) {
+            final char c = val.charAt(i);
+            if (c < 0x80) {
+                result++;
+            } else if (c < 0x800) {
+                result += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(val.charAt(i + 1))) {
+                result += 4;
+                i++;
+            } else {
+                result += 3;
+            }
+        }
+        return result;
+    }
+
     private int getStringPartLength(final String val) {
-        return val != null && val.length() > 0 ? HEADER_LEN + val.length() + 1 : 0;
+        return val != null && val.length() > 0 ? HEADER_LEN + getUtf8Length(val) + 1 : 0;
     }
 
-    private void writeStringPart(final short type, final String val) throws IOException {
+    private void writeStringPart(final short type, final String val) {
         if (val == null || val.length() == 0) {
             return;
         }
@@ -275,9 +852,64 @@ public class UdpBufferWriter {
         return HEADER_LEN + UINT64_LEN;
     }
 
-    private void writeNumberPart(final short type, final long val) throws IOException {
+    private void writeNumberPart(final short type, final long val) {
         final int len = getNumberPartLength(val);
         writeHeader(type, len);
         writeLongOrDateValue(val);
     }
+
+    /**
+     * Packets and bytes of a batch written in arrival order (estimated by next fit) and packed by {@link #writePacked(List, List)}. Packets are counted if
+     * data of the batch is written into them.
+     */
+    @lombok.Getter
+    @lombok.ToString
+    public static final class Packing {
+
+        /**
+         * Number of items of the batch.
+         */
+        private final int items;
+
+        /**
+         * Number of packets if the batch was written in arrival order.
+         */
+        private final int packetsBefore;
+
+        /**
+         * Number of bytes if the batch was written in arrival order.
+         */
+        private final long bytesBefore;
+
+        /**
+         * Number of packets of the packed batch.
+         */
+        private final int packetsAfter;
+
+        /**
+         * Number of bytes of the packed batch.
+         */
+        private final long bytesAfter;
+
+        /**
+         * Number of items written into the last packet, which is kept open.
+         */
+        private final int openItems;
+
+        /**
+         * Maximum packet size.
+         */
+        private final int packetSize;
+
+        private Packing(final int items, final int packetsBefore, final long bytesBefore, final int packetsAfter, final long bytesAfter, final int openItems,
+                final int packetSize) {
+            this.items = items;
+            this.packetsBefore = packetsBefore;
+            this.bytesBefore = bytesBefore;
+            this.packetsAfter = packetsAfter;
+            this.bytesAfter = bytesAfter;
+            this.openItems = openItems;
+            this.packetSize = packetSize;
+        }
+    }
 }
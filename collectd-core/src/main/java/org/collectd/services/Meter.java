@@ -0,0 +1,136 @@
+package org.collectd.services;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.collectd.model.ValueList;
+import org.collectd.model.ValueType;
+import org.collectd.protocol.EncodedIdentifier;
+
+/**
+ * Metric handle of a fixed Collectd identifier and value types. Identifier is encoded once, recording writes only time and values part to packet buffer.
+ * Instances are created by {@link MetricRegistry}, they are thread-safe.
+ */
+@lombok.ToString(of = {"identifier", "types"})
+public class Meter {
+
+    private final UdpPacketSender sender;
+    private final EncodedIdentifier identifier;
+    private final ValueType[] types;
+
+    /**
+     * Identifier parts and interval copied to value lists, so thresholds can be evaluated.
+     */
+    private final ValueList template;
+
+    private final ThreadLocal<ValueList> valueList = new ThreadLocal<ValueList>() {
+        @Override
+        protected ValueList initialValue() {
+            final ValueList values = new ValueList(types.length);
+            values.setHost(template.getHost());
+            values.setPlugin(template.getPlugin());
+            values.setPluginInstance(template.getPluginInstance());
+            values.setType(template.getType());
+            values.setTypeInstance(template.getTypeInstance());
+            values.setInterval(template.getInterval());
+            return values;
+        }
+    };
+
+    Meter(final UdpPacketSender sender, final EncodedIdentifier identifier, final ValueList template, final ValueType[] types) {
+        this.sender = sender;
+        this.identifier = identifier;
+        this.template = template;
+        this.types = types;
+    }
+
+    /**
+     * Get pre-encoded identifier.
+     *
+     * @return identifier
+     */
+    EncodedIdentifier getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * Get value types.
+     *
+     * @return value types (copy)
+     */
+    public ValueType[] getTypes() {
+        return Arrays.copyOf(types, types.length);
+    }
+
+    /**
+     * Record single integer value.
+     *
+     * @param value integer value
+     * @throws IOException unable to write value to output stream
+     */
+    public void record(final long value) throws IOException {
+        checkCount(1);
+        final ValueList values = prepare();
+        values.add(types[0], value);
+        send(values);
+    }
+
+    /**
+     * Record single double value.
+     *
+     * @param value double value
+     * @throws IOException unable to write value to output stream
+     */
+    public void record(final double value) throws IOException {
+        checkCount(1);
+        final ValueList values = prepare();
+        values.add(types[0], value);
+        send(values);
+    }
+
+    /**
+     * Record integer values, one for each value type.
+     *
+     * @param value integer values
+     * @throws IOException unable to write value to output stream
+     */
+    public void record(final long[] value) throws IOException {
+        checkCount(value.length);
+        final ValueList values = prepare();
+        for (int i = 0; i < types.length; i++) {
+            values.add(types[i], value[i]);
+        }
+        send(values);
+    }
+
+    /**
+     * Record double values, one for each value type.
+     *
+     * @param value double values
+     * @throws IOException unable to write value to output stream
+     */
+    public void record(final double[] value) throws IOException {
+        checkCount(value.length);
+        final ValueList values = prepare();
+        for (int i = 0; i < types.length; i++) {
+            values.add(types[i], value[i]);
+        }
+        send(values);
+    }
+
+    private ValueList prepare() {
+        final ValueList values = valueList.get();
+        values.clear();
+        values.setTime(System.currentTimeMillis());
+        return values;
+    }
+
+    private void send(final ValueList values) throws IOException {
+        sender.send(identifier, values);
+    }
+
+    private void checkCount(final int count) {
+        if (count != types.length) {
+            throw new IllegalArgumentException("Meter " + identifier.getName() + " expects " + types.length + " values, got " + count);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.collectd.services;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.collectd.model.ValueList;
+import org.collectd.model.ValueType;
+import org.collectd.protocol.EncodedIdentifier;
+
+/**
+ * Registry of metric handles ({@link Meter}) bound to a packet sender. Handles are registered once for a fixed identifier and they are reused for each
+ * recorded value. Value types are validated once at registration, recorded values are evaluated by thresholds and suppressed like other value lists of the
+ * sender.
+ */
+public class MetricRegistry {
+
+    private final UdpPacketSender sender;
+
+    private final ConcurrentMap<String, Meter> meters = new ConcurrentHashMap<>();
+
+    /**
+     * Create new metric registry.
+     *
+     * @param sender UDP packet sender
+     */
+    public MetricRegistry(final UdpPacketSender sender) {
+        Objects.requireNonNull(sender, "Missing packet sender");
+        this.sender = sender;
+    }
+
+    /**
+     * Get (or register) metric handle. Host name of packet sender is used.
+     *
+     * @param plugin plugin name
+     * @param pluginInstance plugin instance name (optional)
+     * @param type type name
+     * @param typeInstance type instance name (optional)
+     * @param types value types
+     * @return metric handle
+     */
+    public Meter meter(final String plugin, final String pluginInstance, final String type, final String typeInstance, final ValueType... types) {
+        return meter(sender.getClient(), plugin, pluginInstance, type, typeInstance, 0L, types);
+    }
+
+    /**
+     * Get (or register) metric handle.
+     *
+     * @param host host name
+     * @param plugin plugin name
+     * @param pluginInstance plugin instance name (optional)
+     * @param type type name
+     * @param typeInstance type instance name (optional)
+     * @param interval interval in milliseconds, not sent if not positive
+     * @param types value types
+     * @return metric handle
+     * @throws IllegalArgumentException value types do not match the data set of the type (if sender validates value lists)
+     */
+    public Meter meter(final String host, final String plugin, final String pluginInstance, final String type, final String typeInstance,
+            final long interval, final ValueType... types) {
+        if (types == null || types.length == 0) {
+            throw new IllegalArgumentException("Missing value types");
+        }
+        final TypeValidator validator = sender.getValidator();
+        if (validator != null) {
+            validator.check(type, types);
+        }
+
+        final EncodedIdentifier identifier = new EncodedIdentifier(host, plugin, pluginInstance, type, typeInstance);
+        Meter meter = meters.get(identifier.getName());
+        if (meter == null) {
+            final ValueList template = new ValueList(0);
+            template.setHost(host);
+            template.setPlugin(plugin);
+            template.setPluginInstance(pluginInstance);
+            template.setType(type);
+            template.setTypeInstance(typeInstance);
+            template.setInterval(interval);
+            final Meter created = new Meter(sender, identifier, template, Arrays.copyOf(types, types.length));
+            meter = meters.putIfAbsent(identifier.getName(), created);
+            if (meter == null) {
+                meter = created;
+            }
+        }
+
+        if (!Arrays.equals(meter.getTypes(), types)) {
+            throw new IllegalArgumentException("Meter " + identifier.getName() + " is already registered with value types " + Arrays.toString(meter.getTypes()));
+        }
+        return meter;
+    }
+
+    /**
+     * Get registered metric handles.
+     *
+     * @return metric handles
+     */
+    public Collection<Meter> getMeters() {
+        return Collections.unmodifiableCollection(meters.values());
+    }
+}
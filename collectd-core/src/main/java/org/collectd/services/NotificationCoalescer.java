@@ -0,0 +1,258 @@
+package org.collectd.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.collectd.model.Notification;
+import org.collectd.protocol.EncodedIdentifier;
+
+/**
+ * Coalesce repeated notifications and limit the rate of sent notifications. Notifications are keyed by identifier, severity and message template (digits
+ * of the message are ignored, so "queue size 153" and "queue size 154" are the same template). The first occurrence is sent immediately, repeats within the
+ * time window are counted and reported by a single summary notification (<code>repeated N times</code>) when the window is over. Number of tracked keys is
+ * bounded, the oldest window is closed early if the map is full. Sent notifications (first occurrences and summaries) are limited by a global token bucket.
+ */
+public class NotificationCoalescer {
+
+    /**
+     * Default maximum number of tracked notification keys.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long window;
+    private final TokenBucket bucket;
+    private final Map<Long, Entry> entries;
+    private final List<Notification> summaries = new ArrayList<>();
+
+    private final AtomicLong passed = new AtomicLong(0L);
+    private final AtomicLong coalesced = new AtomicLong(0L);
+    private final AtomicLong rateLimited = new AtomicLong(0L);
+    private final AtomicLong summarized = new AtomicLong(0L);
+
+    /**
+     * Create new notification coalescer.
+     *
+     * @param window time window of coalescing in milliseconds
+     * @param rate maximum notifications per second (0: not limited)
+     * @param maxEntries maximum number of tracked notification keys
+     */
+    @SuppressWarnings("serial")
+    public NotificationCoalescer(final long window, final double rate, final int maxEntries) {
+        if (window <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("Window and maximum number of entries must be positive");
+        }
+        this.window = window;
+        // burst of one second
+        bucket = rate > 0 ? new TokenBucket(rate, Math.max(1.0, rate)) : null;
+        // insertion order is the order of window start, windows are closed from the head
+        entries = new LinkedHashMap<Long, Entry>() {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, Entry> eldest) {
+                if (size() > maxEntries) {
+                    close(eldest.getValue(), System.currentTimeMillis());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Check if notification has to be sent now. Repeats are counted for the summary, notifications over the rate limit are dropped.
+     *
+     * @param notification notification
+     * @return <code>true</code> if notification is the first occurrence in the window and rate limit is not reached
+     */
+    public synchronized boolean accept(final Notification notification) {
+        final long now = System.currentTimeMillis();
+        expire(now);
+
+        final Long key = getKey(notification);
+        final Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.repeats++;
+            coalesced.incrementAndGet();
+            return false;
+        }
+
+        final Entry created = new Entry(notification, now);
+        entries.put(key, created);
+        if (bucket != null && !bucket.tryAcquire(1)) {
+            // first occurrence is reported by the summary
+            created.repeats++;
+            rateLimited.incrementAndGet();
+            return false;
+        }
+        passed.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Get summaries of closed windows (notifications with repeats only). Summaries over the rate limit are dropped.
+     *
+     * @return summary notifications, empty list if no window is closed
+     */
+    public synchronized List<Notification> drain() {
+        expire(System.currentTimeMillis());
+        if (summaries.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<Notification> result = new ArrayList<>(summaries.size());
+        for (final Notification summary : summaries) {
+            if (bucket == null || bucket.tryAcquire(1)) {
+                result.add(summary);
+                summarized.incrementAndGet();
+            } else {
+                rateLimited.incrementAndGet();
+            }
+        }
+        summaries.clear();
+        return result;
+    }
+
+    /**
+     * Get number of notifications passed (first occurrences).
+     *
+     * @return number of notifications
+     */
+    public long getPassed() {
+        return passed.get();
+    }
+
+    /**
+     * Get number of repeated notifications coalesced into summaries.
+     *
+     * @return number of notifications
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * Get number of notifications and summaries dropped by the rate limit.
+     *
+     * @return number of notifications
+     */
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    /**
+     * Get number of summaries passed.
+     *
+     * @return number of summaries
+     */
+    public long getSummarized() {
+        return summarized.get();
+    }
+
+    /**
+     * Get number of tracked notification keys.
+     *
+     * @return number of keys
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Close expired windows. Keys with repeats start a new window (so repeats are still coalesced), keys without repeats are removed.
+     */
+    private void expire(final long now) {
+        List<Map.Entry<Long, Entry>> renewed = null;
+        for (final Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator(); it.hasNext();) {
+            final Map.Entry<Long, Entry> item = it.next();
+            final Entry entry = item.getValue();
+            if (now - entry.start < window) {
+                break;
+            }
+            it.remove();
+            if (entry.repeats > 0) {
+                close(entry, now);
+                if (renewed == null) {
+                    renewed = new ArrayList<>();
+                }
+                renewed.add(item);
+            }
+        }
+        if (renewed != null) {
+            for (final Map.Entry<Long, Entry> item : renewed) {
+                item.getValue().start = now;
+                item.getValue().repeats = 0;
+                entries.put(item.getKey(), item.getValue());
+            }
+        }
+    }
+
+    private void close(final Entry entry, final long now) {
+        if (entry.repeats == 0) {
+            return;
+        }
+        final Notification first = entry.first;
+        final Notification summary = new Notification();
+        summary.setHost(first.getHost());
+        summary.setTime(now);
+        summary.setPlugin(first.getPlugin());
+        summary.setPluginInstance(first.getPluginInstance());
+        summary.setType(first.getType());
+        summary.setTypeInstance(first.getTypeInstance());
+        summary.setSeverity(first.getSeverity());
+        summary.setMessage(first.getMessage() + " (repeated " + entry.repeats + " times in " + (now - entry.start) + " ms)");
+        summaries.add(summary);
+    }
+
+    private static Long getKey(final Notification notification) {
+        long hash = EncodedIdentifier.hash(notification.getHost(), notification.getPlugin(), notification.getPluginInstance(), notification.getType(),
+                notification.getTypeInstance());
+        hash = (hash ^ (notification.getSeverity() != null ? notification.getSeverity().getCode() : 0)) * FNV_PRIME;
+
+        final String message = notification.getMessage();
+        if (message != null) {
+            boolean digits = false;
+            for (int i = 0; i < message.length(); i++) {
+                final char c = message.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    // a run of digits is hashed as a single placeholder
+                    if (!digits) {
+                        hash = (hash ^ '#') * FNV_PRIME;
+                    }
+                    digits = true;
+                } else {
+                    hash = (hash ^ c) * FNV_PRIME;
+                    digits = false;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Coalescing state of a notification key.
+     */
+    private static final class Entry {
+
+        private final Notification first;
+        private long start;
+        private int repeats;
+
+        private Entry(final Notification notification, final long start) {
+            // notification instances may be reused by the caller
+            first = new Notification();
+            first.setHost(notification.getHost());
+            first.setPlugin(notification.getPlugin());
+            first.setPluginInstance(notification.getPluginInstance());
+            first.setType(notification.getType());
+            first.setTypeInstance(notification.getTypeInstance());
+            first.setSeverity(notification.getSeverity());
+            first.setMessage(notification.getMessage());
+            this.start = start;
+        }
+    }
+}
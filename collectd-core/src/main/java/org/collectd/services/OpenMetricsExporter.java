@@ -0,0 +1,476 @@
+package org.collectd.services;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.collectd.config.DataSet;
+import org.collectd.config.TypesDb;
+import org.collectd.model.Histogram;
+import org.collectd.model.PluginData;
+import org.collectd.model.SampleRing;
+import org.collectd.model.ValueList;
+import org.collectd.model.ValueType;
+import org.collectd.model.Values;
+
+/**
+ * Publish value lists on an embedded HTTP endpoint in OpenMetrics text format. Latest values of each identifier are kept and rendered once per collection
+ * cycle ({@link #render()}) into a reusable byte buffer, scrapes are served from the rendered buffer as it is, so scraping never triggers collection.
+ * <p>
+ * Metric name is <code>collectd_&lt;plugin&gt;_&lt;type&gt;[_&lt;data source&gt;]</code>, COUNTER, DERIVE and ABSOLUTE values are counters, GAUGE values
+ * are gauges. Host, plugin instance and type instance are labels. Data source names are taken from types.db (if set), index is used for multi-value types
+ * otherwise.
+ */
+@Slf4j
+public class OpenMetricsExporter implements Closeable {
+
+    /**
+     * Content type of OpenMetrics text format.
+     */
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    /**
+     * Default path of the endpoint.
+     */
+    public static final String DEFAULT_PATH = "/metrics";
+
+    private static final String THREAD_NAME = "collectd-openmetrics";
+    private static final int HTTP_THREADS = 2;
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_NOT_ALLOWED = 405;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private static final String COUNTER_SUFFIX = "_total";
+    private static final String EOF = "# EOF\n";
+
+    private final ConcurrentHashMap<String, Series> series = new ConcurrentHashMap<>();
+    private final long expireAfter;
+    private volatile TypesDb typesDb;
+
+    private final StringBuilder text = new StringBuilder();
+    private volatile Snapshot current = new Snapshot(EOF.length());
+    private Snapshot spare = new Snapshot(INITIAL_BUFFER_SIZE);
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private final AtomicLong scrapes = new AtomicLong(0L);
+    private final AtomicLong renders = new AtomicLong(0L);
+
+    /**
+     * Create new exporter.
+     *
+     * @param expireAfter series not updated for this period (in milliseconds) are removed on rendering, series are kept forever if not positive
+     */
+    public OpenMetricsExporter(final long expireAfter) {
+        this.expireAfter = expireAfter;
+        encode(EOF, current);
+    }
+
+    /**
+     * Set types.db registry for data source names of multi-value types.
+     *
+     * @param typesDb types.db registry, value index is used as data source name if null
+     */
+    public void setTypesDb(final TypesDb typesDb) {
+        this.typesDb = typesDb;
+    }
+
+    /**
+     * Record latest values of value lists and histograms, notifications are ignored. Recorded values are published by the next {@link #render()}.
+     *
+     * @param data value lists and histograms
+     */
+    public void record(final Collection<? extends PluginData> data) {
+        for (final PluginData item : data) {
+            record(item);
+        }
+    }
+
+    /**
+     * Record latest values of a value list, histogram or sample ring, notifications are ignored.
+     *
+     * @param data value list, histogram or sample ring
+     */
+    public void record(final PluginData data) {
+        if (data instanceof ValueList) {
+            record((ValueList) data);
+        } else if (data instanceof SampleRing) {
+            final SampleRing samples = (SampleRing) data;
+            synchronized (samples) {
+                if (samples.size() > 0) {
+                    final ValueList valueList = new ValueList(samples.getValueCount());
+                    samples.copyTo(samples.size() - 1, valueList);
+                    record(valueList);
+                }
+            }
+        } else if (data instanceof Values) {
+            final ValueList valueList = new ValueList(((Values) data).getItems().size());
+            valueList.copyOf((Values) data);
+            record(valueList);
+        } else if (data instanceof Histogram) {
+            record(((Histogram) data).toValues());
+        }
+    }
+
+    private void record(final ValueList values) {
+        final String key = values.getHost() + "/" + values.getPlugin() + "-" + values.getPluginInstance() + "/" + values.getType() + "-"
+                + values.getTypeInstance();
+        Series s = series.get(key);
+        if (s == null || !s.matches(values)) {
+            // value types of the identifier are changed, series is replaced
+            s = new Series(values, typesDb);
+            series.put(key, s);
+        }
+        s.update(values);
+    }
+
+    /**
+     * Render recorded values into the response buffer. Called once per collection cycle, scrapes get the previous buffer until rendering is finished.
+     */
+    public synchronized void render() {
+        final long now = System.currentTimeMillis();
+        final Map<String, List<Series>> families = new TreeMap<>();
+        for (final Map.Entry<String, Series> entry : series.entrySet()) {
+            final Series s = entry.getValue();
+            if (expireAfter > 0 && now - s.updated > expireAfter) {
+                series.remove(entry.getKey(), s);
+                continue;
+            }
+            for (int i = 0; i < s.families.length; i++) {
+                List<Series> members = families.get(s.families[i]);
+                if (members == null) {
+                    members = new ArrayList<>();
+                    families.put(s.families[i], members);
+                }
+                members.add(s);
+            }
+        }
+
+        text.setLength(0);
+        for (final Map.Entry<String, List<Series>> family : families.entrySet()) {
+            final String name = family.getKey();
+            boolean typeWritten = false;
+            for (final Series s : family.getValue()) {
+                s.render(name, text, typeWritten);
+                typeWritten = true;
+            }
+        }
+        text.append(EOF);
+
+        // spare buffer is reused only if no scrape is reading it, a new buffer is allocated otherwise
+        Snapshot target = spare;
+        if (target.readers.get() != 0) {
+            target = new Snapshot(target.data.length);
+        }
+        encode(text, target);
+        spare = current;
+        current = target;
+        renders.incrementAndGet();
+    }
+
+    /**
+     * Start HTTP endpoint.
+     *
+     * @param address listen address
+     * @param path context path (i.e. {@link #DEFAULT_PATH})
+     * @throws IOException unable to bind address
+     */
+    public synchronized void start(final InetSocketAddress address, final String path) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Endpoint is already started");
+        }
+        executor = Executors.newFixedThreadPool(HTTP_THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable task) {
+                final Thread thread = new Thread(task, THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server = HttpServer.create(address, 0);
+        server.createContext(path, new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+        log.info("OpenMetrics endpoint started: http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path);
+    }
+
+    /**
+     * Get bound address of HTTP endpoint.
+     *
+     * @return socket address, null if endpoint is not started
+     */
+    public synchronized InetSocketAddress getAddress() {
+        return server != null ? server.getAddress() : null;
+    }
+
+    /**
+     * Stop HTTP endpoint.
+     */
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Get number of served scrapes.
+     *
+     * @return number of scrapes
+     */
+    public long getScrapes() {
+        return scrapes.get();
+    }
+
+    /**
+     * Get number of rendered snapshots.
+     *
+     * @return number of snapshots
+     */
+    public long getRenders() {
+        return renders.get();
+    }
+
+    /**
+     * Get number of published series (identifiers).
+     *
+     * @return number of series
+     */
+    public int getSeriesCount() {
+        return series.size();
+    }
+
+    private void serve(final HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(HTTP_NOT_ALLOWED, -1);
+                return;
+            }
+
+            final Snapshot snapshot = acquire();
+            try {
+                exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                if ("HEAD".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(HTTP_OK, -1);
+                } else {
+                    exchange.sendResponseHeaders(HTTP_OK, snapshot.length);
+                    final OutputStream body = exchange.getResponseBody();
+                    body.write(snapshot.data, 0, snapshot.length);
+                    body.close();
+                }
+            } finally {
+                snapshot.readers.decrementAndGet();
+            }
+            scrapes.incrementAndGet();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Get current snapshot and mark it as being read, so it is not overwritten by the next rendering.
+     */
+    private Snapshot acquire() {
+        while (true) {
+            final Snapshot snapshot = current;
+            snapshot.readers.incrementAndGet();
+            if (snapshot == current) {
+                return snapshot;
+            }
+            // snapshot is swapped meanwhile, it may be overwritten
+            snapshot.readers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Encode text as UTF-8 into snapshot buffer (growing it if necessary) without allocating intermediate byte arrays.
+     */
+    private static void encode(final CharSequence val, final Snapshot target) {
+        final int len = val.length();
+        if (target.data.length < len * 3) {
+            // worst case of UTF-8 encoding, buffer is kept for later renderings
+            target.data = new byte[Math.max(len * 3, target.data.length * 2)];
+        }
+        final byte[] data = target.data;
+        int position = 0;
+        for (int i = 0; i < len; i++) {
+            final char c = val.charAt(i);
+            if (c < 0x80) {
+                data[position++] = (byte) c;
+            } else if (c < 0x800) {
+                data[position++] = (byte) (0xc0 | c >> 6);
+                data[position++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(val.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, val.charAt(++i));
+                data[position++] = (byte) (0xf0 | cp >> 18);
+                data[position++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                data[position++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                data[position++] = (byte) (0x80 | cp & 0x3f);
+            } else {
+                data[position++] = (byte) (0xe0 | c >> 12);
+                data[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+                data[position++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        target.length = position;
+    }
+
+    private static String sanitize(final String val) {
+        final StringBuilder result = new StringBuilder(val.length());
+        for (int i = 0; i < val.length(); i++) {
+            final char c = val.charAt(i);
+            result.append(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_' ? c : '_');
+        }
+        return result.toString();
+    }
+
+    private static void appendLabel(final StringBuilder labels, final String name, final String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        labels.append(labels.length() == 0 ? '{' : ',').append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                labels.append('\\').append(c);
+            } else if (c == '\n') {
+                labels.append("\\n");
+            } else {
+                labels.append(c);
+            }
+        }
+        labels.append('"');
+    }
+
+    /**
+     * Latest values of an identifier. Metric names and labels are rendered once when the series is created.
+     */
+    private static final class Series {
+
+        private final byte[] types;
+        private final String[] families;
+        private final String[] samples;
+        private final long[] values;
+        private volatile long updated;
+
+        private Series(final ValueList valueList, final TypesDb typesDb) {
+            final int size = valueList.size();
+            types = new byte[size];
+            families = new String[size];
+            samples = new String[size];
+            values = new long[size];
+
+            final StringBuilder labels = new StringBuilder();
+            appendLabel(labels, "host", valueList.getHost());
+            appendLabel(labels, "plugin_instance", valueList.getPluginInstance());
+            appendLabel(labels, "type_instance", valueList.getTypeInstance());
+            if (labels.length() > 0) {
+                labels.append('}');
+            }
+
+            final DataSet dataSet = typesDb != null ? typesDb.getDataSet(valueList.getType()) : null;
+            final String base = "collectd_" + sanitize(valueList.getPlugin() != null ? valueList.getPlugin() : "") + "_"
+                    + sanitize(valueList.getType() != null ? valueList.getType() : "");
+            for (int i = 0; i < size; i++) {
+                types[i] = valueList.getTypeCode(i);
+                final String family;
+                if (dataSet != null && dataSet.size() == size) {
+                    final String source = dataSet.getSources().get(i).getName();
+                    family = size > 1 || !"value".equals(source) ? base + "_" + sanitize(source) : base;
+                } else {
+                    family = size > 1 ? base + "_" + i : base;
+                }
+                families[i] = family;
+                samples[i] = (isCounter(i) ? family + COUNTER_SUFFIX : family) + labels + " ";
+            }
+        }
+
+        private boolean isCounter(final int index) {
+            return types[index] != ValueType.GAUGE.getCode();
+        }
+
+        private boolean matches(final ValueList valueList) {
+            if (valueList.size() != types.length) {
+                return false;
+            }
+            for (int i = 0; i < types.length; i++) {
+                if (valueList.getTypeCode(i) != types[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private synchronized void update(final ValueList valueList) {
+            for (int i = 0; i < types.length; i++) {
+                values[i] = valueList.getRawValue(i);
+            }
+            updated = System.currentTimeMillis();
+        }
+
+        private synchronized void render(final String family, final StringBuilder text, final boolean typeWritten) {
+            for (int i = 0; i < families.length; i++) {
+                if (!families[i].equals(family)) {
+                    continue;
+                }
+                if (!typeWritten) {
+                    text.append("# TYPE ").append(family).append(isCounter(i) ? " counter\n" : " gauge\n");
+                }
+                text.append(samples[i]);
+                if (isCounter(i)) {
+                    text.append(values[i]);
+                } else {
+                    final double value = Double.longBitsToDouble(values[i]);
+                    if (Double.isNaN(value)) {
+                        text.append("NaN");
+                    } else if (Double.isInfinite(value)) {
+                        text.append(value > 0 ? "+Inf" : "-Inf");
+                    } else {
+                        text.append(value);
+                    }
+                }
+                text.append('\n');
+            }
+        }
+    }
+
+    /**
+     * Rendered response body.
+     */
+    private static final class Snapshot {
+
+        private byte[] data;
+        private int length;
+        private final AtomicInteger readers = new AtomicInteger(0);
+
+        private Snapshot(final int capacity) {
+            data = new byte[capacity];
+        }
+    }
+}
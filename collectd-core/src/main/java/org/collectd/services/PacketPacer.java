@@ -0,0 +1,205 @@
+package org.collectd.services;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.collectd.protocol.PacketBuffer;
+
+/**
+ * Pace packets using token buckets (packets per second and bytes per second). Packets exceeding the rate are queued into a bounded backlog and transmitted
+ * by a background thread, so producers are never blocked. Packets are dropped if backlog is full.
+ * <p>
+ * Packets submitted after shutdown (by threads which read the pacer before it was replaced) are transmitted without pacing.
+ */
+@Slf4j
+public class PacketPacer {
+
+    private static final String PACER_THREAD_NAME = "collectd-pacer";
+    private static final long POLL_INTERVAL = 100L;
+
+    private final TokenBucket packetBucket;
+    private final TokenBucket byteBucket;
+    private final BlockingQueue<PacketBuffer> backlog;
+    private final PacketTransmitter transmitter;
+
+    private final AtomicLong delayed = new AtomicLong(0L);
+    private final AtomicLong dropped = new AtomicLong(0L);
+    // packets in backlog or held by the background thread
+    private final AtomicInteger queued = new AtomicInteger(0);
+    private final AtomicInteger submitters = new AtomicInteger(0);
+
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * Create new packet pacer and start background thread.
+     *
+     * @param transmitter packet transmitter
+     * @param packetsPerSecond packet rate, not limited if not positive
+     * @param bytesPerSecond byte rate, not limited if not positive
+     * @param backlogSize maximum number of queued packets
+     */
+    PacketPacer(final PacketTransmitter transmitter, final double packetsPerSecond, final long bytesPerSecond, final int backlogSize) {
+        this.transmitter = transmitter;
+        // burst is limited to one second (but at least one maximum sized packet)
+        packetBucket = packetsPerSecond > 0 ? new TokenBucket(packetsPerSecond, Math.max(1.0, packetsPerSecond)) : null;
+        byteBucket = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, bytesPerSecond) : null;
+        backlog = new ArrayBlockingQueue<>(backlogSize);
+
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, PACER_THREAD_NAME);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Transmit packet immediately if rate allows and no packet is waiting (queued or held by the background thread), queue it otherwise.
+     *
+     * @param buffer packet buffer
+     * @throws IOException unable to transmit packet
+     */
+    void submit(final PacketBuffer buffer) throws IOException {
+        submitters.incrementAndGet();
+        try {
+            if (!running || (queued.get() == 0 && tryAcquire(buffer.getLength()))) {
+                transmitter.transmit(buffer);
+            } else if (enqueue(buffer)) {
+                delayed.incrementAndGet();
+            } else {
+                dropped.incrementAndGet();
+                buffer.release();
+                if (log.isDebugEnabled()) {
+                    log.debug("Pacer backlog is full, packet dropped");
+                }
+            }
+        } finally {
+            submitters.decrementAndGet();
+        }
+    }
+
+    /**
+     * Stop background thread and transmit queued packets without pacing. Packets submitted concurrently are queued before the backlog is drained.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        while (submitters.get() > 0) {
+            Thread.yield();
+        }
+
+        final List<PacketBuffer> remaining = new ArrayList<>();
+        backlog.drainTo(remaining);
+        for (final PacketBuffer buffer : remaining) {
+            send(buffer);
+        }
+    }
+
+    /**
+     * Get number of packets delayed (queued into backlog).
+     *
+     * @return number of packets
+     */
+    public long getDelayed() {
+        return delayed.get();
+    }
+
+    /**
+     * Get number of packets dropped because backlog was full.
+     *
+     * @return number of packets
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Get number of packets waiting in backlog.
+     *
+     * @return number of packets
+     */
+    public int getBacklog() {
+        return backlog.size();
+    }
+
+    private synchronized boolean tryAcquire(final int length) {
+        if (getWaitNanos(length) > 0) {
+            return false;
+        }
+        if (packetBucket != null) {
+            packetBucket.tryAcquire(1);
+        }
+        if (byteBucket != null) {
+            byteBucket.tryAcquire(length);
+        }
+        return true;
+    }
+
+    private long getWaitNanos(final int length) {
+        return Math.max(packetBucket != null ? packetBucket.getWaitNanos(1) : 0L, byteBucket != null ? byteBucket.getWaitNanos(length) : 0L);
+    }
+
+    private boolean enqueue(final PacketBuffer buffer) {
+        queued.incrementAndGet();
+        if (backlog.offer(buffer)) {
+            return true;
+        }
+        queued.decrementAndGet();
+        return false;
+    }
+
+    /**
+     * Transmit queued packets when the rate allows. Packet held while waiting is transmitted without pacing on shutdown.
+     */
+    private void drain() {
+        PacketBuffer buffer = null;
+        try {
+            while (running) {
+                buffer = backlog.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (buffer == null) {
+                    continue;
+                }
+                while (running && !tryAcquire(buffer.getLength())) {
+                    final long waitNanos;
+                    synchronized (this) {
+                        waitNanos = getWaitNanos(buffer.getLength());
+                    }
+                    LockSupport.parkNanos(this, Math.max(1L, waitNanos));
+                }
+                send(buffer);
+                buffer = null;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (buffer != null) {
+                send(buffer);
+            }
+        }
+    }
+
+    private void send(final PacketBuffer buffer) {
+        try {
+            transmitter.transmit(buffer);
+        } catch (IOException ex) {
+            log.error("Unable to send paced packet", ex);
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+}
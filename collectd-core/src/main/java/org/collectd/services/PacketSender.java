@@ -0,0 +1,78 @@
+package org.collectd.services;
+
+import java.io.IOException;
+import java.util.Collection;
+import org.collectd.model.Histogram;
+import org.collectd.model.Notification;
+import org.collectd.model.PluginData;
+import org.collectd.model.SampleRing;
+import org.collectd.model.ValueList;
+import org.collectd.model.Values;
+
+/**
+ * Packet sender for Collectd.
+ */
+public interface PacketSender {
+
+    /**
+     * Write value list.
+     *
+     * @param values numeric value list
+     * @throws IOException unable to write value to output stream
+     */
+    void send(Values values) throws IOException;
+
+    /**
+     * Write primitive value list.
+     *
+     * @param values numeric value list
+     * @throws IOException unable to write value to output stream
+     */
+    void send(ValueList values) throws IOException;
+
+    /**
+     * Write histogram snapshot and reset histogram.
+     *
+     * @param histogram latency histogram
+     * @throws IOException unable to write value to output stream
+     */
+    void send(Histogram histogram) throws IOException;
+
+    /**
+     * Write buffered samples in a batch and clear sample ring.
+     *
+     * @param samples high-frequency samples of an identifier
+     * @throws IOException unable to write value to output stream
+     */
+    void send(SampleRing samples) throws IOException;
+
+    /**
+     * Write notification.
+     *
+     * @param notification notification
+     * @throws IOException unable to write value to output stream
+     */
+    void send(Notification notification) throws IOException;
+
+    /**
+     * Write a batch of value lists, histogram snapshots and notifications. Batch is encoded in one pass.
+     *
+     * @param data value lists ({@link Values} or {@link ValueList}), histograms and notifications
+     * @throws IOException unable to write value to output stream
+     */
+    void send(Collection<? extends PluginData> data) throws IOException;
+
+    /**
+     * Flush buffer.
+     *
+     * @throws IOException unable to write buffer
+     */
+    void flush() throws IOException;
+
+    /**
+     * Flush buffer and release resources.
+     *
+     * @throws IOException unable to write buffer
+     */
+    void close() throws IOException;
+}
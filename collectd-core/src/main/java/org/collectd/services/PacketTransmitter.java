@@ -0,0 +1,18 @@
+package org.collectd.services;
+
+import java.io.IOException;
+import org.collectd.protocol.PacketBuffer;
+
+/**
+ * Transmit finished packets to Collectd server.
+ */
+interface PacketTransmitter {
+
+    /**
+     * Transmit packet. Buffer is released by the transmitter.
+     *
+     * @param buffer packet buffer
+     * @throws IOException unable to transmit packet
+     */
+    void transmit(PacketBuffer buffer) throws IOException;
+}
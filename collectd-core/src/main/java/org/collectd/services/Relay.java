@@ -0,0 +1,469 @@
+package org.collectd.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import lombok.extern.slf4j.Slf4j;
+import org.collectd.model.Notification;
+import org.collectd.model.ValueList;
+import org.collectd.model.ValueType;
+import org.collectd.model.Values;
+import org.collectd.protocol.PacketReader;
+
+/**
+ * Relay of Collectd packets. Packets are received by several threads, each thread has its own socket bound to the same address if
+ * <code>SO_REUSEPORT</code> is supported (Java 9+), otherwise threads share a single socket. Packets are decoded in place and received data is forwarded
+ * (optionally filtered and rewritten) to the upstream sender, which re-batches data of all agents into full packets. Buffer of the upstream sender is
+ * flushed periodically, so partial packets are not delayed longer than the flush interval. Only unicast listen addresses are supported.
+ */
+@Slf4j
+public class Relay implements RelayMBean, Closeable {
+
+    /**
+     * Object name prefix of registered MBeans, name key is the name of the relay.
+     */
+    public static final String OBJECT_NAME_PREFIX = "org.collectd:type=Relay,name=";
+
+    /**
+     * Default flush interval of upstream sender in milliseconds.
+     */
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000L;
+
+    private static final String RECEIVE_THREAD_NAME = "collectd-relay-";
+    private static final String FLUSH_THREAD_NAME = "collectd-relay-flush";
+    private static final int MAX_DATAGRAM_SIZE = 65535;
+    private static final long JOIN_TIMEOUT = 5000L;
+    private static final String DERIVE_TYPE = "derive";
+
+    private static final SocketOption<Boolean> SO_REUSEPORT = getReusePortOption();
+
+    private final InetSocketAddress address;
+    private final int threads;
+    private final PacketSender upstream;
+
+    private RelayFilter filter;
+    private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+    private int receiveBufferSize;
+
+    private final List<DatagramChannel> channels = new ArrayList<>();
+    private final List<Thread> receivers = new ArrayList<>();
+    private ScheduledExecutorService flusher;
+    private volatile boolean running;
+
+    private final StripedCounter packets = new StripedCounter();
+    private final StripedCounter bytes = new StripedCounter();
+    private final StripedCounter invalid = new StripedCounter();
+    private final StripedCounter valueLists = new StripedCounter();
+    private final StripedCounter notifications = new StripedCounter();
+    private final StripedCounter filtered = new StripedCounter();
+    private final StripedCounter forwarded = new StripedCounter();
+    private final StripedCounter forwardErrors = new StripedCounter();
+
+    private String name;
+    private ObjectName objectName;
+
+    /**
+     * Create new relay.
+     *
+     * @param address listen address (unicast)
+     * @param threads number of receive threads
+     * @param upstream sender of received data, it is flushed but not closed by the relay
+     */
+    public Relay(final InetSocketAddress address, final int threads, final PacketSender upstream) {
+        Objects.requireNonNull(address, "Missing listen address");
+        Objects.requireNonNull(upstream, "Missing upstream sender");
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of receive threads must be positive");
+        }
+        if (address.getAddress() != null && address.getAddress().isMulticastAddress()) {
+            throw new IllegalArgumentException("Multicast listen address is not supported: " + address);
+        }
+        this.address = address;
+        this.threads = threads;
+        this.upstream = upstream;
+    }
+
+    /**
+     * Set filter of received data.
+     *
+     * @param filter filter, all data is forwarded if null
+     */
+    public void setFilter(final RelayFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Set flush interval of upstream sender. Must be set before starting the relay.
+     *
+     * @param flushInterval interval in milliseconds, buffer is flushed only if it is full if not positive
+     */
+    public void setFlushInterval(final long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Set receive buffer size of sockets. Must be set before starting the relay.
+     *
+     * @param receiveBufferSize buffer size in bytes, OS default is used if not positive
+     */
+    public void setReceiveBufferSize(final int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * Bind sockets and start receive threads.
+     *
+     * @throws IOException unable to bind sockets
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            throw new IllegalStateException("Relay is already started");
+        }
+        try {
+            openChannels();
+        } catch (IOException ex) {
+            closeChannels();
+            throw ex;
+        }
+        running = true;
+
+        for (int i = 0; i < threads; i++) {
+            final Thread receiver = new Thread(new Receiver(channels.get(i % channels.size())), RECEIVE_THREAD_NAME + i);
+            receiver.setDaemon(true);
+            receivers.add(receiver);
+            receiver.start();
+        }
+
+        if (flushInterval > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable task) {
+                    final Thread thread = new Thread(task, FLUSH_THREAD_NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            flusher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flushUpstream();
+                }
+            }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+        log.info("Collectd relay listening on " + address + " (threads: " + threads + ", sockets: " + channels.size() + ")");
+    }
+
+    /**
+     * Stop receive threads, close sockets and flush upstream sender.
+     *
+     * @throws IOException unable to flush upstream sender
+     */
+    @Override
+    public void close() throws IOException {
+        final List<Thread> stopped;
+        synchronized (this) {
+            running = false;
+            closeChannels();
+            if (flusher != null) {
+                flusher.shutdownNow();
+                flusher = null;
+            }
+            stopped = new ArrayList<>(receivers);
+            receivers.clear();
+        }
+        try {
+            for (final Thread receiver : stopped) {
+                receiver.join(JOIN_TIMEOUT);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        unregister();
+        upstream.flush();
+    }
+
+    /**
+     * Get listen address.
+     *
+     * @return socket address (with bound port if port 0 was requested and relay is started)
+     */
+    public synchronized InetSocketAddress getAddress() {
+        if (!channels.isEmpty()) {
+            try {
+                return (InetSocketAddress) channels.get(0).getLocalAddress();
+            } catch (IOException ex) {
+                log.debug("Unable to get local address", ex);
+            }
+        }
+        return address;
+    }
+
+    /**
+     * Register statistics as MBean in the platform MBean server. MBean registered earlier is unregistered.
+     *
+     * @param relayName name of the relay, used as plugin instance of emitted values too
+     */
+    public synchronized void register(final String relayName) {
+        unregister();
+        name = relayName;
+        try {
+            final ObjectName on = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(relayName));
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(on)) {
+                server.unregisterMBean(on);
+            }
+            server.registerMBean(this, on);
+            objectName = on;
+        } catch (JMException ex) {
+            log.error("Unable to register relay MBean", ex);
+        }
+    }
+
+    /**
+     * Unregister MBean of statistics (if registered).
+     */
+    public synchronized void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException ex) {
+                log.warn("Unable to unregister relay MBean", ex);
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * Get statistics as Collectd values ({@link SenderStats#PLUGIN} plugin, plugin instance is the name of the relay). Counters are sent as DERIVE values.
+     *
+     * @return value lists
+     */
+    public List<Values> toValues() {
+        final List<Values> result = new ArrayList<>();
+        final long now = System.currentTimeMillis();
+
+        result.add(createValues("relay_packets", now, getPacketsReceived()));
+        result.add(createValues("relay_bytes", now, getBytesReceived()));
+        result.add(createValues("relay_invalid", now, getInvalidPackets()));
+        result.add(createValues("relay_value_lists", now, getValueListsReceived()));
+        result.add(createValues("relay_notifications", now, getNotificationsReceived()));
+        result.add(createValues("relay_filtered", now, getFiltered()));
+        result.add(createValues("relay_forwarded", now, getForwarded()));
+        result.add(createValues("relay_errors", now, getForwardErrors()));
+
+        return result;
+    }
+
+    @Override
+    public long getPacketsReceived() {
+        return packets.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getInvalidPackets() {
+        return invalid.sum();
+    }
+
+    @Override
+    public long getValueListsReceived() {
+        return valueLists.sum();
+    }
+
+    @Override
+    public long getNotificationsReceived() {
+        return notifications.sum();
+    }
+
+    @Override
+    public long getFiltered() {
+        return filtered.sum();
+    }
+
+    @Override
+    public long getForwarded() {
+        return forwarded.sum();
+    }
+
+    @Override
+    public long getForwardErrors() {
+        return forwardErrors.sum();
+    }
+
+    @Override
+    public int getReceiveThreads() {
+        return threads;
+    }
+
+    @Override
+    public synchronized int getReceiveSockets() {
+        return channels.size();
+    }
+
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private void openChannels() throws IOException {
+        final DatagramChannel first = openChannel();
+        final boolean reusePort = threads > 1 && SO_REUSEPORT != null && first.supportedOptions().contains(SO_REUSEPORT);
+        if (reusePort) {
+            first.setOption(SO_REUSEPORT, true);
+        }
+        first.bind(address);
+
+        if (reusePort) {
+            // kernel distributes packets among sockets, additional sockets are bound to the actual port (if ephemeral port was requested)
+            for (int i = 1; i < threads; i++) {
+                final DatagramChannel channel = openChannel();
+                channel.setOption(SO_REUSEPORT, true);
+                channel.bind(first.getLocalAddress());
+            }
+        }
+    }
+
+    private DatagramChannel openChannel() throws IOException {
+        final DatagramChannel channel = DatagramChannel.open();
+        channels.add(channel);
+        if (receiveBufferSize > 0) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+        }
+        return channel;
+    }
+
+    private void closeChannels() {
+        for (final DatagramChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                log.warn("Unable to close relay socket", ex);
+            }
+        }
+        channels.clear();
+    }
+
+    private void flushUpstream() {
+        try {
+            upstream.flush();
+        } catch (IOException ex) {
+            log.error("Unable to flush relay upstream sender", ex);
+        }
+    }
+
+    private Values createValues(final String typeInstance, final long time, final long value) {
+        final Values result = new Values();
+        result.setTime(time);
+        result.setPlugin(SenderStats.PLUGIN);
+        result.setPluginInstance(name);
+        result.setType(DERIVE_TYPE);
+        result.setTypeInstance(typeInstance);
+        result.getItems().add(new Values.ValueHolder(ValueType.DERIVE, value));
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> getReusePortOption() {
+        try {
+            // available since Java 9
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Receive loop of a thread. Each thread has its own buffer and reader, counters are striped.
+     */
+    private final class Receiver implements Runnable, PacketReader.Handler {
+
+        private final DatagramChannel channel;
+
+        private Receiver(final DatagramChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void run() {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+            final PacketReader reader = new PacketReader(this);
+            while (running) {
+                buffer.clear();
+                try {
+                    if (channel.receive(buffer) == null) {
+                        continue;
+                    }
+                } catch (ClosedChannelException ex) {
+                    break;
+                } catch (IOException ex) {
+                    log.warn("Unable to receive packet", ex);
+                    continue;
+                }
+                buffer.flip();
+                packets.increment();
+                bytes.add(buffer.remaining());
+
+                try {
+                    reader.read(buffer);
+                } catch (IOException ex) {
+                    invalid.increment();
+                    if (log.isDebugEnabled()) {
+                        log.debug("Invalid packet received", ex);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void values(final ValueList values) {
+            valueLists.increment();
+            if (filter != null && !filter.accept(values)) {
+                filtered.increment();
+                return;
+            }
+            try {
+                upstream.send(values);
+                forwarded.increment();
+            } catch (IOException | IllegalArgumentException ex) {
+                forwardErrors.increment();
+                if (log.isDebugEnabled()) {
+                    log.debug("Unable to forward value list " + values, ex);
+                }
+            }
+        }
+
+        @Override
+        public void notification(final Notification notification) {
+            notifications.increment();
+            if (filter != null && !filter.accept(notification)) {
+                filtered.increment();
+                return;
+            }
+            try {
+                upstream.send(notification);
+                forwarded.increment();
+            } catch (IOException | IllegalArgumentException ex) {
+                forwardErrors.increment();
+                if (log.isDebugEnabled()) {
+                    log.debug("Unable to forward notification " + notification, ex);
+                }
+            }
+        }
+    }
+}
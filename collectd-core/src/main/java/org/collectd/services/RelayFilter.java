@@ -0,0 +1,18 @@
+package org.collectd.services;
+
+import org.collectd.model.PluginData;
+
+/**
+ * Filter of data received by {@link Relay}. Filter may rewrite received data (i.e. identifier parts) before it is forwarded. Filters are called by all
+ * receive threads concurrently.
+ */
+public interface RelayFilter {
+
+    /**
+     * Check (and optionally rewrite) received value list or notification. Passed instance is reused by the relay, filter must not keep a reference to it.
+     *
+     * @param data received value list or notification
+     * @return <code>true</code> if data is forwarded, <code>false</code> if it is dropped
+     */
+    boolean accept(PluginData data);
+}
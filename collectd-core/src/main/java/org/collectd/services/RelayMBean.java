@@ -0,0 +1,77 @@
+package org.collectd.services;
+
+/**
+ * Management interface of relay statistics. Statistics of the upstream sender are registered separately (see {@link SenderStatsMBean}).
+ */
+public interface RelayMBean {
+
+    /**
+     * Get number of received packets.
+     *
+     * @return number of packets
+     */
+    long getPacketsReceived();
+
+    /**
+     * Get number of received bytes.
+     *
+     * @return number of bytes
+     */
+    long getBytesReceived();
+
+    /**
+     * Get number of packets that could not be decoded (data decoded before the invalid part is forwarded).
+     *
+     * @return number of packets
+     */
+    long getInvalidPackets();
+
+    /**
+     * Get number of decoded value lists.
+     *
+     * @return number of value lists
+     */
+    long getValueListsReceived();
+
+    /**
+     * Get number of decoded notifications.
+     *
+     * @return number of notifications
+     */
+    long getNotificationsReceived();
+
+    /**
+     * Get number of value lists and notifications dropped by filter.
+     *
+     * @return number of value lists and notifications
+     */
+    long getFiltered();
+
+    /**
+     * Get number of value lists and notifications forwarded to upstream sender.
+     *
+     * @return number of value lists and notifications
+     */
+    long getForwarded();
+
+    /**
+     * Get number of value lists and notifications that could not be forwarded.
+     *
+     * @return number of value lists and notifications
+     */
+    long getForwardErrors();
+
+    /**
+     * Get number of receive threads.
+     *
+     * @return number of threads
+     */
+    int getReceiveThreads();
+
+    /**
+     * Get number of receive sockets, more than one if <code>SO_REUSEPORT</code> is supported.
+     *
+     * @return number of sockets
+     */
+    int getReceiveSockets();
+}
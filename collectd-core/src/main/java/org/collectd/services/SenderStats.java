@@ -0,0 +1,378 @@
+package org.collectd.services;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import lombok.extern.slf4j.Slf4j;
+import org.collectd.model.Histogram;
+import org.collectd.model.ValueType;
+import org.collectd.model.Values;
+import org.collectd.protocol.UdpBufferWriter;
+
+/**
+ * Self-instrumentation of a packet sender. Counters are striped and latencies are recorded into lock-free histograms, so recording does not add contention
+ * to the send path. Statistics can be registered as an MBean ({@link #OBJECT_NAME_PREFIX}) and emitted as Collectd values of {@link #PLUGIN} plugin.
+ */
+@Slf4j
+public class SenderStats implements SenderStatsMBean {
+
+    /**
+     * Collectd plugin name of emitted statistics.
+     */
+    public static final String PLUGIN = "collectd-java";
+
+    /**
+     * Object name prefix of registered MBeans, name key is the name of statistics.
+     */
+    public static final String OBJECT_NAME_PREFIX = "org.collectd:type=Sender,name=";
+
+    private static final String DERIVE_TYPE = "derive";
+    private static final String GAUGE_TYPE = "gauge";
+    private static final String PERCENT_TYPE = "percent";
+
+    private final UdpPacketSender sender;
+
+    private final StripedCounter valueLists = new StripedCounter();
+    private final StripedCounter values = new StripedCounter();
+    private final StripedCounter notifications = new StripedCounter();
+    private final StripedCounter packets = new StripedCounter();
+    private final StripedCounter bytes = new StripedCounter();
+    private final StripedCounter capacity = new StripedCounter();
+    private final StripedCounter errors = new StripedCounter();
+    private final StripedCounter packedBatches = new StripedCounter();
+    private final StripedCounter packetsUnpacked = new StripedCounter();
+    private final StripedCounter bytesUnpacked = new StripedCounter();
+    private final StripedCounter capacityUnpacked = new StripedCounter();
+    private final StripedCounter packetsPacked = new StripedCounter();
+    private final StripedCounter bytesPacked = new StripedCounter();
+    private final StripedCounter capacityPacked = new StripedCounter();
+
+    private final Histogram encodeLatency = new Histogram();
+    private final Histogram flushLatency = new Histogram();
+    private final Histogram bulkLatency = new Histogram();
+    private final Histogram expressLatency = new Histogram();
+
+    private String name;
+    private ObjectName objectName;
+
+    SenderStats(final UdpPacketSender sender) {
+        this.sender = sender;
+    }
+
+    void recordValues(final int valueCount, final long nanos) {
+        valueLists.increment();
+        values.add(valueCount);
+        encodeLatency.record(nanos);
+    }
+
+    void recordNotification(final long nanos) {
+        notifications.increment();
+        encodeLatency.record(nanos);
+    }
+
+    void recordBatch(final int valueListCount, final int valueCount, final int notificationCount, final long nanos) {
+        valueLists.add(valueListCount);
+        values.add(valueCount);
+        notifications.add(notificationCount);
+        encodeLatency.record(nanos);
+    }
+
+    void recordPacket(final int length, final int packetCapacity, final long nanos) {
+        packets.increment();
+        bytes.add(length);
+        capacity.add(packetCapacity);
+        flushLatency.record(nanos);
+    }
+
+    void recordError() {
+        errors.increment();
+    }
+
+    void recordPacking(final UdpBufferWriter.Packing packing) {
+        packedBatches.increment();
+        packetsUnpacked.add(packing.getPacketsBefore());
+        bytesUnpacked.add(packing.getBytesBefore());
+        capacityUnpacked.add((long) packing.getPacketsBefore() * packing.getPacketSize());
+        packetsPacked.add(packing.getPacketsAfter());
+        bytesPacked.add(packing.getBytesAfter());
+        capacityPacked.add((long) packing.getPacketsAfter() * packing.getPacketSize());
+    }
+
+    Histogram getBulkLatency() {
+        return bulkLatency;
+    }
+
+    Histogram getExpressLatency() {
+        return expressLatency;
+    }
+
+    /**
+     * Register statistics as MBean in the platform MBean server. MBean registered earlier is unregistered.
+     *
+     * @param statsName name of statistics (i.e. Collectd server address), used as plugin instance of emitted values too
+     */
+    public synchronized void register(final String statsName) {
+        unregister();
+        name = statsName;
+        try {
+            final ObjectName on = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(statsName));
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(on)) {
+                server.unregisterMBean(on);
+            }
+            server.registerMBean(this, on);
+            objectName = on;
+        } catch (JMException ex) {
+            log.error("Unable to register sender statistics MBean", ex);
+        }
+    }
+
+    /**
+     * Unregister MBean of statistics (if registered).
+     */
+    public synchronized void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException ex) {
+                log.warn("Unable to unregister sender statistics MBean", ex);
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * Get name of statistics.
+     *
+     * @return name of statistics, null if not registered
+     */
+    public synchronized String getName() {
+        return name;
+    }
+
+    /**
+     * Get statistics as Collectd values ({@link #PLUGIN} plugin, plugin instance is the name of statistics). Counters are sent as DERIVE values, latencies
+     * (in nanoseconds) as histograms. Latency histograms are reset.
+     *
+     * @return value lists
+     */
+    public List<Values> toValues() {
+        final List<Values> result = new ArrayList<>();
+        final long now = System.currentTimeMillis();
+
+        result.add(createValues(DERIVE_TYPE, "value_lists", now, ValueType.DERIVE, getValueListsSent()));
+        result.add(createValues(DERIVE_TYPE, "values", now, ValueType.DERIVE, getValuesSent()));
+        result.add(createValues(DERIVE_TYPE, "notifications", now, ValueType.DERIVE, getNotificationsSent()));
+        result.add(createValues(DERIVE_TYPE, "packets", now, ValueType.DERIVE, getPacketsSent()));
+        result.add(createValues(DERIVE_TYPE, "bytes", now, ValueType.DERIVE, getBytesSent()));
+        result.add(createValues(DERIVE_TYPE, "errors", now, ValueType.DERIVE, getSendErrors()));
+        result.add(createValues(DERIVE_TYPE, "suppressed", now, ValueType.DERIVE, getSuppressed()));
+        result.add(createValues(DERIVE_TYPE, "rejected", now, ValueType.DERIVE, getRejected()));
+        result.add(createValues(DERIVE_TYPE, "dropped", now, ValueType.DERIVE, getDropped()));
+        result.add(createValues(DERIVE_TYPE, "spilled", now, ValueType.DERIVE, getSpilled()));
+        result.add(createValues(DERIVE_TYPE, "replayed", now, ValueType.DERIVE, getReplayed()));
+        result.add(createValues(PERCENT_TYPE, "fill_ratio", now, ValueType.GAUGE, getFillRatio() * 100.0));
+        result.add(createValues(GAUGE_TYPE, "values_per_packet", now, ValueType.GAUGE, getValuesPerPacket()));
+        result.add(createValues(GAUGE_TYPE, "journal_count", now, ValueType.GAUGE, (double) getJournalCount()));
+        result.add(createValues(GAUGE_TYPE, "journal_age", now, ValueType.GAUGE, (double) getJournalAge()));
+        result.add(createValues(GAUGE_TYPE, "bulk_queue_depth", now, ValueType.GAUGE, (double) getBulkQueueDepth()));
+        result.add(createValues(GAUGE_TYPE, "express_queue_depth", now, ValueType.GAUGE, (double) getExpressQueueDepth()));
+        result.add(createValues(GAUGE_TYPE, "packets_per_batch_unpacked", now, ValueType.GAUGE, getPacketsPerBatchUnpacked()));
+        result.add(createValues(GAUGE_TYPE, "packets_per_batch_packed", now, ValueType.GAUGE, getPacketsPerBatchPacked()));
+        result.add(createValues(PERCENT_TYPE, "fill_ratio_unpacked", now, ValueType.GAUGE, getFillRatioUnpacked() * 100.0));
+        result.add(createValues(PERCENT_TYPE, "fill_ratio_packed", now, ValueType.GAUGE, getFillRatioPacked() * 100.0));
+        result.add(createHistogramValues(encodeLatency, "encode_latency", now));
+        result.add(createHistogramValues(flushLatency, "flush_latency", now));
+        result.add(createHistogramValues(bulkLatency, "bulk_queue_latency", now));
+        result.add(createHistogramValues(expressLatency, "express_queue_latency", now));
+
+        return result;
+    }
+
+    @Override
+    public long getValueListsSent() {
+        return valueLists.sum();
+    }
+
+    @Override
+    public long getValuesSent() {
+        return values.sum();
+    }
+
+    @Override
+    public long getNotificationsSent() {
+        return notifications.sum();
+    }
+
+    @Override
+    public long getPacketsSent() {
+        return packets.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getSendErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getFillRatio() {
+        final long total = capacity.sum();
+        return total > 0 ? (double) bytes.sum() / total : 0.0;
+    }
+
+    @Override
+    public double getValuesPerPacket() {
+        final long packetCount = packets.sum();
+        return packetCount > 0 ? (double) values.sum() / packetCount : 0.0;
+    }
+
+    @Override
+    public long getSuppressed() {
+        final ValueSuppressor suppressor = sender.getSuppressor();
+        return suppressor != null ? suppressor.getSuppressed() : 0L;
+    }
+
+    @Override
+    public long getRejected() {
+        final TypeValidator validator = sender.getValidator();
+        return validator != null ? validator.getRejected() : 0L;
+    }
+
+    @Override
+    public long getUnknownTypes() {
+        final TypeValidator validator = sender.getValidator();
+        return validator != null ? validator.getUnknown() : 0L;
+    }
+
+    @Override
+    public long getDelayed() {
+        final PacketPacer pacer = sender.getPacer();
+        return pacer != null ? pacer.getDelayed() : 0L;
+    }
+
+    @Override
+    public long getDropped() {
+        final PacketPacer pacer = sender.getPacer();
+        return pacer != null ? pacer.getDropped() : 0L;
+    }
+
+    @Override
+    public long getSpilled() {
+        return sender.getSpilled();
+    }
+
+    @Override
+    public long getReplayed() {
+        return sender.getReplayed();
+    }
+
+    @Override
+    public int getJournalCount() {
+        final SpillJournal journal = sender.getJournal();
+        return journal != null ? journal.getCount() : 0;
+    }
+
+    @Override
+    public long getJournalAge() {
+        final SpillJournal journal = sender.getJournal();
+        return journal != null ? journal.getAge() : 0L;
+    }
+
+    @Override
+    public int getBulkQueueDepth() {
+        return sender.getBulkQueueDepth();
+    }
+
+    @Override
+    public int getExpressQueueDepth() {
+        return sender.getExpressQueueDepth();
+    }
+
+    @Override
+    public long getPackedBatches() {
+        return packedBatches.sum();
+    }
+
+    @Override
+    public double getPacketsPerBatchUnpacked() {
+        final long batches = packedBatches.sum();
+        return batches > 0 ? (double) packetsUnpacked.sum() / batches : 0.0;
+    }
+
+    @Override
+    public double getPacketsPerBatchPacked() {
+        final long batches = packedBatches.sum();
+        return batches > 0 ? (double) packetsPacked.sum() / batches : 0.0;
+    }
+
+    @Override
+    public double getFillRatioUnpacked() {
+        final long total = capacityUnpacked.sum();
+        return total > 0 ? (double) bytesUnpacked.sum() / total : 0.0;
+    }
+
+    @Override
+    public double getFillRatioPacked() {
+        final long total = capacityPacked.sum();
+        return total > 0 ? (double) bytesPacked.sum() / total : 0.0;
+    }
+
+    @Override
+    public long getEncodeLatencyP50() {
+        return encodeLatency.getPercentile(0.5);
+    }
+
+    @Override
+    public long getEncodeLatencyP99() {
+        return encodeLatency.getPercentile(0.99);
+    }
+
+    @Override
+    public long getFlushLatencyP50() {
+        return flushLatency.getPercentile(0.5);
+    }
+
+    @Override
+    public long getFlushLatencyP99() {
+        return flushLatency.getPercentile(0.99);
+    }
+
+    @Override
+    public long getBulkQueueLatencyP99() {
+        return bulkLatency.getPercentile(0.99);
+    }
+
+    @Override
+    public long getExpressQueueLatencyP99() {
+        return expressLatency.getPercentile(0.99);
+    }
+
+    private Values createValues(final String type, final String typeInstance, final long time, final ValueType valueType, final Number value) {
+        final Values result = new Values();
+        result.setTime(time);
+        result.setPlugin(PLUGIN);
+        result.setPluginInstance(getName());
+        result.setType(type);
+        result.setTypeInstance(typeInstance);
+        result.getItems().add(new Values.ValueHolder(valueType, value));
+        return result;
+    }
+
+    private Values createHistogramValues(final Histogram histogram, final String typeInstance, final long time) {
+        synchronized (histogram) {
+            histogram.setTime(time);
+            histogram.setPlugin(PLUGIN);
+            histogram.setPluginInstance(getName());
+            histogram.setTypeInstance(typeInstance);
+            return histogram.toValues();
+        }
+    }
+}
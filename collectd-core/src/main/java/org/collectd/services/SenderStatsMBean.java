@@ -0,0 +1,218 @@
+package org.collectd.services;
+
+/**
+ * Management interface of packet sender statistics. Latency percentiles are measured since last emitted snapshot (see
+ * {@link SenderStats#toValues()}).
+ */
+public interface SenderStatsMBean {
+
+    /**
+     * Get number of value lists written to packets.
+     *
+     * @return number of value lists
+     */
+    long getValueListsSent();
+
+    /**
+     * Get number of values written to packets.
+     *
+     * @return number of values
+     */
+    long getValuesSent();
+
+    /**
+     * Get number of notifications written to packets.
+     *
+     * @return number of notifications
+     */
+    long getNotificationsSent();
+
+    /**
+     * Get number of packets sent to Collectd server.
+     *
+     * @return number of packets
+     */
+    long getPacketsSent();
+
+    /**
+     * Get number of bytes sent to Collectd server.
+     *
+     * @return number of bytes
+     */
+    long getBytesSent();
+
+    /**
+     * Get number of failed packet sends.
+     *
+     * @return number of errors
+     */
+    long getSendErrors();
+
+    /**
+     * Get average fill ratio of sent packets.
+     *
+     * @return sent bytes / packet capacity (between 0 and 1)
+     */
+    double getFillRatio();
+
+    /**
+     * Get average number of values per sent packet.
+     *
+     * @return values per packet
+     */
+    double getValuesPerPacket();
+
+    /**
+     * Get number of value lists suppressed because values are unchanged.
+     *
+     * @return number of value lists
+     */
+    long getSuppressed();
+
+    /**
+     * Get number of value lists rejected because they do not match the data set of their type.
+     *
+     * @return number of value lists
+     */
+    long getRejected();
+
+    /**
+     * Get number of value lists with type not defined in types.db.
+     *
+     * @return number of value lists
+     */
+    long getUnknownTypes();
+
+    /**
+     * Get number of packets delayed by pacing.
+     *
+     * @return number of packets
+     */
+    long getDelayed();
+
+    /**
+     * Get number of packets dropped because pacer backlog was full.
+     *
+     * @return number of packets
+     */
+    long getDropped();
+
+    /**
+     * Get number of packets appended to spill journal.
+     *
+     * @return number of packets
+     */
+    long getSpilled();
+
+    /**
+     * Get number of packets replayed from spill journal.
+     *
+     * @return number of packets
+     */
+    long getReplayed();
+
+    /**
+     * Get number of packets in spill journal.
+     *
+     * @return number of packets
+     */
+    int getJournalCount();
+
+    /**
+     * Get age of the oldest packet in spill journal.
+     *
+     * @return age in milliseconds
+     */
+    long getJournalAge();
+
+    /**
+     * Get number of value lists buffered in the open bulk packet.
+     *
+     * @return number of value lists
+     */
+    int getBulkQueueDepth();
+
+    /**
+     * Get number of notifications and critical value lists buffered in the open express packet.
+     *
+     * @return number of items
+     */
+    int getExpressQueueDepth();
+
+    /**
+     * Get number of batches packed by identifier.
+     *
+     * @return number of batches
+     */
+    long getPackedBatches();
+
+    /**
+     * Get average number of packets of packed batches if they were written in arrival order.
+     *
+     * @return packets per batch
+     */
+    double getPacketsPerBatchUnpacked();
+
+    /**
+     * Get average number of packets of packed batches.
+     *
+     * @return packets per batch
+     */
+    double getPacketsPerBatchPacked();
+
+    /**
+     * Get fill ratio of packets of packed batches if they were written in arrival order.
+     *
+     * @return ratio between 0 and 1
+     */
+    double getFillRatioUnpacked();
+
+    /**
+     * Get fill ratio of packets of packed batches.
+     *
+     * @return ratio between 0 and 1
+     */
+    double getFillRatioPacked();
+
+    /**
+     * Get median of encoding time of value lists and notifications.
+     *
+     * @return time in nanoseconds
+     */
+    long getEncodeLatencyP50();
+
+    /**
+     * Get 99th percentile of encoding time of value lists and notifications.
+     *
+     * @return time in nanoseconds
+     */
+    long getEncodeLatencyP99();
+
+    /**
+     * Get median of packet flush (transmission) time.
+     *
+     * @return time in nanoseconds
+     */
+    long getFlushLatencyP50();
+
+    /**
+     * Get 99th percentile of packet flush (transmission) time.
+     *
+     * @return time in nanoseconds
+     */
+    long getFlushLatencyP99();
+
+    /**
+     * Get 99th percentile of time the oldest value list of a bulk packet was buffered before the packet was sent.
+     *
+     * @return time in nanoseconds
+     */
+    long getBulkQueueLatencyP99();
+
+    /**
+     * Get 99th percentile of time the oldest item of an express packet was buffered before the packet was sent.
+     *
+     * @return time in nanoseconds
+     */
+    long getExpressQueueLatencyP99();
+}
@@ -0,0 +1,341 @@
+package org.collectd.services;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.collectd.model.Histogram;
+import org.collectd.model.Notification;
+import org.collectd.model.PluginData;
+import org.collectd.model.SampleRing;
+import org.collectd.model.ValueList;
+import org.collectd.model.Values;
+import org.collectd.protocol.EncodedIdentifier;
+
+/**
+ * Packet sender spreading identifiers over a pool of Collectd servers. Each identifier (host, plugin, plugin instance, type and type instance) is routed to
+ * exactly one server using rendezvous (highest random weight) hashing, so changing the server list moves only the identifiers of added or removed servers.
+ * Each server (shard) has its own packet buffer.
+ */
+@Slf4j
+public class ShardingPacketSender implements PacketSender {
+
+    private final String clientHost;
+    private final int packetSize;
+
+    private volatile Shard[] shards = new Shard[0];
+
+    /**
+     * Create new sharding packet sender.
+     *
+     * @param servers Collectd server addresses
+     * @param clientHost client hostname
+     * @param packetSize packet size
+     */
+    public ShardingPacketSender(final Collection<InetSocketAddress> servers, final String clientHost, final int packetSize) {
+        this.clientHost = clientHost;
+        this.packetSize = packetSize;
+        setServers(servers);
+    }
+
+    /**
+     * Parse server address in <code>host</code>, <code>host:port</code> or <code>[IPv6 address]:port</code> format.
+     *
+     * @param address server address
+     * @param defaultPort port number used if it is not specified
+     * @return socket address
+     */
+    public static InetSocketAddress parseAddress(final String address, final int defaultPort) {
+        final String value = address.trim();
+        final int portSeparator = value.lastIndexOf(':');
+        if (value.startsWith("[")) {
+            final int end = value.indexOf(']');
+            final String host = value.substring(1, end);
+            return new InetSocketAddress(host, portSeparator > end ? Integer.parseInt(value.substring(portSeparator + 1)) : defaultPort);
+        } else if (portSeparator > 0 && value.indexOf(':') == portSeparator) {
+            return new InetSocketAddress(value.substring(0, portSeparator), Integer.parseInt(value.substring(portSeparator + 1)));
+        } else {
+            return new InetSocketAddress(value, defaultPort);
+        }
+    }
+
+    /**
+     * Change the server list. Senders (and buffers) of unchanged servers are kept. The new server list is published first, senders of removed servers are
+     * flushed and closed once no thread is sending through them.
+     *
+     * @param servers Collectd server addresses
+     */
+    public synchronized void setServers(final Collection<InetSocketAddress> servers) {
+        Objects.requireNonNull(servers, "Missing server list");
+        if (servers.isEmpty()) {
+            throw new IllegalArgumentException("At least one server is required");
+        }
+
+        final Shard[] current = shards;
+        final List<Shard> updated = new ArrayList<>();
+        for (final InetSocketAddress server : new LinkedHashSet<>(servers)) {
+            Shard shard = null;
+            for (final Shard s : current) {
+                if (s.server.equals(server)) {
+                    shard = s;
+                }
+            }
+            updated.add(shard != null ? shard : new Shard(server, createSender(server)));
+        }
+        shards = updated.toArray(new Shard[updated.size()]);
+
+        for (final Shard shard : current) {
+            if (!updated.contains(shard)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Removing Collectd server from pool: " + shard.server);
+                }
+                shard.retire();
+            }
+        }
+    }
+
+    /**
+     * Get current server list.
+     *
+     * @return Collectd server addresses
+     */
+    public List<InetSocketAddress> getServers() {
+        final List<InetSocketAddress> servers = new ArrayList<>();
+        for (final Shard shard : shards) {
+            servers.add(shard.server);
+        }
+        return Collections.unmodifiableList(servers);
+    }
+
+    /**
+     * Get packet sender of a server.
+     *
+     * @param server server address
+     * @return packet sender, null if server is not in the pool
+     */
+    public UdpPacketSender getSender(final InetSocketAddress server) {
+        for (final Shard shard : shards) {
+            if (shard.server.equals(server)) {
+                return shard.sender;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Create packet sender of a server. Override to customize senders (i.e. suppression, pacing).
+     *
+     * @param server server address
+     * @return packet sender
+     */
+    protected UdpPacketSender createSender(final InetSocketAddress server) {
+        return new UdpPacketSender(server, clientHost, packetSize);
+    }
+
+    @Override
+    public void send(final Values values) throws IOException {
+        final Shard shard = acquire(values);
+        try {
+            shard.sender.send(values);
+        } finally {
+            shard.release();
+        }
+    }
+
+    @Override
+    public void send(final ValueList values) throws IOException {
+        final Shard shard = acquire(values);
+        try {
+            shard.sender.send(values);
+        } finally {
+            shard.release();
+        }
+    }
+
+    @Override
+    public void send(final Histogram histogram) throws IOException {
+        final Shard shard = acquire(histogram);
+        try {
+            shard.sender.send(histogram);
+        } finally {
+            shard.release();
+        }
+    }
+
+    @Override
+    public void send(final SampleRing samples) throws IOException {
+        final Shard shard = acquire(samples);
+        try {
+            shard.sender.send(samples);
+        } finally {
+            shard.release();
+        }
+    }
+
+    @Override
+    public void send(final Notification notification) throws IOException {
+        final Shard shard = acquire(notification);
+        try {
+            shard.sender.send(notification);
+        } finally {
+            shard.release();
+        }
+    }
+
+    /**
+     * Write a batch of data. Batch is split by shards, each shard encodes its part in one pass. Parts of shards removed in the meantime are routed again.
+     *
+     * @param data value lists, histograms and notifications
+     * @throws IOException unable to write value to output stream
+     */
+    @Override
+    public void send(final Collection<? extends PluginData> data) throws IOException {
+        final Shard[] pool = shards;
+        final Map<Shard, List<PluginData>> batches = new IdentityHashMap<>();
+        for (final PluginData item : data) {
+            final Shard shard = route(pool, item);
+            List<PluginData> batch = batches.get(shard);
+            if (batch == null) {
+                batch = new ArrayList<>();
+                batches.put(shard, batch);
+            }
+            batch.add(item);
+        }
+        for (final Map.Entry<Shard, List<PluginData>> batch : batches.entrySet()) {
+            final Shard shard = batch.getKey();
+            if (shard.acquire()) {
+                try {
+                    shard.sender.send(batch.getValue());
+                } finally {
+                    shard.release();
+                }
+            } else {
+                send(batch.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        for (final Shard shard : shards) {
+            if (shard.acquire()) {
+                try {
+                    shard.sender.flush();
+                } finally {
+                    shard.release();
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (final Shard shard : shards) {
+            shard.sender.close();
+        }
+    }
+
+    /**
+     * Route data to a shard of the current server list and mark the shard as used. Route is repeated if the shard is removed concurrently.
+     */
+    private Shard acquire(final PluginData data) {
+        while (true) {
+            final Shard shard = route(shards, data);
+            if (shard.acquire()) {
+                return shard;
+            }
+        }
+    }
+
+    private static Shard route(final Shard[] pool, final PluginData data) {
+        final long key = EncodedIdentifier.hash(data.getHost(), data.getPlugin(), data.getPluginInstance(), data.getType(), data.getTypeInstance());
+
+        Shard selected = pool[0];
+        long maxWeight = Long.MIN_VALUE;
+        for (final Shard shard : pool) {
+            final long weight = mix(key ^ shard.hash);
+            if (weight > maxWeight) {
+                maxWeight = weight;
+                selected = shard;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Finalizer of SplitMix64, distributes weights of similar keys uniformly.
+     */
+    private static long mix(final long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Server of the pool. Number of threads sending through the shard is counted, sender of a removed (retired) shard is closed by the last user.
+     */
+    private static final class Shard {
+
+        private final InetSocketAddress server;
+        private final long hash;
+        private final UdpPacketSender sender;
+
+        private final AtomicInteger users = new AtomicInteger(0);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private volatile boolean retired;
+
+        private Shard(final InetSocketAddress server, final UdpPacketSender sender) {
+            this.server = server;
+            this.sender = sender;
+            this.hash = EncodedIdentifier.hash(server.getHostString(), Integer.toString(server.getPort()), null, null, null);
+        }
+
+        /**
+         * Mark shard as used, fails if shard is already removed from the pool.
+         */
+        private boolean acquire() {
+            users.incrementAndGet();
+            if (retired) {
+                release();
+                return false;
+            }
+            return true;
+        }
+
+        private void release() {
+            if (users.decrementAndGet() == 0 && retired) {
+                closeSender();
+            }
+        }
+
+        /**
+         * Remove shard from the pool, sender is closed now if it is not used, by the last user otherwise.
+         */
+        private void retire() {
+            retired = true;
+            if (users.get() == 0) {
+                closeSender();
+            }
+        }
+
+        private void closeSender() {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    sender.close();
+                } catch (IOException ex) {
+                    log.error("Unable to flush sender of removed server " + server, ex);
+                }
+            }
+        }
+    }
+}
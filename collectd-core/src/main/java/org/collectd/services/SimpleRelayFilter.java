@@ -0,0 +1,40 @@
+package org.collectd.services;
+
+import java.util.regex.Pattern;
+import org.collectd.model.PluginData;
+
+/**
+ * Relay filter forwarding data of matching plugins and rewriting host name.
+ */
+public class SimpleRelayFilter implements RelayFilter {
+
+    private final Pattern plugins;
+    private final String host;
+
+    /**
+     * Create new filter.
+     *
+     * @param plugins pattern of forwarded plugin names, all plugins are forwarded if null
+     * @param host host name set on forwarded data, original host name is kept if null
+     */
+    public SimpleRelayFilter(final Pattern plugins, final String host) {
+        this.plugins = plugins;
+        this.host = host;
+    }
+
+    @Override
+    public boolean accept(final PluginData data) {
+        if (plugins != null && (data.getPlugin() == null || !plugins.matcher(data.getPlugin()).matches())) {
+            return false;
+        }
+        if (host != null) {
+            data.setHost(host);
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "SimpleRelayFilter(plugins=" + plugins + ", host=" + host + ")";
+    }
+}
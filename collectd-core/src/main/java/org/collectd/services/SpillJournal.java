@@ -0,0 +1,260 @@
+package org.collectd.services;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded ring journal of finished packets in a memory-mapped file. Packets that could not be delivered are appended with their spill time, the oldest
+ * packets are overwritten if the journal is full. Content of an existing journal file is kept, so packets spilled before restart are replayed too.
+ */
+@Slf4j
+public class SpillJournal implements Closeable {
+
+    private static final int MAGIC = 0x434a4e4c;
+    private static final int HEADER_LEN = 32;
+    private static final int RECORD_HEADER_LEN = 4 + 8;
+
+    private static final int MAGIC_POS = 0;
+    private static final int CAPACITY_POS = 4;
+    private static final int HEAD_POS = 8;
+    private static final int TAIL_POS = 16;
+    private static final int COUNT_POS = 24;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private long head;
+    private long tail;
+    private int count;
+
+    private final AtomicLong appended = new AtomicLong(0L);
+    private final AtomicLong overwritten = new AtomicLong(0L);
+
+    /**
+     * Open (or create) journal file.
+     *
+     * @param file journal file
+     * @param size file size in bytes
+     * @throws IOException unable to open or map journal file
+     */
+    public SpillJournal(final File file, final int size) throws IOException {
+        if (size <= HEADER_LEN + RECORD_HEADER_LEN) {
+            throw new IllegalArgumentException("Journal size is too small: " + size);
+        }
+        this.file = file;
+        raf = new RandomAccessFile(file, "rw");
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        capacity = size - HEADER_LEN;
+
+        if (buffer.getInt(MAGIC_POS) == MAGIC && buffer.getInt(CAPACITY_POS) == capacity) {
+            head = buffer.getLong(HEAD_POS);
+            tail = buffer.getLong(TAIL_POS);
+            count = buffer.getInt(COUNT_POS);
+            if (count > 0) {
+                log.info("Spill journal " + file + " contains " + count + " packets");
+            }
+        } else {
+            buffer.putInt(MAGIC_POS, MAGIC);
+            buffer.putInt(CAPACITY_POS, capacity);
+            writeHeader();
+        }
+    }
+
+    /**
+     * Append packet to journal. Oldest packets are removed if there is not enough free space.
+     *
+     * @param data packet data
+     * @param length packet length
+     * @param timestamp spill time (milliseconds since epoch)
+     */
+    public synchronized void append(final byte[] data, final int length, final long timestamp) {
+        final int recordLength = RECORD_HEADER_LEN + length;
+        if (recordLength > capacity) {
+            throw new IllegalArgumentException("Packet is larger than journal capacity");
+        }
+
+        while (tail - head + recordLength > capacity) {
+            head += RECORD_HEADER_LEN + readInt(head);
+            count--;
+            overwritten.incrementAndGet();
+        }
+
+        writeInt(tail, length);
+        writeLong(tail + 4, timestamp);
+        write(tail + RECORD_HEADER_LEN, data, 0, length);
+        tail += recordLength;
+        count++;
+        appended.incrementAndGet();
+        writeHeader();
+    }
+
+    /**
+     * Copy oldest packet to target array without removing it.
+     *
+     * @param target target array (large enough for a packet)
+     * @return packet length, -1 if journal is empty
+     */
+    public synchronized int peek(final byte[] target) {
+        if (count == 0) {
+            return -1;
+        }
+        final int length = readInt(head);
+        read(head + RECORD_HEADER_LEN, target, length);
+        return length;
+    }
+
+    /**
+     * Remove oldest packet.
+     */
+    public synchronized void remove() {
+        if (count > 0) {
+            head += RECORD_HEADER_LEN + readInt(head);
+            count--;
+            writeHeader();
+        }
+    }
+
+    /**
+     * Check if journal is empty.
+     *
+     * @return <code>true</code> if no packet is spilled
+     */
+    public synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Get number of spilled packets.
+     *
+     * @return number of packets
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Get number of bytes used by spilled packets.
+     *
+     * @return number of bytes
+     */
+    public synchronized long getSize() {
+        return tail - head;
+    }
+
+    /**
+     * Get journal capacity.
+     *
+     * @return number of bytes
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get age of the oldest spilled packet.
+     *
+     * @return age in milliseconds, 0 if journal is empty
+     */
+    public synchronized long getAge() {
+        return count > 0 ? Math.max(0L, System.currentTimeMillis() - readLong(head + 4)) : 0L;
+    }
+
+    /**
+     * Get number of packets appended since journal is opened.
+     *
+     * @return number of packets
+     */
+    public long getAppended() {
+        return appended.get();
+    }
+
+    /**
+     * Get number of packets overwritten (lost) because journal was full.
+     *
+     * @return number of packets
+     */
+    public long getOverwritten() {
+        return overwritten.get();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        raf.close();
+    }
+
+    @Override
+    public String toString() {
+        return "SpillJournal(file=" + file + ", capacity=" + capacity + ")";
+    }
+
+    private void writeHeader() {
+        if (count == 0) {
+            // restart from the beginning, records are not wrapped
+            head = 0;
+            tail = 0;
+        }
+        buffer.putLong(HEAD_POS, head);
+        buffer.putLong(TAIL_POS, tail);
+        buffer.putInt(COUNT_POS, count);
+    }
+
+    private int index(final long position) {
+        return HEADER_LEN + (int) (position % capacity);
+    }
+
+    private void write(final long position, final byte[] data, final int offset, final int length) {
+        final int start = index(position);
+        final int first = Math.min(length, HEADER_LEN + capacity - start);
+        final ByteBuffer view = buffer.duplicate();
+        view.position(start);
+        view.put(data, offset, first);
+        if (first < length) {
+            // record is wrapped around the end of the ring
+            view.position(HEADER_LEN);
+            view.put(data, offset + first, length - first);
+        }
+    }
+
+    private void read(final long position, final byte[] target, final int length) {
+        final int start = index(position);
+        final int first = Math.min(length, HEADER_LEN + capacity - start);
+        final ByteBuffer view = buffer.duplicate();
+        view.position(start);
+        view.get(target, 0, first);
+        if (first < length) {
+            // record is wrapped around the end of the ring
+            view.position(HEADER_LEN);
+            view.get(target, first, length - first);
+        }
+    }
+
+    private void writeInt(final long position, final int value) {
+        final byte[] bytes = {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        write(position, bytes, 0, bytes.length);
+    }
+
+    private void writeLong(final long position, final long value) {
+        writeInt(position, (int) (value >>> 32));
+        writeInt(position + 4, (int) value);
+    }
+
+    private int readInt(final long position) {
+        final byte[] bytes = new byte[4];
+        read(position, bytes, bytes.length);
+        return (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | bytes[3] & 0xff;
+    }
+
+    private long readLong(final long position) {
+        return (long) readInt(position) << 32 | readInt(position + 4) & 0xffffffffL;
+    }
+}
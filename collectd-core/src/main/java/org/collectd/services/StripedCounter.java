@@ -0,0 +1,67 @@
+package org.collectd.services;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter striped over padded cells to avoid contention of threads updating it concurrently. Each thread updates the cell selected by its thread ID, cells
+ * are placed to separate cache lines. Summing cells is not atomic, so the sum is approximate while counter is updated.
+ */
+public class StripedCounter {
+
+    /**
+     * Number of longs in a cache line (64 bytes).
+     */
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    /**
+     * Create new counter, number of stripes is based on the number of available processors.
+     */
+    public StripedCounter() {
+        final int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+        mask = stripes - 1;
+        cells = new AtomicLongArray(stripes * PADDING);
+    }
+
+    /**
+     * Add value to counter.
+     *
+     * @param delta added value
+     */
+    public void add(final long delta) {
+        cells.addAndGet(getIndex(), delta);
+    }
+
+    /**
+     * Increment counter by one.
+     */
+    public void increment() {
+        add(1L);
+    }
+
+    /**
+     * Get sum of cells.
+     *
+     * @return counter value
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+
+    private int getIndex() {
+        // Fibonacci hashing spreads sequential thread IDs
+        final int hash = (int) (Thread.currentThread().getId() * 0x9e3779b97f4a7c15L >>> 32);
+        return (hash & mask) * PADDING;
+    }
+}
@@ -0,0 +1,337 @@
+package org.collectd.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.collectd.config.DataSet;
+import org.collectd.config.Threshold;
+import org.collectd.config.TypesDb;
+import org.collectd.model.Notification;
+import org.collectd.model.PluginData;
+import org.collectd.model.Severity;
+import org.collectd.model.ValueList;
+import org.collectd.model.Values;
+import org.collectd.protocol.EncodedIdentifier;
+
+/**
+ * Evaluate threshold rules on value lists before sending and create notifications when the state (okay, warning or failure) of an identifier changes. Rules
+ * are indexed by type and compiled into primitive limits, state of each identifier and rule is stored in an open addressing table of primitive arrays, so
+ * evaluation does not allocate unless a notification is created. Limits are adjusted by the hysteresis while an identifier is in the warning or failure
+ * state, a worse state is entered after the configured number of consecutive hits only, recovery is reported immediately.
+ */
+public class ThresholdEngine {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long KEY_MIX = 0x9e3779b97f4a7c15L;
+
+    private static final byte OKAY = 0;
+    private static final byte WARNING = 1;
+    private static final byte FAILURE = 2;
+    private static final Severity[] SEVERITIES = {Severity.OKAY, Severity.WARNING, Severity.FAILURE};
+
+    private final Map<String, Rule[]> rules = new HashMap<>();
+    private int ruleCount;
+    private TypesDb typesDb;
+
+    private final ValueList valueList = new ValueList();
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private byte[] states = new byte[INITIAL_CAPACITY];
+    private byte[] pending = new byte[INITIAL_CAPACITY];
+    private int[] hits = new int[INITIAL_CAPACITY];
+    private int size;
+
+    private final AtomicLong evaluated = new AtomicLong(0L);
+    private final AtomicLong notifications = new AtomicLong(0L);
+
+    /**
+     * Add threshold rule. Rules are copied, later changes of the rule instance are ignored.
+     *
+     * @param threshold threshold rule
+     * @throws IllegalArgumentException rule is incomplete
+     */
+    public synchronized void add(final Threshold threshold) {
+        threshold.check();
+        final Rule rule = new Rule(threshold, ruleCount++);
+        final Rule[] current = rules.get(rule.type);
+        final Rule[] updated = current != null ? Arrays.copyOf(current, current.length + 1) : new Rule[1];
+        updated[updated.length - 1] = rule;
+        rules.put(rule.type, updated);
+    }
+
+    /**
+     * Get number of rules.
+     *
+     * @return number of rules
+     */
+    public synchronized int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * Set types.db registry, data source names are used in notification messages.
+     *
+     * @param typesDb types.db registry, value index is used as data source name if null
+     */
+    public synchronized void setTypesDb(final TypesDb typesDb) {
+        this.typesDb = typesDb;
+    }
+
+    /**
+     * Evaluate rules matching numeric values.
+     *
+     * @param values numeric values
+     * @return notifications of state changes, empty list if state is not changed
+     */
+    public synchronized List<Notification> evaluate(final Values values) {
+        if (!rules.containsKey(values.getType())) {
+            return Collections.emptyList();
+        }
+        valueList.copyOf(values);
+        return evaluate(valueList);
+    }
+
+    /**
+     * Evaluate rules matching primitive numeric values.
+     *
+     * @param values numeric values
+     * @return notifications of state changes, empty list if state is not changed
+     */
+    public synchronized List<Notification> evaluate(final ValueList values) {
+        final Rule[] candidates = rules.get(values.getType());
+        if (candidates == null) {
+            return Collections.emptyList();
+        }
+
+        List<Notification> result = Collections.emptyList();
+        long identifier = 0L;
+        for (final Rule rule : candidates) {
+            if (!rule.matches(values)) {
+                continue;
+            }
+            if (identifier == 0L) {
+                identifier = EncodedIdentifier.hash(values.getHost(), values.getPlugin(), values.getPluginInstance(), values.getType(),
+                        values.getTypeInstance());
+            }
+            evaluated.incrementAndGet();
+            final Notification notification = evaluate(rule, identifier, values);
+            if (notification != null) {
+                if (result.isEmpty()) {
+                    result = new ArrayList<>(1);
+                }
+                result.add(notification);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get number of rule evaluations.
+     *
+     * @return number of evaluations
+     */
+    public long getEvaluated() {
+        return evaluated.get();
+    }
+
+    /**
+     * Get number of created notifications.
+     *
+     * @return number of notifications
+     */
+    public long getNotifications() {
+        return notifications.get();
+    }
+
+    /**
+     * Get number of tracked identifier and rule pairs.
+     *
+     * @return number of states
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private Notification evaluate(final Rule rule, final long identifier, final ValueList values) {
+        // 0 marks empty slots
+        final long mixed = identifier ^ (rule.id + 1) * KEY_MIX;
+        final long key = mixed != 0 ? mixed : 1L;
+        int idx = indexOf(keys, key);
+        if (keys[idx] != key) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+                idx = indexOf(keys, key);
+            }
+            keys[idx] = key;
+            size++;
+        }
+
+        final byte state = states[idx];
+        final int from = rule.dataSource >= 0 ? rule.dataSource : 0;
+        final int to = rule.dataSource >= 0 ? Math.min(rule.dataSource + 1, values.size()) : values.size();
+        byte level = OKAY;
+        int worst = -1;
+        for (int i = from; i < to; i++) {
+            final double value = values.getDouble(i);
+            if (Double.isNaN(value)) {
+                // unknown value does not change the state
+                continue;
+            }
+            final byte current = rule.level(value, state);
+            if (current > level || worst < 0) {
+                level = current;
+                worst = i;
+            }
+        }
+
+        if (worst < 0 || level == state) {
+            hits[idx] = 0;
+            return null;
+        }
+        if (level > state && rule.hits > 1) {
+            if (pending[idx] != level) {
+                pending[idx] = level;
+                hits[idx] = 0;
+            }
+            if (++hits[idx] < rule.hits) {
+                return null;
+            }
+        }
+        states[idx] = level;
+        pending[idx] = OKAY;
+        hits[idx] = 0;
+        notifications.incrementAndGet();
+        return createNotification(rule, values, level, worst);
+    }
+
+    private Notification createNotification(final Rule rule, final ValueList values, final byte level, final int index) {
+        final Notification notification = new Notification();
+        notification.setHost(values.getHost());
+        notification.setTime(values.getTime());
+        notification.setPlugin(values.getPlugin());
+        notification.setPluginInstance(values.getPluginInstance());
+        notification.setType(values.getType());
+        notification.setTypeInstance(values.getTypeInstance());
+        notification.setSeverity(SEVERITIES[level]);
+
+        final double value = values.getDouble(index);
+        final StringBuilder message = new StringBuilder();
+        message.append("Host ").append(values.getHost()).append(", plugin ").append(values.getPlugin());
+        if (values.getPluginInstance() != null && !values.getPluginInstance().isEmpty()) {
+            message.append(" (instance ").append(values.getPluginInstance()).append(')');
+        }
+        message.append(" type ").append(values.getType());
+        if (values.getTypeInstance() != null && !values.getTypeInstance().isEmpty()) {
+            message.append(" (instance ").append(values.getTypeInstance()).append(')');
+        }
+        message.append(": ");
+        if (level == OKAY) {
+            message.append("All data sources are within range again. Current value of \"").append(getDataSourceName(values.getType(), index)).append("\" is ")
+                    .append(value).append('.');
+        } else {
+            final boolean failure = level == FAILURE;
+            final double min = failure ? rule.failureMin : rule.warningMin;
+            final boolean below = value < min;
+            message.append("Data source \"").append(getDataSourceName(values.getType(), index)).append("\" is currently ").append(value).append(". That is ")
+                    .append(below ? "below" : "above").append(" the ").append(failure ? "failure" : "warning").append(" threshold of ")
+                    .append(below ? min : failure ? rule.failureMax : rule.warningMax).append('.');
+        }
+        notification.setMessage(message.toString());
+        return notification;
+    }
+
+    private String getDataSourceName(final String type, final int index) {
+        final DataSet dataSet = typesDb != null ? typesDb.getDataSet(type) : null;
+        return dataSet != null && index < dataSet.size() ? dataSet.getSources().get(index).getName() : String.valueOf(index);
+    }
+
+    private static int indexOf(final long[] table, final long key) {
+        final int mask = table.length - 1;
+        int idx = (int) (key ^ (key >>> 32)) & mask;
+        while (table[idx] != 0 && table[idx] != key) {
+            idx = (idx + 1) & mask;
+        }
+        return idx;
+    }
+
+    private void resize() {
+        final long[] oldKeys = keys;
+        final byte[] oldStates = states;
+        final byte[] oldPending = pending;
+        final int[] oldHits = hits;
+
+        keys = new long[oldKeys.length * 2];
+        states = new byte[keys.length];
+        pending = new byte[keys.length];
+        hits = new int[keys.length];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                final int idx = indexOf(keys, oldKeys[i]);
+                keys[idx] = oldKeys[i];
+                states[idx] = oldStates[i];
+                pending[idx] = oldPending[i];
+                hits[idx] = oldHits[i];
+            }
+        }
+    }
+
+    /**
+     * Compiled threshold rule.
+     */
+    private static final class Rule {
+
+        private final int id;
+        private final String plugin;
+        private final String pluginInstance;
+        private final String type;
+        private final String typeInstance;
+        private final int dataSource;
+        private final double warningMin;
+        private final double warningMax;
+        private final double failureMin;
+        private final double failureMax;
+        private final double hysteresis;
+        private final int hits;
+
+        private Rule(final Threshold threshold, final int id) {
+            this.id = id;
+            plugin = threshold.getPlugin();
+            pluginInstance = threshold.getPluginInstance();
+            type = threshold.getType();
+            typeInstance = threshold.getTypeInstance();
+            dataSource = threshold.getDataSource();
+            warningMin = threshold.getWarningMin();
+            warningMax = threshold.getWarningMax();
+            failureMin = threshold.getFailureMin();
+            failureMax = threshold.getFailureMax();
+            hysteresis = threshold.getHysteresis();
+            hits = threshold.getHits();
+        }
+
+        private boolean matches(final PluginData data) {
+            return plugin.equals(data.getPlugin())
+                    && (pluginInstance == null || pluginInstance.equals(data.getPluginInstance()))
+                    && (typeInstance == null || typeInstance.equals(data.getTypeInstance()));
+        }
+
+        /**
+         * Get level of a value. Comparisons with unset (NaN) limits are false, limits of the current or better levels are narrowed by the hysteresis.
+         */
+        private byte level(final double value, final byte state) {
+            final double failureMargin = state >= FAILURE ? hysteresis : 0.0;
+            if (value < failureMin + failureMargin || value > failureMax - failureMargin) {
+                return FAILURE;
+            }
+            final double warningMargin = state >= WARNING ? hysteresis : 0.0;
+            if (value < warningMin + warningMargin || value > warningMax - warningMargin) {
+                return WARNING;
+            }
+            return OKAY;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.collectd.services;
+
+/**
+ * Token bucket rate limiter. Tokens are refilled continuously at the configured rate up to the bucket capacity (burst size).
+ */
+@lombok.ToString(of = {"rate", "capacity"})
+public class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final double rate;
+    private final double capacity;
+
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Create new token bucket. Bucket is full initially.
+     *
+     * @param rate tokens per second
+     * @param capacity maximum number of tokens (burst size)
+     */
+    public TokenBucket(final double rate, final double capacity) {
+        if (rate <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Rate and capacity must be positive");
+        }
+        this.rate = rate;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take tokens if available.
+     *
+     * @param amount number of tokens (capped to capacity)
+     * @return <code>true</code> if tokens are taken, <code>false</code> if not enough tokens are available
+     */
+    public synchronized boolean tryAcquire(final double amount) {
+        refill();
+        final double required = Math.min(amount, capacity);
+        if (tokens >= required) {
+            tokens -= required;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get time until the given number of tokens will be available.
+     *
+     * @param amount number of tokens (capped to capacity)
+     * @return waiting time in nanoseconds, 0 if tokens are available
+     */
+    public synchronized long getWaitNanos(final double amount) {
+        refill();
+        final double missing = Math.min(amount, capacity) - tokens;
+        return missing > 0 ? (long) Math.ceil(missing / rate * NANOS_PER_SECOND) : 0L;
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * rate / NANOS_PER_SECOND);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,194 @@
+package org.collectd.services;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.collectd.config.DataSet;
+import org.collectd.config.TypesDb;
+import org.collectd.model.PluginData;
+import org.collectd.model.SampleRing;
+import org.collectd.model.ValueList;
+import org.collectd.model.ValueType;
+import org.collectd.model.Values;
+
+/**
+ * Validate value lists against types.db data sets before sending, Collectd drops value lists not matching the data set of their type. Missing value types
+ * of {@link Values} are resolved from the data set (instead of inferring them from number classes). Types not defined in types.db are accepted (and
+ * counted), they may be defined by types.db files of Collectd server only.
+ */
+@Slf4j
+public class TypeValidator {
+
+    private final TypesDb typesDb;
+
+    private final AtomicLong accepted = new AtomicLong(0L);
+    private final AtomicLong rejected = new AtomicLong(0L);
+    private final AtomicLong unknown = new AtomicLong(0L);
+
+    private final Set<String> reported = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Create new validator.
+     *
+     * @param typesDb types.db registry
+     */
+    public TypeValidator(final TypesDb typesDb) {
+        Objects.requireNonNull(typesDb, "Missing types.db registry");
+        this.typesDb = typesDb;
+    }
+
+    /**
+     * Validate numeric values, missing value types are set.
+     *
+     * @param values numeric values
+     * @return <code>true</code> if values match the data set (or type is unknown)
+     */
+    public boolean validate(final Values values) {
+        final DataSet dataSet = typesDb.getDataSet(values.getType());
+        if (dataSet == null) {
+            unknown.incrementAndGet();
+            return true;
+        }
+
+        final Collection<Values.ValueHolder> items = values.getItems();
+        if (items.size() != dataSet.size()) {
+            return reject(values, "expected " + dataSet.size() + " values, got " + items.size());
+        }
+        int index = 0;
+        for (final Values.ValueHolder holder : items) {
+            final ValueType expected = dataSet.getValueType(index++);
+            if (holder.getType() == null) {
+                holder.setType(expected);
+            } else if (holder.getType() != expected) {
+                return reject(values, "expected " + expected + " value at index " + (index - 1) + ", got " + holder.getType());
+            }
+        }
+        accepted.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Validate primitive numeric values.
+     *
+     * @param values numeric values
+     * @return <code>true</code> if values match the data set (or type is unknown)
+     */
+    public boolean validate(final ValueList values) {
+        final DataSet dataSet = typesDb.getDataSet(values.getType());
+        if (dataSet == null) {
+            unknown.incrementAndGet();
+            return true;
+        }
+
+        if (values.size() != dataSet.size()) {
+            return reject(values, "expected " + dataSet.size() + " values, got " + values.size());
+        }
+        for (int i = 0; i < values.size(); i++) {
+            if (values.getTypeCode(i) != dataSet.getTypeCode(i)) {
+                return reject(values, "expected " + dataSet.getValueType(i) + " value at index " + i + ", got " + values.getType(i));
+            }
+        }
+        accepted.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Validate value types of buffered samples (caller must hold the lock of the ring).
+     *
+     * @param samples sample ring
+     * @return <code>true</code> if values match the data set (or type is unknown)
+     */
+    public boolean validate(final SampleRing samples) {
+        final DataSet dataSet = typesDb.getDataSet(samples.getType());
+        if (dataSet == null) {
+            unknown.incrementAndGet();
+            return true;
+        }
+
+        final int num = samples.getValueCount();
+        if (num != dataSet.size()) {
+            return reject(samples, "expected " + dataSet.size() + " values, got " + num);
+        }
+        for (int i = 0; i < num; i++) {
+            if (samples.getTypeCode(i) != dataSet.getTypeCode(i)) {
+                return reject(samples, "expected " + dataSet.getValueType(i) + " value at index " + i + ", got " + samples.getType(i));
+            }
+        }
+        accepted.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Check value types of an identifier (i.e. when a metric handle is registered).
+     *
+     * @param type type name
+     * @param types value types
+     * @throws IllegalArgumentException value types do not match the data set
+     */
+    public void check(final String type, final ValueType... types) {
+        final DataSet dataSet = typesDb.getDataSet(type);
+        if (dataSet == null) {
+            return;
+        }
+        if (types.length != dataSet.size()) {
+            throw new IllegalArgumentException("Type " + type + " requires " + dataSet.size() + " values, got " + types.length);
+        }
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] != dataSet.getValueType(i)) {
+                throw new IllegalArgumentException("Type " + type + " requires " + dataSet.getValueType(i) + " value at index " + i + ", got " + types[i]);
+            }
+        }
+    }
+
+    /**
+     * Get types.db registry.
+     *
+     * @return types.db registry
+     */
+    public TypesDb getTypesDb() {
+        return typesDb;
+    }
+
+    /**
+     * Get number of value lists matching their data set.
+     *
+     * @return number of value lists
+     */
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    /**
+     * Get number of rejected value lists.
+     *
+     * @return number of value lists
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Get number of value lists with type not defined in types.db.
+     *
+     * @return number of value lists
+     */
+    public long getUnknown() {
+        return unknown.get();
+    }
+
+    private boolean reject(final PluginData data, final String reason) {
+        rejected.incrementAndGet();
+        // each type is reported once only
+        if (reported.add(data.getType())) {
+            log.warn("Value list rejected, it does not match data set of type " + data.getType() + ": " + reason + " (plugin: " + data.getPlugin()
+                    + ", type instance: " + data.getTypeInstance() + ")");
+        } else if (log.isDebugEnabled()) {
+            log.debug("Value list of type " + data.getType() + " rejected: " + reason);
+        }
+        return false;
+    }
+}
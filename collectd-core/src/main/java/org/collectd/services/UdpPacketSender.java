@@ -7,23 +7,51 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import lombok.extern.slf4j.Slf4j;
 import org.collectd.config.CollectdConstants;
+import org.collectd.config.SecurityLevel;
+import org.collectd.model.Histogram;
 import org.collectd.model.Notification;
 import org.collectd.model.PluginData;
+import org.collectd.model.SampleRing;
+import org.collectd.model.ValueList;
 import org.collectd.model.Values;
+import org.collectd.protocol.EncodedIdentifier;
+import org.collectd.protocol.PacketBuffer;
+import org.collectd.protocol.PacketEncryptor;
+import org.collectd.protocol.PacketSigner;
 import org.collectd.protocol.UdpBufferWriter;
 
 /**
- * UDP packet writer for Collectd.
+ * UDP packet writer for Collectd. Data is written into two lanes: notifications and critical value lists ({@link PluginData#isCritical()}) are written
+ * into express packets, sent when the oldest buffered item reaches the latency bound of the express lane (immediately by default) and never paced. All other
+ * value lists are batched into bulk packets, sent when they are full or flushed.
  */
 @Slf4j
-public class UdpPacketSender {
+public class UdpPacketSender implements PacketSender {
 
-    private UdpBufferWriter writer;
+    private final SenderStats stats = new SenderStats(this);
+
+    private final Lane bulk;
+    private final Lane express;
+    private volatile long expressLatency;
+    private volatile ScheduledExecutorService expressScheduler;
+    private final AtomicBoolean expressPending = new AtomicBoolean(false);
+    private volatile boolean packing;
 
     private final InetSocketAddress server;
 
@@ -32,8 +60,28 @@ public class UdpPacketSender {
 
     private String client;
 
-    private final AtomicLong bytesSent = new AtomicLong(0L);
-    private final AtomicInteger packetsSent = new AtomicInteger(0);
+    private ValueSuppressor suppressor;
+    private TypeValidator validator;
+    private ThresholdEngine thresholds;
+    private NotificationCoalescer coalescer;
+    private volatile PacketPacer pacer;
+    private volatile PacketSigner signer;
+    private volatile PacketEncryptor encryptor;
+
+    private static final String REPLAY_THREAD_NAME = "collectd-replay";
+    private static final String EXPRESS_THREAD_NAME = "collectd-express";
+    private static final long PROBE_INTERVAL = 1000L;
+    private static final long PROBE_TIMEOUT = 100L;
+    private static final int MAX_DATAGRAM_SIZE = 65535;
+
+    private SpillJournal journal;
+    private DatagramChannel channel;
+    private Thread replayer;
+    private double replayRate;
+    private volatile boolean unreachable;
+
+    private final AtomicLong spilled = new AtomicLong(0L);
+    private final AtomicLong replayed = new AtomicLong(0L);
 
     /**
      * Create new UDP packet writer instance. Default packet size is used.
@@ -54,41 +102,608 @@ public class UdpPacketSender {
     public UdpPacketSender(final InetSocketAddress server, final String clientHost, final int packetSize) {
         this.server = server;
         this.client = clientHost;
-        writer = new UdpBufferWriter(packetSize);
+        bulk = new Lane(new UdpBufferWriter(packetSize), stats.getBulkLatency());
+        express = new Lane(new UdpBufferWriter(packetSize), stats.getExpressLatency());
     }
 
     /**
-     * Write value list. Signature and encrypted parts are not supported yet.
+     * Write value list. Packets are signed or encrypted if security level is configured.
      *
      * @param values numeric value list
      * @throws IOException unable to write value to output stream
      */
+    @Override
     public void send(final Values values) throws IOException {
         setDefaults(values);
+        if (validator != null && !validator.validate(values)) {
+            return;
+        }
+        if (thresholds != null) {
+            final List<Notification> notifications = thresholds.evaluate(values);
+            if (!notifications.isEmpty()) {
+                send(notifications);
+            }
+        }
+        if (suppressor != null && !suppressor.accept(values)) {
+            return;
+        }
+
+        final Lane lane = getLane(values);
+        final PacketBuffer bufferToSend;
+        final long encodeTime;
+        synchronized (lane.writer) {
+            final long start = System.nanoTime();
+            bufferToSend = lane.writer.checkSpace(values);
+            lane.writer.writeValuesPart(values);
+            lane.queued(bufferToSend, start);
+            encodeTime = System.nanoTime() - start;
+        }
+        stats.recordValues(values.getItems().size(), encodeTime);
+        // socket is not used while writer is locked
+        release(bufferToSend, lane);
+    }
+
+    /**
+     * Write primitive value list. Packets are signed or encrypted if security level is configured.
+     *
+     * @param values numeric value list
+     * @throws IOException unable to write value to output stream
+     */
+    @Override
+    public void send(final ValueList values) throws IOException {
+        setDefaults(values);
+        if (validator != null && !validator.validate(values)) {
+            return;
+        }
+        if (thresholds != null) {
+            final List<Notification> notifications = thresholds.evaluate(values);
+            if (!notifications.isEmpty()) {
+                send(notifications);
+            }
+        }
+        if (suppressor != null && !suppressor.accept(values)) {
+            return;
+        }
 
-        final byte[] bufferToSend = writer.checkSpace(values);
-        if (bufferToSend != null) {
-            flush(bufferToSend);
+        final Lane lane = getLane(values);
+        final PacketBuffer bufferToSend;
+        final long encodeTime;
+        synchronized (lane.writer) {
+            final long start = System.nanoTime();
+            bufferToSend = lane.writer.checkSpace(values);
+            lane.writer.writeValuesPart(values);
+            lane.queued(bufferToSend, start);
+            encodeTime = System.nanoTime() - start;
         }
+        stats.recordValues(values.size(), encodeTime);
+        // socket is not used while writer is locked
+        release(bufferToSend, lane);
+    }
 
-        writer.writeValuesPart(values);
+    /**
+     * Write primitive value list of a pre-encoded identifier (identifier parts and time of value list must be set). Used by {@link Meter} handles, value
+     * types are validated when the handle is registered, so only thresholds are evaluated.
+     *
+     * @param identifier pre-encoded identifier
+     * @param values numeric value list
+     * @throws IOException unable to write value to output stream
+     */
+    void send(final EncodedIdentifier identifier, final ValueList values) throws IOException {
+        if (thresholds != null) {
+            final List<Notification> notifications = thresholds.evaluate(values);
+            if (!notifications.isEmpty()) {
+                send(notifications);
+            }
+        }
+        if (suppressor != null && !suppressor.accept(identifier, values)) {
+            return;
+        }
+
+        final Lane lane = getLane(values);
+        final PacketBuffer bufferToSend;
+        final long encodeTime;
+        synchronized (lane.writer) {
+            final long start = System.nanoTime();
+            bufferToSend = lane.writer.checkSpace(identifier, values);
+            lane.writer.writeValuesPart(identifier, values);
+            lane.queued(bufferToSend, start);
+            encodeTime = System.nanoTime() - start;
+        }
+        stats.recordValues(values.size(), encodeTime);
+        // socket is not used while writer is locked
+        release(bufferToSend, lane);
     }
 
     /**
-     * Write notification. Signature and encrypted parts are not supported yet.
+     * Write histogram snapshot and reset histogram. Packets are signed or encrypted if security level is configured.
+     *
+     * @param histogram latency histogram
+     * @throws IOException unable to write value to output stream
+     */
+    @Override
+    public void send(final Histogram histogram) throws IOException {
+        send(histogram.toValues());
+    }
+
+    /**
+     * Write buffered samples in a batch and clear sample ring. Identifier and interval are written once per packet, followed by the high resolution time and
+     * values of each sample. Packets are signed or encrypted if security level is configured.
+     *
+     * @param samples high-frequency samples of an identifier
+     * @throws IOException unable to write value to output stream
+     */
+    @Override
+    public void send(final SampleRing samples) throws IOException {
+        final List<PacketBuffer> buffersToSend = new ArrayList<>();
+        try {
+            synchronized (samples) {
+                final int count = samples.size();
+                if (count == 0) {
+                    return;
+                }
+                setDefaults(samples);
+                if (validator == null || validator.validate(samples)) {
+                    final long encodeTime;
+                    synchronized (bulk.writer) {
+                        final long start = System.nanoTime();
+                        bulk.writer.writeSamples(samples, buffersToSend);
+                        bulk.queued(buffersToSend.isEmpty() ? null : buffersToSend.get(0), start);
+                        encodeTime = System.nanoTime() - start;
+                    }
+                    stats.recordBatch(count, count * samples.getValueCount(), 0, encodeTime);
+                }
+                samples.clear();
+            }
+        } finally {
+            // socket is not used while writer is locked
+            for (final PacketBuffer bufferToSend : buffersToSend) {
+                flush(bufferToSend, bulk);
+            }
+        }
+    }
+
+    /**
+     * Write notification. Packets are signed or encrypted if security level is configured.
      *
      * @param notification notification
      * @throws IOException unable to write value to output stream
      */
+    @Override
     public void send(final Notification notification) throws IOException {
         setDefaults(notification);
+        if (coalescer != null) {
+            writeSummaries();
+            if (!coalescer.accept(notification)) {
+                return;
+            }
+        }
+        write(notification);
+    }
 
-        final byte[] bufferToSend = writer.checkSpace(notification);
-        if (bufferToSend != null) {
-            flush(bufferToSend);
+    private void write(final Notification notification) throws IOException {
+        final PacketBuffer bufferToSend;
+        final long encodeTime;
+        synchronized (express.writer) {
+            final long start = System.nanoTime();
+            bufferToSend = express.writer.checkSpace(notification);
+            express.writer.writeNotificationPart(notification);
+            express.queued(bufferToSend, start);
+            encodeTime = System.nanoTime() - start;
         }
+        stats.recordNotification(encodeTime);
+        // socket is not used while writer is locked
+        release(bufferToSend, express);
+    }
 
-        writer.writeNotificationPart(notification);
+    /**
+     * Write a batch of value lists, histogram snapshots and notifications. Items of each lane are encoded under a single lock of the writer of the lane, full
+     * packets are sent after encoding. Packets are signed or encrypted if security level is configured.
+     *
+     * @param data value lists ({@link Values} or {@link ValueList}), histograms and notifications
+     * @throws IOException unable to write value to output stream
+     */
+    @Override
+    public void send(final Collection<? extends PluginData> data) throws IOException {
+        final List<PluginData> accepted = new ArrayList<>(data.size());
+        int valueListCount = 0;
+        int valueCount = 0;
+        int notificationCount = 0;
+        for (final PluginData item : data) {
+            final PluginData resolved = item instanceof Histogram ? ((Histogram) item).toValues() : item;
+            setDefaults(resolved);
+            if (resolved instanceof Values) {
+                if (validator != null && !validator.validate((Values) resolved)) {
+                    continue;
+                }
+                if (thresholds != null) {
+                    notificationCount += addNotifications(accepted, thresholds.evaluate((Values) resolved));
+                }
+                if (suppressor == null || suppressor.accept((Values) resolved)) {
+                    accepted.add(resolved);
+                    valueListCount++;
+                    valueCount += ((Values) resolved).getItems().size();
+                }
+            } else if (resolved instanceof ValueList) {
+                if (validator != null && !validator.validate((ValueList) resolved)) {
+                    continue;
+                }
+                if (thresholds != null) {
+                    notificationCount += addNotifications(accepted, thresholds.evaluate((ValueList) resolved));
+                }
+                if (suppressor == null || suppressor.accept((ValueList) resolved)) {
+                    accepted.add(resolved);
+                    valueListCount++;
+                    valueCount += ((ValueList) resolved).size();
+                }
+            } else if (resolved instanceof Notification) {
+                if (coalescer == null || coalescer.accept((Notification) resolved)) {
+                    accepted.add(resolved);
+                    notificationCount++;
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported data type: " + resolved.getClass().getName());
+            }
+        }
+        if (coalescer != null) {
+            final List<Notification> summaries = coalescer.drain();
+            accepted.addAll(summaries);
+            notificationCount += summaries.size();
+        }
+
+        final List<PacketBuffer> bulkBuffers = new ArrayList<>();
+        final List<PacketBuffer> expressBuffers = new ArrayList<>();
+        int expressCount = 0;
+        try {
+            final long start = System.nanoTime();
+            write(bulk, accepted, bulkBuffers);
+            expressCount = write(express, accepted, expressBuffers);
+            stats.recordBatch(valueListCount, valueCount, notificationCount, System.nanoTime() - start);
+        } finally {
+            // socket is not used while writer is locked
+            for (final PacketBuffer bufferToSend : expressBuffers) {
+                flush(bufferToSend, express);
+            }
+            for (final PacketBuffer bufferToSend : bulkBuffers) {
+                flush(bufferToSend, bulk);
+            }
+        }
+        if (expressCount > 0) {
+            expressQueued();
+        }
+    }
+
+    /**
+     * Encode items of a lane under the lock of its writer, full packets are added to the list.
+     *
+     * @return number of written items
+     */
+    private int write(final Lane lane, final List<PluginData> items, final List<PacketBuffer> full) throws IOException {
+        if (lane == bulk && packing) {
+            return writePacked(items, full);
+        }
+        int count = 0;
+        synchronized (lane.writer) {
+            final long start = System.nanoTime();
+            for (final PluginData item : items) {
+                if (getLane(item) != lane) {
+                    continue;
+                }
+                final PacketBuffer bufferToSend;
+                if (item instanceof Values) {
+                    bufferToSend = lane.writer.checkSpace((Values) item);
+                    lane.writer.writeValuesPart((Values) item);
+                } else if (item instanceof ValueList) {
+                    bufferToSend = lane.writer.checkSpace((ValueList) item);
+                    lane.writer.writeValuesPart((ValueList) item);
+                } else {
+                    bufferToSend = lane.writer.checkSpace((Notification) item);
+                    lane.writer.writeNotificationPart((Notification) item);
+                }
+                lane.queued(bufferToSend, start);
+                if (bufferToSend != null) {
+                    full.add(bufferToSend);
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get threshold engine evaluating value lists before sending.
+     *
+     * @return threshold engine, null if thresholds are not evaluated
+     */
+    public ThresholdEngine getThresholds() {
+        return thresholds;
+    }
+
+    /**
+     * Set threshold engine. Value lists are evaluated after validation (before suppression), notifications of state changes are sent with the values.
+     *
+     * @param thresholds threshold engine, null to disable evaluation
+     */
+    public void setThresholds(final ThresholdEngine thresholds) {
+        this.thresholds = thresholds;
+    }
+
+    /**
+     * Set latency bound of the express lane (notifications and critical value lists). Express packet is sent by a background thread when the oldest buffered
+     * item reaches the latency bound, items written meanwhile share the packet.
+     *
+     * @param latency latency bound in milliseconds, express packets are sent immediately by the sending thread if not positive (default)
+     */
+    public synchronized void setExpressLatency(final long latency) {
+        expressLatency = latency;
+        if (latency > 0 && expressScheduler == null) {
+            expressScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable task) {
+                    final Thread thread = new Thread(task, EXPRESS_THREAD_NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Get latency bound of the express lane.
+     *
+     * @return latency bound in milliseconds, express packets are sent immediately if not positive
+     */
+    public long getExpressLatency() {
+        return expressLatency;
+    }
+
+    /**
+     * Pack value lists of batches ({@link #send(Collection)}) into the fewest bulk packets. Batch is sorted by identifier, so consecutive value lists share
+     * key parts, and identifier groups are placed into packets by first-fit decreasing.
+     *
+     * @param packing <code>true</code> to pack batches, value lists are written in arrival order otherwise (default)
+     */
+    public void setPacking(final boolean packing) {
+        this.packing = packing;
+    }
+
+    /**
+     * Check if batches are packed.
+     *
+     * @return <code>true</code> if batches are packed
+     */
+    public boolean isPacking() {
+        return packing;
+    }
+
+    /**
+     * Get number of items buffered in the open bulk packet.
+     *
+     * @return number of value lists
+     */
+    public int getBulkQueueDepth() {
+        return bulk.depth;
+    }
+
+    /**
+     * Get number of items buffered in the open express packet.
+     *
+     * @return number of notifications and critical value lists
+     */
+    public int getExpressQueueDepth() {
+        return express.depth;
+    }
+
+    /**
+     * Get coalescer of repeated notifications.
+     *
+     * @return coalescer, null if all notifications are sent
+     */
+    public NotificationCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * Set coalescer of repeated notifications. Summaries of repeats are sent with the next notification or flush.
+     *
+     * @param coalescer coalescer, null to send all notifications
+     */
+    public void setCoalescer(final NotificationCoalescer coalescer) {
+        this.coalescer = coalescer;
+    }
+
+    /**
+     * Get suppressor of unchanged value lists.
+     *
+     * @return suppressor, null if unchanged value lists are sent
+     */
+    public ValueSuppressor getSuppressor() {
+        return suppressor;
+    }
+
+    /**
+     * Set suppressor of unchanged value lists. Notifications are never suppressed.
+     *
+     * @param suppressor suppressor, null to send all value lists
+     */
+    public void setSuppressor(final ValueSuppressor suppressor) {
+        this.suppressor = suppressor;
+    }
+
+    /**
+     * Get validator of value lists.
+     *
+     * @return validator, null if value lists are not validated
+     */
+    public TypeValidator getValidator() {
+        return validator;
+    }
+
+    /**
+     * Set validator of value lists, value lists not matching the data set of their type are dropped. Value lists of pre-encoded identifiers are checked when
+     * the {@link Meter} is registered.
+     *
+     * @param validator validator, null to send all value lists
+     */
+    public void setValidator(final TypeValidator validator) {
+        this.validator = validator;
+    }
+
+    /**
+     * Enable pacing of packets. Packets exceeding the rate are queued and sent by a background thread.
+     *
+     * @param packetsPerSecond packet rate, not limited if not positive
+     * @param bytesPerSecond byte rate, not limited if not positive
+     * @param backlog maximum number of queued packets, packets are dropped if backlog is full
+     */
+    public synchronized void setPacing(final double packetsPerSecond, final long bytesPerSecond, final int backlog) {
+        final PacketPacer previous = pacer;
+        pacer = new PacketPacer(new PacketTransmitter() {
+            @Override
+            public void transmit(final PacketBuffer buffer) throws IOException {
+                UdpPacketSender.this.transmit(buffer);
+            }
+        }, packetsPerSecond, bytesPerSecond, backlog);
+        // replaced pacer waits for threads still submitting to it, then sends its backlog
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * Get packet pacer.
+     *
+     * @return packet pacer, null if packets are not paced
+     */
+    public PacketPacer getPacer() {
+        return pacer;
+    }
+
+    /**
+     * Sign packets by HMAC-SHA-256. Space of the signature part is reserved in each packet (reducing the payload size), packets are signed in place once when
+     * they are flushed. Signing must be configured before sending data.
+     *
+     * @param username user name, null to disable signing
+     * @param password password of the user
+     */
+    public void setSigning(final String username, final String password) {
+        setSecurity(username != null ? SecurityLevel.SIGN : SecurityLevel.NONE, username, password);
+    }
+
+    /**
+     * Set security level of packets. Space of the signature part (or the unencrypted header of encrypted packets) is reserved in each packet (reducing the
+     * payload size), packets are signed or encrypted in place once when they are flushed. Security level must be configured before sending data.
+     *
+     * @param level security level
+     * @param username user name (not used if security level is {@link SecurityLevel#NONE})
+     * @param password password of the user (not used if security level is {@link SecurityLevel#NONE})
+     */
+    public void setSecurity(final SecurityLevel level, final String username, final String password) {
+        final PacketSigner packetSigner = level == SecurityLevel.SIGN ? new PacketSigner(username, password) : null;
+        final PacketEncryptor packetEncryptor = level == SecurityLevel.ENCRYPT ? new PacketEncryptor(username, password) : null;
+        final int headroom = packetSigner != null ? packetSigner.getPartLength() : packetEncryptor != null ? packetEncryptor.getPartLength() : 0;
+        synchronized (bulk.writer) {
+            synchronized (express.writer) {
+                bulk.writer.setHeadroom(headroom);
+                express.writer.setHeadroom(headroom);
+                signer = packetSigner;
+                encryptor = packetEncryptor;
+            }
+        }
+    }
+
+    /**
+     * Get security level of packets.
+     *
+     * @return security level
+     */
+    public SecurityLevel getSecurityLevel() {
+        if (signer != null) {
+            return SecurityLevel.SIGN;
+        }
+        return encryptor != null ? SecurityLevel.ENCRYPT : SecurityLevel.NONE;
+    }
+
+    /**
+     * Enable spilling of packets that could not be delivered. Errors reported by the transport (ICMP port unreachable on the connected channel, no buffer
+     * space) or by {@link #markUnavailable()} switch sender to spill mode: finished packets are appended to the journal (in order) until Collectd server is
+     * reachable again. Spilled packets are replayed by a background thread with their original timestamps. Spilling is not supported for multicast
+     * addresses.
+     *
+     * @param journal spill journal, it is closed with the sender
+     * @param replayRate maximum number of replayed packets per second, not limited if not positive
+     */
+    public synchronized void setSpill(final SpillJournal journal, final double replayRate) {
+        Objects.requireNonNull(journal, "Missing spill journal");
+        if (replayer != null) {
+            throw new IllegalStateException("Spill journal is already set");
+        }
+        this.journal = journal;
+        this.replayRate = replayRate;
+
+        replayer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                replay();
+            }
+        }, REPLAY_THREAD_NAME);
+        replayer.setDaemon(true);
+        replayer.start();
+    }
+
+    /**
+     * Get spill journal.
+     *
+     * @return spill journal, null if undelivered packets are dropped
+     */
+    public synchronized SpillJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Mark Collectd server unavailable (i.e. by an external health probe). Packets are spilled until server is reachable again. Ignored if spill journal is
+     * not set.
+     */
+    public void markUnavailable() {
+        if (!unreachable && getJournal() != null) {
+            log.warn("Collectd server " + server + " is unavailable, spilling packets");
+            unreachable = true;
+        }
+    }
+
+    /**
+     * Check if Collectd server is available.
+     *
+     * @return <code>false</code> if packets are spilled because of delivery errors
+     */
+    public boolean isAvailable() {
+        return !unreachable;
+    }
+
+    /**
+     * Get number of packets appended to spill journal.
+     *
+     * @return number of packets
+     */
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    /**
+     * Get number of packets replayed from spill journal.
+     *
+     * @return number of packets
+     */
+    public long getReplayed() {
+        return replayed.get();
+    }
+
+    /**
+     * Get maximum replay rate.
+     *
+     * @return packets per second, not limited if not positive
+     */
+    public synchronized double getReplayRate() {
+        return replayRate;
     }
 
     /**
@@ -97,35 +712,246 @@ public class UdpPacketSender {
      * @return number of sent bytes
      */
     public long getBytesSent() {
-        return bytesSent.longValue();
+        return stats.getBytesSent();
     }
 
     /**
      * Get number of packets sent to Collectd server.
      * 
-     * @return number of sent packets
+     * @return number of sent packets, {@link Integer#MAX_VALUE} if the number does not fit into an int
+     * @deprecated counter overflows an int on long running senders, use {@link #getPacketCount()}
      */
+    @Deprecated
     public int getPacketsSent() {
-        return packetsSent.intValue();
+        return (int) Math.min(Integer.MAX_VALUE, stats.getPacketsSent());
+    }
+
+    /**
+     * Get number of packets sent to Collectd server.
+     *
+     * @return number of sent packets
+     */
+    public long getPacketCount() {
+        return stats.getPacketsSent();
+    }
+
+    /**
+     * Get statistics of sender.
+     *
+     * @return sender statistics
+     */
+    public SenderStats getStats() {
+        return stats;
     }
 
     /**
-     * Flush buffer.
+     * Send statistics of sender to Collectd server (see {@link SenderStats#toValues()}). Statistics are never suppressed.
+     *
+     * @throws IOException unable to write value to output stream
+     */
+    public void sendStats() throws IOException {
+        for (final Values values : stats.toValues()) {
+            setDefaults(values);
+            final PacketBuffer bufferToSend;
+            synchronized (bulk.writer) {
+                bufferToSend = bulk.writer.checkSpace(values);
+                bulk.writer.writeValuesPart(values);
+                bulk.queued(bufferToSend, System.nanoTime());
+            }
+            flush(bufferToSend, bulk);
+        }
+    }
+
+    /**
+     * Flush buffers of both lanes.
      * 
      * @throws IOException unable to write buffer
      */
+    @Override
     public void flush() throws IOException {
-        flush(writer.getBuffer());
+        if (coalescer != null) {
+            // summaries of closed windows are sent even if no notification is repeated anymore
+            writeSummaries();
+        }
+        flush(express);
+        flush(bulk);
+    }
+
+    private void flush(final Lane lane) throws IOException {
+        final PacketBuffer buffer;
+        synchronized (lane.writer) {
+            buffer = lane.writer.swapBuffer();
+            lane.closed(System.nanoTime());
+        }
+        flush(buffer, lane);
+    }
+
+    /**
+     * Flush buffer and stop packet pacing (queued packets are sent without pacing). Sockets and spill journal are closed.
+     *
+     * @throws IOException unable to write buffer
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            final ScheduledExecutorService scheduler = expressScheduler;
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+            }
+            final PacketPacer packetPacer = pacer;
+            if (packetPacer != null) {
+                packetPacer.shutdown();
+            }
+            closeSpill();
+            stats.unregister();
+            if (socket != null) {
+                socket.close();
+            }
+            if (mcast != null) {
+                mcast.close();
+            }
+        }
+    }
+
+    private void closeSpill() throws IOException {
+        final Thread thread;
+        final SpillJournal spill;
+        synchronized (this) {
+            thread = replayer;
+            spill = journal;
+            replayer = null;
+        }
+        if (thread == null) {
+            return;
+        }
+
+        thread.interrupt();
+        try {
+            thread.join(PROBE_INTERVAL);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            if (spill.getCount() > 0) {
+                log.warn("Spill journal contains " + spill.getCount() + " undelivered packets");
+            }
+            spill.close();
+        }
+    }
+
+    /**
+     * Encode bulk items of a batch packed by identifier into the fewest packets.
+     *
+     * @return number of written items
+     */
+    private int writePacked(final List<PluginData> items, final List<PacketBuffer> full) throws IOException {
+        final List<PluginData> batch = new ArrayList<>(items.size());
+        for (final PluginData item : items) {
+            if (getLane(item) == bulk) {
+                batch.add(item);
+            }
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        final UdpBufferWriter.Packing result;
+        synchronized (bulk.writer) {
+            final long start = System.nanoTime();
+            final int flushed = full.size();
+            result = bulk.writer.writePacked(batch, full);
+            if (full.size() > flushed) {
+                bulk.queued(full.get(flushed), start, result.getOpenItems());
+            } else {
+                bulk.queued(null, start, batch.size());
+            }
+        }
+        stats.recordPacking(result);
+        return batch.size();
     }
 
-    private void flush(final byte[] buffer) throws IOException {
-        final int length = buffer != null ? buffer.length : 0;
-        if (length == 0) {
+    /**
+     * Send full packet of a lane and the express packet if its latency bound is not set.
+     */
+    private void release(final PacketBuffer buffer, final Lane lane) throws IOException {
+        flush(buffer, lane);
+        if (lane == express) {
+            expressQueued();
+        }
+    }
+
+    private void flush(final PacketBuffer buffer, final Lane lane) throws IOException {
+        if (buffer == null) {
             return;
         }
 
-        bytesSent.addAndGet(length);
-        packetsSent.incrementAndGet();
+        // signed or encrypted outside of the writer lock, once per packet
+        final PacketSigner packetSigner = signer;
+        final PacketEncryptor packetEncryptor = encryptor;
+        if (packetSigner != null) {
+            packetSigner.sign(buffer);
+        } else if (packetEncryptor != null) {
+            packetEncryptor.encrypt(buffer);
+        }
+        final PacketPacer packetPacer = pacer;
+        if (packetPacer != null && lane == bulk) {
+            packetPacer.submit(buffer);
+        } else {
+            // express packets are not delayed by the backlog of bulk packets
+            transmit(buffer);
+        }
+    }
+
+    /**
+     * Send express packet immediately if latency bound is not set, otherwise schedule flush of the express lane (unless a flush is already scheduled).
+     */
+    private void expressQueued() throws IOException {
+        final ScheduledExecutorService scheduler = expressScheduler;
+        final long latency = expressLatency;
+        if (scheduler == null || latency <= 0) {
+            flush(express);
+            return;
+        }
+        if (!expressPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    // items written after the flag is reset schedule next flush
+                    expressPending.set(false);
+                    try {
+                        flush(express);
+                    } catch (IOException ex) {
+                        log.warn("Unable to send express packet", ex);
+                    }
+                }
+            }, latency, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // sender is closed
+            expressPending.set(false);
+            flush(express);
+        }
+    }
+
+    private void transmit(final PacketBuffer buffer) throws IOException {
+        final int length = buffer.getLength();
+        final SpillJournal spill = getJournal();
+        if (spill != null && !server.getAddress().isMulticastAddress()) {
+            try {
+                transmit(spill, buffer.getData(), length, buffer.getData().length);
+            } finally {
+                buffer.release();
+            }
+            return;
+        }
 
         if (log.isDebugEnabled()) {
             log.debug("Sending UDP packet, buffer length: " + length);
@@ -133,22 +959,138 @@ public class UdpPacketSender {
         if (log.isTraceEnabled()) {
             log.trace("Destination host: " + server.getHostString());
             log.trace("Destination port: " + server.getPort());
-            log.trace("Buffer data: " + Arrays.toString(buffer));
+            log.trace("Buffer data: " + Arrays.toString(buffer.toByteArray()));
         }
 
+        final long start = System.nanoTime();
         try {
-            final DatagramPacket packet = new DatagramPacket(buffer, length, server);
+            // packet is sent from the pooled buffer without copying
+            final DatagramPacket packet = new DatagramPacket(buffer.getData(), 0, length, server);
             if (server.getAddress().isMulticastAddress()) {
                 getMulticastSocket().send(packet);
             } else {
                 getSocket().send(packet);
             }
+            stats.recordPacket(length, buffer.getData().length, System.nanoTime() - start);
         } catch (IllegalArgumentException ex) {
-            log.debug("Unable to send metrics", ex);
+            stats.recordError();
+            log.warn("Unable to send metrics", ex);
+        } catch (IOException ex) {
+            stats.recordError();
+            throw ex;
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Send packet over the connected channel or append it to spill journal if server is unreachable. Packets are appended while journal is not empty
+     * (replayed) to keep the order of packets.
+     */
+    private void transmit(final SpillJournal spill, final byte[] data, final int length, final int capacity) {
+        if (!unreachable && spill.isEmpty()) {
+            try {
+                if (write(data, length, capacity)) {
+                    return;
+                }
+                stats.recordError();
+            } catch (IOException ex) {
+                stats.recordError();
+                if (log.isDebugEnabled()) {
+                    log.debug("Unable to send UDP packet to " + server, ex);
+                }
+            }
+            markUnavailable();
+        }
+
+        spill.append(data, length, System.currentTimeMillis());
+        spilled.incrementAndGet();
+    }
+
+    /**
+     * Write packet to connected channel. ICMP port unreachable messages of earlier packets are reported as exception.
+     *
+     * @return <code>false</code> if no buffer space is available
+     */
+    private boolean write(final byte[] data, final int length, final int capacity) throws IOException {
+        final long start = System.nanoTime();
+        if (getChannel().write(ByteBuffer.wrap(data, 0, length)) == 0) {
+            return false;
+        }
+        stats.recordPacket(length, capacity, System.nanoTime() - start);
+        return true;
+    }
+
+    private void replay() {
+        final SpillJournal spill = getJournal();
+        final TokenBucket bucket = replayRate > 0 ? new TokenBucket(replayRate, Math.max(1.0, replayRate)) : null;
+        // journal may contain packets of an earlier run with different packet size
+        final byte[] replayData = new byte[MAX_DATAGRAM_SIZE];
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (spill.isEmpty() && !unreachable) {
+                    TimeUnit.MILLISECONDS.sleep(PROBE_INTERVAL);
+                    continue;
+                }
+                if (unreachable) {
+                    if (!probe()) {
+                        TimeUnit.MILLISECONDS.sleep(PROBE_INTERVAL);
+                        continue;
+                    }
+                    log.info("Collectd server " + server + " is reachable again, replaying " + spill.getCount() + " packets");
+                    unreachable = false;
+                }
+
+                if (bucket != null && !bucket.tryAcquire(1)) {
+                    TimeUnit.NANOSECONDS.sleep(Math.max(1L, bucket.getWaitNanos(1)));
+                    continue;
+                }
+
+                final int length = spill.peek(replayData);
+                if (length < 0) {
+                    continue;
+                }
+                try {
+                    // capacity of spilled packets is unknown, packet length is counted as capacity
+                    if (!write(replayData, length, length)) {
+                        markUnavailable();
+                        continue;
+                    }
+                } catch (IOException ex) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Unable to replay UDP packet to " + server, ex);
+                    }
+                    markUnavailable();
+                    continue;
+                }
+                spill.remove();
+                replayed.incrementAndGet();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private String getClient() {
+    /**
+     * Probe Collectd server by sending an empty datagram. Server is unreachable if ICMP port unreachable message is received in probe timeout.
+     */
+    private boolean probe() throws InterruptedException {
+        try {
+            final DatagramChannel probeChannel = getChannel();
+            probeChannel.write(ByteBuffer.allocate(0));
+            TimeUnit.MILLISECONDS.sleep(PROBE_TIMEOUT);
+            probeChannel.read(ByteBuffer.allocate(1));
+            return true;
+        } catch (IOException ex) {
+            if (log.isTraceEnabled()) {
+                log.trace("Collectd server " + server + " is still unreachable", ex);
+            }
+            return false;
+        }
+    }
+
+    String getClient() {
         if (client == null) {
             try {
                 client = InetAddress.getLocalHost().getHostName();
@@ -160,6 +1102,29 @@ public class UdpPacketSender {
         return client;
     }
 
+    private Lane getLane(final PluginData data) {
+        return data instanceof Notification || data.isCritical() ? express : bulk;
+    }
+
+    private int addNotifications(final List<PluginData> accepted, final List<Notification> notifications) {
+        int count = 0;
+        for (final Notification notification : notifications) {
+            setDefaults(notification);
+            if (coalescer == null || coalescer.accept(notification)) {
+                accepted.add(notification);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void writeSummaries() throws IOException {
+        for (final Notification summary : coalescer.drain()) {
+            setDefaults(summary);
+            write(summary);
+        }
+    }
+
     private void setDefaults(final PluginData data) {
         if (data.getHost() == null) {
             data.setHost(getClient());
@@ -169,18 +1134,70 @@ public class UdpPacketSender {
         }
     }
 
-    private DatagramSocket getSocket() throws SocketException {
+    private synchronized DatagramSocket getSocket() throws SocketException {
         if (socket == null) {
             socket = new DatagramSocket();
         }
         return socket;
     }
 
-    private MulticastSocket getMulticastSocket() throws IOException {
+    private synchronized DatagramChannel getChannel() throws IOException {
+        if (channel == null) {
+            channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(server);
+        }
+        return channel;
+    }
+
+    private synchronized MulticastSocket getMulticastSocket() throws IOException {
         if (mcast == null) {
             mcast = new MulticastSocket();
             mcast.setTimeToLive(1);
         }
         return mcast;
     }
+
+    /**
+     * Packet lane, a buffer writer with the number and the enqueue time of buffered items. Fields are guarded by the lock of the writer.
+     */
+    private static final class Lane {
+
+        private final UdpBufferWriter writer;
+        private final Histogram latency;
+        private volatile int depth;
+        private long since;
+
+        private Lane(final UdpBufferWriter writer, final Histogram latency) {
+            this.writer = writer;
+            this.latency = latency;
+        }
+
+        /**
+         * Count item written into the open packet. Full packet returned by <code>checkSpace</code> is closed before the item is counted.
+         */
+        private void queued(final PacketBuffer full, final long now) {
+            queued(full, now, 1);
+        }
+
+        private void queued(final PacketBuffer full, final long now, final int count) {
+            if (full != null) {
+                closed(now);
+            }
+            if (depth == 0 && count > 0) {
+                since = now;
+            }
+            depth += count;
+        }
+
+        /**
+         * Record time the oldest item of the closed packet was buffered.
+         */
+        private void closed(final long now) {
+            if (depth > 0) {
+                latency.record(now - since);
+                depth = 0;
+            }
+        }
+    }
 }
@@ -0,0 +1,760 @@
+package org.collectd.services;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.collectd.model.Histogram;
+import org.collectd.model.Notification;
+import org.collectd.model.PluginData;
+import org.collectd.model.SampleRing;
+import org.collectd.model.ValueList;
+import org.collectd.model.ValueType;
+import org.collectd.model.Values;
+
+/**
+ * Sender of the text protocol of Collectd unixsock plugin (<code>PUTVAL</code> and <code>PUTNOTIF</code> commands) over a Unix domain socket. Commands are
+ * buffered and pipelined over a persistent connection, responses are read by a background thread. Number of commands waiting for response is limited, so
+ * senders are blocked (back-pressure) instead of losing data if Collectd is not able to process commands.
+ * <p>
+ * Unix domain sockets are supported by Java 16 or later, {@link IOException} is thrown on older runtimes.
+ */
+@Slf4j
+public class UnixSocketSender implements PacketSender {
+
+    /**
+     * Default socket path of unixsock plugin.
+     */
+    public static final String DEFAULT_SOCKET_PATH = "/var/run/collectd-unixsock";
+
+    /**
+     * Default maximum number of commands waiting for response.
+     */
+    public static final int DEFAULT_MAX_PENDING = 1024;
+
+    /**
+     * Maximum line length accepted by unixsock plugin.
+     */
+    private static final int MAX_LINE_LENGTH = 1023;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long RECONNECT_DELAY = 1000L;
+    private static final long CLOSE_TIMEOUT = 5000L;
+    private static final String READER_THREAD_NAME = "collectd-unixsock";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String socketPath;
+    private final int maxPending;
+    private final Semaphore permits;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder line = new StringBuilder(MAX_LINE_LENGTH);
+    private final ValueList valueList = new ValueList();
+    private int buffered;
+    private long lastConnectFailure;
+
+    private volatile SocketChannel channel;
+    private String client;
+    private TypeValidator validator;
+    private ThresholdEngine thresholds;
+    private NotificationCoalescer coalescer;
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicLong commandsSent = new AtomicLong(0L);
+    private final AtomicLong errors = new AtomicLong(0L);
+    private final AtomicLong lost = new AtomicLong(0L);
+
+    /**
+     * Create new unixsock sender.
+     *
+     * @param socketPath path of Unix domain socket of unixsock plugin
+     * @param clientHost client hostname
+     * @param maxPending maximum number of commands waiting for response
+     */
+    public UnixSocketSender(final String socketPath, final String clientHost, final int maxPending) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("Maximum number of pending commands must be positive");
+        }
+        this.socketPath = socketPath;
+        this.client = clientHost;
+        this.maxPending = maxPending;
+        this.permits = new Semaphore(maxPending);
+    }
+
+    @Override
+    public void send(final Values values) throws IOException {
+        setDefaults(values);
+        if (validator != null && !validator.validate(values)) {
+            return;
+        }
+        if (thresholds != null) {
+            final List<Notification> notifications = thresholds.evaluate(values);
+            if (!notifications.isEmpty()) {
+                send(notifications);
+            }
+        }
+        acquire();
+        synchronized (this) {
+            valueList.copyOf(values);
+            formatPutValue(valueList);
+            append();
+        }
+    }
+
+    @Override
+    public void send(final ValueList values) throws IOException {
+        setDefaults(values);
+        if (validator != null && !validator.validate(values)) {
+            return;
+        }
+        if (thresholds != null) {
+            final List<Notification> notifications = thresholds.evaluate(values);
+            if (!notifications.isEmpty()) {
+                send(notifications);
+            }
+        }
+        acquire();
+        synchronized (this) {
+            formatPutValue(values);
+            append();
+        }
+    }
+
+    @Override
+    public void send(final Histogram histogram) throws IOException {
+        send(histogram.toValues());
+    }
+
+    /**
+     * Send buffered samples and clear sample ring. Samples are sent as <code>PUTVAL</code> commands with many <code>time:value</code> pairs, a new command
+     * is started if line length limit is reached.
+     *
+     * @param samples high-frequency samples of an identifier
+     * @throws IOException unable to write socket
+     */
+    @Override
+    public void send(final SampleRing samples) throws IOException {
+        final List<String> commands = new ArrayList<>();
+        synchronized (samples) {
+            final int count = samples.size();
+            if (count == 0) {
+                return;
+            }
+            setDefaults(samples);
+            if (validator == null || validator.validate(samples)) {
+                final ValueList sample = new ValueList(samples.getValueCount());
+                synchronized (this) {
+                    formatPutSamples(samples);
+                    int samplesInLine = 0;
+                    int i = 0;
+                    while (i < count) {
+                        final int mark = line.length();
+                        samples.copyTo(i, sample);
+                        line.append(' ');
+                        appendValues(sample);
+                        if (line.length() > MAX_LINE_LENGTH && samplesInLine > 0) {
+                            // sample is moved to the next command
+                            line.setLength(mark);
+                            commands.add(line.toString());
+                            formatPutSamples(samples);
+                            samplesInLine = 0;
+                        } else {
+                            samplesInLine++;
+                            i++;
+                        }
+                    }
+                    commands.add(line.toString());
+                }
+            }
+            samples.clear();
+        }
+
+        for (final String command : commands) {
+            acquire();
+            synchronized (this) {
+                line.setLength(0);
+                line.append(command);
+                append();
+            }
+        }
+    }
+
+    @Override
+    public void send(final Notification notification) throws IOException {
+        setDefaults(notification);
+        if (coalescer != null) {
+            writeSummaries();
+            if (!coalescer.accept(notification)) {
+                return;
+            }
+        }
+        write(notification);
+    }
+
+    private void write(final Notification notification) throws IOException {
+        acquire();
+        synchronized (this) {
+            formatPutNotification(notification);
+            append();
+        }
+    }
+
+    /**
+     * Send a batch of commands. Permits are acquired for chunks of the batch (up to maximum number of pending commands), each chunk is formatted under a
+     * single lock.
+     *
+     * @param data value lists, histograms and notifications
+     * @throws IOException unable to write socket
+     */
+    @Override
+    public void send(final Collection<? extends PluginData> data) throws IOException {
+        final List<PluginData> items = new ArrayList<>(data.size());
+        for (final PluginData item : data) {
+            final PluginData resolved = item instanceof Histogram ? ((Histogram) item).toValues() : item;
+            if (!(resolved instanceof Values || resolved instanceof ValueList || resolved instanceof Notification)) {
+                throw new IllegalArgumentException("Unsupported data type: " + resolved.getClass().getName());
+            }
+            setDefaults(resolved);
+            if (validator != null && (resolved instanceof Values && !validator.validate((Values) resolved)
+                    || resolved instanceof ValueList && !validator.validate((ValueList) resolved))) {
+                continue;
+            }
+            if (thresholds != null && resolved instanceof Values) {
+                addNotifications(items, thresholds.evaluate((Values) resolved));
+            } else if (thresholds != null && resolved instanceof ValueList) {
+                addNotifications(items, thresholds.evaluate((ValueList) resolved));
+            }
+            if (coalescer == null || !(resolved instanceof Notification) || coalescer.accept((Notification) resolved)) {
+                items.add(resolved);
+            }
+        }
+        if (coalescer != null) {
+            items.addAll(coalescer.drain());
+        }
+
+        for (int from = 0; from < items.size(); from += maxPending) {
+            final int to = Math.min(items.size(), from + maxPending);
+            acquire(to - from);
+            synchronized (this) {
+                int i = from;
+                try {
+                    for (; i < to; i++) {
+                        final PluginData item = items.get(i);
+                        if (item instanceof Values) {
+                            valueList.copyOf((Values) item);
+                            formatPutValue(valueList);
+                        } else if (item instanceof ValueList) {
+                            formatPutValue((ValueList) item);
+                        } else {
+                            formatPutNotification((Notification) item);
+                        }
+                        append();
+                    }
+                } finally {
+                    if (i < to) {
+                        // permit of the failed command is released by append
+                        permits.release(to - i - 1);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Write buffered commands to socket.
+     *
+     * @throws IOException unable to connect or write socket
+     */
+    @Override
+    public void flush() throws IOException {
+        if (coalescer != null) {
+            writeSummaries();
+        }
+        synchronized (this) {
+            writeBuffer();
+        }
+    }
+
+    /**
+     * Flush buffered commands, wait for pending responses and close connection.
+     *
+     * @throws IOException unable to write buffered commands
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            synchronized (this) {
+                lastConnectFailure = 0L;
+                writeBuffer();
+                if (buffered > 0) {
+                    log.warn("Not connected to Collectd unixsock, " + buffered + " commands are dropped");
+                    lost.addAndGet(buffered);
+                    permits.release(buffered);
+                    buffer.clear();
+                    buffered = 0;
+                }
+            }
+            if (permits.tryAcquire(maxPending, CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                permits.release(maxPending);
+            } else {
+                log.warn("No response received for " + inFlight.get() + " commands");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            final SocketChannel current = channel;
+            if (current != null) {
+                disconnect(current);
+            }
+        }
+    }
+
+    /**
+     * Get validator of value lists.
+     *
+     * @return validator, null if value lists are not validated
+     */
+    public TypeValidator getValidator() {
+        return validator;
+    }
+
+    /**
+     * Set validator of value lists, value lists not matching the data set of their type are dropped (instead of being rejected by Collectd).
+     *
+     * @param validator validator, null to send all value lists
+     */
+    public void setValidator(final TypeValidator validator) {
+        this.validator = validator;
+    }
+
+    /**
+     * Get threshold engine evaluating value lists before sending.
+     *
+     * @return threshold engine, null if thresholds are not evaluated
+     */
+    public ThresholdEngine getThresholds() {
+        return thresholds;
+    }
+
+    /**
+     * Set threshold engine. Value lists are evaluated after validation, notifications of state changes are sent as <code>PUTNOTIF</code> commands.
+     *
+     * @param thresholds threshold engine, null to disable evaluation
+     */
+    public void setThresholds(final ThresholdEngine thresholds) {
+        this.thresholds = thresholds;
+    }
+
+    /**
+     * Get coalescer of repeated notifications.
+     *
+     * @return coalescer, null if all notifications are sent
+     */
+    public NotificationCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * Set coalescer of repeated notifications. Summaries of repeats are sent with the next notification or flush.
+     *
+     * @param coalescer coalescer, null to send all notifications
+     */
+    public void setCoalescer(final NotificationCoalescer coalescer) {
+        this.coalescer = coalescer;
+    }
+
+    /**
+     * Get number of commands sent to Collectd.
+     *
+     * @return number of commands
+     */
+    public long getCommandsSent() {
+        return commandsSent.get();
+    }
+
+    /**
+     * Get number of commands rejected by Collectd (negative status code).
+     *
+     * @return number of commands
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * Get number of commands lost (connection closed before response or unable to connect).
+     *
+     * @return number of commands
+     */
+    public long getLost() {
+        return lost.get();
+    }
+
+    /**
+     * Get number of commands waiting for response.
+     *
+     * @return number of commands
+     */
+    public int getPending() {
+        return inFlight.get();
+    }
+
+    /**
+     * Acquire permit of a command. Buffered commands are written if no permit is available to avoid waiting for responses of commands that are not sent yet.
+     */
+    private void acquire() throws IOException {
+        acquire(1);
+    }
+
+    private void acquire(final int count) throws IOException {
+        if (permits.tryAcquire(count)) {
+            return;
+        }
+        flush();
+        try {
+            permits.acquire(count);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for Collectd responses");
+        }
+    }
+
+    private void append() throws IOException {
+        final byte[] bytes = line.toString().getBytes(UTF_8);
+        if (bytes.length > MAX_LINE_LENGTH) {
+            permits.release();
+            throw new IllegalArgumentException("Command is longer than " + MAX_LINE_LENGTH + " bytes: " + line);
+        }
+        if (buffer.remaining() <= bytes.length) {
+            writeBuffer();
+        }
+        if (buffer.remaining() <= bytes.length) {
+            // buffered commands could not be written
+            lost.addAndGet(buffered);
+            permits.release(buffered + 1);
+            buffer.clear();
+            buffered = 0;
+            throw new IOException("Not connected to Collectd unixsock " + socketPath + ", commands are dropped");
+        }
+        buffer.put(bytes);
+        buffer.put((byte) '\n');
+        buffered++;
+    }
+
+    private void writeBuffer() throws IOException {
+        if (buffered == 0) {
+            return;
+        }
+        final SocketChannel current = connect();
+        if (current == null) {
+            return;
+        }
+
+        buffer.flip();
+        inFlight.addAndGet(buffered);
+        commandsSent.addAndGet(buffered);
+        try {
+            while (buffer.hasRemaining()) {
+                current.write(buffer);
+            }
+        } catch (IOException ex) {
+            disconnect(current);
+            throw ex;
+        } finally {
+            buffer.clear();
+            buffered = 0;
+        }
+    }
+
+    private SocketChannel connect() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            return channel;
+        }
+        if (System.currentTimeMillis() - lastConnectFailure < RECONNECT_DELAY) {
+            return null;
+        }
+
+        try {
+            final SocketChannel opened = openChannel(socketPath);
+            channel = opened;
+            final Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    readResponses(opened);
+                }
+            }, READER_THREAD_NAME);
+            reader.setDaemon(true);
+            reader.start();
+            if (log.isDebugEnabled()) {
+                log.debug("Connected to Collectd unixsock " + socketPath);
+            }
+            return opened;
+        } catch (IOException ex) {
+            lastConnectFailure = System.currentTimeMillis();
+            throw ex;
+        }
+    }
+
+    /**
+     * Close connection, commands waiting for response are lost.
+     */
+    private void disconnect(final SocketChannel closed) {
+        try {
+            closed.close();
+        } catch (IOException ex) {
+            log.warn("Unable to close unixsock connection", ex);
+        }
+        synchronized (this) {
+            if (channel == closed) {
+                channel = null;
+                final int pending = inFlight.getAndSet(0);
+                if (pending > 0) {
+                    lost.addAndGet(pending);
+                    permits.release(pending);
+                    log.warn("Connection of Collectd unixsock is closed, no response received for " + pending + " commands");
+                }
+            }
+        }
+    }
+
+    private void readResponses(final SocketChannel readChannel) {
+        final ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+        final StringBuilder response = new StringBuilder();
+        try {
+            while (readChannel.read(input) >= 0) {
+                input.flip();
+                while (input.hasRemaining()) {
+                    final char c = (char) (input.get() & 0xff);
+                    if (c == '\n') {
+                        processResponse(response);
+                        response.setLength(0);
+                    } else {
+                        response.append(c);
+                    }
+                }
+                input.clear();
+            }
+        } catch (IOException ex) {
+            if (readChannel.isOpen() && log.isDebugEnabled()) {
+                log.debug("Unable to read unixsock response", ex);
+            }
+        } finally {
+            disconnect(readChannel);
+        }
+    }
+
+    /**
+     * Process status line (<code>status message</code>), negative status means error.
+     */
+    private void processResponse(final CharSequence response) {
+        if (inFlight.get() > 0) {
+            inFlight.decrementAndGet();
+            permits.release();
+        }
+        if (response.length() > 0 && response.charAt(0) == '-') {
+            errors.incrementAndGet();
+            log.warn("Command rejected by Collectd: " + response);
+        }
+    }
+
+    /**
+     * Format <code>PUTVAL "host/plugin-instance/type-instance" interval=N time:value[:value]...</code> command.
+     */
+    private void formatPutValue(final ValueList values) {
+        line.setLength(0);
+        line.append("PUTVAL ");
+        appendIdentifier(values);
+        if (values.getInterval() > 0) {
+            // interval is in milliseconds
+            line.append(" interval=");
+            appendTime(values.getInterval());
+        }
+        line.append(' ');
+        appendValues(values);
+    }
+
+    /**
+     * Format <code>PUTVAL "host/plugin-instance/type-instance" interval=N</code> command prefix of buffered samples, samples are appended by
+     * {@link #appendValues(ValueList)}.
+     */
+    private void formatPutSamples(final SampleRing samples) {
+        line.setLength(0);
+        line.append("PUTVAL ");
+        appendIdentifier(samples);
+        if (samples.getInterval() > 0) {
+            // sampling interval is in milliseconds
+            line.append(" interval=");
+            appendTime(samples.getInterval());
+        }
+    }
+
+    /**
+     * Append <code>time:value[:value]...</code> of value list.
+     */
+    private void appendValues(final ValueList values) {
+        appendTime(values.getTime());
+        for (int i = 0; i < values.size(); i++) {
+            line.append(':');
+            if (values.getType(i) == ValueType.GAUGE) {
+                final double value = values.getDouble(i);
+                if (Double.isNaN(value)) {
+                    line.append('U');
+                } else {
+                    line.append(value);
+                }
+            } else {
+                line.append(values.getLong(i));
+            }
+        }
+    }
+
+    /**
+     * Format <code>PUTNOTIF severity=S time=T host=H plugin=P ... message="M"</code> command.
+     */
+    private void formatPutNotification(final Notification notification) {
+        line.setLength(0);
+        line.append("PUTNOTIF severity=").append(notification.getSeverity() != null ? notification.getSeverity().name().toLowerCase() : "okay");
+        line.append(" time=");
+        appendTime(notification.getTime());
+        appendOption("host", notification.getHost());
+        appendOption("plugin", notification.getPlugin());
+        appendOption("plugin_instance", notification.getPluginInstance());
+        appendOption("type", notification.getType());
+        appendOption("type_instance", notification.getTypeInstance());
+        appendOption("message", notification.getMessage() != null ? notification.getMessage() : "");
+    }
+
+    private void appendIdentifier(final PluginData data) {
+        final StringBuilder identifier = new StringBuilder();
+        identifier.append(data.getHost()).append('/').append(data.getPlugin());
+        if (data.getPluginInstance() != null && !data.getPluginInstance().isEmpty()) {
+            identifier.append('-').append(data.getPluginInstance());
+        }
+        identifier.append('/').append(data.getType());
+        if (data.getTypeInstance() != null && !data.getTypeInstance().isEmpty()) {
+            identifier.append('-').append(data.getTypeInstance());
+        }
+        appendQuoted(identifier);
+    }
+
+    private void appendOption(final String key, final String value) {
+        if (value != null) {
+            line.append(' ').append(key).append('=');
+            appendQuoted(value);
+        }
+    }
+
+    private void appendQuoted(final CharSequence value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\');
+            }
+            line.append(c == '\n' || c == '\r' ? ' ' : c);
+        }
+        line.append('"');
+    }
+
+    /**
+     * Append epoch time in seconds (with millisecond precision).
+     */
+    private void appendTime(final long millis) {
+        line.append(millis / 1000).append('.');
+        final long fraction = millis % 1000;
+        if (fraction < 100) {
+            line.append('0');
+        }
+        if (fraction < 10) {
+            line.append('0');
+        }
+        line.append(fraction);
+    }
+
+    private void addNotifications(final List<PluginData> items, final List<Notification> notifications) {
+        for (final Notification notification : notifications) {
+            setDefaults(notification);
+            if (coalescer == null || coalescer.accept(notification)) {
+                items.add(notification);
+            }
+        }
+    }
+
+    private void writeSummaries() throws IOException {
+        for (final Notification summary : coalescer.drain()) {
+            setDefaults(summary);
+            write(summary);
+        }
+    }
+
+    private void setDefaults(final PluginData data) {
+        if (data.getHost() == null) {
+            data.setHost(getClient());
+        }
+        if (data.getTime() <= 0) {
+            data.setTime(System.currentTimeMillis());
+        }
+    }
+
+    private synchronized String getClient() {
+        if (client == null) {
+            try {
+                client = InetAddress.getLocalHost().getHostName();
+            } catch (IOException ex) {
+                log.error("Unable to get host name", ex);
+                client = "unknown";
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Open Unix domain socket channel. Reflection is used because <code>UnixDomainSocketAddress</code> is available on Java 16 or later only.
+     */
+    private static SocketChannel openChannel(final String path) throws IOException {
+        final SocketAddress address;
+        final ProtocolFamily family;
+        final Method open;
+        try {
+            final Class<?> addressClass = Class.forName("java.net.UnixDomainSocketAddress");
+            address = (SocketAddress) addressClass.getMethod("of", String.class).invoke(null, path);
+            family = StandardProtocolFamily.valueOf("UNIX");
+            open = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | IllegalArgumentException ex) {
+            throw new IOException("Unix domain sockets are not supported by Java runtime", ex);
+        } catch (InvocationTargetException ex) {
+            throw new IOException("Invalid unixsock path: " + path, ex.getCause());
+        }
+
+        final SocketChannel opened;
+        try {
+            opened = (SocketChannel) open.invoke(null, family);
+        } catch (IllegalAccessException ex) {
+            throw new IOException("Unable to open Unix domain socket", ex);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException("Unable to open Unix domain socket", ex.getCause());
+        }
+        try {
+            opened.connect(address);
+        } catch (IOException ex) {
+            opened.close();
+            throw ex;
+        }
+        return opened;
+    }
+}
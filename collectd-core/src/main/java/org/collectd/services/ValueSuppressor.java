@@ -0,0 +1,245 @@
+package org.collectd.services;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import org.collectd.model.PluginData;
+import org.collectd.model.ValueList;
+import org.collectd.model.Values;
+import org.collectd.protocol.EncodedIdentifier;
+
+/**
+ * Suppress value lists that are identical to the last one sent for the same identifier. Only a 64-bit hash of identifier and values is stored (open
+ * addressing table of primitive arrays). Unchanged values are resent every <code>heartbeat</code> intervals so timeout detection of Collectd (based on
+ * interval) keeps working.
+ * <p>
+ * Number of tracked identifiers is limited, least recently seen half of the identifiers is removed when the table is full (values of a removed identifier
+ * are sent when it appears again).
+ */
+public class ValueSuppressor {
+
+    /**
+     * Default maximum number of tracked identifiers.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 65536;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int heartbeat;
+    private final int maxEntries;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private long[] hashes = new long[INITIAL_CAPACITY];
+    private int[] skipped = new int[INITIAL_CAPACITY];
+    // value of the clock when identifier was last checked
+    private long[] seen = new long[INITIAL_CAPACITY];
+    private int size;
+    private long clock;
+
+    private final AtomicLong passed = new AtomicLong(0L);
+    private final AtomicLong suppressed = new AtomicLong(0L);
+    private final AtomicLong evicted = new AtomicLong(0L);
+
+    /**
+     * Create new suppressor.
+     *
+     * @param heartbeat unchanged values are resent after suppressing them <code>heartbeat - 1</code> times
+     * @param maxEntries maximum number of tracked identifiers
+     */
+    public ValueSuppressor(final int heartbeat, final int maxEntries) {
+        if (heartbeat < 1 || maxEntries < 2) {
+            throw new IllegalArgumentException("Heartbeat must be positive and maximum number of entries must be at least 2");
+        }
+        this.heartbeat = heartbeat;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Check if numeric values have to be sent.
+     *
+     * @param values numeric values
+     * @return <code>true</code> if values are changed or heartbeat is due, <code>false</code> if values can be dropped
+     */
+    public boolean accept(final Values values) {
+        long hash = FNV_OFFSET_BASIS;
+        for (final Values.ValueHolder holder : values.getItems()) {
+            final Number value = holder.getValue();
+            hash = hash(hash, value instanceof Double || value instanceof Float ? Double.doubleToRawLongBits(value.doubleValue()) : value.longValue());
+        }
+        hash = hash(hash, values.getInterval() != null ? values.getInterval() : 0L);
+
+        return accept(getKey(values), hash);
+    }
+
+    /**
+     * Check if primitive numeric values have to be sent.
+     *
+     * @param values numeric values
+     * @return <code>true</code> if values are changed or heartbeat is due, <code>false</code> if values can be dropped
+     */
+    public boolean accept(final ValueList values) {
+        return accept(getKey(values), hash(values));
+    }
+
+    /**
+     * Check if primitive numeric values of a pre-encoded identifier have to be sent.
+     *
+     * @param identifier pre-encoded identifier
+     * @param values numeric values
+     * @return <code>true</code> if values are changed or heartbeat is due, <code>false</code> if values can be dropped
+     */
+    boolean accept(final EncodedIdentifier identifier, final ValueList values) {
+        return accept(identifier.getHash(), hash(values));
+    }
+
+    /**
+     * Get number of value lists passed.
+     *
+     * @return number of value lists
+     */
+    public long getPassed() {
+        return passed.get();
+    }
+
+    /**
+     * Get number of value lists suppressed.
+     *
+     * @return number of value lists
+     */
+    public long getSuppressed() {
+        return suppressed.get();
+    }
+
+    /**
+     * Get ratio of suppressed value lists.
+     *
+     * @return suppressed / (suppressed + passed), 0 if no value list is checked
+     */
+    public double getSuppressedRatio() {
+        final long s = suppressed.get();
+        final long total = s + passed.get();
+        return total > 0 ? (double) s / total : 0.0;
+    }
+
+    /**
+     * Get number of identifiers removed because the table was full.
+     *
+     * @return number of identifiers
+     */
+    public long getEvicted() {
+        return evicted.get();
+    }
+
+    /**
+     * Get number of identifiers tracked.
+     *
+     * @return number of identifiers
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private static long getKey(final PluginData data) {
+        return EncodedIdentifier.hash(data.getHost(), data.getPlugin(), data.getPluginInstance(), data.getType(), data.getTypeInstance());
+    }
+
+    private static long hash(final ValueList values) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < values.size(); i++) {
+            hash = hash(hash, values.getRawValue(i));
+        }
+        return hash(hash, values.getInterval());
+    }
+
+    private static long hash(final long basis, final long value) {
+        return (basis ^ value) * FNV_PRIME;
+    }
+
+    private synchronized boolean accept(final long identifier, final long hash) {
+        // 0 marks empty slots
+        final long key = identifier != 0 ? identifier : 1L;
+
+        clock++;
+        int idx = indexOf(keys, key);
+        if (keys[idx] == key && hashes[idx] == hash && skipped[idx] < heartbeat - 1) {
+            skipped[idx]++;
+            seen[idx] = clock;
+            suppressed.incrementAndGet();
+            return false;
+        }
+
+        if (keys[idx] != key) {
+            if (size >= maxEntries) {
+                evict();
+                idx = indexOf(keys, key);
+            }
+            if ((size + 1) * 2 > keys.length) {
+                rebuild(keys.length * 2, Long.MIN_VALUE);
+                idx = indexOf(keys, key);
+            }
+            keys[idx] = key;
+            size++;
+        }
+        seen[idx] = clock;
+        hashes[idx] = hash;
+        skipped[idx] = 0;
+        passed.incrementAndGet();
+        return true;
+    }
+
+    private static int indexOf(final long[] table, final long key) {
+        final int mask = table.length - 1;
+        int idx = (int) (key ^ (key >>> 32)) & mask;
+        while (table[idx] != 0 && table[idx] != key) {
+            idx = (idx + 1) & mask;
+        }
+        return idx;
+    }
+
+    /**
+     * Remove least recently seen half of the identifiers (identifiers not seen since the median clock value).
+     */
+    private void evict() {
+        final long[] stamps = new long[size];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                stamps[count++] = seen[i];
+            }
+        }
+        Arrays.sort(stamps);
+
+        final int before = size;
+        rebuild(keys.length, stamps[size / 2]);
+        evicted.addAndGet(before - size);
+    }
+
+    /**
+     * Copy identifiers seen since <code>minSeen</code> into new table.
+     */
+    private void rebuild(final int capacity, final long minSeen) {
+        final long[] oldKeys = keys;
+        final long[] oldHashes = hashes;
+        final int[] oldSkipped = skipped;
+        final long[] oldSeen = seen;
+
+        keys = new long[capacity];
+        hashes = new long[capacity];
+        skipped = new int[capacity];
+        seen = new long[capacity];
+        size = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0 && oldSeen[i] >= minSeen) {
+                final int idx = indexOf(keys, oldKeys[i]);
+                keys[idx] = oldKeys[i];
+                hashes[idx] = oldHashes[i];
+                skipped[idx] = oldSkipped[i];
+                seen[idx] = oldSeen[i];
+                size++;
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.collectd.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.collectd.model.Notification;
+import org.collectd.model.Severity;
+import org.junit.Test;
+
+public class PacketEncryptorTest {
+
+    private static final String USERNAME = "collectd";
+    private static final String PASSWORD = "secret";
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final PacketBuffer packet = writePacket(new PacketEncryptor(USERNAME, PASSWORD));
+
+        final List<String> decoded = new ArrayList<>();
+        final PacketReader reader = PacketTestSupport.createReader(decoded, Collections.singletonMap(USERNAME, PASSWORD));
+        assertEquals(3, reader.read(PacketTestSupport.wrap(packet)));
+        assertEquals(Arrays.asList(
+                "host/cpu-0/cpu-user 1500000000000 [42]",
+                "host/cpu-0/cpu-system 1500000000000 [7]",
+                "host/cpu-0/cpu-system WARNING CPU is busy"), decoded);
+    }
+
+    @Test
+    public void testEncryptedPartIsSkippedWithoutDecryption() throws IOException {
+        final PacketBuffer packet = writePacket(new PacketEncryptor(USERNAME, PASSWORD));
+
+        final List<String> decoded = new ArrayList<>();
+        final PacketReader reader = PacketTestSupport.createReader(decoded, null);
+        assertEquals(0, reader.read(PacketTestSupport.wrap(packet)));
+        assertEquals(1L, reader.getSkippedParts());
+    }
+
+    @Test
+    public void testWrongPassword() throws IOException {
+        final PacketBuffer packet = writePacket(new PacketEncryptor(USERNAME, PASSWORD));
+
+        final List<String> decoded = new ArrayList<>();
+        assertRejected(PacketTestSupport.createReader(decoded, Collections.singletonMap(USERNAME, "wrong")), packet, "Checksum mismatch");
+        assertTrue(decoded.isEmpty());
+    }
+
+    @Test
+    public void testTamperedPacket() throws IOException {
+        final PacketBuffer packet = writePacket(new PacketEncryptor(USERNAME, PASSWORD));
+        // flip a bit of the last encrypted byte (OFB keeps the position of the change in the plain text)
+        packet.getData()[packet.getLength() - 1] ^= 1;
+
+        final List<String> decoded = new ArrayList<>();
+        assertRejected(PacketTestSupport.createReader(decoded, Collections.singletonMap(USERNAME, PASSWORD)), packet, "Checksum mismatch");
+        assertTrue(decoded.isEmpty());
+    }
+
+    @Test
+    public void testUnknownUser() throws IOException {
+        final PacketBuffer packet = writePacket(new PacketEncryptor("other", PASSWORD));
+
+        assertRejected(PacketTestSupport.createReader(new ArrayList<String>(), Collections.singletonMap(USERNAME, PASSWORD)), packet, "Unknown user");
+    }
+
+    private static PacketBuffer writePacket(final PacketEncryptor encryptor) throws IOException {
+        final UdpBufferWriter writer = new UdpBufferWriter(1452);
+        writer.setHeadroom(encryptor.getPartLength());
+
+        writer.writeValuesPart(PacketTestSupport.createValueList("user", 42L));
+        writer.writeValuesPart(PacketTestSupport.createValueList("system", 7L));
+
+        final Notification notification = new Notification();
+        notification.setHost("host");
+        notification.setTime(PacketTestSupport.TIME);
+        notification.setPlugin("cpu");
+        notification.setPluginInstance("0");
+        notification.setType("cpu");
+        notification.setTypeInstance("system");
+        notification.setSeverity(Severity.WARNING);
+        notification.setMessage("CPU is busy");
+        writer.writeNotificationPart(notification);
+
+        final PacketBuffer packet = writer.swapBuffer();
+        encryptor.encrypt(packet);
+        return packet;
+    }
+
+    private static void assertRejected(final PacketReader reader, final PacketBuffer packet, final String message) {
+        try {
+            reader.read(PacketTestSupport.wrap(packet));
+            fail("Packet is accepted");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().startsWith(message));
+        }
+    }
+}
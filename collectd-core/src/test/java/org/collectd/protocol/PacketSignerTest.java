@@ -0,0 +1,78 @@
+package org.collectd.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.junit.Test;
+
+public class PacketSignerTest {
+
+    private static final String USERNAME = "collectd";
+    private static final String PASSWORD = "secret";
+
+    private static final int HEADER_LEN = 4;
+    private static final int HASH_LEN = 32;
+
+    @Test
+    public void testRoundTrip() throws IOException, GeneralSecurityException {
+        final PacketBuffer packet = writePacket();
+        assertTrue(verify(packet, PASSWORD));
+
+        final List<String> decoded = new ArrayList<>();
+        final PacketReader reader = PacketTestSupport.createReader(decoded, null);
+        assertEquals(2, reader.read(PacketTestSupport.wrap(packet)));
+        assertEquals(1L, reader.getSkippedParts());
+        assertEquals(Arrays.asList(
+                "host/cpu-0/cpu-user 1500000000000 [42]",
+                "host/cpu-0/cpu-system 1500000000000 [7]"), decoded);
+    }
+
+    @Test
+    public void testWrongPassword() throws IOException, GeneralSecurityException {
+        assertFalse(verify(writePacket(), "wrong"));
+    }
+
+    @Test
+    public void testTamperedPacket() throws IOException, GeneralSecurityException {
+        final PacketBuffer packet = writePacket();
+        packet.getData()[packet.getLength() - 1] ^= 1;
+        assertFalse(verify(packet, PASSWORD));
+    }
+
+    private static PacketBuffer writePacket() throws IOException {
+        final PacketSigner signer = new PacketSigner(USERNAME, PASSWORD);
+        final UdpBufferWriter writer = new UdpBufferWriter(1452);
+        writer.setHeadroom(signer.getPartLength());
+
+        writer.writeValuesPart(PacketTestSupport.createValueList("user", 42L));
+        writer.writeValuesPart(PacketTestSupport.createValueList("system", 7L));
+
+        final PacketBuffer packet = writer.swapBuffer();
+        signer.sign(packet);
+        return packet;
+    }
+
+    /**
+     * Verify signature part like Collectd does: HMAC-SHA-256 of user name and the rest of the packet keyed by the password of the user.
+     */
+    private static boolean verify(final PacketBuffer packet, final String password) throws GeneralSecurityException {
+        final byte[] data = packet.getData();
+        assertEquals(0x0200, (data[0] & 0xff) << 8 | data[1] & 0xff);
+        final int partLength = (data[2] & 0xff) << 8 | data[3] & 0xff;
+        assertEquals(USERNAME, new String(data, HEADER_LEN + HASH_LEN, partLength - HEADER_LEN - HASH_LEN, StandardCharsets.UTF_8));
+
+        final Mac hmac = Mac.getInstance("HmacSHA256");
+        hmac.init(new SecretKeySpec(password.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        hmac.update(data, HEADER_LEN + HASH_LEN, packet.getLength() - HEADER_LEN - HASH_LEN);
+        return Arrays.equals(hmac.doFinal(), Arrays.copyOfRange(data, HEADER_LEN, HEADER_LEN + HASH_LEN));
+    }
+}
@@ -0,0 +1,76 @@
+package org.collectd.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.collectd.model.Notification;
+import org.collectd.model.ValueList;
+
+/**
+ * Packets and decoding shared by protocol tests.
+ */
+final class PacketTestSupport {
+
+    static final long TIME = 1500000000000L;
+
+    private PacketTestSupport() {
+    }
+
+    /**
+     * Create CPU value list of host <code>host</code>.
+     */
+    static ValueList createValueList(final String typeInstance, final long value) {
+        final ValueList values = new ValueList();
+        values.setHost("host");
+        values.setTime(TIME);
+        values.setPlugin("cpu");
+        values.setPluginInstance("0");
+        values.setType("cpu");
+        values.setTypeInstance(typeInstance);
+        values.addDerive(value);
+        return values;
+    }
+
+    static ByteBuffer wrap(final PacketBuffer packet) {
+        return ByteBuffer.wrap(packet.getData(), 0, packet.getLength());
+    }
+
+    /**
+     * Create packet reader formatting decoded value lists (raw values) and notifications into strings.
+     *
+     * @param decoded list to add decoded data to
+     * @param decryption passwords by user name, null if encrypted parts are skipped
+     */
+    static PacketReader createReader(final List<String> decoded, final Map<String, String> decryption) {
+        final PacketReader reader = new PacketReader(new PacketReader.Handler() {
+            @Override
+            public void values(final ValueList values) {
+                final long[] raw = new long[values.size()];
+                for (int i = 0; i < raw.length; i++) {
+                    raw[i] = values.getRawValue(i);
+                }
+                decoded.add(getName(values.getHost(), values.getPlugin(), values.getPluginInstance(), values.getType(), values.getTypeInstance())
+                        + " " + values.getTime() + " " + Arrays.toString(raw));
+            }
+
+            @Override
+            public void notification(final Notification notification) {
+                decoded.add(getName(notification.getHost(), notification.getPlugin(), notification.getPluginInstance(), notification.getType(),
+                        notification.getTypeInstance()) + " " + notification.getSeverity() + " " + notification.getMessage());
+            }
+        });
+        if (decryption != null) {
+            reader.setDecryption(decryption);
+        }
+        return reader;
+    }
+
+    /**
+     * Format identifier like Collectd (empty or missing instances are omitted).
+     */
+    static String getName(final String host, final String plugin, final String pluginInstance, final String type, final String typeInstance) {
+        return host + "/" + plugin + (pluginInstance == null || pluginInstance.isEmpty() ? "" : "-" + pluginInstance) + "/" + type
+                + (typeInstance == null || typeInstance.isEmpty() ? "" : "-" + typeInstance);
+    }
+}
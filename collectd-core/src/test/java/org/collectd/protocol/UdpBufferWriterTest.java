@@ -0,0 +1,164 @@
+package org.collectd.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.collectd.model.Notification;
+import org.collectd.model.PluginData;
+import org.collectd.model.Severity;
+import org.collectd.model.ValueList;
+import org.collectd.model.ValueType;
+import org.collectd.model.Values;
+import org.junit.Test;
+
+public class UdpBufferWriterTest {
+
+    @Test
+    public void testEncodedIdentifierMixedWithValueLists() throws IOException {
+        final UdpBufferWriter writer = new UdpBufferWriter(1452);
+        writer.writeValuesPart(createValueList("p", "x", "gauge", "a", 1.0));
+        writer.writeValuesPart(new EncodedIdentifier("h", "p", null, "gauge", null), createValueList(null, null, null, null, 2.0));
+        writer.writeValuesPart(createValueList("p", "", "gauge", "b", 3.0));
+        writer.writeValuesPart(new EncodedIdentifier("h", "p", "y", "gauge", ""), createValueList(null, null, null, null, 4.0));
+        writer.writeValuesPart(createValueList("p", "y", "gauge", "c", 5.0));
+        writer.writeValuesPart(new EncodedIdentifier("h", "q", "", "gauge", "d"), createValueList(null, null, null, null, 6.0));
+        writer.writeValuesPart(createValueList("q", null, "gauge", "d", 7.0));
+        final PacketBuffer packet = writer.swapBuffer();
+
+        final List<String> decoded = new ArrayList<>();
+        final PacketReader reader = new PacketReader(new PacketReader.Handler() {
+            @Override
+            public void values(final ValueList values) {
+                decoded.add(PacketTestSupport.getName(values.getHost(), values.getPlugin(), values.getPluginInstance(), values.getType(),
+                        values.getTypeInstance()) + " " + values.getTime() + " " + values.getDouble(0));
+            }
+
+            @Override
+            public void notification(final Notification notification) {
+                decoded.add(notification.toString());
+            }
+        });
+        assertEquals(7, reader.read(PacketTestSupport.wrap(packet)));
+        assertEquals(Arrays.asList(
+                "h/p-x/gauge-a 1500000000000 1.0",
+                "h/p/gauge 1500000000000 2.0",
+                "h/p/gauge-b 1500000000000 3.0",
+                "h/p-y/gauge 1500000000000 4.0",
+                "h/p-y/gauge-c 1500000000000 5.0",
+                "h/q/gauge-d 1500000000000 6.0",
+                "h/q/gauge-d 1500000000000 7.0"), decoded);
+    }
+
+    @Test
+    public void testIntervalRoundTrip() throws IOException {
+        final UdpBufferWriter writer = new UdpBufferWriter(1452);
+        final ValueList values = createValueList("p", null, "gauge", "a", 1.0);
+        values.setInterval(10000L);
+        writer.writeValuesPart(values);
+        writer.writeValuesPart(values);
+        // sent as 1 second
+        values.setInterval(500L);
+        writer.writeValuesPart(values);
+        // interval of the previous value list is reset
+        values.setInterval(0L);
+        writer.writeValuesPart(values);
+        final PacketBuffer packet = writer.swapBuffer();
+
+        final List<Long> intervals = new ArrayList<>();
+        final PacketReader reader = new PacketReader(new PacketReader.Handler() {
+            @Override
+            public void values(final ValueList values) {
+                intervals.add(values.getInterval());
+            }
+
+            @Override
+            public void notification(final Notification notification) {
+            }
+        });
+        assertEquals(4, reader.read(PacketTestSupport.wrap(packet)));
+        assertEquals(Arrays.asList(10000L, 10000L, 1000L, 0L), intervals);
+    }
+
+    @Test
+    public void testPackedBatch() throws IOException {
+        final List<PluginData> batch = new ArrayList<>();
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            // interleaved identifier groups with different sizes
+            final String host = "host" + i % 3;
+            final String plugin = i % 2 == 0 ? "plugin" : "longer-plugin-name";
+            final ValueList values = new ValueList();
+            values.setHost(host);
+            values.setTime(PacketTestSupport.TIME);
+            values.setPlugin(plugin);
+            values.setType("derive");
+            values.setTypeInstance(Integer.toString(i));
+            values.addDerive(i);
+            batch.add(values);
+            expected.add(host + "/" + plugin + "/derive-" + i + " " + PacketTestSupport.TIME + " [" + i + "]");
+        }
+        final Values values = new Values();
+        values.setHost("host1");
+        values.setTime(PacketTestSupport.TIME);
+        values.setPlugin("plugin");
+        values.setType("counter");
+        values.getItems().add(new Values.ValueHolder(ValueType.COUNTER, 42L));
+        batch.add(5, values);
+        expected.add("host1/plugin/counter " + PacketTestSupport.TIME + " [42]");
+        final Notification notification = new Notification();
+        notification.setHost("host2");
+        notification.setTime(PacketTestSupport.TIME);
+        notification.setPlugin("plugin");
+        notification.setType("derive");
+        notification.setSeverity(Severity.WARNING);
+        notification.setMessage("packed");
+        batch.add(10, notification);
+        expected.add("host2/plugin/derive WARNING packed");
+
+        final UdpBufferWriter writer = new UdpBufferWriter(300);
+        final List<PacketBuffer> packets = new ArrayList<>();
+        final UdpBufferWriter.Packing packing = writer.writePacked(batch, packets);
+        packets.add(writer.swapBuffer());
+
+        final List<String> decoded = new ArrayList<>();
+        final PacketReader reader = PacketTestSupport.createReader(decoded, null);
+        for (final PacketBuffer packet : packets) {
+            assertTrue(packet.getLength() <= 300);
+            reader.read(PacketTestSupport.wrap(packet));
+        }
+        Collections.sort(decoded);
+        Collections.sort(expected);
+        assertEquals(expected, decoded);
+
+        assertEquals(batch.size(), packing.getItems());
+        assertEquals(packets.size(), packing.getPacketsAfter());
+        assertTrue(packing.getPacketsAfter() <= packing.getPacketsBefore());
+        assertTrue(packing.getBytesAfter() < packing.getBytesBefore());
+    }
+
+    @Test
+    public void testEncodedIdentifierLength() {
+        final EncodedIdentifier identifier = new EncodedIdentifier("h", "p", null, "gauge", "");
+        // host, plugin and type with terminating null byte, empty plugin instance and type instance
+        assertEquals(4 + 2 + 4 + 2 + 4 + 1 + 4 + 6 + 4 + 1, identifier.getLength());
+        assertEquals("h/p/gauge", identifier.getName());
+    }
+
+    private static ValueList createValueList(final String plugin, final String pluginInstance, final String type, final String typeInstance,
+            final double value) {
+        final ValueList values = new ValueList();
+        values.setHost("h");
+        values.setTime(PacketTestSupport.TIME);
+        values.setPlugin(plugin);
+        values.setPluginInstance(pluginInstance);
+        values.setType(type);
+        values.setTypeInstance(typeInstance);
+        values.addGauge(value);
+        return values;
+    }
+}
@@ -0,0 +1,92 @@
+package org.collectd.services;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.collectd.config.Threshold;
+import org.collectd.model.Notification;
+import org.collectd.model.ValueList;
+import org.collectd.model.ValueType;
+import org.collectd.protocol.PacketReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricRegistryTest {
+
+    private static final int TIMEOUT = 5000;
+
+    private DatagramSocket receiver;
+    private UdpPacketSender sender;
+
+    @Before
+    public void setUp() throws IOException {
+        final InetAddress loopback = InetAddress.getLoopbackAddress();
+        receiver = new DatagramSocket(0, loopback);
+        receiver.setSoTimeout(TIMEOUT);
+        sender = new UdpPacketSender(new InetSocketAddress(loopback, receiver.getLocalPort()), "host", 1452);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sender.close();
+        receiver.close();
+    }
+
+    @Test
+    public void testThresholdsOfMeter() throws IOException {
+        final ThresholdEngine thresholds = new ThresholdEngine();
+        thresholds.add(Threshold.parse("plugin=app type=gauge typeInstance=queue warningMax=10"));
+        sender.setThresholds(thresholds);
+
+        final Meter meter = new MetricRegistry(sender).meter("app", null, "gauge", "queue", ValueType.GAUGE);
+        meter.record(5.0);
+        meter.record(20.0);
+        sender.flush();
+
+        final List<String> received = receive(3);
+        Collections.sort(received);
+        assertEquals(Arrays.asList("host/app/gauge-queue 20.0", "host/app/gauge-queue 5.0", "host/app/gauge-queue WARNING"), received);
+        assertEquals(2L, thresholds.getEvaluated());
+    }
+
+    /**
+     * Receive and decode packets until the expected number of value lists and notifications is received.
+     */
+    private List<String> receive(final int count) throws IOException {
+        final List<String> received = new ArrayList<>();
+        final PacketReader reader = new PacketReader(new PacketReader.Handler() {
+            @Override
+            public void values(final ValueList values) {
+                received.add(getName(values.getHost(), values.getPlugin(), values.getType(), values.getTypeInstance()) + " " + values.getDouble(0));
+            }
+
+            @Override
+            public void notification(final Notification notification) {
+                received.add(getName(notification.getHost(), notification.getPlugin(), notification.getType(), notification.getTypeInstance()) + " "
+                        + notification.getSeverity());
+            }
+        });
+
+        final byte[] data = new byte[2048];
+        while (received.size() < count) {
+            final DatagramPacket packet = new DatagramPacket(data, data.length);
+            receiver.receive(packet);
+            reader.read(ByteBuffer.wrap(data, 0, packet.getLength()));
+        }
+        return received;
+    }
+
+    private static String getName(final String host, final String plugin, final String type, final String typeInstance) {
+        return host + "/" + plugin + "/" + type + "-" + typeInstance;
+    }
+}
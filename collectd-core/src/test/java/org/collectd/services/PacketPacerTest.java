@@ -0,0 +1,80 @@
+package org.collectd.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.collectd.model.ValueList;
+import org.collectd.protocol.PacketBuffer;
+import org.collectd.protocol.UdpBufferWriter;
+import org.junit.Test;
+
+public class PacketPacerTest {
+
+    private final List<PacketBuffer> transmitted = Collections.synchronizedList(new ArrayList<PacketBuffer>());
+
+    private final PacketTransmitter transmitter = new PacketTransmitter() {
+        @Override
+        public void transmit(final PacketBuffer buffer) {
+            transmitted.add(buffer);
+        }
+    };
+
+    @Test
+    public void testPacketHeldByWorkerIsNotOvertakenAndSentOnShutdown() throws Exception {
+        final PacketBuffer first = createPacket(40);
+        final PacketBuffer second = createPacket(40);
+        final PacketBuffer small = createPacket(1);
+        assertTrue(first.getLength() > 10 * small.getLength());
+
+        // bucket holds the first large and one small packet, second large packet waits for about a second
+        final PacketPacer pacer = new PacketPacer(transmitter, 0.0, first.getLength() + small.getLength(), 16);
+        pacer.submit(first);
+        pacer.submit(second);
+        // let the worker take the second packet out of the backlog
+        Thread.sleep(100L);
+        assertEquals(0, pacer.getBacklog());
+
+        // small packet fits into the bucket, but it must not jump ahead of the packet held by the worker
+        pacer.submit(small);
+        assertEquals(1, transmitted.size());
+
+        pacer.shutdown();
+        assertEquals(3, transmitted.size());
+        assertSame(first, transmitted.get(0));
+        assertSame(second, transmitted.get(1));
+        assertSame(small, transmitted.get(2));
+        assertEquals(2L, pacer.getDelayed());
+        assertEquals(0L, pacer.getDropped());
+    }
+
+    @Test
+    public void testSubmitAfterShutdown() throws IOException {
+        final PacketPacer pacer = new PacketPacer(transmitter, 1.0, 0L, 16);
+        pacer.shutdown();
+
+        final PacketBuffer buffer = createPacket(1);
+        pacer.submit(buffer);
+        assertEquals(Collections.singletonList(buffer), transmitted);
+        assertEquals(0L, pacer.getDropped());
+    }
+
+    private static PacketBuffer createPacket(final int valueLists) throws IOException {
+        final UdpBufferWriter writer = new UdpBufferWriter(1452);
+        for (int i = 0; i < valueLists; i++) {
+            final ValueList values = new ValueList();
+            values.setHost("host");
+            values.setTime(1500000000000L);
+            values.setPlugin("pacer");
+            values.setType("gauge");
+            values.setTypeInstance(Integer.toString(i));
+            values.addGauge(i);
+            writer.writeValuesPart(values);
+        }
+        return writer.swapBuffer();
+    }
+}
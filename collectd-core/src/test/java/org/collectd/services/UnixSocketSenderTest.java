@@ -0,0 +1,141 @@
+package org.collectd.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.collectd.model.Notification;
+import org.collectd.model.Severity;
+import org.collectd.model.ValueList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UnixSocketSenderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long TIME = 1500000000123L;
+
+    private File socketFile;
+    private ServerSocketChannel server;
+    private Thread serverThread;
+    private final List<String> commands = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void startServer() throws Exception {
+        final Class<?> addressClass;
+        try {
+            addressClass = Class.forName("java.net.UnixDomainSocketAddress");
+        } catch (ClassNotFoundException ex) {
+            assumeTrue("Unix domain sockets require Java 16 or later", false);
+            return;
+        }
+
+        socketFile = File.createTempFile("collectd-unixsock", ".sock");
+        socketFile.delete();
+        final SocketAddress address = (SocketAddress) addressClass.getMethod("of", String.class).invoke(null, socketFile.getPath());
+        server = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class)
+                .invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+        server.bind(address);
+
+        serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (SocketChannel client = server.accept()) {
+                    respond(client);
+                } catch (IOException ex) {
+                    // server is closed
+                }
+            }
+        }, "unixsock-stand-in");
+        serverThread.start();
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        if (server != null) {
+            server.close();
+            serverThread.join(5000L);
+        }
+        if (socketFile != null) {
+            socketFile.delete();
+        }
+    }
+
+    @Test
+    public void testPutValueAndNotification() throws Exception {
+        final UnixSocketSender sender = new UnixSocketSender(socketFile.getPath(), "client", 16);
+
+        final ValueList values = new ValueList();
+        values.setHost("host");
+        values.setTime(TIME);
+        values.setPlugin("plugin");
+        values.setPluginInstance("instance");
+        values.setType("load");
+        values.setInterval(10000L);
+        values.addGauge(0.5);
+        values.addGauge(Double.NaN);
+        values.addGauge(1.25);
+        sender.send(values);
+
+        final ValueList counter = new ValueList();
+        counter.setTime(TIME);
+        counter.setPlugin("plugin");
+        counter.setType("derive");
+        counter.setTypeInstance("requests");
+        counter.addDerive(42L);
+        sender.send(counter);
+
+        final Notification notification = new Notification();
+        notification.setHost("host");
+        notification.setTime(TIME);
+        notification.setPlugin("plugin");
+        notification.setType("load");
+        notification.setSeverity(Severity.WARNING);
+        notification.setMessage("Load is \"high\"");
+        sender.send(notification);
+
+        sender.close();
+
+        assertEquals(Arrays.asList(
+                "PUTVAL \"host/plugin-instance/load\" interval=10.000 1500000000.123:0.5:U:1.25",
+                "PUTVAL \"client/plugin/derive-requests\" 1500000000.123:42",
+                "PUTNOTIF severity=warning time=1500000000.123 host=\"host\" plugin=\"plugin\" type=\"load\" message=\"Load is \\\"high\\\"\""),
+                commands);
+    }
+
+    /**
+     * Read commands line by line and acknowledge each of them like unixsock plugin.
+     */
+    private void respond(final SocketChannel client) throws IOException {
+        final ByteBuffer input = ByteBuffer.allocate(4096);
+        final StringBuilder line = new StringBuilder();
+        while (client.read(input) >= 0) {
+            input.flip();
+            final String received = UTF_8.decode(input).toString();
+            input.clear();
+            for (int i = 0; i < received.length(); i++) {
+                final char c = received.charAt(i);
+                if (c == '\n') {
+                    commands.add(line.toString());
+                    line.setLength(0);
+                    client.write(ByteBuffer.wrap("0 Success: 1 value has been dispatched.\n".getBytes(UTF_8)));
+                } else {
+                    line.append(c);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.collectd.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.collectd.model.ValueList;
+import org.junit.Test;
+
+public class ValueSuppressorTest {
+
+    @Test
+    public void testHeartbeat() {
+        final ValueSuppressor suppressor = new ValueSuppressor(3, ValueSuppressor.DEFAULT_MAX_ENTRIES);
+        final ValueList values = createValueList("a", 1L);
+
+        assertTrue(suppressor.accept(values));
+        assertFalse(suppressor.accept(values));
+        assertFalse(suppressor.accept(values));
+        assertTrue(suppressor.accept(values));
+        assertTrue(suppressor.accept(createValueList("a", 2L)));
+        assertEquals(3L, suppressor.getPassed());
+        assertEquals(2L, suppressor.getSuppressed());
+    }
+
+    @Test
+    public void testLeastRecentlySeenIdentifiersAreEvicted() {
+        final ValueSuppressor suppressor = new ValueSuppressor(10000, 8);
+        final ValueList recent = createValueList("recent", 1L);
+        assertTrue(suppressor.accept(recent));
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(suppressor.accept(createValueList(Integer.toString(i), 1L)));
+            // identifier seen in each round is kept
+            assertFalse(suppressor.accept(recent));
+            assertTrue(suppressor.size() <= 8);
+        }
+        assertEquals(1001L - suppressor.size(), suppressor.getEvicted());
+
+        // evicted identifier is sent again
+        assertTrue(suppressor.accept(createValueList("0", 1L)));
+    }
+
+    private static ValueList createValueList(final String typeInstance, final long value) {
+        final ValueList values = new ValueList();
+        values.setHost("host");
+        values.setPlugin("plugin");
+        values.setType("derive");
+        values.setTypeInstance(typeInstance);
+        values.addDerive(value);
+        return values;
+    }
+}
@@ -0,0 +1,107 @@
+package org.collectd.jmx.agent;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.collectd.config.CollectdConstants;
+import org.collectd.config.SecurityLevel;
+import org.collectd.model.Values;
+import org.collectd.services.Relay;
+import org.collectd.services.ShardingPacketSender;
+import org.collectd.services.SimpleRelayFilter;
+import org.collectd.services.UdpPacketSender;
+
+/**
+ * Main class of Collectd relay. Packets received on the listen address are forwarded to the Collectd server (re-batched into full packets). Relay is
+ * configured by system properties, i.e. <code>java -Dcollectd.host=collectd.example.com -Dcollectd.relay.listen=0.0.0.0:25826 -cp
+ * collectd-jmx-agent-jar-with-dependencies.jar org.collectd.jmx.agent.RelayMain</code>.
+ */
+@Slf4j
+public class RelayMain {
+
+    public static final String LISTEN_ARGUMENT = "collectd.relay.listen";
+    public static final String THREADS_ARGUMENT = "collectd.relay.threads";
+    public static final String PLUGINS_ARGUMENT = "collectd.relay.plugins";
+    public static final String HOST_REWRITE_ARGUMENT = "collectd.relay.host";
+    public static final String FLUSH_INTERVAL_ARGUMENT = "collectd.relay.flushInterval";
+    public static final String RECEIVE_BUFFER_ARGUMENT = "collectd.relay.receiveBuffer";
+    public static final String STATS_INTERVAL_ARGUMENT = "collectd.relay.statsInterval";
+    public static final String HOST_ARGUMENT = "collectd.host";
+    public static final String PORT_ARGUMENT = "collectd.port";
+    public static final String PACKET_SIZE_ARGUMENT = "collectd.packetSize";
+    public static final String USERNAME_ARGUMENT = "collectd.username";
+    public static final String PASSWORD_ARGUMENT = "collectd.password";
+    public static final String SECURITY_LEVEL_ARGUMENT = "collectd.securityLevel";
+
+    private static final String DEFAULT_LISTEN = "0.0.0.0:" + CollectdConstants.DEFAULT_UDP_PORT;
+    private static final String RELAY_NAME = "relay";
+
+    /**
+     * Start relay and run until the JVM is stopped.
+     *
+     * @param args command line arguments (not used)
+     * @throws IOException unable to start relay
+     * @throws InterruptedException main thread is interrupted
+     */
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        final String host = System.getProperty(HOST_ARGUMENT);
+        if (host == null) {
+            System.err.println("Usage: java -D" + HOST_ARGUMENT + "=<Collectd server> [-D" + PORT_ARGUMENT + "=<port>] [-D" + LISTEN_ARGUMENT
+                    + "=<host:port>] [-D" + THREADS_ARGUMENT + "=<n>] [-D" + PLUGINS_ARGUMENT + "=<regex>] [-D" + HOST_REWRITE_ARGUMENT + "=<host>] -cp <jar> "
+                    + RelayMain.class.getName());
+            System.exit(1);
+        }
+
+        final InetSocketAddress server = new InetSocketAddress(host, Integer.getInteger(PORT_ARGUMENT, CollectdConstants.DEFAULT_UDP_PORT));
+        final InetSocketAddress listen = ShardingPacketSender.parseAddress(System.getProperty(LISTEN_ARGUMENT, DEFAULT_LISTEN),
+                CollectdConstants.DEFAULT_UDP_PORT);
+        final UdpPacketSender upstream = new UdpPacketSender(server, null, Integer.getInteger(PACKET_SIZE_ARGUMENT, CollectdConstants.MAX_PACKET_SIZE));
+        if (System.getProperty(USERNAME_ARGUMENT) != null) {
+            upstream.setSecurity(SecurityLevel.parse(System.getProperty(SECURITY_LEVEL_ARGUMENT, SecurityLevel.SIGN.name())), System.getProperty(USERNAME_ARGUMENT),
+                    System.getProperty(PASSWORD_ARGUMENT));
+        }
+        upstream.getStats().register(server.getHostString() + ":" + server.getPort());
+
+        final Relay relay = new Relay(listen, Integer.getInteger(THREADS_ARGUMENT, Runtime.getRuntime().availableProcessors()), upstream);
+        final String plugins = System.getProperty(PLUGINS_ARGUMENT);
+        final String hostRewrite = System.getProperty(HOST_REWRITE_ARGUMENT);
+        if (plugins != null || hostRewrite != null) {
+            relay.setFilter(new SimpleRelayFilter(plugins != null ? Pattern.compile(plugins) : null, hostRewrite));
+        }
+        relay.setFlushInterval(Long.getLong(FLUSH_INTERVAL_ARGUMENT, Relay.DEFAULT_FLUSH_INTERVAL));
+        relay.setReceiveBufferSize(Integer.getInteger(RECEIVE_BUFFER_ARGUMENT, 0));
+        relay.register(RELAY_NAME);
+        relay.start();
+
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                try {
+                    relay.close();
+                    upstream.close();
+                } catch (IOException ex) {
+                    log.error("Unable to stop relay", ex);
+                } finally {
+                    stopped.countDown();
+                }
+            }
+        });
+
+        final long statsInterval = Long.getLong(STATS_INTERVAL_ARGUMENT, 0L);
+        if (statsInterval > 0) {
+            // relay and upstream statistics are sent to the Collectd server too
+            while (!stopped.await(statsInterval, TimeUnit.SECONDS)) {
+                for (final Values values : relay.toValues()) {
+                    upstream.send(values);
+                }
+                upstream.sendStats();
+            }
+        } else {
+            stopped.await();
+        }
+    }
+}
@@ -4,12 +4,14 @@ import java.io.File;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.Objects;
+import java.util.Random;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.collectd.config.CollectdConstants;
+import org.collectd.config.SecurityLevel;
 import org.collectd.jmx.services.Collector;
 import org.collectd.jmx.services.ConfigurationLoader;
 import org.collectd.jmx.xml.ns.definition.Jmx;
@@ -22,6 +24,9 @@ public class Controller {
 
     private static final String COLLECTOR_THREAD_NAME = "collectd";
     public static final long DEFAULT_SCHEDULER_INTERVAL = 1000L;
+    public static final int DEFAULT_BACKLOG = 128;
+    public static final int DEFAULT_SPILL_SIZE = 16 * 1024 * 1024;
+    public static final int DEFAULT_OPEN_METRICS_PORT = 9103;
 
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1, new CollectorThreadFactory());
 
@@ -48,7 +53,19 @@ public class Controller {
         final Config config = Config.initFromCommandLine();
 
         collector = new Collector(config, configs);
-        scheduler.scheduleAtFixedRate(collector, 0, config.getInterval(), TimeUnit.MILLISECONDS);
+
+        // random phase avoids bursts of agents started at the same time
+        final long initialDelay = config.getJitter() > 0 ? (long) (new Random().nextDouble() * config.getJitter()) : 0L;
+        scheduler.scheduleAtFixedRate(collector, initialDelay, config.getInterval(), TimeUnit.MILLISECONDS);
+        if (collector.getSamplingInterval() > 0) {
+            // sampler shares the collector thread, samples are sent by the collection cycle
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    collector.sample();
+                }
+            }, initialDelay, collector.getSamplingInterval(), TimeUnit.MILLISECONDS);
+        }
     }
 
     public void shutdown() {
@@ -91,6 +108,63 @@ public class Controller {
         public static final String CLIENT_ARGUMENT = "collectd.client";
         private String client;
 
+        public static final String HEARTBEAT_ARGUMENT = "collectd.heartbeat";
+        private int heartbeat;
+
+        public static final String PACKET_RATE_ARGUMENT = "collectd.packetRate";
+        private double packetRate;
+
+        public static final String BYTE_RATE_ARGUMENT = "collectd.byteRate";
+        private long byteRate;
+
+        public static final String BACKLOG_ARGUMENT = "collectd.backlog";
+        private int backlog = DEFAULT_BACKLOG;
+
+        public static final String JITTER_ARGUMENT = "collectd.jitter";
+        private long jitter;
+
+        public static final String SPILL_FILE_ARGUMENT = "collectd.spillFile";
+        private String spillFile;
+
+        public static final String SPILL_SIZE_ARGUMENT = "collectd.spillSize";
+        private int spillSize = DEFAULT_SPILL_SIZE;
+
+        public static final String REPLAY_RATE_ARGUMENT = "collectd.replayRate";
+        private double replayRate;
+
+        public static final String NOTIFICATION_WINDOW_ARGUMENT = "collectd.notificationWindow";
+        private long notificationWindow;
+
+        public static final String NOTIFICATION_RATE_ARGUMENT = "collectd.notificationRate";
+        private double notificationRate;
+
+        public static final String EXPRESS_LATENCY_ARGUMENT = "collectd.expressLatency";
+        private long expressLatency;
+
+        public static final String PACKING_ARGUMENT = "collectd.packing";
+        private boolean packing;
+
+        public static final String SELF_STATS_ARGUMENT = "collectd.selfStats";
+        private boolean selfStats;
+
+        public static final String SOCKET_ARGUMENT = "collectd.socket";
+        private String socket;
+
+        public static final String TYPES_DB_ARGUMENT = "collectd.typesDb";
+        private String typesDb;
+
+        public static final String OPEN_METRICS_ARGUMENT = "collectd.openMetrics";
+        private String openMetrics;
+
+        public static final String USERNAME_ARGUMENT = "collectd.username";
+        private String username;
+
+        public static final String PASSWORD_ARGUMENT = "collectd.password";
+        private String password;
+
+        public static final String SECURITY_LEVEL_ARGUMENT = "collectd.securityLevel";
+        private SecurityLevel securityLevel = SecurityLevel.SIGN;
+
         static Config initFromCommandLine() {
             final Config config = new Config();
 
@@ -101,6 +175,25 @@ public class Controller {
             config.setInstance(System.getProperty(INSTANCE_ARGUMENT));
             config.setJmxUrl(System.getProperty(JMX_URL_ARGUMENT));
             config.setClient(System.getProperty(CLIENT_ARGUMENT));
+            config.setHeartbeat(System.getProperty(HEARTBEAT_ARGUMENT));
+            config.setPacketRate(System.getProperty(PACKET_RATE_ARGUMENT));
+            config.setByteRate(System.getProperty(BYTE_RATE_ARGUMENT));
+            config.setBacklog(System.getProperty(BACKLOG_ARGUMENT));
+            config.setJitter(System.getProperty(JITTER_ARGUMENT));
+            config.setSpillFile(System.getProperty(SPILL_FILE_ARGUMENT));
+            config.setSpillSize(System.getProperty(SPILL_SIZE_ARGUMENT));
+            config.setReplayRate(System.getProperty(REPLAY_RATE_ARGUMENT));
+            config.setNotificationWindow(System.getProperty(NOTIFICATION_WINDOW_ARGUMENT));
+            config.setNotificationRate(System.getProperty(NOTIFICATION_RATE_ARGUMENT));
+            config.setExpressLatency(System.getProperty(EXPRESS_LATENCY_ARGUMENT));
+            config.setPacking(System.getProperty(PACKING_ARGUMENT));
+            config.setSelfStats(System.getProperty(SELF_STATS_ARGUMENT));
+            config.setSocket(System.getProperty(SOCKET_ARGUMENT));
+            config.setTypesDb(System.getProperty(TYPES_DB_ARGUMENT));
+            config.setOpenMetrics(System.getProperty(OPEN_METRICS_ARGUMENT));
+            config.setUsername(System.getProperty(USERNAME_ARGUMENT));
+            config.setPassword(System.getProperty(PASSWORD_ARGUMENT));
+            config.setSecurityLevel(System.getProperty(SECURITY_LEVEL_ARGUMENT));
 
             return config;
         }
@@ -144,5 +237,119 @@ public class Controller {
                 this.client = client;
             }
         }
+
+        void setHeartbeat(final String heartbeat) {
+            if (heartbeat != null) {
+                this.heartbeat = Integer.parseInt(heartbeat);
+            }
+        }
+
+        void setPacketRate(final String packetRate) {
+            if (packetRate != null) {
+                this.packetRate = Double.parseDouble(packetRate);
+            }
+        }
+
+        void setByteRate(final String byteRate) {
+            if (byteRate != null) {
+                this.byteRate = Long.parseLong(byteRate);
+            }
+        }
+
+        void setBacklog(final String backlog) {
+            if (backlog != null) {
+                this.backlog = Integer.parseInt(backlog);
+            }
+        }
+
+        void setJitter(final String jitter) {
+            if (jitter != null) {
+                this.jitter = Long.parseLong(jitter);
+            }
+        }
+
+        void setSpillFile(final String spillFile) {
+            if (spillFile != null) {
+                this.spillFile = spillFile;
+            }
+        }
+
+        void setSpillSize(final String spillSize) {
+            if (spillSize != null) {
+                this.spillSize = Integer.parseInt(spillSize);
+            }
+        }
+
+        void setReplayRate(final String replayRate) {
+            if (replayRate != null) {
+                this.replayRate = Double.parseDouble(replayRate);
+            }
+        }
+
+        void setNotificationWindow(final String notificationWindow) {
+            if (notificationWindow != null) {
+                this.notificationWindow = Long.parseLong(notificationWindow);
+            }
+        }
+
+        void setNotificationRate(final String notificationRate) {
+            if (notificationRate != null) {
+                this.notificationRate = Double.parseDouble(notificationRate);
+            }
+        }
+
+        void setExpressLatency(final String expressLatency) {
+            if (expressLatency != null) {
+                this.expressLatency = Long.parseLong(expressLatency);
+            }
+        }
+
+        void setPacking(final String packing) {
+            if (packing != null) {
+                this.packing = Boolean.parseBoolean(packing);
+            }
+        }
+
+        void setSelfStats(final String selfStats) {
+            if (selfStats != null) {
+                this.selfStats = Boolean.parseBoolean(selfStats);
+            }
+        }
+
+        void setSocket(final String socket) {
+            if (socket != null) {
+                this.socket = socket;
+            }
+        }
+
+        void setTypesDb(final String typesDb) {
+            if (typesDb != null) {
+                this.typesDb = typesDb;
+            }
+        }
+
+        void setOpenMetrics(final String openMetrics) {
+            if (openMetrics != null) {
+                this.openMetrics = openMetrics;
+            }
+        }
+
+        void setUsername(final String username) {
+            if (username != null) {
+                this.username = username;
+            }
+        }
+
+        void setPassword(final String password) {
+            if (password != null) {
+                this.password = password;
+            }
+        }
+
+        void setSecurityLevel(final String securityLevel) {
+            if (securityLevel != null) {
+                this.securityLevel = SecurityLevel.parse(securityLevel);
+            }
+        }
     }
 }
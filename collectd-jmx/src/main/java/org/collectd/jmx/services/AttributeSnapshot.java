@@ -0,0 +1,151 @@
+package org.collectd.jmx.services;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+/**
+ * Attribute values read in a single collection cycle, keyed by object name and attribute name. Each attribute is fetched at most once per cycle, attributes
+ * of all MBean definitions referring the same MBean (in all configuration files) are fetched by a single bulk request. Composite attributes are fetched
+ * once, so all composite keys of a value list come from the same read. Attributes failing to read are not requested again in the cycle, the error is
+ * reported on each access. Snapshot is not thread-safe, a new snapshot is created for each cycle.
+ */
+final class AttributeSnapshot {
+
+    // attribute not returned by bulk request, single request reports the error
+    private static final Object NOT_RETURNED = new Object();
+
+    private final Map<String, Set<String>> definitions;
+    private final Map<ObjectName, Map<String, Object>> values = new HashMap<>();
+
+    private int requests;
+    private int hits;
+
+    /**
+     * Create new (empty) snapshot.
+     *
+     * @param definitions attribute names of MBean definitions (by MBean name or pattern), fetched together on first access of a matching MBean
+     */
+    AttributeSnapshot(final Map<String, Set<String>> definitions) {
+        this.definitions = definitions;
+    }
+
+    /**
+     * Get attribute value. If the MBean is not read yet in this cycle, all attributes of the MBean definition are fetched by a single request.
+     *
+     * @param connection MBean server connection
+     * @param name object name
+     * @param definition MBean name (or pattern) of the definition, null if no other attributes are needed
+     * @param attribute attribute name
+     * @return attribute value
+     * @throws JMException unable to get attribute
+     * @throws IOException communication problem
+     */
+    Object get(final MBeanServerConnection connection, final ObjectName name, final String definition, final String attribute)
+            throws JMException, IOException {
+        final Map<String, Object> cached = values.get(name);
+        if (cached != null && cached.containsKey(attribute) && cached.get(attribute) != NOT_RETURNED) {
+            hits++;
+            return getValue(cached.get(attribute));
+        }
+
+        final Set<String> names = new LinkedHashSet<>();
+        names.add(attribute);
+        final Set<String> defined = definition != null ? definitions.get(definition) : null;
+        if (defined != null) {
+            names.addAll(defined);
+        }
+        load(connection, name, names);
+
+        final Map<String, Object> loaded = values.get(name);
+        if (loaded.get(attribute) != NOT_RETURNED) {
+            return getValue(loaded.get(attribute));
+        }
+        requests++;
+        try {
+            final Object value = connection.getAttribute(name, attribute);
+            loaded.put(attribute, value);
+            return value;
+        } catch (JMException ex) {
+            loaded.put(attribute, new Failure(ex));
+            throw ex;
+        }
+    }
+
+    /**
+     * Fetch attributes of an MBean by a single request. Attributes already read in this cycle are not fetched again.
+     *
+     * @param connection MBean server connection
+     * @param name object name
+     * @param attributes attribute names
+     * @throws JMException unable to get attributes
+     * @throws IOException communication problem
+     */
+    void load(final MBeanServerConnection connection, final ObjectName name, final Collection<String> attributes) throws JMException, IOException {
+        Map<String, Object> cached = values.get(name);
+        if (cached == null) {
+            cached = new HashMap<>();
+            values.put(name, cached);
+        }
+
+        final Set<String> missing = new LinkedHashSet<>(attributes);
+        missing.removeAll(cached.keySet());
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        requests++;
+        for (final Attribute attribute : connection.getAttributes(name, missing.toArray(new String[missing.size()])).asList()) {
+            cached.put(attribute.getName(), attribute.getValue());
+        }
+        for (final String attribute : missing) {
+            if (!cached.containsKey(attribute)) {
+                cached.put(attribute, NOT_RETURNED);
+            }
+        }
+    }
+
+    /**
+     * Get number of requests sent to MBean server.
+     *
+     * @return number of requests
+     */
+    int getRequests() {
+        return requests;
+    }
+
+    /**
+     * Get number of attribute reads served from the snapshot.
+     *
+     * @return number of reads
+     */
+    int getHits() {
+        return hits;
+    }
+
+    private static Object getValue(final Object value) throws JMException {
+        if (value instanceof Failure) {
+            throw ((Failure) value).exception;
+        }
+        return value;
+    }
+
+    /**
+     * Error of an attribute read in this cycle.
+     */
+    private static final class Failure {
+
+        private final JMException exception;
+
+        private Failure(final JMException exception) {
+            this.exception = exception;
+        }
+    }
+}
@@ -1,15 +1,21 @@
 package org.collectd.jmx.services;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceNotFoundException;
 import javax.management.JMException;
@@ -21,14 +27,31 @@ import javax.management.openmbean.CompositeData;
 import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 import lombok.extern.slf4j.Slf4j;
+import org.collectd.config.DataSet;
+import org.collectd.config.Threshold;
+import org.collectd.config.TypesDb;
 import org.collectd.jmx.internal.Controller;
 import org.collectd.jmx.xml.ns.definition.Jmx;
 import org.collectd.jmx.xml.ns.definition.MBeanAttributeType;
 import org.collectd.jmx.xml.ns.definition.MBeanType;
 import org.collectd.jmx.xml.ns.definition.MBeansType;
+import org.collectd.jmx.xml.ns.definition.ThresholdType;
+import org.collectd.model.SampleRing;
+import org.collectd.model.ValueList;
 import org.collectd.model.ValueType;
 import org.collectd.model.Values;
+import org.collectd.services.NotificationCoalescer;
+import org.collectd.services.OpenMetricsExporter;
+import org.collectd.services.PacketPacer;
+import org.collectd.services.PacketSender;
+import org.collectd.services.SenderStats;
+import org.collectd.services.ShardingPacketSender;
+import org.collectd.services.SpillJournal;
+import org.collectd.services.ThresholdEngine;
+import org.collectd.services.TypeValidator;
 import org.collectd.services.UdpPacketSender;
+import org.collectd.services.UnixSocketSender;
+import org.collectd.services.ValueSuppressor;
 
 /**
  * Collect JMX metrics for sending to Collectd.
@@ -40,7 +63,17 @@ public class Collector implements Runnable {
     private final Controller.Config config;
 
     private Collection<Jmx> jmxList;
+    private final Map<String, Set<String>> attributeNames;
+    private final Map<String, Set<String>> sampledAttributeNames;
+    private AttributeSnapshot snapshot;
+    private PacketSender sender;
     private UdpPacketSender packetSender;
+    private OpenMetricsExporter exporter;
+
+    private final long samplingInterval;
+    private final Map<MBeanType, Long> nextSample = new IdentityHashMap<>();
+    private final Map<String, SampleRing> samples = new HashMap<>();
+    private final ValueList sampleValues = new ValueList();
 
     private transient MBeanServerConnection connection;
     private String instance;
@@ -59,9 +92,46 @@ public class Collector implements Runnable {
 
         this.config = config;
         this.jmxList = jmxList;
+        this.attributeNames = getAttributeNames(jmxList, config.getInterval(), false);
+        this.sampledAttributeNames = getAttributeNames(jmxList, config.getInterval(), true);
+        this.samplingInterval = getSamplingInterval(jmxList, config.getInterval());
 
-        final InetSocketAddress destination = new InetSocketAddress(config.getHost(), config.getPort());
-        this.packetSender = new UdpPacketSender(destination, config.getClient(), config.getPacketSize());
+        final TypeValidator validator = createValidator(config);
+        if (validator != null) {
+            validateDefinitions(validator.getTypesDb(), jmxList);
+        }
+        final ThresholdEngine thresholds = createThresholds(jmxList, validator);
+        final NotificationCoalescer coalescer = createCoalescer(config);
+
+        if (config.getSocket() != null) {
+            // commands are pipelined to unixsock plugin of local Collectd daemon
+            final UnixSocketSender socketSender = new UnixSocketSender(config.getSocket(), config.getClient(), UnixSocketSender.DEFAULT_MAX_PENDING);
+            socketSender.setValidator(validator);
+            socketSender.setThresholds(thresholds);
+            socketSender.setCoalescer(coalescer);
+            sender = socketSender;
+        } else {
+            packetSender = createUdpSender(config);
+            packetSender.setValidator(validator);
+            packetSender.setThresholds(thresholds);
+            packetSender.setCoalescer(coalescer);
+            sender = packetSender;
+        }
+
+        if (config.getOpenMetrics() != null) {
+            // series of removed MBeans expire after missing three collection cycles
+            exporter = new OpenMetricsExporter(config.getInterval() * 3);
+            if (validator != null) {
+                exporter.setTypesDb(validator.getTypesDb());
+            }
+            try {
+                final InetSocketAddress address = ShardingPacketSender.parseAddress(config.getOpenMetrics(), Controller.DEFAULT_OPEN_METRICS_PORT);
+                exporter.start(address, OpenMetricsExporter.DEFAULT_PATH);
+            } catch (IOException ex) {
+                log.error("Unable to start OpenMetrics endpoint", ex);
+                exporter = null;
+            }
+        }
 
         final String jmxUrl = config.getJmxUrl();
         try {
@@ -74,7 +144,7 @@ public class Collector implements Runnable {
             instance = config.getInstance();
         } else {
             try {
-                instance = (String) getAttribute(new ObjectName(RUNTIME_NAME), "Name", false);
+                instance = (String) getAttribute(new ObjectName(RUNTIME_NAME), null, "Name", false);
             } catch (JMException ex) {
                 log.warn("Unable to get instance name", ex);
             }
@@ -84,6 +154,212 @@ public class Collector implements Runnable {
         }
     }
 
+    private static NotificationCoalescer createCoalescer(final Controller.Config config) {
+        if (config.getNotificationWindow() <= 0) {
+            return null;
+        }
+        // repeats of a notification within the window are reported by a single summary
+        return new NotificationCoalescer(config.getNotificationWindow(), config.getNotificationRate(), NotificationCoalescer.DEFAULT_MAX_ENTRIES);
+    }
+
+    private static UdpPacketSender createUdpSender(final Controller.Config config) {
+        final InetSocketAddress destination = new InetSocketAddress(config.getHost(), config.getPort());
+        final UdpPacketSender udpSender = new UdpPacketSender(destination, config.getClient(), config.getPacketSize());
+        if (config.getUsername() != null) {
+            udpSender.setSecurity(config.getSecurityLevel(), config.getUsername(), config.getPassword());
+        }
+        udpSender.setPacking(config.isPacking());
+        if (config.getExpressLatency() > 0) {
+            udpSender.setExpressLatency(config.getExpressLatency());
+        }
+        if (config.getHeartbeat() > 0) {
+            // unchanged values are resent in every heartbeat cycles only
+            udpSender.setSuppressor(new ValueSuppressor(config.getHeartbeat(), ValueSuppressor.DEFAULT_MAX_ENTRIES));
+        }
+        if (config.getPacketRate() > 0 || config.getByteRate() > 0) {
+            udpSender.setPacing(config.getPacketRate(), config.getByteRate(), config.getBacklog());
+        }
+        if (config.getSpillFile() != null) {
+            try {
+                udpSender.setSpill(new SpillJournal(new File(config.getSpillFile()), config.getSpillSize()), config.getReplayRate());
+            } catch (IOException ex) {
+                log.error("Unable to open spill journal, undelivered packets are dropped", ex);
+            }
+        }
+        udpSender.getStats().register(config.getHost() + ":" + config.getPort());
+        return udpSender;
+    }
+
+    private static TypeValidator createValidator(final Controller.Config config) {
+        if (config.getTypesDb() == null) {
+            return null;
+        }
+        final List<File> files = new LinkedList<>();
+        for (final String file : config.getTypesDb().split(",")) {
+            if (!file.trim().isEmpty()) {
+                files.add(new File(file.trim()));
+            }
+        }
+        try {
+            final TypesDb typesDb = TypesDb.load(files);
+            log.info("Data sets loaded: " + typesDb.getDataSets().size() + " (" + config.getTypesDb() + ")");
+            return new TypeValidator(typesDb);
+        } catch (IOException ex) {
+            log.error("Unable to load types.db, value lists are not validated", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Check MBean attributes of JMX definitions against types.db data sets, invalid definitions are reported on startup (value lists are rejected by
+     * validator of the sender anyway).
+     */
+    private static void validateDefinitions(final TypesDb typesDb, final Collection<Jmx> jmxList) {
+        for (final Jmx jmx : jmxList) {
+            for (final MBeansType mbeans : jmx.getMbeans()) {
+                for (final MBeanType mbean : mbeans.getMbeen()) {
+                    final DataSet dataSet = typesDb.getDataSet(mbean.getType());
+                    if (dataSet == null) {
+                        log.warn("Type " + mbean.getType() + " of MBean " + mbean.getName() + " (plugin " + mbeans.getName() + ") is not defined in types.db");
+                    } else if (mbean.getAttributes().isEmpty()) {
+                        if (dataSet.size() != 1 || dataSet.getValueType(0) != ValueType.GAUGE) {
+                            log.warn("Attributes of MBean " + mbean.getName() + " (plugin " + mbeans.getName() + ") are sent as single GAUGE value, type "
+                                    + mbean.getType() + " requires " + dataSet.getSources());
+                        }
+                    } else if (!matches(dataSet, mbean.getAttributes())) {
+                        log.warn("Attributes of MBean " + mbean.getName() + " (plugin " + mbeans.getName() + ") do not match type " + mbean.getType()
+                                + ", data set: " + dataSet.getSources());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Create threshold engine of threshold definitions, null if no threshold is defined. Rules match any plugin instance, type instance is matched only if
+     * it is known before collection (MBean is not a pattern).
+     */
+    private static ThresholdEngine createThresholds(final Collection<Jmx> jmxList, final TypeValidator validator) {
+        final ThresholdEngine engine = new ThresholdEngine();
+        for (final Jmx jmx : jmxList) {
+            for (final MBeansType mbeans : jmx.getMbeans()) {
+                for (final MBeanType mbean : mbeans.getMbeen()) {
+                    final List<MBeanAttributeType> attributes = mbean.getAttributes();
+                    final boolean pattern = isPattern(mbean.getName());
+                    final String typeInstance = pattern || attributes.isEmpty() ? null : getTypeInstance(mbean, attributes.get(attributes.size() - 1));
+                    if (mbean.getThreshold() != null) {
+                        addThreshold(engine, mbeans.getName(), mbean, typeInstance, -1, mbean.getThreshold());
+                    }
+                    for (int i = 0; i < attributes.size(); i++) {
+                        if (attributes.get(i).getThreshold() != null) {
+                            addThreshold(engine, mbeans.getName(), mbean, typeInstance, i, attributes.get(i).getThreshold());
+                        }
+                    }
+                }
+            }
+        }
+        if (engine.getRuleCount() == 0) {
+            return null;
+        }
+        if (validator != null) {
+            engine.setTypesDb(validator.getTypesDb());
+        }
+        log.info("Threshold rules loaded: " + engine.getRuleCount());
+        return engine;
+    }
+
+    private static void addThreshold(final ThresholdEngine engine, final String plugin, final MBeanType mbean, final String typeInstance,
+            final int dataSource, final ThresholdType definition) {
+        final Threshold threshold = new Threshold();
+        threshold.setPlugin(plugin);
+        threshold.setType(mbean.getType());
+        threshold.setTypeInstance(typeInstance);
+        threshold.setDataSource(dataSource);
+        threshold.setWarningMin(definition.getWarningMin() != null ? definition.getWarningMin() : Double.NaN);
+        threshold.setWarningMax(definition.getWarningMax() != null ? definition.getWarningMax() : Double.NaN);
+        threshold.setFailureMin(definition.getFailureMin() != null ? definition.getFailureMin() : Double.NaN);
+        threshold.setFailureMax(definition.getFailureMax() != null ? definition.getFailureMax() : Double.NaN);
+        threshold.setHysteresis(definition.getHysteresis());
+        threshold.setHits(definition.getHits());
+        try {
+            engine.add(threshold);
+        } catch (IllegalArgumentException ex) {
+            log.warn("Invalid threshold of MBean " + mbean.getName() + " (plugin " + plugin + ") is ignored", ex);
+        }
+    }
+
+    private static boolean isPattern(final String name) {
+        try {
+            return new ObjectName(name).isPattern();
+        } catch (JMException ex) {
+            return false;
+        }
+    }
+
+    private static boolean matches(final DataSet dataSet, final List<MBeanAttributeType> attributes) {
+        if (attributes.size() != dataSet.size()) {
+            return false;
+        }
+        for (int i = 0; i < attributes.size(); i++) {
+            if (ValueType.valueOf(attributes.get(i).getType().value()) != dataSet.getValueType(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collect attribute names of MBean definitions by MBean name (or pattern), definitions of the same MBean in all configuration files are merged. Sampled
+     * and collected definitions are read by separate snapshots.
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private static Map<String, Set<String>> getAttributeNames(final Collection<Jmx> jmxList, final long interval, final boolean sampled) {
+        final Map<String, Set<String>> result = new HashMap<>();
+        for (final Jmx jmx : jmxList) {
+            for (final MBeansType mbeans : jmx.getMbeans()) {
+                for (final MBeanType mbean : mbeans.getMbeen()) {
+                    if (isSampled(mbean, interval) != sampled) {
+                        continue;
+                    }
+                    Set<String> names = result.get(mbean.getName());
+                    if (names == null) {
+                        names = new LinkedHashSet<>();
+                        result.put(mbean.getName(), names);
+                    }
+                    for (final MBeanAttributeType attribute : mbean.getAttributes()) {
+                        names.add(attribute.getName());
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the shortest sampling interval of MBean definitions, 0 if no MBean is sampled. Sampling intervals not shorter than the collection interval are
+     * ignored.
+     */
+    private static long getSamplingInterval(final Collection<Jmx> jmxList, final long interval) {
+        long result = 0L;
+        for (final Jmx jmx : jmxList) {
+            for (final MBeansType mbeans : jmx.getMbeans()) {
+                for (final MBeanType mbean : mbeans.getMbeen()) {
+                    if (isSampled(mbean, interval)) {
+                        result = result > 0 ? Math.min(result, mbean.getSamplingInterval()) : mbean.getSamplingInterval();
+                    } else if (mbean.getSamplingInterval() != null) {
+                        log.warn("Sampling interval of MBean " + mbean.getName() + " (plugin " + mbeans.getName() + ") is ignored, it must be positive and "
+                                + "shorter than collection interval: " + interval + " ms");
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isSampled(final MBeanType mbean, final long interval) {
+        return mbean.getSamplingInterval() != null && mbean.getSamplingInterval() > 0 && mbean.getSamplingInterval() < interval;
+    }
+
     private MBeanServerConnection getConnection() {
         try {
             if (connection == null) {
@@ -104,11 +380,28 @@ public class Collector implements Runnable {
         try {
             final Collection<Values> data = collectData();
 
-            for (final Values values : data) {
+            try {
+                // values of a cycle are sent as a batch (packed by identifier if enabled)
+                sender.send(data);
+            } catch (IOException ex) {
+                log.error("Unable to send metrics", ex);
+            }
+
+            sendSamples();
+
+            if (exporter != null) {
+                // scrapes are served from the snapshot of the last cycle
+                exporter.record(data);
+                exporter.render();
+            }
+
+            if (packetSender != null) {
+                sendStats();
+            } else {
                 try {
-                    packetSender.send(values);
+                    sender.flush();
                 } catch (IOException ex) {
-                    log.error("Unable to send metrics", ex);
+                    log.error("Unable to flush metrics", ex);
                 }
             }
         } catch (RuntimeException ex2) {
@@ -117,13 +410,157 @@ public class Collector implements Runnable {
     }
 
     /**
-     * Shutdown controller. Shutdown process flushes Collectd packet sender.
+     * Get the shortest sampling interval of MBean definitions, {@link #sample()} is scheduled at this rate.
+     *
+     * @return sampling interval in milliseconds, 0 if no MBean is sampled
+     */
+    public long getSamplingInterval() {
+        return samplingInterval;
+    }
+
+    /**
+     * Sample MBeans of definitions with sampling interval. Samples are buffered in a ring per identifier and sent in batches by the next collection cycle.
+     * Sampling must be run by the collector thread (MBean server connection and attribute snapshot are not shared between threads).
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    public void sample() {
+        final long now = System.currentTimeMillis();
+        snapshot = new AttributeSnapshot(sampledAttributeNames);
+        try {
+            for (final Jmx jmx : jmxList) {
+                for (final MBeansType mbeans : jmx.getMbeans()) {
+                    for (final MBeanType mbean : mbeans.getMbeen()) {
+                        if (isSampled(mbean, config.getInterval()) && isSampleDue(mbean, now)) {
+                            sample(mbeans.getName(), mbean, now);
+                        }
+                    }
+                }
+            }
+        } catch (RuntimeException ex) {
+            log.error("Failed to sample metrics", ex);
+        } finally {
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Check if sampling interval of MBean is elapsed. Sampler runs at the shortest sampling interval, so longer intervals are rounded to the nearest tick.
+     */
+    private boolean isSampleDue(final MBeanType mbean, final long now) {
+        final Long due = nextSample.get(mbean);
+        if (due != null && due > now + samplingInterval / 2) {
+            return false;
+        }
+        // sampler does not catch up if it is late
+        nextSample.put(mbean, Math.max((due != null ? due : now) + mbean.getSamplingInterval(), now));
+        return true;
+    }
+
+    private void sample(final String plugin, final MBeanType mbean, final long now) {
+        final Collection<Values> data;
+        try {
+            data = getMetrics(plugin, mbean, true);
+        } catch (InstanceNotFoundException ex) {
+            if (log.isDebugEnabled()) {
+                log.debug("MBean not found" + mbean.getName(), ex);
+            }
+            return;
+        } catch (JMException ex) {
+            log.error("Unable to sample metrics for " + mbean.getName(), ex);
+            return;
+        }
+
+        for (final Values values : data) {
+            final String key = values.getPlugin() + "/" + values.getPluginInstance() + "/" + values.getType() + "/" + values.getTypeInstance();
+            SampleRing ring = samples.get(key);
+            if (ring == null) {
+                // samples of two collection cycles are kept if a cycle is late
+                ring = new SampleRing((int) Math.max(1L, 2 * config.getInterval() / mbean.getSamplingInterval()));
+                ring.setHost(values.getHost());
+                ring.setPlugin(values.getPlugin());
+                ring.setPluginInstance(values.getPluginInstance());
+                ring.setType(values.getType());
+                ring.setTypeInstance(values.getTypeInstance());
+                ring.setInterval(mbean.getSamplingInterval());
+                samples.put(key, ring);
+            }
+            sampleValues.copyOf(values);
+            sampleValues.setTime(now);
+            ring.record(sampleValues);
+        }
+    }
+
+    /**
+     * Send buffered samples in batches (one batch per identifier), rings of identifiers not sampled since the last cycle are removed.
+     */
+    private void sendSamples() {
+        for (final Iterator<SampleRing> it = samples.values().iterator(); it.hasNext();) {
+            final SampleRing ring = it.next();
+            if (ring.size() == 0) {
+                it.remove();
+                continue;
+            }
+            if (ring.getOverwritten() > 0 && log.isDebugEnabled()) {
+                log.debug("Samples overwritten before sending: " + ring.getOverwritten() + " (" + ring + ")");
+            }
+            if (exporter != null) {
+                exporter.record(ring);
+            }
+            try {
+                sender.send(ring);
+            } catch (IOException ex) {
+                log.error("Unable to send samples", ex);
+            }
+        }
+    }
+
+    private void sendStats() {
+        if (config.isSelfStats()) {
+            try {
+                packetSender.sendStats();
+            } catch (IOException ex) {
+                log.error("Unable to send sender statistics", ex);
+            }
+        }
+
+        final ValueSuppressor suppressor = packetSender.getSuppressor();
+        if (suppressor != null && log.isDebugEnabled()) {
+            log.debug("Value lists sent: " + suppressor.getPassed() + ", suppressed: " + suppressor.getSuppressed() + " (ratio: "
+                    + suppressor.getSuppressedRatio() + ")");
+        }
+        final PacketPacer pacer = packetSender.getPacer();
+        if (pacer != null && log.isDebugEnabled()) {
+            log.debug("Packets delayed: " + pacer.getDelayed() + ", dropped: " + pacer.getDropped() + ", backlog: " + pacer.getBacklog());
+        }
+        final SpillJournal journal = packetSender.getJournal();
+        if (journal != null && log.isDebugEnabled()) {
+            log.debug("Packets spilled: " + packetSender.getSpilled() + ", replayed: " + packetSender.getReplayed() + " (max. rate: "
+                    + packetSender.getReplayRate() + "/s), journal: " + journal.getCount() + " packets, " + journal.getSize() + " bytes, age: "
+                    + journal.getAge() + " ms, overwritten: " + journal.getOverwritten());
+        }
+        final SenderStats stats = packetSender.getStats();
+        if (stats.getPackedBatches() > 0 && log.isDebugEnabled()) {
+            log.debug("Packets per cycle: " + stats.getPacketsPerBatchPacked() + " (unpacked: " + stats.getPacketsPerBatchUnpacked() + "), fill ratio: "
+                    + stats.getFillRatioPacked() + " (unpacked: " + stats.getFillRatioUnpacked() + ")");
+        }
+        final NotificationCoalescer coalescer = packetSender.getCoalescer();
+        if (coalescer != null && log.isDebugEnabled()) {
+            log.debug("Notifications sent: " + coalescer.getPassed() + ", coalesced: " + coalescer.getCoalesced() + ", summaries: "
+                    + coalescer.getSummarized() + ", rate limited: " + coalescer.getRateLimited() + ", tracked: " + coalescer.size());
+        }
+    }
+
+    /**
+     * Shutdown controller. Shutdown process flushes and closes Collectd packet sender.
      */
     public void shutdown() {
+        if (exporter != null) {
+            exporter.close();
+        }
         try {
-            packetSender.flush();
+            sender.close();
         } catch (IOException ex) {
-            log.error("Unable to flush UDP packet sender", ex);
+            log.error("Unable to flush Collectd packet sender", ex);
         }
     }
 
@@ -134,6 +571,19 @@ public class Collector implements Runnable {
      */
     private Collection<Values> collectData() {
         final List<Values> data = new LinkedList<>();
+        snapshot = new AttributeSnapshot(attributeNames);
+        try {
+            collectData(data);
+        } finally {
+            if (log.isDebugEnabled()) {
+                log.debug("MBean server requests: " + snapshot.getRequests() + ", attributes read from snapshot: " + snapshot.getHits());
+            }
+            snapshot = null;
+        }
+        return data;
+    }
+
+    private void collectData(final List<Values> data) {
 
         for (final Jmx jmx : jmxList) {
             for (final MBeansType mbeans : jmx.getMbeans()) {
@@ -143,6 +593,10 @@ public class Collector implements Runnable {
                 }
 
                 for (final MBeanType mbean : mbeans.getMbeen()) {
+                    if (isSampled(mbean, config.getInterval())) {
+                        // sent in batches of samples
+                        continue;
+                    }
                     try {
                         data.addAll(getMetrics(plugin, mbean, true));
                     } catch (InstanceNotFoundException ex) {
@@ -155,8 +609,6 @@ public class Collector implements Runnable {
                 }
             }
         }
-
-        return data;
     }
 
     @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
@@ -189,6 +641,14 @@ public class Collector implements Runnable {
                 // get all numeric attributes (including composite attributes) as GAUGE
                 try {
                     final MBeanInfo info = getConnection().getMBeanInfo(objectName);
+                    final List<String> readable = new LinkedList<>();
+                    for (final MBeanAttributeInfo attribute : info.getAttributes()) {
+                        if (attribute.isReadable()) {
+                            readable.add(attribute.getName());
+                        }
+                    }
+                    snapshot.load(getConnection(), objectName, readable);
+
                     for (final MBeanAttributeInfo attribute : info.getAttributes()) {
                         if (!attribute.isReadable()) {
                             // attribute is not readable
@@ -200,7 +660,7 @@ public class Collector implements Runnable {
 
                         final String attrName = attribute.getName();
                         try {
-                            final Object attr = getAttribute(objectName, attrName, true);
+                            final Object attr = getAttribute(objectName, mbean.getName(), attrName, true);
 
                             if (attr instanceof CompositeData) {
                                 final CompositeData data = (CompositeData) attr;
@@ -240,23 +700,13 @@ public class Collector implements Runnable {
                         final String mbeanInstanceName = getMBeanName(objectName);
 
                         values.setTypeInstance(mbean.getTypeInstance() != null ? mbean.getTypeInstance() + "-" + mbeanInstanceName : mbeanInstanceName);
-                    } else if (mbeanAttribute.getTypeInstance() != null) {
-                        // type instance is specified (for MBean attribute)
-                        values.setTypeInstance(mbeanAttribute.getTypeInstance());
-                    } else if (mbean.getTypeInstance() != null) {
-                        // type instance is specified (for MBean)
-                        values.setTypeInstance(mbean.getTypeInstance());
-                    } else if (mbeanAttribute.getComposite() != null) {
-                        // composite and no type instance is specified
-                        values.setTypeInstance(mbeanAttribute.getComposite());
                     } else {
-                        // attribute name otherwise
-                        values.setTypeInstance(mbeanAttribute.getName());
+                        values.setTypeInstance(getTypeInstance(mbean, mbeanAttribute));
                     }
 
                     Values.ValueHolder holder = null;
                     try {
-                        holder = getAttrbituteMetrics(objectName, mbeanAttribute);
+                        holder = getAttrbituteMetrics(objectName, mbean.getName(), mbeanAttribute);
                     } catch (AttributeNotFoundException ex) {
                         log.warn("Unable to get attribute", ex);
                     }
@@ -270,6 +720,11 @@ public class Collector implements Runnable {
             }
         }
 
+        if (mbean.isCritical()) {
+            for (final Values values : valueList) {
+                values.setCritical(true);
+            }
+        }
         return valueList;
     }
 
@@ -286,9 +741,10 @@ public class Collector implements Runnable {
         valueList.add(values);
     }
 
-    private Values.ValueHolder getAttrbituteMetrics(final ObjectName objectName, final MBeanAttributeType mbeanAttribute) throws JMException {
+    private Values.ValueHolder getAttrbituteMetrics(final ObjectName objectName, final String definition, final MBeanAttributeType mbeanAttribute)
+            throws JMException {
         final String attrName = mbeanAttribute.getName();
-        final Object attr = getAttribute(objectName, attrName, true);
+        final Object attr = getAttribute(objectName, definition, attrName, true);
 
         final Object data;
         if (mbeanAttribute.getComposite() != null) {
@@ -315,17 +771,36 @@ public class Collector implements Runnable {
         }
     }
 
+    private static String getTypeInstance(final MBeanType mbean, final MBeanAttributeType mbeanAttribute) {
+        if (mbeanAttribute.getTypeInstance() != null) {
+            // type instance is specified (for MBean attribute)
+            return mbeanAttribute.getTypeInstance();
+        } else if (mbean.getTypeInstance() != null) {
+            // type instance is specified (for MBean)
+            return mbean.getTypeInstance();
+        } else if (mbeanAttribute.getComposite() != null) {
+            // composite and no type instance is specified
+            return mbeanAttribute.getComposite();
+        } else {
+            // attribute name otherwise
+            return mbeanAttribute.getName();
+        }
+    }
+
     private String getMBeanName(final ObjectName objectName) {
         return objectName.getKeyProperty("name");
     }
 
-    private Object getAttribute(final ObjectName name, final String attribute, final boolean retry) throws JMException {
+    /**
+     * Get attribute value. Attributes are read from the snapshot of current collection cycle (if any), so each attribute is fetched once per cycle.
+     */
+    private Object getAttribute(final ObjectName name, final String definition, final String attribute, final boolean retry) throws JMException {
         try {
-            return getConnection().getAttribute(name, attribute);
+            return snapshot != null ? snapshot.get(getConnection(), name, definition, attribute) : getConnection().getAttribute(name, attribute);
         } catch (IOException ex) {
             if (retry) {
                 log.error("Failed to get attribute, retrying...", ex);
-                return getAttribute(name, attribute, false);
+                return getAttribute(name, definition, attribute, false);
             } else {
                 throw new IllegalStateException("Failed to get attribute", ex);
             }
@@ -0,0 +1,42 @@
+package org.collectd.osgi.services;
+
+import java.util.Collection;
+import org.collectd.model.Histogram;
+import org.collectd.model.PluginData;
+import org.collectd.model.SampleRing;
+import org.collectd.model.ValueList;
+
+/**
+ * Send primitive value lists, histograms, samples and batches to Collectd. Senders implementing this interface are registered both as
+ * {@link CollectdSender} and {@link CollectdBatchSender} services, so implementations of {@link CollectdSender} remain compatible.
+ */
+public interface CollectdBatchSender extends CollectdSender {
+
+    /**
+     * Send primitive numeric values to Collectd.
+     *
+     * @param values numeric values
+     */
+    void send(ValueList values);
+
+    /**
+     * Send snapshot of latency histogram to Collectd and reset histogram.
+     *
+     * @param histogram latency histogram
+     */
+    void send(Histogram histogram);
+
+    /**
+     * Send buffered high-frequency samples to Collectd in a batch and clear sample ring.
+     *
+     * @param samples sample ring
+     */
+    void send(SampleRing samples);
+
+    /**
+     * Send a batch of value lists, histogram snapshots and notifications to Collectd. Batch is encoded in one pass.
+     *
+     * @param data value lists, histograms and notifications
+     */
+    void send(Collection<? extends PluginData> data);
+}
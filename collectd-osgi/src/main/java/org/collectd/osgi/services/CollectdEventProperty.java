@@ -29,13 +29,27 @@ public enum CollectdEventProperty {
      */
     INTERVAL("interval"),
     /**
-     * Numeric data values.
+     * Type instance names of a batch event (<code>String[]</code>), one value list is sent for each type instance. Other identifier parts, interval and
+     * value type are shared by all value lists of the batch.
+     */
+    TYPE_INSTANCES("typeInstances"),
+    /**
+     * Numeric data values: a number, a collection of numbers or a primitive <code>long[]</code> / <code>double[]</code> array. Values of all value lists of a
+     * batch event are concatenated into a single primitive array.
      */
     VALUES("values"),
+    /**
+     * Number of values in each value list of a batch event (<code>Integer</code>), calculated from the number of type instances if not set.
+     */
+    VALUES_PER_LIST("valuesPerList"),
     /**
      * Type of numeric values, one of COUNTER, GAUGE, DERIVE, ABSOLUTE.
      */
     VALUE_TYPE("valueType"),
+    /**
+     * Latency histogram ({@link org.collectd.model.Histogram} instance), its snapshot is sent and histogram is reset.
+     */
+    HISTOGRAM("histogram"),
     /**
      * Message part of the notification.
      */
@@ -43,7 +57,12 @@ public enum CollectdEventProperty {
     /**
      * Severity part of the notification.
      */
-    SEVERITY("severity");
+    SEVERITY("severity"),
+    /**
+     * Critical value lists (<code>Boolean</code> or <code>"true"</code>) are sent on the express lane of UDP senders like notifications, in separate packets
+     * with bounded latency.
+     */
+    CRITICAL("critical");
     
     /**
      * OSGi event topic. Submit event to that topic using OSGi event admin service. Data should be 
@@ -0,0 +1,26 @@
+package org.collectd.osgi.services;
+
+import java.util.Collection;
+import org.collectd.model.PluginData;
+
+/**
+ * Source of metrics polled by the central scheduler (whiteboard pattern). Register implementation as OSGi service, data is collected on aligned interval
+ * boundaries and sent in a shared batch to all Collectd senders.
+ */
+public interface MetricSource {
+
+    /**
+     * Service property of source name, used as type instance of per-source timing metrics. Component name (or service ID) is used if it is not set.
+     */
+    String NAME_KEY = "collectd.source";
+
+    /**
+     * Collect metrics. Source must not block for long time, it is skipped if it is still running at the next interval boundary.
+     *
+     * @param time aligned collection time (milliseconds since epoch), used as default time of collected data
+     * @param data collection of value lists, histograms and notifications to add collected data to
+     * @throws Exception failed to collect metrics
+     */
+    @SuppressWarnings("PMD.SignatureDeclareThrowsException")
+    void collect(long time, Collection<PluginData> data) throws Exception;
+}
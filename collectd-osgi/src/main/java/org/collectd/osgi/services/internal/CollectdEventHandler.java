@@ -4,8 +4,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import lombok.extern.slf4j.Slf4j;
+import org.collectd.model.Histogram;
 import org.collectd.model.Notification;
+import org.collectd.model.PluginData;
 import org.collectd.model.Severity;
+import org.collectd.model.ValueList;
 import org.collectd.model.ValueType;
 import org.collectd.model.Values;
 import org.collectd.osgi.services.CollectdEventProperty;
@@ -35,32 +38,43 @@ public class CollectdEventHandler implements EventHandler {
         
         if (event.containsProperty(CollectdEventProperty.VALUES.getPropertyName())) {
             processValuesEvent(event);
+        } else if (event.containsProperty(CollectdEventProperty.HISTOGRAM.getPropertyName())) {
+            processHistogramEvent(event);
         } else if (event.containsProperty(CollectdEventProperty.MESSAGE.getPropertyName())) {
             processNotificationEvent(event);
         } else {
-            log.warn("Event contains no numeric values nor notification");
+            log.warn("Event contains no numeric values, histogram nor notification");
         }
     }
 
     @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
     private void processValuesEvent(final Event event) {
-        final Values values = new Values();
-
-        values.setHost((String) event.getProperty(CollectdEventProperty.HOST.getPropertyName()));
-        values.setPlugin((String) event.getProperty(CollectdEventProperty.PLUGIN.getPropertyName()));
-        values.setPluginInstance((String) event.getProperty(CollectdEventProperty.PLUGIN_INSTANCE.getPropertyName()));
-        values.setType((String) event.getProperty(CollectdEventProperty.TYPE.getPropertyName()));
-        values.setTypeInstance((String) event.getProperty(CollectdEventProperty.TYPE_INSTANCE.getPropertyName()));
+        final Object typeInstancesProperty = event.getProperty(CollectdEventProperty.TYPE_INSTANCES.getPropertyName());
+        if (typeInstancesProperty != null) {
+            processBatchEvent(event, typeInstancesProperty);
+            return;
+        }
 
         final String valueTypeProperty = (String) event.getProperty(CollectdEventProperty.VALUE_TYPE.getPropertyName());
         final ValueType valueType = ValueType.valueOf(valueTypeProperty);
 
+        final Object valuesProperty = event.getProperty(CollectdEventProperty.VALUES.getPropertyName());
+        if (valuesProperty instanceof double[] || valuesProperty instanceof long[]) {
+            // primitive values are not boxed
+            final ValueList valueList = createValueList(event);
+            addValues(valueList, valueType, valuesProperty, 0, getLength(valuesProperty));
+            sendValues(valueList);
+            return;
+        }
+
+        final Values values = new Values();
+        setKeyProperties(values, event);
+
         final String intervalProperty = (String) event.getProperty(CollectdEventProperty.INTERVAL.getPropertyName());
         if (intervalProperty != null) {
             values.setInterval(Long.parseLong(intervalProperty));
         }
 
-        final Object valuesProperty = event.getProperty(CollectdEventProperty.VALUES.getPropertyName());
         if (valuesProperty instanceof Number) {
             final Values.ValueHolder valueHolder = new Values.ValueHolder(valueType, (Number) valuesProperty);
             values.getItems().add(valueHolder);
@@ -74,14 +88,110 @@ public class CollectdEventHandler implements EventHandler {
         sendValues(values);
     }
 
+    /**
+     * Process batch event: values of all type instances are concatenated into a primitive array.
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private void processBatchEvent(final Event event, final Object typeInstancesProperty) {
+        final String[] typeInstances;
+        if (typeInstancesProperty instanceof String[]) {
+            typeInstances = (String[]) typeInstancesProperty;
+        } else if (typeInstancesProperty instanceof Collection) {
+            final Collection<?> collection = (Collection<?>) typeInstancesProperty;
+            typeInstances = new String[collection.size()];
+            int i = 0;
+            for (final Object typeInstance : collection) {
+                if (!(typeInstance instanceof String)) {
+                    log.warn("Invalid type instance: " + typeInstance);
+                    return;
+                }
+                typeInstances[i++] = (String) typeInstance;
+            }
+        } else {
+            log.warn("Invalid type instances property: " + typeInstancesProperty);
+            return;
+        }
+
+        final Object valuesProperty = event.getProperty(CollectdEventProperty.VALUES.getPropertyName());
+        if (!(valuesProperty instanceof double[] || valuesProperty instanceof long[])) {
+            log.warn("Batch event requires long[] or double[] values");
+            return;
+        }
+        final int total = getLength(valuesProperty);
+
+        final Object valuesPerListProperty = event.getProperty(CollectdEventProperty.VALUES_PER_LIST.getPropertyName());
+        final int valuesPerList = valuesPerListProperty instanceof Number ? ((Number) valuesPerListProperty).intValue()
+                : typeInstances.length > 0 ? total / typeInstances.length : 0;
+        if (valuesPerList <= 0 || valuesPerList * typeInstances.length != total) {
+            log.warn("Number of values (" + total + ") does not match number of type instances (" + typeInstances.length + ")");
+            return;
+        }
+
+        final ValueType valueType = ValueType.valueOf((String) event.getProperty(CollectdEventProperty.VALUE_TYPE.getPropertyName()));
+        final List<ValueList> batch = new ArrayList<>(typeInstances.length);
+        for (int i = 0; i < typeInstances.length; i++) {
+            final ValueList valueList = createValueList(event);
+            valueList.setTypeInstance(typeInstances[i]);
+            addValues(valueList, valueType, valuesProperty, i * valuesPerList, valuesPerList);
+            batch.add(valueList);
+        }
+
+        for (final CollectdSender sender : senders) {
+            CollectdSenders.send(sender, batch);
+        }
+    }
+
+    private ValueList createValueList(final Event event) {
+        final ValueList valueList = new ValueList();
+        setKeyProperties(valueList, event);
+
+        final String intervalProperty = (String) event.getProperty(CollectdEventProperty.INTERVAL.getPropertyName());
+        if (intervalProperty != null) {
+            valueList.setInterval(Long.parseLong(intervalProperty));
+        }
+        return valueList;
+    }
+
+    private static void addValues(final ValueList valueList, final ValueType valueType, final Object values, final int offset, final int length) {
+        if (values instanceof double[]) {
+            final double[] doubles = (double[]) values;
+            for (int i = offset; i < offset + length; i++) {
+                valueList.add(valueType, doubles[i]);
+            }
+        } else {
+            final long[] longs = (long[]) values;
+            for (int i = offset; i < offset + length; i++) {
+                valueList.add(valueType, longs[i]);
+            }
+        }
+    }
+
+    private static int getLength(final Object values) {
+        return values instanceof double[] ? ((double[]) values).length : ((long[]) values).length;
+    }
+
+    private static void setKeyProperties(final PluginData data, final Event event) {
+        data.setHost((String) event.getProperty(CollectdEventProperty.HOST.getPropertyName()));
+        data.setPlugin((String) event.getProperty(CollectdEventProperty.PLUGIN.getPropertyName()));
+        data.setPluginInstance((String) event.getProperty(CollectdEventProperty.PLUGIN_INSTANCE.getPropertyName()));
+        data.setType((String) event.getProperty(CollectdEventProperty.TYPE.getPropertyName()));
+        data.setTypeInstance((String) event.getProperty(CollectdEventProperty.TYPE_INSTANCE.getPropertyName()));
+        data.setCritical(Boolean.parseBoolean(String.valueOf(event.getProperty(CollectdEventProperty.CRITICAL.getPropertyName()))));
+    }
+
+    private void processHistogramEvent(final Event event) {
+        final Object histogramProperty = event.getProperty(CollectdEventProperty.HISTOGRAM.getPropertyName());
+        if (histogramProperty instanceof Histogram) {
+            // snapshot is taken once (histogram is reset) and shared by all destinations
+            sendValues(((Histogram) histogramProperty).toValues());
+        } else {
+            log.warn("Invalid histogram property: " + histogramProperty);
+        }
+    }
+
     private void processNotificationEvent(final Event event) {
         final Notification notification = new Notification();
-        
-        notification.setHost((String) event.getProperty(CollectdEventProperty.HOST.getPropertyName()));
-        notification.setPlugin((String) event.getProperty(CollectdEventProperty.PLUGIN.getPropertyName()));
-        notification.setPluginInstance((String) event.getProperty(CollectdEventProperty.PLUGIN_INSTANCE.getPropertyName()));
-        notification.setType((String) event.getProperty(CollectdEventProperty.TYPE.getPropertyName()));
-        notification.setTypeInstance((String) event.getProperty(CollectdEventProperty.TYPE_INSTANCE.getPropertyName()));
+        setKeyProperties(notification, event);
 
         notification.setMessage((String) event.getProperty(CollectdEventProperty.MESSAGE.getPropertyName()));
         notification.setSeverity(Severity.valueOf((String) event.getProperty(CollectdEventProperty.SEVERITY.getPropertyName())));
@@ -95,6 +205,12 @@ public class CollectdEventHandler implements EventHandler {
         }
     }
 
+    private void sendValues(final ValueList values) {
+        for (final CollectdSender sender : senders) {
+            CollectdSenders.send(sender, values);
+        }
+    }
+
     private void sendNotification(final Notification notification) {
         for (final CollectdSender sender : senders) {
             sender.send(notification);
@@ -0,0 +1,98 @@
+package org.collectd.osgi.services.internal;
+
+import java.util.Collection;
+import org.collectd.model.Histogram;
+import org.collectd.model.Notification;
+import org.collectd.model.PluginData;
+import org.collectd.model.SampleRing;
+import org.collectd.model.ValueList;
+import org.collectd.model.ValueType;
+import org.collectd.model.Values;
+import org.collectd.osgi.services.CollectdBatchSender;
+import org.collectd.osgi.services.CollectdSender;
+
+/**
+ * Send value lists and batches to Collectd senders. Senders implementing only {@link CollectdSender} receive data converted to {@link Values} and
+ * notifications one by one.
+ */
+final class CollectdSenders {
+
+    private CollectdSenders() {
+    }
+
+    /**
+     * Send primitive numeric values to Collectd sender.
+     *
+     * @param sender Collectd sender
+     * @param values numeric values
+     */
+    static void send(final CollectdSender sender, final ValueList values) {
+        if (sender instanceof CollectdBatchSender) {
+            ((CollectdBatchSender) sender).send(values);
+        } else {
+            sender.send(toValues(values));
+        }
+    }
+
+    /**
+     * Send a batch of value lists, histogram snapshots and notifications to Collectd sender.
+     *
+     * @param sender Collectd sender
+     * @param data value lists, histograms and notifications
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    static void send(final CollectdSender sender, final Collection<? extends PluginData> data) {
+        if (sender instanceof CollectdBatchSender) {
+            ((CollectdBatchSender) sender).send(data);
+            return;
+        }
+
+        for (final PluginData item : data) {
+            if (item instanceof Values) {
+                sender.send((Values) item);
+            } else if (item instanceof ValueList) {
+                sender.send(toValues((ValueList) item));
+            } else if (item instanceof Histogram) {
+                sender.send(((Histogram) item).toValues());
+            } else if (item instanceof SampleRing) {
+                final SampleRing samples = (SampleRing) item;
+                final ValueList sample = new ValueList(samples.getValueCount());
+                synchronized (samples) {
+                    for (int i = 0; i < samples.size(); i++) {
+                        samples.copyTo(i, sample);
+                        sender.send(toValues(sample));
+                    }
+                    samples.clear();
+                }
+            } else if (item instanceof Notification) {
+                sender.send((Notification) item);
+            }
+        }
+    }
+
+    private static Values toValues(final ValueList source) {
+        final Values values = new Values();
+        values.setHost(source.getHost());
+        values.setTime(source.getTime());
+        values.setPlugin(source.getPlugin());
+        values.setPluginInstance(source.getPluginInstance());
+        values.setType(source.getType());
+        values.setTypeInstance(source.getTypeInstance());
+        values.setSign(source.isSign());
+        values.setEncrypt(source.isEncrypt());
+        values.setCritical(source.isCritical());
+        if (source.getInterval() > 0) {
+            values.setInterval(source.getInterval());
+        }
+        for (int i = 0; i < source.size(); i++) {
+            final Number value;
+            if (source.getType(i) == ValueType.GAUGE) {
+                value = source.getDouble(i);
+            } else {
+                value = source.getLong(i);
+            }
+            values.getItems().add(new Values.ValueHolder(source.getType(i), value));
+        }
+        return values;
+    }
+}
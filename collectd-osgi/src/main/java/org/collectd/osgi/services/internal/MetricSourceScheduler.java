@@ -0,0 +1,316 @@
+package org.collectd.osgi.services.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.collectd.model.PluginData;
+import org.collectd.model.ValueList;
+import org.collectd.model.ValueType;
+import org.collectd.osgi.services.CollectdSender;
+import org.collectd.osgi.services.MetricSource;
+import org.collectd.services.SenderStats;
+import org.osgi.service.component.ComponentConstants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Central scheduler polling {@link MetricSource} services on aligned interval boundaries. Sources are called in parallel by a worker pool, data of all
+ * sources is sent as a single batch to all Collectd senders. Sources exceeding the timeout are skipped (until they return) and failing sources are isolated,
+ * duration and error count of each source are sent as metrics of {@link SenderStats#PLUGIN} plugin.
+ */
+@Component(immediate = true)
+@Slf4j
+public class MetricSourceScheduler {
+
+    private static final String SCHEDULER_THREAD_NAME = "collectd-scheduler";
+    private static final String WORKER_THREAD_NAME = "collectd-source-";
+    private static final String SOURCE_PLUGIN_INSTANCE = "source";
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final String SERVICE_ID = "service.id";
+
+    @SuppressWarnings("checkstyle:JavadocMethod")
+    @ObjectClassDefinition(name = "Collectd metric source scheduler configuration")
+    public @interface Config {
+
+        @AttributeDefinition(required = false, name = "Collection interval in seconds")
+        int stats_collectd_interval() default 10;
+
+        @AttributeDefinition(required = false, name = "Timeout of a metric source in milliseconds (0: half of the interval)")
+        long stats_collectd_sourceTimeout() default 0;
+
+        @AttributeDefinition(required = false, name = "Number of worker threads calling metric sources")
+        int stats_collectd_sourceThreads() default 4;
+
+        @AttributeDefinition(required = false, name = "Send duration and error count of metric sources")
+        boolean stats_collectd_sourceStats() default true;
+    }
+
+    @Reference(cardinality = ReferenceCardinality.MULTIPLE, policyOption = ReferencePolicyOption.GREEDY)
+    private List<CollectdSender> senders = new ArrayList<>();
+
+    private final List<Source> sources = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService workers;
+    private long interval;
+    private long timeout;
+    private boolean sourceStats;
+
+    /**
+     * Initialize OSGi component.
+     *
+     * @param config configuration options
+     */
+    @Activate
+    public synchronized void startOsgiComponent(final Config config) {
+        interval = TimeUnit.SECONDS.toMillis(config.stats_collectd_interval());
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Collection interval must be positive");
+        }
+        timeout = config.stats_collectd_sourceTimeout() > 0 ? config.stats_collectd_sourceTimeout() : interval / 2;
+        sourceStats = config.stats_collectd_sourceStats();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(SCHEDULER_THREAD_NAME, false));
+        workers = Executors.newFixedThreadPool(Math.max(1, config.stats_collectd_sourceThreads()), new NamedThreadFactory(WORKER_THREAD_NAME, true));
+        scheduleNext(0L);
+    }
+
+    /**
+     * Update OSGi component configuration.
+     *
+     * @param config configuration options
+     */
+    @Modified
+    public void modifyOsgiComponent(final Config config) {
+        stopOsgiComponent();
+        startOsgiComponent(config);
+    }
+
+    /**
+     * Cleanup OSGi component.
+     */
+    @Deactivate
+    public synchronized void stopOsgiComponent() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
+    }
+
+    /**
+     * Register metric source.
+     *
+     * @param source metric source
+     * @param properties service properties
+     */
+    @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+    public void bindMetricSource(final MetricSource source, final Map<String, Object> properties) {
+        Object name = properties.get(MetricSource.NAME_KEY);
+        if (name == null) {
+            name = properties.get(ComponentConstants.COMPONENT_NAME);
+        }
+        if (name == null) {
+            name = properties.get(SERVICE_ID);
+        }
+        sources.add(new Source(String.valueOf(name), source));
+        if (log.isDebugEnabled()) {
+            log.debug("Metric source registered: " + name);
+        }
+    }
+
+    /**
+     * Unregister metric source.
+     *
+     * @param source metric source
+     */
+    public void unbindMetricSource(final MetricSource source) {
+        for (final Source s : sources) {
+            if (s.source == source) {
+                sources.remove(s);
+            }
+        }
+    }
+
+    private synchronized void scheduleNext(final long previous) {
+        if (scheduler == null || scheduler.isShutdown()) {
+            return;
+        }
+        // next interval boundary, so all agents (and sources) are collected at the same time
+        final long now = System.currentTimeMillis();
+        final long next = (Math.max(now, previous) / interval + 1) * interval;
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    collect(next);
+                } finally {
+                    scheduleNext(next);
+                }
+            }
+        }, next - now, TimeUnit.MILLISECONDS);
+    }
+
+    @SuppressWarnings({"PMD.AvoidCatchingGenericException", "PMD.AvoidInstantiatingObjectsInLoops"})
+    private void collect(final long time) {
+        final ExecutorService pool = workers;
+        if (pool == null) {
+            return;
+        }
+
+        final Map<Source, Future<List<PluginData>>> futures = new LinkedHashMap<>();
+        for (final Source source : sources) {
+            if (!source.running.compareAndSet(false, true)) {
+                // slow source is still running, it is not called again
+                source.skipped.incrementAndGet();
+                if (log.isDebugEnabled()) {
+                    log.debug("Metric source " + source.name + " is still running, skipped");
+                }
+                continue;
+            }
+            futures.put(source, pool.submit(source.createTask(time)));
+        }
+
+        final List<PluginData> batch = new ArrayList<>();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        for (final Map.Entry<Source, Future<List<PluginData>>> entry : futures.entrySet()) {
+            final Source source = entry.getKey();
+            try {
+                batch.addAll(entry.getValue().get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException ex) {
+                entry.getValue().cancel(true);
+                source.errors.incrementAndGet();
+                log.warn("Metric source " + source.name + " timed out, data is dropped");
+            } catch (ExecutionException ex) {
+                source.errors.incrementAndGet();
+                if (source.failures.getAndIncrement() == 0) {
+                    log.warn("Metric source " + source.name + " failed", ex.getCause());
+                } else if (log.isDebugEnabled()) {
+                    log.debug("Metric source " + source.name + " failed", ex.getCause());
+                }
+                continue;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            source.failures.set(0);
+        }
+
+        if (sourceStats) {
+            for (final Source source : sources) {
+                batch.add(createValueList(time, "duration", source.name, ValueType.GAUGE, source.lastDuration.get() / NANOS_PER_SECOND));
+                batch.add(createValueList(time, "derive", source.name + "_errors", ValueType.DERIVE, source.errors.get() + source.skipped.get()));
+            }
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (final PluginData data : batch) {
+            if (data.getTime() <= 0) {
+                data.setTime(time);
+            }
+        }
+        for (final CollectdSender sender : senders) {
+            try {
+                CollectdSenders.send(sender, batch);
+            } catch (RuntimeException ex) {
+                log.error("Unable to send collected metrics", ex);
+            }
+        }
+    }
+
+    private static ValueList createValueList(final long time, final String type, final String typeInstance, final ValueType valueType, final double value) {
+        final ValueList valueList = new ValueList();
+        valueList.setTime(time);
+        valueList.setPlugin(SenderStats.PLUGIN);
+        valueList.setPluginInstance(SOURCE_PLUGIN_INSTANCE);
+        valueList.setType(type);
+        valueList.setTypeInstance(typeInstance);
+        if (valueType == ValueType.GAUGE) {
+            valueList.addGauge(value);
+        } else {
+            valueList.add(valueType, (long) value);
+        }
+        return valueList;
+    }
+
+    private static final class Source {
+
+        private final String name;
+        private final MetricSource source;
+
+        private final AtomicBoolean running = new AtomicBoolean(false);
+        private final AtomicLong lastDuration = new AtomicLong(0L);
+        private final AtomicLong errors = new AtomicLong(0L);
+        private final AtomicLong skipped = new AtomicLong(0L);
+        private final AtomicInteger failures = new AtomicInteger(0);
+
+        private Source(final String name, final MetricSource source) {
+            this.name = name;
+            this.source = source;
+        }
+
+        private Callable<List<PluginData>> createTask(final long time) {
+            return new Callable<List<PluginData>>() {
+                @Override
+                public List<PluginData> call() throws Exception {
+                    final long start = System.nanoTime();
+                    try {
+                        final List<PluginData> data = new ArrayList<>();
+                        source.collect(time, data);
+                        return data;
+                    } finally {
+                        lastDuration.set(System.nanoTime() - start);
+                        running.set(false);
+                    }
+                }
+            };
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final boolean numbered;
+        private final AtomicInteger counter = new AtomicInteger(0);
+
+        private NamedThreadFactory(final String name, final boolean numbered) {
+            this.name = name;
+            this.numbered = numbered;
+        }
+
+        @Override
+        public Thread newThread(final Runnable task) {
+            final Thread thread = new Thread(task, numbered ? name + counter.incrementAndGet() : name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package org.collectd.osgi.services.internal;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.collectd.model.Histogram;
+import org.collectd.model.Notification;
+import org.collectd.model.PluginData;
+import org.collectd.model.SampleRing;
+import org.collectd.model.ValueList;
+import org.collectd.model.Values;
+import org.collectd.osgi.services.CollectdBatchSender;
+import org.collectd.osgi.services.CollectdSender;
+import org.collectd.services.OpenMetricsExporter;
+import org.collectd.services.ShardingPacketSender;
+import org.collectd.services.TypeValidator;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Collectd sender service publishing sent values on an OpenMetrics (Prometheus) HTTP endpoint. Component is activated only if it is configured. Sent values
+ * are rendered periodically, scrapes are served from the last rendered snapshot.
+ */
+@Component(immediate = true, service = {CollectdSender.class, CollectdBatchSender.class},
+    configurationPolicy = ConfigurationPolicy.REQUIRE, property = CollectdSender.PROTOCOL_KEY + "=openmetrics")
+@Slf4j
+public class OpenMetricsCollectdSender implements CollectdBatchSender {
+
+    @SuppressWarnings("checkstyle:JavadocMethod")
+    @ObjectClassDefinition(name = "Collectd OpenMetrics endpoint configuration")
+    public @interface Config {
+
+        @AttributeDefinition(required = false, name = "Listen address of HTTP endpoint (host:port)")
+        String stats_collectd_address() default "0.0.0.0:" + DEFAULT_PORT;
+
+        @AttributeDefinition(required = false, name = "Path of HTTP endpoint")
+        String stats_collectd_path() default OpenMetricsExporter.DEFAULT_PATH;
+
+        @AttributeDefinition(required = false, name = "Render interval in milliseconds")
+        long stats_collectd_renderInterval() default DEFAULT_RENDER_INTERVAL;
+
+        @AttributeDefinition(required = false, name = "Series not updated for this period (in milliseconds) are removed (0: three render intervals)")
+        long stats_collectd_expireAfter() default 0;
+
+        @AttributeDefinition(required = false, name = "types.db files for data source names (empty: value index is used)")
+        String[] stats_collectd_typesDb() default {};
+    }
+
+    private static final int DEFAULT_PORT = 9103;
+    private static final long DEFAULT_RENDER_INTERVAL = 10000L;
+    private static final String RENDER_THREAD_NAME = "collectd-openmetrics-render";
+
+    private OpenMetricsExporter exporter;
+    private ScheduledExecutorService renderScheduler;
+
+    /**
+     * Initialize OSGi component.
+     *
+     * @param config configuration options
+     * @throws IOException unable to start HTTP endpoint
+     */
+    @Activate
+    public void startOsgiComponent(final Config config) throws IOException {
+        final long renderInterval = config.stats_collectd_renderInterval();
+        exporter = new OpenMetricsExporter(config.stats_collectd_expireAfter() > 0 ? config.stats_collectd_expireAfter() : renderInterval * 3);
+        final TypeValidator validator = UdpCollectdSender.createValidator(config.stats_collectd_typesDb());
+        if (validator != null) {
+            exporter.setTypesDb(validator.getTypesDb());
+        }
+        exporter.start(ShardingPacketSender.parseAddress(config.stats_collectd_address(), DEFAULT_PORT), config.stats_collectd_path());
+
+        final OpenMetricsExporter current = exporter;
+        renderScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable task) {
+                final Thread thread = new Thread(task, RENDER_THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        renderScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                current.render();
+            }
+        }, renderInterval, renderInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Update OSGi component configuration.
+     *
+     * @param config configuration options
+     * @throws IOException unable to start HTTP endpoint
+     */
+    @Modified
+    public void modifyOsgiComponent(final Config config) throws IOException {
+        stopOsgiComponent();
+        startOsgiComponent(config);
+    }
+
+    /**
+     * Cleanup OSGi component.
+     */
+    @Deactivate
+    public void stopOsgiComponent() {
+        if (renderScheduler != null) {
+            renderScheduler.shutdownNow();
+            renderScheduler = null;
+        }
+        if (exporter != null) {
+            exporter.close();
+        }
+        exporter = null;
+    }
+
+    /**
+     * Publish numeric values (metrics).
+     *
+     * @param values numeric values
+     */
+    @Override
+    public void send(final Values values) {
+        exporter.record(values);
+    }
+
+    /**
+     * Publish primitive numeric values (metrics).
+     *
+     * @param values numeric values
+     */
+    @Override
+    public void send(final ValueList values) {
+        exporter.record(values);
+    }
+
+    /**
+     * Publish snapshot of latency histogram.
+     *
+     * @param histogram latency histogram
+     */
+    @Override
+    public void send(final Histogram histogram) {
+        exporter.record(histogram);
+    }
+
+    /**
+     * Publish the latest of buffered high-frequency samples and clear sample ring.
+     *
+     * @param samples sample ring
+     */
+    @Override
+    public void send(final SampleRing samples) {
+        synchronized (samples) {
+            exporter.record(samples);
+            samples.clear();
+        }
+    }
+
+    /**
+     * Notifications are not published.
+     *
+     * @param notification notification
+     */
+    @Override
+    public void send(final Notification notification) {
+        if (log.isTraceEnabled()) {
+            log.trace("Notification is not published on OpenMetrics endpoint: " + notification);
+        }
+    }
+
+    /**
+     * Publish a batch of value lists and histogram snapshots, notifications are ignored.
+     *
+     * @param data value lists, histograms and notifications
+     */
+    @Override
+    public void send(final Collection<? extends PluginData> data) {
+        exporter.record(data);
+    }
+}
@@ -0,0 +1,135 @@
+package org.collectd.osgi.services.internal;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.collectd.config.CollectdConstants;
+import org.collectd.config.SecurityLevel;
+import org.collectd.services.Relay;
+import org.collectd.services.ShardingPacketSender;
+import org.collectd.services.SimpleRelayFilter;
+import org.collectd.services.UdpPacketSender;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Collectd relay forwarding received packets to the Collectd server. Component is activated only if it is configured.
+ */
+@Component(immediate = true, configurationPolicy = ConfigurationPolicy.REQUIRE)
+@Slf4j
+public class RelayComponent {
+
+    @SuppressWarnings("checkstyle:JavadocMethod")
+    @ObjectClassDefinition(name = "Collectd relay configuration")
+    public @interface Config {
+
+        @AttributeDefinition(required = false, name = "Listen address (host:port)")
+        String stats_collectd_listen() default "0.0.0.0:" + CollectdConstants.DEFAULT_UDP_PORT;
+
+        @AttributeDefinition(required = false, name = "Number of receive threads")
+        int stats_collectd_threads() default 2;
+
+        @AttributeDefinition(required = false, name = "Receive buffer size of sockets in bytes (0: OS default)")
+        int stats_collectd_receiveBuffer() default 0;
+
+        @AttributeDefinition(required = true, name = "Collectd server host")
+        String stats_collectd_host();
+
+        @AttributeDefinition(required = false, name = "Collectd server port")
+        int stats_collectd_port() default CollectdConstants.DEFAULT_UDP_PORT;
+
+        @AttributeDefinition(required = false, name = "User name of signed or encrypted forwarded packets (empty: packets are forwarded in plain text)")
+        String stats_collectd_username() default "";
+
+        @AttributeDefinition(required = false, type = AttributeType.PASSWORD, name = "Password of signed or encrypted forwarded packets")
+        String stats_collectd_password() default "";
+
+        @AttributeDefinition(required = false, name = "Security level of forwarded packets if user name is set (Sign or Encrypt)")
+        String stats_collectd_securityLevel() default "Sign";
+
+        @AttributeDefinition(required = false, name = "Packet size of forwarded packets")
+        int stats_collectd_packetSize() default CollectdConstants.MAX_PACKET_SIZE;
+
+        @AttributeDefinition(required = false, name = "Flush interval in milliseconds")
+        long stats_collectd_flushInterval() default Relay.DEFAULT_FLUSH_INTERVAL;
+
+        @AttributeDefinition(required = false, name = "Pattern of forwarded plugins (empty: all plugins are forwarded)")
+        String stats_collectd_plugins() default "";
+
+        @AttributeDefinition(required = false, name = "Host name set on forwarded data (empty: host name is not changed)")
+        String stats_collectd_hostRewrite() default "";
+    }
+
+    private static final String RELAY_NAME = "relay";
+
+    private UdpPacketSender upstream;
+    private Relay relay;
+
+    /**
+     * Initialize OSGi component.
+     *
+     * @param config configuration options
+     * @throws IOException unable to bind relay sockets
+     */
+    @Activate
+    public void startOsgiComponent(final Config config) throws IOException {
+        final InetSocketAddress server = new InetSocketAddress(config.stats_collectd_host(), config.stats_collectd_port());
+        upstream = new UdpPacketSender(server, null, config.stats_collectd_packetSize());
+        final String username = config.stats_collectd_username();
+        if (username != null && !username.isEmpty()) {
+            upstream.setSecurity(SecurityLevel.parse(config.stats_collectd_securityLevel()), username, config.stats_collectd_password());
+        }
+        upstream.getStats().register(server.getHostString() + ":" + server.getPort());
+
+        relay = new Relay(ShardingPacketSender.parseAddress(config.stats_collectd_listen(), CollectdConstants.DEFAULT_UDP_PORT), config.stats_collectd_threads(),
+                upstream);
+        final String plugins = config.stats_collectd_plugins();
+        final String hostRewrite = config.stats_collectd_hostRewrite();
+        if (plugins != null && !plugins.isEmpty() || hostRewrite != null && !hostRewrite.isEmpty()) {
+            relay.setFilter(new SimpleRelayFilter(plugins != null && !plugins.isEmpty() ? Pattern.compile(plugins) : null,
+                    hostRewrite != null && !hostRewrite.isEmpty() ? hostRewrite : null));
+        }
+        relay.setFlushInterval(config.stats_collectd_flushInterval());
+        relay.setReceiveBufferSize(config.stats_collectd_receiveBuffer());
+        relay.register(RELAY_NAME);
+        relay.start();
+    }
+
+    /**
+     * Update OSGi component configuration.
+     *
+     * @param config configuration options
+     * @throws IOException unable to bind relay sockets
+     */
+    @Modified
+    public void modifyOsgiComponent(final Config config) throws IOException {
+        stopOsgiComponent();
+        startOsgiComponent(config);
+    }
+
+    /**
+     * Cleanup OSGi component.
+     */
+    @Deactivate
+    public void stopOsgiComponent() {
+        try {
+            if (relay != null) {
+                relay.close();
+            }
+            if (upstream != null) {
+                upstream.close();
+            }
+        } catch (IOException ex) {
+            log.error("Unable to stop relay", ex);
+        }
+        relay = null;
+        upstream = null;
+    }
+}
@@ -1,26 +1,56 @@
 package org.collectd.osgi.services.internal;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.collectd.config.CollectdConstants;
+import org.collectd.config.SecurityLevel;
+import org.collectd.config.Threshold;
+import org.collectd.config.TypesDb;
+import org.collectd.model.Histogram;
 import org.collectd.model.Notification;
+import org.collectd.model.PluginData;
+import org.collectd.model.SampleRing;
+import org.collectd.model.ValueList;
 import org.collectd.model.Values;
+import org.collectd.osgi.services.CollectdBatchSender;
 import org.collectd.osgi.services.CollectdSender;
+import org.collectd.services.NotificationCoalescer;
+import org.collectd.services.PacketSender;
+import org.collectd.services.ShardingPacketSender;
+import org.collectd.services.SpillJournal;
+import org.collectd.services.ThresholdEngine;
+import org.collectd.services.TypeValidator;
 import org.collectd.services.UdpPacketSender;
+import org.collectd.services.ValueSuppressor;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
 /**
  * Collectd UDP sender service.
  */
-@Component(immediate = true, property = CollectdSender.PROTOCOL_KEY + "=udp")
+@Component(immediate = true, service = {CollectdSender.class, CollectdBatchSender.class},
+    property = CollectdSender.PROTOCOL_KEY + "=udp")
 @Slf4j
-public class UdpCollectdSender implements CollectdSender {
+public class UdpCollectdSender implements CollectdBatchSender {
+
+    private static final int DEFAULT_BACKLOG = 128;
+    private static final int DEFAULT_SPILL_SIZE = 16 * 1024 * 1024;
 
     @SuppressWarnings("checkstyle:JavadocMethod")
     @ObjectClassDefinition(name = "Collectd sender configuration")
@@ -32,27 +62,269 @@ public class UdpCollectdSender implements CollectdSender {
         @AttributeDefinition(required = false, name = "Collectd server port number")
         int stats_collectd_port() default CollectdConstants.DEFAULT_UDP_PORT;
 
+        @AttributeDefinition(required = false, name = "Collectd server pool (host:port) sharded by identifier, overrides host name")
+        String[] stats_collectd_servers() default {};
+
         @AttributeDefinition(required = false, name = "Client hostname")
         String stats_collectd_clientHost();
 
         @AttributeDefinition(required = false, name = "Packet size")
         int stats_collectd_packetSize() default CollectdConstants.DEFAULT_PACKET_SIZE;
+
+        @AttributeDefinition(required = false, name = "Resend unchanged values in every N calls only (0: send all values)")
+        int stats_collectd_heartbeat() default 0;
+
+        @AttributeDefinition(required = false, name = "Maximum packets per second (0: not limited)")
+        double stats_collectd_packetRate() default 0;
+
+        @AttributeDefinition(required = false, name = "Maximum bytes per second (0: not limited)")
+        long stats_collectd_byteRate() default 0;
+
+        @AttributeDefinition(required = false, name = "Maximum number of packets waiting for pacing")
+        int stats_collectd_backlog() default DEFAULT_BACKLOG;
+
+        @AttributeDefinition(required = false, name = "Spill journal file of undelivered packets (empty: packets are dropped)")
+        String stats_collectd_spillFile() default "";
+
+        @AttributeDefinition(required = false, name = "Spill journal size in bytes")
+        int stats_collectd_spillSize() default DEFAULT_SPILL_SIZE;
+
+        @AttributeDefinition(required = false, name = "Maximum replayed packets per second (0: not limited)")
+        double stats_collectd_replayRate() default 0;
+
+        @AttributeDefinition(required = false, name = "Interval of sending sender statistics to Collectd in seconds (0: statistics are not sent)")
+        int stats_collectd_selfStatsInterval() default 0;
+
+        @AttributeDefinition(required = false, name = "types.db files for validation of value lists (empty: value lists are not validated)")
+        String[] stats_collectd_typesDb() default {};
+
+        @AttributeDefinition(required = false, name = "User name of signed or encrypted packets (empty: packets are sent in plain text)")
+        String stats_collectd_username() default "";
+
+        @AttributeDefinition(required = false, type = AttributeType.PASSWORD, name = "Password of signed or encrypted packets")
+        String stats_collectd_password() default "";
+
+        @AttributeDefinition(required = false, name = "Security level of packets if user name is set (Sign or Encrypt)")
+        String stats_collectd_securityLevel() default "Sign";
+
+        @AttributeDefinition(required = false, name = "Threshold rules (i.e. plugin=jmx type=threads warningMax=150 failureMax=190 hysteresis=5 hits=3)")
+        String[] stats_collectd_thresholds() default {};
+
+        @AttributeDefinition(required = false, name = "Time window of coalescing repeated notifications in milliseconds (0: all notifications are sent)")
+        long stats_collectd_notificationWindow() default 0;
+
+        @AttributeDefinition(required = false, name = "Maximum notifications per second if coalescing is enabled (0: not limited)")
+        double stats_collectd_notificationRate() default 0;
+
+        @AttributeDefinition(required = false, name = "Latency bound of notifications and critical values in milliseconds (0: sent immediately)")
+        long stats_collectd_expressLatency() default 0;
+
+        @AttributeDefinition(required = false, name = "Pack value lists of batches by identifier into the fewest packets")
+        boolean stats_collectd_packing() default false;
     }
 
-    private UdpPacketSender sender;
-    
+    private static final String STATS_THREAD_NAME = "collectd-stats";
+
+    private PacketSender sender;
+    private Config config;
+    private ScheduledExecutorService statsScheduler;
+
     /**
      * Initialize OSGi component.
      * 
      * @param config configuration options
      */
     @Activate
-    @Modified
     public void startOsgiComponent(final Config config) {
-        final InetSocketAddress server = new InetSocketAddress(config.stats_collectd_host(), config.stats_collectd_port());
+        this.config = config;
+        sender = createSender(config);
+
+        final int statsInterval = config.stats_collectd_selfStatsInterval();
+        if (statsInterval > 0) {
+            statsScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable task) {
+                    final Thread thread = new Thread(task, STATS_THREAD_NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            statsScheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    sendStats();
+                }
+            }, statsInterval, statsInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Update OSGi component configuration. If only the server list of sharding is changed, buffers of unchanged servers are kept and only identifiers of
+     * added or removed servers are moved.
+     * 
+     * @param config configuration options
+     */
+    @Modified
+    public void modifyOsgiComponent(final Config config) {
+        if (sender instanceof ShardingPacketSender && config.stats_collectd_servers().length > 0 && isSameSenderConfig(this.config, config)) {
+            ((ShardingPacketSender) sender).setServers(getServers(config));
+            this.config = config;
+        } else {
+            stopOsgiComponent();
+            startOsgiComponent(config);
+        }
+    }
+
+    private static PacketSender createSender(final Config config) {
         final int packetSize = config.stats_collectd_packetSize();
         final String clientHost = config.stats_collectd_clientHost();
-        sender = new UdpPacketSender(server, clientHost, packetSize);
+        // types.db is parsed once, validator is shared by all shards
+        final TypeValidator validator = createValidator(config.stats_collectd_typesDb());
+        // state of thresholds is shared by all shards
+        final ThresholdEngine thresholds = createThresholds(config.stats_collectd_thresholds(), validator);
+        // notification rate is limited globally, summaries are sent by the shard of the next notification
+        final NotificationCoalescer coalescer = createCoalescer(config.stats_collectd_notificationWindow(), config.stats_collectd_notificationRate());
+
+        if (config.stats_collectd_servers().length > 0) {
+            return new ShardingPacketSender(getServers(config), clientHost, packetSize) {
+                @Override
+                protected UdpPacketSender createSender(final InetSocketAddress server) {
+                    return configure(super.createSender(server), server, true, config, validator, thresholds, coalescer);
+                }
+            };
+        } else {
+            final InetSocketAddress server = new InetSocketAddress(config.stats_collectd_host(), config.stats_collectd_port());
+            return configure(new UdpPacketSender(server, clientHost, packetSize), server, false, config, validator, thresholds, coalescer);
+        }
+    }
+
+    /**
+     * Load types.db files and create validator of value lists.
+     *
+     * @param typesDb types.db files, later files override data sets of earlier files
+     * @return validator, null if no file is configured or files could not be loaded
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    static TypeValidator createValidator(final String[] typesDb) {
+        final List<File> files = new ArrayList<>();
+        for (final String file : typesDb) {
+            if (file != null && !file.isEmpty()) {
+                files.add(new File(file));
+            }
+        }
+        if (files.isEmpty()) {
+            return null;
+        }
+        try {
+            return new TypeValidator(TypesDb.load(files));
+        } catch (IOException ex) {
+            log.error("Unable to load types.db " + files + ", value lists are not validated", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Parse threshold rules and create threshold engine.
+     *
+     * @param rules threshold rules, invalid rules are ignored
+     * @param validator validator of value lists (data source names of types.db are used in notifications), may be null
+     * @return threshold engine, null if no rule is configured
+     */
+    static ThresholdEngine createThresholds(final String[] rules, final TypeValidator validator) {
+        final ThresholdEngine engine = new ThresholdEngine();
+        for (final String rule : rules) {
+            if (rule == null || rule.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                engine.add(Threshold.parse(rule));
+            } catch (IllegalArgumentException ex) {
+                log.error("Invalid threshold rule is ignored: " + rule, ex);
+            }
+        }
+        if (engine.getRuleCount() == 0) {
+            return null;
+        }
+        if (validator != null) {
+            engine.setTypesDb(validator.getTypesDb());
+        }
+        return engine;
+    }
+
+    /**
+     * Create coalescer of repeated notifications.
+     *
+     * @param window time window of coalescing in milliseconds
+     * @param rate maximum notifications per second (0: not limited)
+     * @return coalescer, null if window is not positive
+     */
+    static NotificationCoalescer createCoalescer(final long window, final double rate) {
+        return window > 0 ? new NotificationCoalescer(window, rate, NotificationCoalescer.DEFAULT_MAX_ENTRIES) : null;
+    }
+
+    private static UdpPacketSender configure(final UdpPacketSender udpSender, final InetSocketAddress server, final boolean shard, final Config config,
+            final TypeValidator validator, final ThresholdEngine thresholds, final NotificationCoalescer coalescer) {
+        udpSender.setValidator(validator);
+        udpSender.setThresholds(thresholds);
+        udpSender.setCoalescer(coalescer);
+        if (config.stats_collectd_expressLatency() > 0) {
+            udpSender.setExpressLatency(config.stats_collectd_expressLatency());
+        }
+        udpSender.setPacking(config.stats_collectd_packing());
+        final String username = config.stats_collectd_username();
+        if (username != null && !username.isEmpty()) {
+            udpSender.setSecurity(SecurityLevel.parse(config.stats_collectd_securityLevel()), username, config.stats_collectd_password());
+        }
+        if (config.stats_collectd_heartbeat() > 0) {
+            udpSender.setSuppressor(new ValueSuppressor(config.stats_collectd_heartbeat(), ValueSuppressor.DEFAULT_MAX_ENTRIES));
+        }
+        if (config.stats_collectd_packetRate() > 0 || config.stats_collectd_byteRate() > 0) {
+            udpSender.setPacing(config.stats_collectd_packetRate(), config.stats_collectd_byteRate(), config.stats_collectd_backlog());
+        }
+        final String spillFile = config.stats_collectd_spillFile();
+        if (spillFile != null && !spillFile.isEmpty()) {
+            // each shard has its own journal file
+            final File file = new File(shard ? spillFile + "." + server.getHostString() + "_" + server.getPort() : spillFile);
+            try {
+                udpSender.setSpill(new SpillJournal(file, config.stats_collectd_spillSize()), config.stats_collectd_replayRate());
+            } catch (IOException ex) {
+                log.error("Unable to open spill journal " + file + ", undelivered packets are dropped", ex);
+            }
+        }
+        udpSender.getStats().register(server.getHostString() + ":" + server.getPort());
+        return udpSender;
+    }
+
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private static List<InetSocketAddress> getServers(final Config config) {
+        final List<InetSocketAddress> servers = new ArrayList<>();
+        for (final String server : config.stats_collectd_servers()) {
+            servers.add(ShardingPacketSender.parseAddress(server, config.stats_collectd_port()));
+        }
+        return servers;
+    }
+
+    private static boolean isSameSenderConfig(final Config current, final Config updated) {
+        return Objects.equals(current.stats_collectd_clientHost(), updated.stats_collectd_clientHost())
+                && current.stats_collectd_port() == updated.stats_collectd_port()
+                && current.stats_collectd_packetSize() == updated.stats_collectd_packetSize()
+                && current.stats_collectd_heartbeat() == updated.stats_collectd_heartbeat()
+                && Double.compare(current.stats_collectd_packetRate(), updated.stats_collectd_packetRate()) == 0
+                && current.stats_collectd_byteRate() == updated.stats_collectd_byteRate()
+                && current.stats_collectd_backlog() == updated.stats_collectd_backlog()
+                && Objects.equals(current.stats_collectd_spillFile(), updated.stats_collectd_spillFile())
+                && current.stats_collectd_spillSize() == updated.stats_collectd_spillSize()
+                && Double.compare(current.stats_collectd_replayRate(), updated.stats_collectd_replayRate()) == 0
+                && current.stats_collectd_selfStatsInterval() == updated.stats_collectd_selfStatsInterval()
+                && Arrays.equals(current.stats_collectd_typesDb(), updated.stats_collectd_typesDb())
+                && Objects.equals(current.stats_collectd_username(), updated.stats_collectd_username())
+                && Objects.equals(current.stats_collectd_password(), updated.stats_collectd_password())
+                && Objects.equals(current.stats_collectd_securityLevel(), updated.stats_collectd_securityLevel())
+                && Arrays.equals(current.stats_collectd_thresholds(), updated.stats_collectd_thresholds())
+                && current.stats_collectd_notificationWindow() == updated.stats_collectd_notificationWindow()
+                && Double.compare(current.stats_collectd_notificationRate(), updated.stats_collectd_notificationRate()) == 0
+                && current.stats_collectd_expressLatency() == updated.stats_collectd_expressLatency()
+                && current.stats_collectd_packing() == updated.stats_collectd_packing();
     }
 
     /**
@@ -60,9 +332,13 @@ public class UdpCollectdSender implements CollectdSender {
      */
     @Deactivate
     public void stopOsgiComponent() {
+        if (statsScheduler != null) {
+            statsScheduler.shutdownNow();
+            statsScheduler = null;
+        }
         if (sender != null) {
             try {
-                sender.flush();
+                sender.close();
             } catch (IOException ex) {
                 log.error("Unable to flush buffer", ex);
             }
@@ -70,6 +346,29 @@ public class UdpCollectdSender implements CollectdSender {
         sender = null;
     }
 
+    private void sendStats() {
+        final PacketSender current = sender;
+        final List<UdpPacketSender> udpSenders = new ArrayList<>();
+        if (current instanceof ShardingPacketSender) {
+            final ShardingPacketSender sharding = (ShardingPacketSender) current;
+            for (final InetSocketAddress server : sharding.getServers()) {
+                udpSenders.add(sharding.getSender(server));
+            }
+        } else if (current instanceof UdpPacketSender) {
+            udpSenders.add((UdpPacketSender) current);
+        }
+
+        for (final UdpPacketSender udpSender : udpSenders) {
+            try {
+                if (udpSender != null) {
+                    udpSender.sendStats();
+                }
+            } catch (IOException ex) {
+                log.error("Unable to send sender statistics", ex);
+            }
+        }
+    }
+
     /**
      * Send numeric values (metrics) to Collectd.
      * 
@@ -84,6 +383,48 @@ public class UdpCollectdSender implements CollectdSender {
         }
     }
 
+    /**
+     * Send primitive numeric values (metrics) to Collectd.
+     * 
+     * @param values numeric values
+     */
+    @Override
+    public void send(final ValueList values) {
+        try {
+            sender.send(values);
+        } catch (IOException ex) {
+            log.error("Unable to send value list", ex);
+        }
+    }
+
+    /**
+     * Send snapshot of latency histogram to Collectd.
+     * 
+     * @param histogram latency histogram
+     */
+    @Override
+    public void send(final Histogram histogram) {
+        try {
+            sender.send(histogram);
+        } catch (IOException ex) {
+            log.error("Unable to send histogram", ex);
+        }
+    }
+
+    /**
+     * Send buffered high-frequency samples to Collectd and clear sample ring.
+     * 
+     * @param samples sample ring
+     */
+    @Override
+    public void send(final SampleRing samples) {
+        try {
+            sender.send(samples);
+        } catch (IOException ex) {
+            log.error("Unable to send samples", ex);
+        }
+    }
+
     /**
      * Send notification to Collectd.
      * 
@@ -97,4 +438,18 @@ public class UdpCollectdSender implements CollectdSender {
             log.error("Unable to send notifitcation", ex);
         }
     }
+
+    /**
+     * Send a batch of value lists, histogram snapshots and notifications to Collectd.
+     *
+     * @param data value lists, histograms and notifications
+     */
+    @Override
+    public void send(final Collection<? extends PluginData> data) {
+        try {
+            sender.send(data);
+        } catch (IOException ex) {
+            log.error("Unable to send batch", ex);
+        }
+    }
 }
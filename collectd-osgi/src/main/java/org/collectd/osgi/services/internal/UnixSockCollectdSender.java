@@ -0,0 +1,219 @@
+package org.collectd.osgi.services.internal;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.collectd.model.Histogram;
+import org.collectd.model.Notification;
+import org.collectd.model.PluginData;
+import org.collectd.model.SampleRing;
+import org.collectd.model.ValueList;
+import org.collectd.model.Values;
+import org.collectd.osgi.services.CollectdBatchSender;
+import org.collectd.osgi.services.CollectdSender;
+import org.collectd.services.TypeValidator;
+import org.collectd.services.UnixSocketSender;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Collectd sender service using unixsock plugin of the local Collectd daemon. Component is activated only if it is configured. Commands are pipelined, buffer
+ * is written periodically (or if it is full).
+ */
+@Component(immediate = true, service = {CollectdSender.class, CollectdBatchSender.class},
+    configurationPolicy = ConfigurationPolicy.REQUIRE, property = CollectdSender.PROTOCOL_KEY + "=unixsock")
+@Slf4j
+public class UnixSockCollectdSender implements CollectdBatchSender {
+
+    @SuppressWarnings("checkstyle:JavadocMethod")
+    @ObjectClassDefinition(name = "Collectd unixsock sender configuration")
+    public @interface Config {
+
+        @AttributeDefinition(required = false, name = "Path of Unix domain socket of Collectd unixsock plugin")
+        String stats_collectd_socketPath() default UnixSocketSender.DEFAULT_SOCKET_PATH;
+
+        @AttributeDefinition(required = false, name = "Client hostname")
+        String stats_collectd_clientHost();
+
+        @AttributeDefinition(required = false, name = "Maximum number of commands waiting for response")
+        int stats_collectd_maxPending() default UnixSocketSender.DEFAULT_MAX_PENDING;
+
+        @AttributeDefinition(required = false, name = "Flush interval in milliseconds")
+        long stats_collectd_flushInterval() default DEFAULT_FLUSH_INTERVAL;
+
+        @AttributeDefinition(required = false, name = "types.db files for validation of value lists (empty: value lists are not validated)")
+        String[] stats_collectd_typesDb() default {};
+
+        @AttributeDefinition(required = false, name = "Threshold rules (i.e. plugin=jmx type=threads warningMax=150 failureMax=190 hysteresis=5 hits=3)")
+        String[] stats_collectd_thresholds() default {};
+
+        @AttributeDefinition(required = false, name = "Time window of coalescing repeated notifications in milliseconds (0: all notifications are sent)")
+        long stats_collectd_notificationWindow() default 0;
+
+        @AttributeDefinition(required = false, name = "Maximum notifications per second if coalescing is enabled (0: not limited)")
+        double stats_collectd_notificationRate() default 0;
+    }
+
+    private static final long DEFAULT_FLUSH_INTERVAL = 1000L;
+    private static final String FLUSH_THREAD_NAME = "collectd-unixsock-flush";
+
+    private UnixSocketSender sender;
+    private ScheduledExecutorService flushScheduler;
+
+    /**
+     * Initialize OSGi component.
+     *
+     * @param config configuration options
+     */
+    @Activate
+    public void startOsgiComponent(final Config config) {
+        sender = new UnixSocketSender(config.stats_collectd_socketPath(), config.stats_collectd_clientHost(), config.stats_collectd_maxPending());
+        final TypeValidator validator = UdpCollectdSender.createValidator(config.stats_collectd_typesDb());
+        sender.setValidator(validator);
+        sender.setThresholds(UdpCollectdSender.createThresholds(config.stats_collectd_thresholds(), validator));
+        sender.setCoalescer(UdpCollectdSender.createCoalescer(config.stats_collectd_notificationWindow(), config.stats_collectd_notificationRate()));
+
+        final UnixSocketSender current = sender;
+        flushScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable task) {
+                final Thread thread = new Thread(task, FLUSH_THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        flushScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    current.flush();
+                } catch (IOException ex) {
+                    log.error("Unable to flush unixsock buffer", ex);
+                }
+            }
+        }, config.stats_collectd_flushInterval(), config.stats_collectd_flushInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Update OSGi component configuration.
+     *
+     * @param config configuration options
+     */
+    @Modified
+    public void modifyOsgiComponent(final Config config) {
+        stopOsgiComponent();
+        startOsgiComponent(config);
+    }
+
+    /**
+     * Cleanup OSGi component.
+     */
+    @Deactivate
+    public void stopOsgiComponent() {
+        if (flushScheduler != null) {
+            flushScheduler.shutdownNow();
+            flushScheduler = null;
+        }
+        if (sender != null) {
+            try {
+                sender.close();
+            } catch (IOException ex) {
+                log.error("Unable to flush buffer", ex);
+            }
+        }
+        sender = null;
+    }
+
+    /**
+     * Send numeric values (metrics) to Collectd.
+     *
+     * @param values numeric values
+     */
+    @Override
+    public void send(final Values values) {
+        try {
+            sender.send(values);
+        } catch (IOException ex) {
+            log.error("Unable to send value list", ex);
+        }
+    }
+
+    /**
+     * Send primitive numeric values (metrics) to Collectd.
+     *
+     * @param values numeric values
+     */
+    @Override
+    public void send(final ValueList values) {
+        try {
+            sender.send(values);
+        } catch (IOException ex) {
+            log.error("Unable to send value list", ex);
+        }
+    }
+
+    /**
+     * Send snapshot of latency histogram to Collectd.
+     *
+     * @param histogram latency histogram
+     */
+    @Override
+    public void send(final Histogram histogram) {
+        try {
+            sender.send(histogram);
+        } catch (IOException ex) {
+            log.error("Unable to send histogram", ex);
+        }
+    }
+
+    /**
+     * Send buffered high-frequency samples to Collectd and clear sample ring.
+     *
+     * @param samples sample ring
+     */
+    @Override
+    public void send(final SampleRing samples) {
+        try {
+            sender.send(samples);
+        } catch (IOException ex) {
+            log.error("Unable to send samples", ex);
+        }
+    }
+
+    /**
+     * Send notification to Collectd.
+     *
+     * @param notification notification
+     */
+    @Override
+    public void send(final Notification notification) {
+        try {
+            sender.send(notification);
+        } catch (IOException ex) {
+            log.error("Unable to send notification", ex);
+        }
+    }
+
+    /**
+     * Send a batch of value lists, histogram snapshots and notifications to Collectd.
+     *
+     * @param data value lists, histograms and notifications
+     */
+    @Override
+    public void send(final Collection<? extends PluginData> data) {
+        try {
+            sender.send(data);
+        } catch (IOException ex) {
+            log.error("Unable to send batch", ex);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package org.collectd.soak;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.collectd.model.Notification;
+import org.collectd.model.ValueList;
+import org.collectd.protocol.PacketReader;
+
+/**
+ * Local Collectd stand-in receiving packets on the loopback interface. Received value lists are matched against the values generated by {@link SoakRunner}:
+ * plugin instance is the producer index, type instance is the identifier index of the producer (both are in the host name of meter handles) and value
+ * <code>i</code> is <code>sequence + i</code>. All identifier parts are compared with the generated identifier, so parts left over from the previous value
+ * list of a packet are detected. Sequences are increasing per identifier, so value lists received out of order (or duplicated) are detected too.
+ */
+@Slf4j
+public class LoopbackReceiver implements Closeable {
+
+    private static final int MAX_DATAGRAM_SIZE = 65535;
+    private static final String THREAD_NAME = "collectd-soak-receiver";
+
+    private final DatagramChannel channel;
+    private final SoakScenario scenario;
+    private final long[][] sequences;
+    private final int values;
+    private final long delayNanos;
+    private final Thread thread;
+
+    private final AtomicLong packets = new AtomicLong(0L);
+    private final AtomicLong bytes = new AtomicLong(0L);
+    private final AtomicLong valueLists = new AtomicLong(0L);
+    private final AtomicLong invalidPackets = new AtomicLong(0L);
+    private final AtomicLong unexpected = new AtomicLong(0L);
+    private final AtomicLong corrupted = new AtomicLong(0L);
+    private final AtomicLong mismatched = new AtomicLong(0L);
+    private final AtomicLong reordered = new AtomicLong(0L);
+
+    private volatile long lastReceived;
+
+    /**
+     * Create new receiver bound to an ephemeral port of the loopback interface.
+     *
+     * @param scenario soak test scenario
+     * @throws IOException unable to bind socket
+     */
+    public LoopbackReceiver(final SoakScenario scenario) throws IOException {
+        this.scenario = scenario;
+        sequences = new long[scenario.getThreads()][];
+        for (int t = 0; t < sequences.length; t++) {
+            // identifiers are assigned to producers round-robin
+            sequences[t] = new long[(scenario.getCardinality() - t + sequences.length - 1) / sequences.length];
+        }
+        values = scenario.getValues();
+        delayNanos = TimeUnit.MICROSECONDS.toNanos(scenario.getReceiverDelay());
+
+        channel = DatagramChannel.open();
+        if (scenario.getReceiveBuffer() > 0) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, scenario.getReceiveBuffer());
+        }
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                receive();
+            }
+        }, THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Get address of the receiver.
+     *
+     * @return local socket address
+     * @throws IOException unable to get address
+     */
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    /**
+     * Wait until no packet is received for the given period.
+     *
+     * @param quietPeriod quiet period in milliseconds
+     * @param timeout maximum waiting time in milliseconds
+     * @throws InterruptedException waiting thread is interrupted
+     */
+    public void awaitQuiet(final long quietPeriod, final long timeout) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        final long quietNanos = TimeUnit.MILLISECONDS.toNanos(quietPeriod);
+        while (System.nanoTime() < deadline && System.nanoTime() - lastReceived < quietNanos) {
+            TimeUnit.MILLISECONDS.sleep(quietPeriod / 10 + 1);
+        }
+    }
+
+    /**
+     * Stop receiving packets.
+     *
+     * @throws IOException unable to close socket
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get number of received packets.
+     *
+     * @return number of packets
+     */
+    public long getPackets() {
+        return packets.get();
+    }
+
+    /**
+     * Get number of received bytes.
+     *
+     * @return number of bytes
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Get number of received value lists generated by the scenario.
+     *
+     * @return number of value lists
+     */
+    public long getValueLists() {
+        return valueLists.get();
+    }
+
+    /**
+     * Get number of packets that could not be decoded.
+     *
+     * @return number of packets
+     */
+    public long getInvalidPackets() {
+        return invalidPackets.get();
+    }
+
+    /**
+     * Get number of value lists with identifiers not generated by the scenario.
+     *
+     * @return number of value lists
+     */
+    public long getUnexpected() {
+        return unexpected.get();
+    }
+
+    /**
+     * Get number of value lists with values not matching the generated values.
+     *
+     * @return number of value lists
+     */
+    public long getCorrupted() {
+        return corrupted.get();
+    }
+
+    /**
+     * Get number of value lists with identifier parts not matching the generated identifier (i.e. instances of the previous value list).
+     *
+     * @return number of value lists
+     */
+    public long getMismatched() {
+        return mismatched.get();
+    }
+
+    /**
+     * Get number of value lists received out of order (or duplicated).
+     *
+     * @return number of value lists
+     */
+    public long getReordered() {
+        return reordered.get();
+    }
+
+    private void receive() {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+        final PacketReader reader = new PacketReader(new PacketReader.Handler() {
+            @Override
+            public void values(final ValueList valueList) {
+                match(valueList);
+            }
+
+            @Override
+            public void notification(final Notification notification) {
+                unexpected.incrementAndGet();
+            }
+        });
+
+        while (channel.isOpen()) {
+            try {
+                buffer.clear();
+                if (channel.receive(buffer) == null) {
+                    continue;
+                }
+                buffer.flip();
+                lastReceived = System.nanoTime();
+                packets.incrementAndGet();
+                bytes.addAndGet(buffer.remaining());
+                try {
+                    reader.read(buffer);
+                } catch (IOException ex) {
+                    invalidPackets.incrementAndGet();
+                    if (log.isDebugEnabled()) {
+                        log.debug("Invalid packet received", ex);
+                    }
+                }
+                if (delayNanos > 0) {
+                    LockSupport.parkNanos(delayNanos);
+                }
+            } catch (ClosedChannelException ex) {
+                log.trace("Receiver closed", ex);
+            } catch (IOException ex) {
+                log.warn("Unable to receive packet", ex);
+            }
+        }
+    }
+
+    private void match(final ValueList valueList) {
+        final boolean meter = valueList.getTypeInstance() == null;
+        final String host = valueList.getHost();
+        final int producer;
+        final int identifier;
+        try {
+            if (meter) {
+                // meter handles have empty instances, producer and identifier index are in the host name
+                if (host == null || !host.startsWith(SoakRunner.METER_HOST_PREFIX)) {
+                    unexpected.incrementAndGet();
+                    return;
+                }
+                final int separator = host.indexOf('-', SoakRunner.METER_HOST_PREFIX.length());
+                producer = Integer.parseInt(host.substring(SoakRunner.METER_HOST_PREFIX.length(), separator));
+                identifier = Integer.parseInt(host.substring(separator + 1));
+            } else {
+                producer = Integer.parseInt(valueList.getPluginInstance());
+                identifier = Integer.parseInt(valueList.getTypeInstance());
+            }
+        } catch (NumberFormatException | StringIndexOutOfBoundsException ex) {
+            unexpected.incrementAndGet();
+            return;
+        }
+        if (!SoakRunner.PLUGIN.equals(valueList.getPlugin()) || producer < 0 || producer >= sequences.length || identifier < 0
+                || identifier >= sequences[producer].length) {
+            unexpected.incrementAndGet();
+            return;
+        }
+        if (meter != SoakRunner.isMeter(scenario, identifier) || !SoakRunner.TYPE.equals(valueList.getType())
+                || (meter ? valueList.getPluginInstance() != null : !SoakRunner.HOST.equals(host))) {
+            mismatched.incrementAndGet();
+            return;
+        }
+
+        valueLists.incrementAndGet();
+        final long sequence = valueList.size() > 0 ? valueList.getLong(0) : 0L;
+        boolean valid = valueList.size() == values;
+        for (int i = 1; valid && i < values; i++) {
+            valid = valueList.getLong(i) == sequence + i;
+        }
+        if (!valid) {
+            corrupted.incrementAndGet();
+            return;
+        }
+
+        // receiver thread is the only writer of sequences
+        if (sequence <= sequences[producer][identifier]) {
+            reordered.incrementAndGet();
+        } else {
+            sequences[producer][identifier] = sequence;
+        }
+    }
+}
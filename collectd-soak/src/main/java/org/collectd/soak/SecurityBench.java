@@ -0,0 +1,119 @@
+package org.collectd.soak;
+
+import java.io.IOException;
+import java.util.Locale;
+import org.collectd.config.CollectdConstants;
+import org.collectd.model.ValueList;
+import org.collectd.model.ValueType;
+import org.collectd.protocol.PacketBuffer;
+import org.collectd.protocol.PacketEncryptor;
+import org.collectd.protocol.PacketSigner;
+import org.collectd.protocol.UdpBufferWriter;
+
+/**
+ * Benchmark of packet signing and encryption overhead. Value lists are encoded into plain, signed (HMAC-SHA-256) and encrypted (AES-256/OFB) packets, time of
+ * encoding and signing (or encryption) per packet is reported (socket is not used). Number of measured packets is set by {@link #PACKETS_ARGUMENT} system property, i.e. <code>java
+ * -Dcollectd.bench.packets=1000000 -cp collectd-soak-jar-with-dependencies.jar org.collectd.soak.SecurityBench</code>.
+ */
+public class SecurityBench {
+
+    public static final String PACKETS_ARGUMENT = "collectd.bench.packets";
+    public static final String PACKET_SIZE_ARGUMENT = "collectd.packetSize";
+
+    private static final int DEFAULT_PACKETS = 200000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final String USERNAME = "bench";
+    private static final String PASSWORD = "bench-secret";
+
+    private static final int IDENTIFIERS = 100;
+    private static final double PERCENT = 100.0;
+
+    /**
+     * Run benchmark.
+     *
+     * @param args command line arguments (not used)
+     * @throws IOException unable to encode packets
+     */
+    public static void main(final String[] args) throws IOException {
+        final int packets = Integer.getInteger(PACKETS_ARGUMENT, DEFAULT_PACKETS);
+        final int packetSize = Integer.getInteger(PACKET_SIZE_ARGUMENT, CollectdConstants.MAX_PACKET_SIZE);
+        final PacketSigner signer = new PacketSigner(USERNAME, PASSWORD);
+        final PacketEncryptor encryptor = new PacketEncryptor(USERNAME, PASSWORD);
+
+        // JIT compilation of all paths before measurement
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            run(packetSize, packets / WARMUP_ROUNDS, null, null);
+            run(packetSize, packets / WARMUP_ROUNDS, signer, null);
+            run(packetSize, packets / WARMUP_ROUNDS, null, encryptor);
+        }
+
+        final long[] plain = run(packetSize, packets, null, null);
+        final long[] signed = run(packetSize, packets, signer, null);
+        final long[] encrypted = run(packetSize, packets, null, encryptor);
+
+        System.out.println(String.format(Locale.ROOT, "Packet size:        %d bytes (signature part: %d bytes, encryption header: %d bytes)", packetSize,
+                signer.getPartLength(), encryptor.getPartLength()));
+        System.out.println(String.format(Locale.ROOT, "Packets:            %d", packets));
+        print("Plain:", plain);
+        print("Signed:", signed);
+        print("Encrypted:", encrypted);
+    }
+
+    private static void print(final String name, final long[] result) {
+        final double totalNanos = (double) result[0] / result[1];
+        final double securityNanos = (double) result[2] / result[1];
+        System.out.println(String.format(Locale.ROOT, "%-19s %.0f ns/packet, %.1f value lists/packet, signing or encryption: %.0f ns/packet (%.1f%%)", name,
+                totalNanos, (double) result[3] / result[1], securityNanos, securityNanos * PERCENT / totalNanos));
+    }
+
+    /**
+     * Encode value lists until the given number of packets is finished.
+     *
+     * @return total nanoseconds, number of packets, nanoseconds of signing (or encryption) and number of value lists
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private static long[] run(final int packetSize, final int packets, final PacketSigner signer, final PacketEncryptor encryptor) throws IOException {
+        final UdpBufferWriter writer = new UdpBufferWriter(packetSize);
+        if (signer != null) {
+            writer.setHeadroom(signer.getPartLength());
+        } else if (encryptor != null) {
+            writer.setHeadroom(encryptor.getPartLength());
+        }
+
+        final ValueList[] identifiers = new ValueList[IDENTIFIERS];
+        for (int i = 0; i < IDENTIFIERS; i++) {
+            identifiers[i] = new ValueList();
+            identifiers[i].setHost(USERNAME);
+            identifiers[i].setPlugin(USERNAME);
+            identifiers[i].setType("derive");
+            identifiers[i].setTypeInstance(Integer.toString(i));
+        }
+
+        long securityNanos = 0;
+        long valueLists = 0;
+        int finished = 0;
+        final long start = System.nanoTime();
+        while (finished < packets) {
+            final ValueList valueList = identifiers[(int) (valueLists % IDENTIFIERS)];
+            valueList.clear();
+            valueList.setTime(System.currentTimeMillis());
+            valueList.add(ValueType.DERIVE, valueLists);
+
+            final PacketBuffer buffer = writer.checkSpace(valueList);
+            writer.writeValuesPart(valueList);
+            valueLists++;
+            if (buffer != null) {
+                final long securityStart = System.nanoTime();
+                if (signer != null) {
+                    signer.sign(buffer);
+                } else if (encryptor != null) {
+                    encryptor.encrypt(buffer);
+                }
+                securityNanos += System.nanoTime() - securityStart;
+                buffer.release();
+                finished++;
+            }
+        }
+        return new long[] {System.nanoTime() - start, finished, securityNanos, valueLists};
+    }
+}
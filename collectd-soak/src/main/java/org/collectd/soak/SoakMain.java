@@ -0,0 +1,90 @@
+package org.collectd.soak;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Main class of the soak test. Scenarios are loaded from the properties file given as argument (default scenarios are used without argument), i.e.
+ * <code>java -Dcollectd.soak.report=soak-report.txt -jar collectd-soak-jar-with-dependencies.jar scenarios.properties</code>. Scenarios to run are listed
+ * by the <code>scenarios</code> property (overridden by {@link #SCENARIOS_ARGUMENT} system property). Report is printed to the standard output (and written
+ * to the report file if configured), exit code is 1 if any scenario failed, so the soak test can be used as a regression gate.
+ */
+public class SoakMain {
+
+    public static final String SCENARIOS_ARGUMENT = "collectd.soak.scenarios";
+    public static final String REPORT_ARGUMENT = "collectd.soak.report";
+
+    private static final String SCENARIOS_KEY = "scenarios";
+    private static final String DEFAULT_SCENARIOS = "soak-scenarios.properties";
+    private static final double NANOS_PER_MICRO = 1e3;
+
+    /**
+     * Run soak test scenarios.
+     *
+     * @param args command line arguments: scenario definitions file (optional)
+     * @throws IOException unable to read scenarios, write report or open sockets
+     * @throws InterruptedException main thread is interrupted
+     */
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        final Properties properties = new Properties();
+        try (InputStream is = args.length > 0 ? new FileInputStream(args[0]) : SoakMain.class.getClassLoader().getResourceAsStream(DEFAULT_SCENARIOS)) {
+            properties.load(is);
+        }
+
+        final String names = System.getProperty(SCENARIOS_ARGUMENT, properties.getProperty(SCENARIOS_KEY, ""));
+        final List<SoakScenario> scenarios = new ArrayList<>();
+        for (final String name : names.split(",")) {
+            if (!name.trim().isEmpty()) {
+                scenarios.add(SoakScenario.fromProperties(name.trim(), properties));
+            }
+        }
+        if (scenarios.isEmpty()) {
+            System.err.println("Usage: java [-D" + SCENARIOS_ARGUMENT + "=<scenario,...>] [-D" + REPORT_ARGUMENT + "=<report file>] -jar <jar> [<scenarios file>]");
+            System.exit(1);
+        }
+
+        final List<SoakResult> results = new ArrayList<>();
+        for (final SoakScenario scenario : scenarios) {
+            results.add(new SoakRunner(scenario).run());
+        }
+
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        final boolean passed = report(results, out);
+        out.flush();
+
+        final String reportFile = System.getProperty(REPORT_ARGUMENT);
+        if (reportFile != null) {
+            try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(reportFile), StandardCharsets.UTF_8))) {
+                report(results, writer);
+            }
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean report(final List<SoakResult> results, final PrintWriter out) {
+        boolean passed = true;
+        for (final SoakResult result : results) {
+            result.print(out);
+            out.println();
+            passed &= result.isPassed();
+        }
+
+        out.println(String.format(Locale.ROOT, "%-20s %12s %12s %10s %12s %14s %8s", "Scenario", "Sent/s", "Received/s", "Loss %", "Send p99 us",
+                "Encode p99 us", "Result"));
+        for (final SoakResult result : results) {
+            out.println(String.format(Locale.ROOT, "%-20s %12.0f %12.0f %10.3f %12d %14.1f %8s", result.getScenario().getName(),
+                    result.getValueListsSent() / result.getSeconds(), result.getValueListsReceived() / result.getSeconds(), result.getLoss(),
+                    result.getSendLatency()[1], result.getEncodeLatency()[1] / NANOS_PER_MICRO, result.isPassed() ? "PASSED" : "FAILED"));
+        }
+        return passed;
+    }
+}
@@ -0,0 +1,136 @@
+package org.collectd.soak;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import org.collectd.model.Histogram;
+import org.collectd.services.SenderStats;
+import org.collectd.services.UdpPacketSender;
+
+/**
+ * Result of a soak test scenario. Counters of the sender and receiver are copied when the scenario is finished.
+ */
+@lombok.Getter
+public class SoakResult {
+
+    private static final double PERCENT = 100.0;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double NANOS_PER_MICRO = 1e3;
+
+    private final SoakScenario scenario;
+    private final double seconds;
+
+    private final long valueListsSent;
+    private final long packetsSent;
+    private final long bytesSent;
+    private final long sendErrors;
+    private final long droppedPackets;
+    private final double fillRatio;
+
+    private final long valueListsReceived;
+    private final long packetsReceived;
+    private final long bytesReceived;
+    private final long invalidPackets;
+    private final long unexpected;
+    private final long corrupted;
+    private final long mismatched;
+    private final long reordered;
+
+    /**
+     * Send call latencies in microseconds (p50, p99, p999, max).
+     */
+    private final long[] sendLatency;
+
+    /**
+     * Encode latencies of the sender in nanoseconds (p50, p99).
+     */
+    private final long[] encodeLatency;
+
+    /**
+     * Flush latencies of the sender in nanoseconds (p50, p99).
+     */
+    private final long[] flushLatency;
+
+    SoakResult(final SoakScenario scenario, final long sendNanos, final long valueListsSent, final UdpPacketSender sender, final LoopbackReceiver receiver,
+            final Histogram sendLatencyHistogram) {
+        this.scenario = scenario;
+        this.seconds = sendNanos / NANOS_PER_SECOND;
+
+        final SenderStats stats = sender.getStats();
+        this.valueListsSent = valueListsSent;
+        packetsSent = stats.getPacketsSent();
+        bytesSent = stats.getBytesSent();
+        sendErrors = stats.getSendErrors();
+        droppedPackets = stats.getDropped();
+        fillRatio = stats.getFillRatio();
+        encodeLatency = new long[] {stats.getEncodeLatencyP50(), stats.getEncodeLatencyP99()};
+        flushLatency = new long[] {stats.getFlushLatencyP50(), stats.getFlushLatencyP99()};
+
+        valueListsReceived = receiver.getValueLists();
+        packetsReceived = receiver.getPackets();
+        bytesReceived = receiver.getBytes();
+        invalidPackets = receiver.getInvalidPackets();
+        unexpected = receiver.getUnexpected();
+        corrupted = receiver.getCorrupted();
+        mismatched = receiver.getMismatched();
+        reordered = receiver.getReordered();
+
+        sendLatency = new long[] {sendLatencyHistogram.getPercentile(0.5), sendLatencyHistogram.getPercentile(0.99), sendLatencyHistogram.getPercentile(0.999),
+            sendLatencyHistogram.getMax()};
+    }
+
+    /**
+     * Get loss of value lists (between the sender API and the receiver).
+     *
+     * @return lost value lists in percent
+     */
+    public double getLoss() {
+        return valueListsSent > 0 ? (valueListsSent - valueListsReceived) * PERCENT / valueListsSent : 0.0;
+    }
+
+    /**
+     * Get loss of packets on the network (packets dropped by the sender are not included).
+     *
+     * @return lost packets in percent
+     */
+    public double getPacketLoss() {
+        return packetsSent > 0 ? (packetsSent - packetsReceived) * PERCENT / packetsSent : 0.0;
+    }
+
+    /**
+     * Check if scenario passed: loss is not above the limit of the scenario, no invalid, unexpected, corrupted or mismatched data is received.
+     *
+     * @return <code>true</code> if scenario passed
+     */
+    public boolean isPassed() {
+        return (scenario.getMaxLoss() < 0 || getLoss() <= scenario.getMaxLoss()) && invalidPackets == 0 && unexpected == 0 && corrupted == 0
+                && mismatched == 0;
+    }
+
+    /**
+     * Print report of the scenario.
+     *
+     * @param out output
+     */
+    public void print(final PrintWriter out) {
+        out.println(format("Scenario:       %s (%s)", scenario.getName(), isPassed() ? "PASSED" : "FAILED"));
+        out.println(format("Parameters:     threads=%d cardinality=%d values=%d rate=%.0f/s duration=%ds packetSize=%d pacing=%.0f/s receiverDelay=%dus "
+                + "receiveBuffer=%d maxLoss=%.2f%% meters=%b", scenario.getThreads(), scenario.getCardinality(), scenario.getValues(), scenario.getRate(),
+                scenario.getDuration(), scenario.getPacketSize(), scenario.getPacing(), scenario.getReceiverDelay(), scenario.getReceiveBuffer(),
+                scenario.getMaxLoss(), scenario.isMeters()));
+        out.println(format("Value lists:    sent=%d (%.0f/s) received=%d loss=%.3f%%", valueListsSent, valueListsSent / seconds, valueListsReceived,
+                getLoss()));
+        out.println(format("Packets:        sent=%d (%.0f/s) received=%d loss=%.3f%% dropped by pacer=%d send errors=%d", packetsSent, packetsSent / seconds,
+                packetsReceived, getPacketLoss(), droppedPackets, sendErrors));
+        out.println(format("Bytes:          sent=%d (%.0f/s) received=%d fill ratio=%.1f%%", bytesSent, bytesSent / seconds, bytesReceived,
+                fillRatio * PERCENT));
+        out.println(format("Verification:   invalid packets=%d unexpected=%d corrupted=%d mismatched=%d reordered=%d", invalidPackets, unexpected, corrupted,
+                mismatched, reordered));
+        out.println(format("Send (us):      p50=%d p99=%d p999=%d max=%d", sendLatency[0], sendLatency[1], sendLatency[2], sendLatency[3]));
+        out.println(format("Encode (us):    p50=%.1f p99=%.1f", encodeLatency[0] / NANOS_PER_MICRO, encodeLatency[1] / NANOS_PER_MICRO));
+        out.println(format("Flush (us):     p50=%.1f p99=%.1f", flushLatency[0] / NANOS_PER_MICRO, flushLatency[1] / NANOS_PER_MICRO));
+    }
+
+    private static String format(final String format, final Object... args) {
+        return String.format(Locale.ROOT, format, args);
+    }
+}
@@ -0,0 +1,203 @@
+package org.collectd.soak;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.collectd.model.Histogram;
+import org.collectd.model.ValueList;
+import org.collectd.model.ValueType;
+import org.collectd.services.Meter;
+import org.collectd.services.MetricRegistry;
+import org.collectd.services.TokenBucket;
+import org.collectd.services.UdpPacketSender;
+
+/**
+ * Runner of a soak test scenario. Producer threads send value lists through a {@link UdpPacketSender} to a {@link LoopbackReceiver} for the configured
+ * duration, then the sender is closed (buffered and paced packets are sent) and the receiver is drained.
+ * <p>
+ * Value lists are sent with host <code>soak</code>, plugin instance set to the producer index and type instance set to the identifier index of the producer.
+ * Meter handles (if enabled by the scenario) have empty plugin and type instances, producer and identifier index are sent in the host name
+ * (<code>soak-producer-identifier</code>).
+ */
+@Slf4j
+public class SoakRunner {
+
+    /**
+     * Plugin of generated value lists.
+     */
+    public static final String PLUGIN = "soak";
+
+    /**
+     * Host of generated value lists.
+     */
+    public static final String HOST = "soak";
+
+    /**
+     * Type of generated value lists.
+     */
+    public static final String TYPE = "derive";
+
+    /**
+     * Host name prefix of meter handles, followed by producer index, a dash and identifier index.
+     */
+    public static final String METER_HOST_PREFIX = HOST + "-";
+
+    private static final String THREAD_NAME = "collectd-soak-producer-";
+
+    private static final long QUIET_PERIOD = 500L;
+    private static final long DRAIN_TIMEOUT = 30000L;
+    private static final double BURST_SECONDS = 0.01;
+
+    private final SoakScenario scenario;
+
+    /**
+     * Create new runner.
+     *
+     * @param scenario soak test scenario
+     */
+    public SoakRunner(final SoakScenario scenario) {
+        this.scenario = scenario;
+    }
+
+    /**
+     * Run scenario.
+     *
+     * @return result of the scenario
+     * @throws IOException unable to open sockets
+     * @throws InterruptedException running thread is interrupted
+     */
+    public SoakResult run() throws IOException, InterruptedException {
+        log.info("Running soak scenario " + scenario);
+        try (LoopbackReceiver receiver = new LoopbackReceiver(scenario)) {
+            final UdpPacketSender sender = new UdpPacketSender(receiver.getAddress(), HOST, scenario.getPacketSize());
+            if (scenario.getPacing() > 0) {
+                sender.setPacing(scenario.getPacing(), 0L, scenario.getPacingBacklog());
+            }
+
+            final MetricRegistry registry = scenario.isMeters() ? new MetricRegistry(sender) : null;
+            final Histogram sendLatency = new Histogram();
+            final AtomicLong sent = new AtomicLong(0L);
+            final CountDownLatch done = new CountDownLatch(scenario.getThreads());
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(scenario.getDuration());
+
+            final List<Thread> producers = new ArrayList<>();
+            for (int t = 0; t < scenario.getThreads(); t++) {
+                final int index = t;
+                final Thread producer = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            sent.addAndGet(produce(sender, registry, index, deadline, sendLatency));
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }, THREAD_NAME + t);
+                producer.setDaemon(true);
+                producers.add(producer);
+            }
+
+            final long start = System.nanoTime();
+            for (final Thread producer : producers) {
+                producer.start();
+            }
+            done.await();
+            final long sendNanos = System.nanoTime() - start;
+
+            sender.close();
+            receiver.awaitQuiet(QUIET_PERIOD, DRAIN_TIMEOUT);
+
+            return new SoakResult(scenario, sendNanos, sent.get(), sender, receiver, sendLatency);
+        }
+    }
+
+    /**
+     * Check if identifier is recorded through a meter handle.
+     *
+     * @param scenario soak test scenario
+     * @param identifier identifier index of the producer
+     * @return <code>true</code> if every second identifier is a meter and this is one of them
+     */
+    public static boolean isMeter(final SoakScenario scenario, final int identifier) {
+        return scenario.isMeters() && identifier % 2 == 1;
+    }
+
+    /**
+     * Send value lists of identifiers assigned to the producer until deadline. Identifiers are assigned round-robin, the first value of each value list is
+     * the sequence number of the identifier.
+     *
+     * @return number of sent value lists
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private long produce(final UdpPacketSender sender, final MetricRegistry registry, final int index, final long deadline, final Histogram sendLatency) {
+        final ValueType[] types = new ValueType[scenario.getValues()];
+        Arrays.fill(types, ValueType.DERIVE);
+
+        final List<ValueList> identifiers = new ArrayList<>();
+        final List<Meter> meters = new ArrayList<>();
+        for (int i = index; i < scenario.getCardinality(); i += scenario.getThreads()) {
+            final int identifier = identifiers.size();
+            final ValueList valueList = new ValueList(scenario.getValues());
+            valueList.setPlugin(PLUGIN);
+            valueList.setPluginInstance(Integer.toString(index));
+            valueList.setType(TYPE);
+            valueList.setTypeInstance(Integer.toString(identifier));
+            identifiers.add(valueList);
+            meters.add(isMeter(scenario, identifier)
+                    ? registry.meter(METER_HOST_PREFIX + index + "-" + identifier, PLUGIN, null, TYPE, null, 0L, types) : null);
+        }
+
+        final double rate = scenario.getRate() / scenario.getThreads();
+        final TokenBucket bucket = rate > 0 ? new TokenBucket(rate, Math.max(1.0, rate * BURST_SECONDS)) : null;
+        final long[] values = new long[scenario.getValues()];
+
+        long sent = 0;
+        long sequence = 0;
+        while (System.nanoTime() < deadline) {
+            sequence++;
+            for (int i = 0; i < identifiers.size(); i++) {
+                if (System.nanoTime() >= deadline) {
+                    return sent;
+                }
+                if (bucket != null) {
+                    while (!bucket.tryAcquire(1)) {
+                        LockSupport.parkNanos(bucket.getWaitNanos(1));
+                    }
+                }
+
+                final long started = System.nanoTime();
+                try {
+                    send(sender, identifiers.get(i), meters.get(i), sequence, values);
+                } catch (IOException ex) {
+                    log.warn("Unable to send value list", ex);
+                }
+                sendLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    private static void send(final UdpPacketSender sender, final ValueList valueList, final Meter meter, final long sequence, final long[] values)
+            throws IOException {
+        if (meter != null) {
+            for (int v = 0; v < values.length; v++) {
+                values[v] = sequence + v;
+            }
+            meter.record(values);
+        } else {
+            valueList.clear();
+            valueList.setTime(System.currentTimeMillis());
+            for (int v = 0; v < values.length; v++) {
+                valueList.add(ValueType.DERIVE, sequence + v);
+            }
+            sender.send(valueList);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.collectd.soak;
+
+import java.util.Properties;
+import org.collectd.config.CollectdConstants;
+
+/**
+ * Soak test scenario. Scenarios are defined by properties prefixed with the scenario name, i.e. <code>burst.threads=8</code>, missing properties are set to
+ * default values.
+ */
+@lombok.Getter
+@lombok.ToString
+public class SoakScenario {
+
+    private static final String THREADS_KEY = "threads";
+    private static final String CARDINALITY_KEY = "cardinality";
+    private static final String VALUES_KEY = "values";
+    private static final String RATE_KEY = "rate";
+    private static final String DURATION_KEY = "duration";
+    private static final String PACKET_SIZE_KEY = "packetSize";
+    private static final String PACING_KEY = "pacing";
+    private static final String PACING_BACKLOG_KEY = "pacingBacklog";
+    private static final String RECEIVER_DELAY_KEY = "receiverDelay";
+    private static final String RECEIVE_BUFFER_KEY = "receiveBuffer";
+    private static final String MAX_LOSS_KEY = "maxLoss";
+    private static final String METERS_KEY = "meters";
+
+    private static final int DEFAULT_THREADS = 4;
+    private static final int DEFAULT_CARDINALITY = 1000;
+    private static final int DEFAULT_PACING_BACKLOG = 1024;
+    private static final int DEFAULT_DURATION = 10;
+
+    private final String name;
+
+    /**
+     * Number of producer threads.
+     */
+    private final int threads;
+
+    /**
+     * Number of distinct identifiers (split across producer threads).
+     */
+    private final int cardinality;
+
+    /**
+     * Number of values per value list.
+     */
+    private final int values;
+
+    /**
+     * Value lists per second sent by all producer threads, 0 if rate is not limited.
+     */
+    private final double rate;
+
+    /**
+     * Duration of sending in seconds.
+     */
+    private final int duration;
+
+    private final int packetSize;
+
+    /**
+     * Packets per second sent by the pacer of the sender, 0 if pacing is disabled.
+     */
+    private final double pacing;
+
+    private final int pacingBacklog;
+
+    /**
+     * Processing time of the receiver per packet in microseconds (simulating a slow Collectd server).
+     */
+    private final long receiverDelay;
+
+    /**
+     * Receive buffer size of receiver socket in bytes, 0 if OS default is used.
+     */
+    private final int receiveBuffer;
+
+    /**
+     * Maximum accepted loss of value lists in percent, negative if loss is reported only.
+     */
+    private final double maxLoss;
+
+    /**
+     * Every second identifier is recorded through a {@link org.collectd.services.Meter} handle with empty plugin and type instances, mixed with value lists
+     * in the same packets.
+     */
+    private final boolean meters;
+
+    /**
+     * Create scenario from properties.
+     *
+     * @param name scenario name (prefix of properties)
+     * @param properties scenario definitions
+     * @return soak test scenario
+     */
+    public static SoakScenario fromProperties(final String name, final Properties properties) {
+        return new SoakScenario(name, properties);
+    }
+
+    private SoakScenario(final String name, final Properties properties) {
+        this.name = name;
+        threads = Integer.parseInt(get(properties, THREADS_KEY, DEFAULT_THREADS));
+        cardinality = Integer.parseInt(get(properties, CARDINALITY_KEY, DEFAULT_CARDINALITY));
+        values = Integer.parseInt(get(properties, VALUES_KEY, 1));
+        rate = Double.parseDouble(get(properties, RATE_KEY, 0));
+        duration = Integer.parseInt(get(properties, DURATION_KEY, DEFAULT_DURATION));
+        packetSize = Integer.parseInt(get(properties, PACKET_SIZE_KEY, CollectdConstants.MAX_PACKET_SIZE));
+        pacing = Double.parseDouble(get(properties, PACING_KEY, 0));
+        pacingBacklog = Integer.parseInt(get(properties, PACING_BACKLOG_KEY, DEFAULT_PACING_BACKLOG));
+        receiverDelay = Long.parseLong(get(properties, RECEIVER_DELAY_KEY, 0));
+        receiveBuffer = Integer.parseInt(get(properties, RECEIVE_BUFFER_KEY, 0));
+        maxLoss = Double.parseDouble(get(properties, MAX_LOSS_KEY, -1));
+        meters = Boolean.parseBoolean(get(properties, METERS_KEY, false));
+
+        if (threads <= 0 || cardinality < threads || values <= 0 || duration <= 0) {
+            throw new IllegalArgumentException("Invalid scenario " + name + ": threads, values and duration must be positive, cardinality must not be less than "
+                    + "threads");
+        }
+    }
+
+    private String get(final Properties properties, final String key, final Object defaultValue) {
+        return properties.getProperty(name + "." + key, String.valueOf(defaultValue)).trim();
+    }
+}